@@ -0,0 +1,91 @@
+package com.example.smartattendancesystem;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link EmbeddingDriftHarness} with the real float32 and int8 models on the face crops
+ * in the test APK's {@code face_fixtures/} assets, and fails if quantization moves embeddings
+ * far enough to change matching. Skipped when the int8 model or the fixtures are not bundled.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuantizedModelDriftTest {
+
+    private static final String TAG = "QuantizedModelDriftTest";
+    private static final String FIXTURE_DIR = "face_fixtures";
+    private static final double MIN_COSINE = 0.98;
+    private static final double MIN_NEAREST_NEIGHBOUR_AGREEMENT = 0.95;
+
+    private FaceRecognitionHelper floatHelper;
+    private FaceRecognitionHelper int8Helper;
+    private final List<Bitmap> fixtures = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Context testContext = InstrumentationRegistry.getInstrumentation().getContext();
+        Assume.assumeTrue("int8 model not bundled",
+                FaceEmbeddingEngine.QUANTIZED_MODEL_PATH.equals(FaceEmbeddingEngine.resolveModelPath(appContext)));
+
+        AssetManager assets = testContext.getAssets();
+        String[] names = assets.list(FIXTURE_DIR);
+        Assume.assumeTrue("No face fixtures bundled", names != null && names.length > 1);
+        for (String name : names) {
+            try (InputStream in = assets.open(FIXTURE_DIR + "/" + name)) {
+                Bitmap bitmap = BitmapFactory.decodeStream(in);
+                if (bitmap != null) {
+                    fixtures.add(bitmap);
+                }
+            }
+        }
+
+        floatHelper = new FaceRecognitionHelper(appContext, FaceEmbeddingEngine.MODEL_PATH);
+        int8Helper = new FaceRecognitionHelper(appContext, FaceEmbeddingEngine.QUANTIZED_MODEL_PATH);
+    }
+
+    @After
+    public void tearDown() {
+        if (floatHelper != null) {
+            floatHelper.close();
+        }
+        if (int8Helper != null) {
+            int8Helper.close();
+        }
+        for (Bitmap bitmap : fixtures) {
+            bitmap.recycle();
+        }
+    }
+
+    @Test
+    public void int8Model_staysCloseToFloatModel() {
+        assertTrue(int8Helper.isQuantized());
+
+        EmbeddingDriftHarness<Bitmap> harness = new EmbeddingDriftHarness<>(
+                floatHelper::getFaceEmbedding, int8Helper::getFaceEmbedding, 3);
+        EmbeddingDriftHarness.Report report = harness.run(fixtures);
+        Log.i(TAG, "Float vs int8: " + report);
+
+        assertEquals(0, report.failedFixtures);
+        assertTrue(report.toString(), report.minCosine >= MIN_COSINE);
+        assertTrue(report.toString(), report.nearestNeighbourAgreement >= MIN_NEAREST_NEIGHBOUR_AGREEMENT);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.smartattendancesystem;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks the direct {@link YuvToRgbConverter} path against the old NV21 -> JPEG -> Bitmap
+ * conversion that VerifyActivity used, on a 640x480 frame (the default analysis size), and checks
+ * both produce the same picture. Timings are written to logcat under the test's tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class YuvConversionBenchmarkTest {
+
+    private static final String TAG = "YuvConversionBenchmark";
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int WARM_UP_RUNS = 5;
+    private static final int MEASURED_RUNS = 30;
+
+    // Smooth synthetic NV21 frame (gradients compress like a real scene, unlike noise)
+    private static byte[] syntheticNv21() {
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                nv21[y * WIDTH + x] = (byte) (40 + (x + y) * 170 / (WIDTH + HEIGHT));
+            }
+        }
+        for (int i = WIDTH * HEIGHT; i < nv21.length; i += 2) {
+            int column = (i - WIDTH * HEIGHT) % WIDTH;
+            int row = (i - WIDTH * HEIGHT) / WIDTH;
+            nv21[i] = (byte) (110 + column * 40 / WIDTH);     // V
+            nv21[i + 1] = (byte) (100 + row * 60 / (HEIGHT / 2)); // U
+        }
+        return nv21;
+    }
+
+    private static Bitmap jpegRoundTrip(byte[] nv21) {
+        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, WIDTH, HEIGHT, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        yuvImage.compressToJpeg(new Rect(0, 0, WIDTH, HEIGHT), 90, out);
+        byte[] imageBytes = out.toByteArray();
+        return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+    }
+
+    @Test
+    public void directConversion_matchesJpegPathAndReportsTimings() {
+        byte[] nv21 = syntheticNv21();
+        ByteBuffer y = ByteBuffer.wrap(nv21, 0, WIDTH * HEIGHT).slice();
+        ByteBuffer v = ByteBuffer.wrap(nv21, WIDTH * HEIGHT, WIDTH * HEIGHT / 2).slice();
+        ByteBuffer u = ByteBuffer.wrap(nv21, WIDTH * HEIGHT + 1, WIDTH * HEIGHT / 2 - 1).slice();
+
+        YuvToRgbConverter converter = new YuvToRgbConverter();
+        int[] argb = new int[WIDTH * HEIGHT];
+        Bitmap direct = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+
+        double[] jpegMs = new double[MEASURED_RUNS];
+        double[] directMs = new double[MEASURED_RUNS];
+        for (int run = -WARM_UP_RUNS; run < MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            Bitmap decoded = jpegRoundTrip(nv21);
+            long jpegNanos = System.nanoTime() - start;
+            decoded.recycle();
+
+            start = System.nanoTime();
+            converter.convert(y, WIDTH, u, v, WIDTH, 2, WIDTH, HEIGHT, 0, argb);
+            direct.setPixels(argb, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            long directNanos = System.nanoTime() - start;
+
+            if (run >= 0) {
+                jpegMs[run] = jpegNanos / 1e6;
+                directMs[run] = directNanos / 1e6;
+            }
+        }
+        Arrays.sort(jpegMs);
+        Arrays.sort(directMs);
+        Log.i(TAG, String.format(Locale.US, "%dx%d median: JPEG round-trip %.2f ms, direct %.2f ms",
+                WIDTH, HEIGHT, jpegMs[MEASURED_RUNS / 2], directMs[MEASURED_RUNS / 2]));
+
+        // Same picture, up to JPEG loss
+        Bitmap viaJpeg = jpegRoundTrip(nv21);
+        long totalDifference = 0;
+        for (int row = 0; row < HEIGHT; row += 8) {
+            for (int column = 0; column < WIDTH; column += 8) {
+                int a = viaJpeg.getPixel(column, row);
+                int b = direct.getPixel(column, row);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    totalDifference += Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+                }
+            }
+        }
+        double meanDifference = totalDifference / (3.0 * (HEIGHT / 8) * (WIDTH / 8));
+        viaJpeg.recycle();
+        direct.recycle();
+        assertTrue("mean channel difference " + meanDifference, meanDifference < 4.0);
+    }
+}
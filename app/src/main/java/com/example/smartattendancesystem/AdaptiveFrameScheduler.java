@@ -0,0 +1,136 @@
+package com.example.smartattendancesystem;
+
+import java.util.Locale;
+
+/**
+ * Decides which camera frames enter the face pipeline.
+ *
+ * A frame is admitted only when the previous one has left the pipeline (detection, crop and
+ * embedding) and the current analysis interval has elapsed; everything else is dropped at the
+ * analyzer so no redundant TFLite work queues up. The interval starts at 1 / targetFps and
+ * backs off when the measured pipeline latency rises or the device reports thermal pressure,
+ * never dropping below minFps. Timestamps are passed in (System.nanoTime() on device) so the
+ * scheduler can be driven by a fake clock in tests.
+ *
+ * tryAcquire is called from the analyzer thread and onFrameFinished from whichever thread the
+ * frame ends on, so all state is guarded by this object's lock.
+ */
+public class AdaptiveFrameScheduler {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final double LATENCY_SMOOTHING = 0.2;    // Weight of the newest sample in the latency average
+    private static final double LATENCY_HEADROOM = 1.5;     // Leave the pipeline idle for a share of each interval
+    private static final long FPS_WINDOW_NANOS = NANOS_PER_SECOND;
+
+    private final long targetIntervalNanos;
+    private final long maxIntervalNanos;
+
+    private boolean frameInFlight = false;
+    private long nextDueNanos = Long.MIN_VALUE;
+    private double averageLatencyNanos = 0;
+    private float thermalMultiplier = 1f;
+    private long currentIntervalNanos;
+
+    private long framesOffered = 0;
+    private long framesDropped = 0;
+    private long framesProcessed = 0;
+
+    // Effective FPS over a rolling window
+    private long windowStartNanos = Long.MIN_VALUE;
+    private int windowFrames = 0;
+    private float effectiveFps = 0f;
+
+    public AdaptiveFrameScheduler(float targetFps, float minFps) {
+        if (targetFps <= 0 || minFps <= 0 || minFps > targetFps) {
+            throw new IllegalArgumentException("Expected 0 < minFps <= targetFps.");
+        }
+        this.targetIntervalNanos = (long) (NANOS_PER_SECOND / targetFps);
+        this.maxIntervalNanos = (long) (NANOS_PER_SECOND / minFps);
+        this.currentIntervalNanos = targetIntervalNanos;
+    }
+
+    /**
+     * @return true if the frame arriving at {@code nowNanos} should be processed. The caller must
+     * then call {@link #onFrameFinished} exactly once, whatever the outcome.
+     */
+    public synchronized boolean tryAcquire(long nowNanos) {
+        framesOffered++;
+        if (frameInFlight || (nextDueNanos != Long.MIN_VALUE && nowNanos < nextDueNanos)) {
+            framesDropped++;
+            return false;
+        }
+        frameInFlight = true;
+        // Advance from the previous due time rather than from now, so camera frame spacing does not
+        // round the rate down; after an idle gap, still leave at least half an interval to the next frame
+        nextDueNanos = nextDueNanos == Long.MIN_VALUE
+                ? nowNanos + currentIntervalNanos
+                : Math.max(nextDueNanos + currentIntervalNanos, nowNanos + currentIntervalNanos / 2);
+        return true;
+    }
+
+    /**
+     * Marks the admitted frame that started at {@code startNanos} as done and adapts the interval
+     * to the latency it took.
+     */
+    public synchronized void onFrameFinished(long startNanos, long nowNanos) {
+        if (!frameInFlight) {
+            return;
+        }
+        frameInFlight = false;
+        framesProcessed++;
+
+        long latency = Math.max(0, nowNanos - startNanos);
+        averageLatencyNanos = averageLatencyNanos == 0
+                ? latency
+                : (1 - LATENCY_SMOOTHING) * averageLatencyNanos + LATENCY_SMOOTHING * latency;
+        updateInterval();
+
+        if (windowStartNanos == Long.MIN_VALUE) {
+            windowStartNanos = nowNanos;
+        }
+        windowFrames++;
+        long elapsed = nowNanos - windowStartNanos;
+        if (elapsed >= FPS_WINDOW_NANOS) {
+            effectiveFps = windowFrames * (float) NANOS_PER_SECOND / elapsed;
+            windowStartNanos = nowNanos;
+            windowFrames = 0;
+        }
+    }
+
+    /**
+     * Stretches the analysis interval under thermal pressure, e.g. 1 for none, 2 for moderate.
+     */
+    public synchronized void setThermalMultiplier(float multiplier) {
+        thermalMultiplier = Math.max(1f, multiplier);
+        updateInterval();
+    }
+
+    private void updateInterval() {
+        long latencyBound = (long) (averageLatencyNanos * LATENCY_HEADROOM);
+        long interval = (long) (Math.max(targetIntervalNanos, latencyBound) * thermalMultiplier);
+        currentIntervalNanos = Math.min(interval, maxIntervalNanos);
+    }
+
+    public synchronized float getEffectiveFps() {
+        return effectiveFps;
+    }
+
+    public synchronized float getCurrentTargetFps() {
+        return (float) NANOS_PER_SECOND / currentIntervalNanos;
+    }
+
+    public synchronized long getFramesDropped() {
+        return framesDropped;
+    }
+
+    public synchronized long getFramesProcessed() {
+        return framesProcessed;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US,
+                "effective %.1f fps (target %.1f), latency %.0f ms, thermal x%.1f, processed %d / dropped %d of %d frames",
+                effectiveFps, getCurrentTargetFps(), averageLatencyNanos / 1e6, thermalMultiplier,
+                framesProcessed, framesDropped, framesOffered);
+    }
+}
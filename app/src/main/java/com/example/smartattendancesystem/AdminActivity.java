@@ -98,6 +98,9 @@ public class AdminActivity extends AppCompatActivity implements UserAdapter.OnUs
                         if ("Admin".equalsIgnoreCase(currentAdminRole)) {
                             Log.d(TAG, "Current user is Admin. Loading non-admin users.");
                             loadUsers(); // Only load users if confirmed admin
+                            // Admins may write every user document, so stale embeddings are redone and
+                            // match thresholds recalibrated from here
+                            EmbeddingMigrationJob.startIfModelChanged(this);
                         } else {
                             Log.w(TAG, "Current user is not Admin. Role: " + currentAdminRole);
                             Toast.makeText(AdminActivity.this, "Access Denied: Not an Admin.", Toast.LENGTH_LONG).show();
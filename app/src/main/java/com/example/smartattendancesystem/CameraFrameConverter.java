@@ -0,0 +1,86 @@
+package com.example.smartattendancesystem;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+/**
+ * Turns CameraX analysis frames into an upright ARGB Bitmap using {@link YuvToRgbConverter}.
+ *
+ * The pixel array and Bitmap are reused for every frame, so both belong to the converter:
+ * callers must not recycle the Bitmap and must be done with either before the next frame is
+ * converted (the analyzer's frame scheduler only admits one frame at a time). The Bitmap is
+ * left to the garbage collector rather than recycled, since a detection may still hold it when
+ * the screen closes.
+ */
+public class CameraFrameConverter {
+
+    private static final String TAG = "CameraFrameConverter";
+
+    private final YuvToRgbConverter converter = new YuvToRgbConverter();
+    private int[] argb = new int[0];
+    private Bitmap bitmap;
+    private int frameWidth;
+    private int frameHeight;
+
+    /**
+     * Converts the frame and closes the ImageProxy.
+     *
+     * @return The upright frame (rotation already applied), or null if the frame could not be read.
+     */
+    public Bitmap toBitmap(ImageProxy image) {
+        try {
+            if (image.getFormat() != ImageFormat.YUV_420_888) {
+                Log.e(TAG, "Unexpected analysis format: " + image.getFormat());
+                return null;
+            }
+            ImageProxy.PlaneProxy[] planes = image.getPlanes();
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int rotation = image.getImageInfo().getRotationDegrees();
+            if (argb.length < width * height) {
+                argb = new int[width * height];
+            }
+
+            converter.convert(planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    width, height, rotation, argb);
+
+            int outWidth = YuvToRgbConverter.outputWidth(width, height, rotation);
+            int outHeight = YuvToRgbConverter.outputHeight(width, height, rotation);
+            if (bitmap == null || bitmap.getWidth() != outWidth || bitmap.getHeight() != outHeight) {
+                if (bitmap != null) {
+                    bitmap.recycle();
+                }
+                bitmap = Bitmap.createBitmap(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+            }
+            bitmap.setPixels(argb, 0, outWidth, 0, 0, outWidth, outHeight);
+            frameWidth = outWidth;
+            frameHeight = outHeight;
+            return bitmap;
+        } catch (Exception e) {
+            Log.e(TAG, "Error converting ImageProxy to Bitmap: " + e.getMessage(), e);
+            return null;
+        } finally {
+            image.close();
+        }
+    }
+
+    /**
+     * ARGB pixels of the last converted frame, same content as the returned Bitmap, for
+     * FaceRecognitionHelper.getFaceEmbedding(int[], int, int, Rect, float[]).
+     */
+    public int[] getPixels() {
+        return argb;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+}
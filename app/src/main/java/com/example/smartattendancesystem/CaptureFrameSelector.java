@@ -0,0 +1,127 @@
+package com.example.smartattendancesystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the best {@code capacity} frames of a capture session, spread over head poses.
+ *
+ * A frame within {@code minYawSeparation} degrees of a kept frame competes only with that
+ * frame, so a burst of near-identical frontal frames cannot crowd out a slightly turned one;
+ * otherwise it takes a free slot or replaces the lowest-scoring kept frame. Callers check
+ * {@link #accepts} before copying a frame, since most analysis frames are turned away.
+ *
+ * Not thread-safe.
+ *
+ * @param <P> the frame type; only handed back, never inspected.
+ */
+public class CaptureFrameSelector<P> {
+
+    private static final int REJECT = -2;
+    private static final int APPEND = -1;
+
+    private final int capacity;
+    private final float minYawSeparation;
+    private final List<P> frames = new ArrayList<>();
+    private final List<Float> scores = new ArrayList<>();
+    private final List<Float> yaws = new ArrayList<>();
+
+    public CaptureFrameSelector(int capacity, float minYawSeparation) {
+        if (capacity < 1 || minYawSeparation < 0f) {
+            throw new IllegalArgumentException("Need at least one slot and a non-negative yaw separation.");
+        }
+        this.capacity = capacity;
+        this.minYawSeparation = minYawSeparation;
+    }
+
+    // REJECT, APPEND, or the index of the kept frame the candidate would replace
+    private int slotFor(float score, float yaw) {
+        int nearest = -1;
+        float nearestDistance = Float.POSITIVE_INFINITY;
+        int worst = -1;
+        for (int i = 0; i < frames.size(); i++) {
+            float distance = Math.abs(yaws.get(i) - yaw);
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+            if (worst < 0 || scores.get(i) < scores.get(worst)) {
+                worst = i;
+            }
+        }
+        if (nearest >= 0 && nearestDistance < minYawSeparation) {
+            return score > scores.get(nearest) ? nearest : REJECT;
+        }
+        if (frames.size() < capacity) {
+            return APPEND;
+        }
+        return score > scores.get(worst) ? worst : REJECT;
+    }
+
+    /**
+     * @return true if {@link #offer} would keep a frame with this score and yaw.
+     */
+    public boolean accepts(float score, float yaw) {
+        return slotFor(score, yaw) != REJECT;
+    }
+
+    /**
+     * @return the frame no longer kept: the one it replaced, {@code frame} itself if it was
+     * turned away, or null if it took a free slot. Callers release that one.
+     */
+    public P offer(P frame, float score, float yaw) {
+        int slot = slotFor(score, yaw);
+        if (slot == REJECT) {
+            return frame;
+        }
+        if (slot == APPEND) {
+            frames.add(frame);
+            scores.add(score);
+            yaws.add(yaw);
+            return null;
+        }
+        P replaced = frames.set(slot, frame);
+        scores.set(slot, score);
+        yaws.set(slot, yaw);
+        return replaced;
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    /**
+     * @return true once every slot holds a frame scoring at least {@code minScore}.
+     */
+    public boolean isFull(float minScore) {
+        if (frames.size() < capacity) {
+            return false;
+        }
+        for (float score : scores) {
+            if (score < minScore) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands over the kept frames, best first, and empties the selector.
+     */
+    public List<P> take() {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < frames.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, (a, b) -> Float.compare(scores.get(b), scores.get(a)));
+        List<P> taken = new ArrayList<>();
+        for (int i : order) {
+            taken.add(frames.get(i));
+        }
+        frames.clear();
+        scores.clear();
+        yaws.clear();
+        return taken;
+    }
+}
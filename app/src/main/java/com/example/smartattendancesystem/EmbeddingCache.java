@@ -0,0 +1,225 @@
+package com.example.smartattendancesystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypted on-disk cache of each user's reference templates ({@link FaceTemplateSet}), keyed by
+ * matric/staff ID, so verification can start without waiting for Firestore.
+ *
+ * One file per ID (named by a hash of the ID) holds an AES-GCM encrypted record with the owner's
+ * UID, the model version that produced the templates, the user's calibrated match threshold (NaN
+ * if none), a version stamp of the templates and when they were saved. The ID is bound in as
+ * associated data, so a file copied under another ID fails to decrypt. The version stamp is a hash
+ * of the templates, which lets a background revalidation tell whether the server copy changed. Any file
+ * that cannot be read or decrypted is deleted and treated as a miss.
+ *
+ * The key comes from the caller; on device {@link EmbeddingCacheKeystore} supplies one that
+ * never leaves the Android Keystore. Methods do disk and crypto work, so call them off the
+ * main thread. Thread-safe.
+ */
+public class EmbeddingCache {
+
+    private static final int FILE_FORMAT = 4; // 2 added the model version, 3 the threshold, 4 template sets; older files read as a miss
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_BITS = 128;
+
+    public static final class Record {
+        public final String matricOrStaffId;
+        public final String userId;
+        public final String modelVersion;
+        public final float matchThreshold;
+        public final long version;
+        public final long savedAtMillis;
+        public final FaceTemplateSet templates;
+
+        Record(String matricOrStaffId, String userId, String modelVersion, float matchThreshold, long version,
+               long savedAtMillis, FaceTemplateSet templates) {
+            this.matricOrStaffId = matricOrStaffId;
+            this.userId = userId;
+            this.modelVersion = modelVersion;
+            this.matchThreshold = matchThreshold;
+            this.version = version;
+            this.savedAtMillis = savedAtMillis;
+            this.templates = templates;
+        }
+    }
+
+    private final File directory;
+    private final SecretKey key;
+
+    public EmbeddingCache(File directory, SecretKey key) {
+        this.directory = directory;
+        this.key = key;
+    }
+
+    /**
+     * Version stamp of a template set: the first 8 bytes of the SHA-256 of its templates' float16
+     * encodings, so the same templates read from an int8 Blob or a legacy array get the same stamp.
+     */
+    public static long versionOf(FaceTemplateSet templates) {
+        MessageDigest sha256 = newSha256();
+        for (int t = 0; t < templates.size(); t++) {
+            sha256.update(EmbeddingCodec.encode(templates.template(t), EmbeddingCodec.ENCODING_FLOAT16));
+        }
+        byte[] digest = sha256.digest();
+        long version = 0;
+        for (int i = 0; i < 8; i++) {
+            version = (version << 8) | (digest[i] & 0xFF);
+        }
+        return version;
+    }
+
+    /**
+     * Stores (or replaces) the templates for this ID.
+     *
+     * @param modelVersion   the {@link EmbeddingModelVersion} that produced the templates.
+     * @param matchThreshold the user's calibrated threshold, NaN if they have none.
+     * @return the record's version stamp.
+     */
+    public synchronized long put(String matricOrStaffId, String userId, String modelVersion, float matchThreshold,
+                                 FaceTemplateSet templates) throws IOException {
+        long version = versionOf(templates);
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(plain);
+        out.writeUTF(userId);
+        out.writeUTF(modelVersion);
+        out.writeFloat(matchThreshold);
+        out.writeLong(version);
+        out.writeLong(System.currentTimeMillis());
+        out.writeByte(templates.size());
+        for (int t = 0; t < templates.size(); t++) {
+            byte[] encoded = EmbeddingCodec.encode(templates.template(t), EmbeddingCodec.ENCODING_FLOAT16);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        out.flush();
+
+        byte[] iv;
+        byte[] sealed;
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key); // Provider picks a fresh random IV
+            cipher.updateAAD(matricOrStaffId.getBytes(StandardCharsets.UTF_8));
+            sealed = cipher.doFinal(plain.toByteArray());
+            iv = cipher.getIV();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not encrypt cached embedding", e);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        // Write to a temporary file and rename, so a crash never leaves a half-written entry
+        File target = fileFor(matricOrStaffId);
+        File temp = new File(directory, target.getName() + ".tmp");
+        try (DataOutputStream file = new DataOutputStream(new FileOutputStream(temp))) {
+            file.writeByte(FILE_FORMAT);
+            file.writeByte(iv.length);
+            file.write(iv);
+            file.write(sealed);
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Could not replace " + target);
+        }
+        return version;
+    }
+
+    /**
+     * @return the cached record, or null on a miss or an unreadable entry.
+     */
+    public synchronized Record get(String matricOrStaffId) {
+        File file = fileFor(matricOrStaffId);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] bytes = readFully(file);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readUnsignedByte() != FILE_FORMAT) {
+                throw new IOException("Unknown cache file format");
+            }
+            byte[] iv = new byte[in.readUnsignedByte()];
+            in.readFully(iv);
+            int headerLength = 2 + iv.length;
+
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(matricOrStaffId.getBytes(StandardCharsets.UTF_8));
+            byte[] plain = cipher.doFinal(bytes, headerLength, bytes.length - headerLength);
+
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(plain));
+            String userId = record.readUTF();
+            String modelVersion = record.readUTF();
+            float matchThreshold = record.readFloat();
+            long version = record.readLong();
+            long savedAtMillis = record.readLong();
+            int count = record.readUnsignedByte();
+            List<float[]> decoded = new ArrayList<>(count);
+            for (int t = 0; t < count; t++) {
+                byte[] encoded = new byte[record.readInt()];
+                record.readFully(encoded);
+                decoded.add(EmbeddingCodec.decode(encoded));
+            }
+            FaceTemplateSet templates = FaceTemplateSet.ofTemplates(decoded);
+            if (versionOf(templates) != version) {
+                throw new IOException("Cached templates do not match their version stamp");
+            }
+            return new Record(matricOrStaffId, userId, modelVersion, matchThreshold, version, savedAtMillis, templates);
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+            // Corrupt, tampered with, or encrypted under a key that no longer exists
+            file.delete();
+            return null;
+        }
+    }
+
+    public synchronized void remove(String matricOrStaffId) {
+        fileFor(matricOrStaffId).delete();
+    }
+
+    private File fileFor(String matricOrStaffId) {
+        byte[] digest = sha256(matricOrStaffId.getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            name.append(String.format("%02x", digest[i] & 0xFF));
+        }
+        return new File(directory, name.append(".emb").toString());
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return newSha256().digest(data);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Guaranteed on Android and the JVM
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.smartattendancesystem;
+
+import android.content.Context;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import java.io.File;
+import java.security.KeyStore;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * Opens the app's {@link EmbeddingCache} with an AES key held in the Android Keystore, so the
+ * cached embeddings cannot be read off the device's storage without it.
+ */
+public final class EmbeddingCacheKeystore {
+
+    private static final String TAG = "EmbeddingCacheKeystore";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "face_embedding_cache";
+    private static final String CACHE_DIRECTORY = "embedding_cache";
+
+    private static EmbeddingCache instance;
+
+    private EmbeddingCacheKeystore() {
+    }
+
+    /**
+     * @return the shared cache, or null if the Keystore is unavailable; callers then go straight
+     * to Firestore. Touches the Keystore, so call it off the main thread.
+     */
+    public static synchronized EmbeddingCache open(Context context) {
+        if (instance != null) {
+            return instance;
+        }
+        try {
+            File directory = new File(context.getApplicationContext().getFilesDir(), CACHE_DIRECTORY);
+            instance = new EmbeddingCache(directory, getOrCreateKey());
+        } catch (Exception e) {
+            Log.e(TAG, "Embedding cache unavailable: " + e.getMessage(), e);
+        }
+        return instance;
+    }
+
+    /**
+     * Caches freshly saved or verified templates; failures are only logged, the next
+     * verification then falls back to Firestore. Call it off the main thread.
+     */
+    public static void remember(Context context, String matricOrStaffId, String userId, String modelVersion,
+                                float matchThreshold, FaceTemplateSet templates) {
+        EmbeddingCache cache = open(context);
+        if (cache == null || matricOrStaffId == null || matricOrStaffId.isEmpty() || userId == null
+                || modelVersion == null || templates == null) {
+            return;
+        }
+        try {
+            cache.put(matricOrStaffId, userId, modelVersion, matchThreshold, templates);
+            Log.d(TAG, "Cached " + templates.size() + " face templates for " + matricOrStaffId);
+        } catch (Exception e) {
+            Log.e(TAG, "Could not cache face templates for " + matricOrStaffId + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static SecretKey getOrCreateKey() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.smartattendancesystem;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Compact, versioned binary encoding for face embeddings, stored in Firestore as a Blob instead
+ * of a {@code List<Double>}.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   byte    version   (currently 1)
+ *   byte    encoding  ({@link #ENCODING_INT8} or {@link #ENCODING_FLOAT16})
+ *   ushort  dimensions
+ *   INT8:    float scale, then one signed byte per dimension (value = byte * scale)
+ *   FLOAT16: two bytes of IEEE 754 half precision per dimension
+ * </pre>
+ * A 128-d embedding takes 136 bytes as INT8 and 260 as FLOAT16, against over 1 KB of 8-byte
+ * doubles. For the unit-length embeddings the app stores, INT8's symmetric per-vector scale keeps
+ * the cosine similarity within about 1e-3 of the float value, so it is the default.
+ */
+public final class EmbeddingCodec {
+
+    public static final int VERSION = 1;
+    public static final int ENCODING_INT8 = 1;
+    public static final int ENCODING_FLOAT16 = 2;
+
+    private static final int HEADER_BYTES = 4;
+    private static final int MAX_DIMENSIONS = 0xFFFF;
+
+    private EmbeddingCodec() {
+    }
+
+    public static byte[] encode(float[] embedding) {
+        return encode(embedding, ENCODING_INT8);
+    }
+
+    public static byte[] encode(float[] embedding, int encoding) {
+        if (embedding == null || embedding.length == 0 || embedding.length > MAX_DIMENSIONS) {
+            throw new IllegalArgumentException("Embedding must have 1.." + MAX_DIMENSIONS + " dimensions.");
+        }
+        ByteBuffer buffer;
+        switch (encoding) {
+            case ENCODING_INT8: {
+                float maxAbs = 0f;
+                for (float v : embedding) {
+                    maxAbs = Math.max(maxAbs, Math.abs(v));
+                }
+                float scale = maxAbs > 0f ? maxAbs / 127f : 1f;
+                buffer = header(encoding, embedding.length, 4 + embedding.length);
+                buffer.putFloat(scale);
+                for (float v : embedding) {
+                    buffer.put((byte) Math.max(-127, Math.min(127, Math.round(v / scale))));
+                }
+                break;
+            }
+            case ENCODING_FLOAT16:
+                buffer = header(encoding, embedding.length, 2 * embedding.length);
+                for (float v : embedding) {
+                    buffer.putShort(toHalf(v));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown embedding encoding " + encoding);
+        }
+        return buffer.array();
+    }
+
+    private static ByteBuffer header(int encoding, int dimensions, int payloadBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payloadBytes);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) encoding);
+        buffer.putShort((short) dimensions);
+        return buffer;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a complete embedding of a known version.
+     */
+    public static float[] decode(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Embedding blob is too short.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int version = buffer.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported embedding blob version " + version);
+        }
+        int encoding = buffer.get() & 0xFF;
+        int dimensions = buffer.getShort() & 0xFFFF;
+        float[] embedding = new float[dimensions];
+        switch (encoding) {
+            case ENCODING_INT8: {
+                requireLength(bytes, HEADER_BYTES + 4 + dimensions);
+                float scale = buffer.getFloat();
+                for (int i = 0; i < dimensions; i++) {
+                    embedding[i] = buffer.get() * scale;
+                }
+                break;
+            }
+            case ENCODING_FLOAT16:
+                requireLength(bytes, HEADER_BYTES + 2 * dimensions);
+                for (int i = 0; i < dimensions; i++) {
+                    embedding[i] = fromHalf(buffer.getShort());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown embedding encoding " + encoding);
+        }
+        return embedding;
+    }
+
+    private static void requireLength(byte[] bytes, int expected) {
+        if (bytes.length != expected) {
+            throw new IllegalArgumentException("Embedding blob has " + bytes.length + " bytes, expected " + expected);
+        }
+    }
+
+    /**
+     * Reads the legacy {@code List<Double>} representation, or returns null if it is empty or
+     * contains anything but numbers.
+     */
+    public static float[] decodeLegacy(List<?> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        float[] embedding = new float[values.size()];
+        for (int i = 0; i < embedding.length; i++) {
+            Object value = values.get(i);
+            if (!(value instanceof Number)) {
+                return null;
+            }
+            embedding[i] = ((Number) value).floatValue();
+        }
+        return embedding;
+    }
+
+    // Float to IEEE 754 half precision, rounding to nearest even
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            // Infinity or NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00); // Overflow to infinity
+        }
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign; // Too small even for a subnormal
+            }
+            // Subnormal: shift the mantissa with its implicit leading one into place
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++; // May carry into the exponent, which is the correct rounding
+        }
+        return (short) (sign | half);
+    }
+
+    static float fromHalf(short value) {
+        int half = value & 0xFFFF;
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            // Subnormal: value = mantissa * 2^-24
+            float magnitude = mantissa * (1f / (1 << 24));
+            return sign != 0 ? -magnitude : magnitude;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.smartattendancesystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares a candidate embedding model (e.g. the int8-quantized variant) against a reference
+ * model (the float32 one) on a set of face crops.
+ *
+ * Reports how far the candidate's embeddings drift from the reference (cosine between the two
+ * embeddings of the same face), whether matching would change (does each face keep the same
+ * nearest neighbour among the fixtures) and per-call latency of both models. Plain Java, so it
+ * can be driven by on-device tests with real models or by JVM tests with stand-in embedders.
+ *
+ * @param <T> The fixture type handed to the embedders, e.g. Bitmap on device.
+ */
+public class EmbeddingDriftHarness<T> {
+
+    public interface Embedder<T> {
+        float[] embed(T face);
+    }
+
+    public static class Report {
+        public int fixtureCount;
+        public int failedFixtures; // Fixtures where either model returned no embedding
+        public double meanCosine;
+        public double minCosine;
+        public double p5Cosine;
+        public double nearestNeighbourAgreement; // Fraction of faces whose closest other face is unchanged
+        public double referenceP50Ms;
+        public double referenceP95Ms;
+        public double candidateP50Ms;
+        public double candidateP95Ms;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "fixtures=%d (failed=%d), cosine mean=%.4f min=%.4f p5=%.4f, NN agreement=%.3f, " +
+                            "reference p50=%.2fms p95=%.2fms, candidate p50=%.2fms p95=%.2fms",
+                    fixtureCount, failedFixtures, meanCosine, minCosine, p5Cosine, nearestNeighbourAgreement,
+                    referenceP50Ms, referenceP95Ms, candidateP50Ms, candidateP95Ms);
+        }
+    }
+
+    private final Embedder<T> reference;
+    private final Embedder<T> candidate;
+    private final int warmUpRuns;
+
+    public EmbeddingDriftHarness(Embedder<T> reference, Embedder<T> candidate, int warmUpRuns) {
+        this.reference = reference;
+        this.candidate = candidate;
+        this.warmUpRuns = warmUpRuns;
+    }
+
+    public Report run(List<T> fixtures) {
+        if (fixtures == null || fixtures.isEmpty()) {
+            throw new IllegalArgumentException("At least one fixture is required.");
+        }
+        for (int i = 0; i < warmUpRuns; i++) {
+            reference.embed(fixtures.get(0));
+            candidate.embed(fixtures.get(0));
+        }
+
+        List<float[]> referenceEmbeddings = new ArrayList<>();
+        List<float[]> candidateEmbeddings = new ArrayList<>();
+        double[] referenceMs = new double[fixtures.size()];
+        double[] candidateMs = new double[fixtures.size()];
+        Report report = new Report();
+        report.fixtureCount = fixtures.size();
+
+        for (int i = 0; i < fixtures.size(); i++) {
+            long start = System.nanoTime();
+            float[] referenceEmbedding = reference.embed(fixtures.get(i));
+            referenceMs[i] = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            float[] candidateEmbedding = candidate.embed(fixtures.get(i));
+            candidateMs[i] = (System.nanoTime() - start) / 1e6;
+
+            if (referenceEmbedding == null || candidateEmbedding == null) {
+                report.failedFixtures++;
+                continue;
+            }
+            referenceEmbeddings.add(referenceEmbedding);
+            candidateEmbeddings.add(candidateEmbedding);
+        }
+
+        int compared = referenceEmbeddings.size();
+        double[] cosines = new double[compared];
+        double sum = 0.0;
+        for (int i = 0; i < compared; i++) {
+            cosines[i] = cosine(referenceEmbeddings.get(i), candidateEmbeddings.get(i));
+            sum += cosines[i];
+        }
+        Arrays.sort(cosines);
+        report.meanCosine = compared == 0 ? 0.0 : sum / compared;
+        report.minCosine = compared == 0 ? 0.0 : cosines[0];
+        report.p5Cosine = percentile(cosines, 0.05);
+
+        int agreeing = 0;
+        for (int i = 0; i < compared; i++) {
+            if (nearestNeighbour(referenceEmbeddings, i) == nearestNeighbour(candidateEmbeddings, i)) {
+                agreeing++;
+            }
+        }
+        report.nearestNeighbourAgreement = compared == 0 ? 0.0 : (double) agreeing / compared;
+
+        Arrays.sort(referenceMs);
+        Arrays.sort(candidateMs);
+        report.referenceP50Ms = percentile(referenceMs, 0.50);
+        report.referenceP95Ms = percentile(referenceMs, 0.95);
+        report.candidateP50Ms = percentile(candidateMs, 0.50);
+        report.candidateP95Ms = percentile(candidateMs, 0.95);
+        return report;
+    }
+
+    private static int nearestNeighbour(List<float[]> embeddings, int index) {
+        int best = -1;
+        double bestSimilarity = Double.NEGATIVE_INFINITY;
+        for (int j = 0; j < embeddings.size(); j++) {
+            if (j == index) {
+                continue;
+            }
+            double similarity = cosine(embeddings.get(index), embeddings.get(j));
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    // Nearest-rank percentile of an already sorted array
+    private static double percentile(double[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        return EmbeddingMath.cosineSimilarity(a, b);
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.smartattendancesystem;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the face embedding fields of a {@code users} document.
+ *
+ * New embeddings are written as {@link EmbeddingCodec} Blobs. Reads accept both the Blob and the
+ * legacy {@code List<Double>} form, so old and new records work side by side; {@link #migrate}
+ * rewrites a user's legacy arrays in place the first time their own document is read.
+ *
+ * Each embedding field has a sibling {@code <field>Model} holding the {@link EmbeddingModelVersion}
+ * that produced it; embeddings are only compared when that matches the loaded model. A missing
+ * tag means {@link EmbeddingModelVersion#LEGACY}.
+ *
+ * Users enrolled from a burst also have {@code faceTemplates}, a {@link FaceTemplateSet} Blob whose
+ * primary template is the one in {@code faceEmbedding} (or {@code faceEmbeddingForLogin}, whichever
+ * the burst replaced). Whatever writes a single login embedding deletes the set, so it never goes
+ * out of step with the embedding it extends.
+ *
+ * The user's match threshold (from ThresholdCalibrationJob) is stored alongside, tagged with the
+ * model it was calibrated for, together with the recent genuine scores it is calibrated from.
+ */
+public final class EmbeddingFields {
+
+    private static final String TAG = "EmbeddingFields";
+
+    public static final String FACE_EMBEDDING = "faceEmbedding";
+    public static final String FACE_EMBEDDING_FOR_LOGIN = "faceEmbeddingForLogin";
+    public static final String FACE_EMBEDDING_MODEL = "faceEmbeddingModel";
+    public static final String FACE_EMBEDDING_FOR_LOGIN_MODEL = "faceEmbeddingForLoginModel";
+    public static final String FACE_TEMPLATES = "faceTemplates";
+    public static final String FACE_TEMPLATES_MODEL = "faceTemplatesModel";
+    public static final String FACE_MATCH_THRESHOLD = "faceMatchThreshold";
+    public static final String FACE_MATCH_THRESHOLD_MODEL = "faceMatchThresholdModel";
+    public static final String FACE_MATCH_THRESHOLD_SCOPE = "faceMatchThresholdScope"; // "user", "cohort" or "global"
+    public static final String FACE_MATCH_FRR = "faceMatchFrr"; // Expected false-reject rate at the threshold, if known
+    public static final String FACE_GENUINE_SCORES = "faceGenuineScores";
+
+    // Genuine scores kept per user, newest last
+    private static final int MAX_GENUINE_SCORES = 20;
+
+    private EmbeddingFields() {
+    }
+
+    public static Blob toBlob(float[] embedding) {
+        return Blob.fromBytes(EmbeddingCodec.encode(embedding));
+    }
+
+    public static Blob toBlob(FaceTemplateSet templates) {
+        return Blob.fromBytes(templates.encode());
+    }
+
+    /**
+     * @return the embedding stored in {@code field}, or null if it is missing or unreadable.
+     */
+    public static float[] read(DocumentSnapshot document, String field) {
+        return decode(document.get(field));
+    }
+
+    /**
+     * The login embedding if there is one, otherwise the registration embedding.
+     */
+    public static float[] readForLogin(DocumentSnapshot document) {
+        float[] embedding = read(document, FACE_EMBEDDING_FOR_LOGIN);
+        return embedding != null ? embedding : read(document, FACE_EMBEDDING);
+    }
+
+    public static String modelFieldOf(String field) {
+        if (FACE_TEMPLATES.equals(field)) {
+            return FACE_TEMPLATES_MODEL;
+        }
+        return FACE_EMBEDDING_FOR_LOGIN.equals(field) ? FACE_EMBEDDING_FOR_LOGIN_MODEL : FACE_EMBEDDING_MODEL;
+    }
+
+    /**
+     * @return the model version of the embedding in {@code field}, {@link EmbeddingModelVersion#LEGACY} if untagged.
+     */
+    public static String readModel(DocumentSnapshot document, String field) {
+        return EmbeddingModelVersion.orLegacy(document.getString(modelFieldOf(field)));
+    }
+
+    /**
+     * True if {@code field} holds an embedding made by the model loaded now.
+     */
+    public static boolean isCompatible(DocumentSnapshot document, String field, String currentModelVersion) {
+        return document.get(field) != null
+                && EmbeddingModelVersion.isCompatible(document.getString(modelFieldOf(field)), currentModelVersion);
+    }
+
+    /**
+     * Like {@link #readForLogin}, but skips embeddings made by another model.
+     *
+     * @return the embedding, or null if neither field holds a usable one for this model.
+     */
+    public static float[] readForLogin(DocumentSnapshot document, String currentModelVersion) {
+        for (String field : new String[]{FACE_EMBEDDING_FOR_LOGIN, FACE_EMBEDDING}) {
+            if (isCompatible(document, field, currentModelVersion)) {
+                float[] embedding = read(document, field);
+                if (embedding != null) {
+                    return embedding;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the user's template set if there is a usable one for this model, or null.
+     */
+    public static FaceTemplateSet readTemplates(DocumentSnapshot document, String currentModelVersion) {
+        Object value = document.get(FACE_TEMPLATES);
+        if (!(value instanceof Blob) || !isCompatible(document, FACE_TEMPLATES, currentModelVersion)) {
+            return null;
+        }
+        try {
+            return FaceTemplateSet.decode(((Blob) value).toBytes());
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Unreadable face templates: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The user's template set, or a one-template set of {@link #readForLogin(DocumentSnapshot, String)}
+     * for users enrolled from a single photo.
+     *
+     * @return the templates, or null if there is nothing usable for this model.
+     */
+    public static FaceTemplateSet readTemplatesForLogin(DocumentSnapshot document, String currentModelVersion) {
+        FaceTemplateSet templates = readTemplates(document, currentModelVersion);
+        if (templates != null) {
+            return templates;
+        }
+        float[] embedding = readForLogin(document, currentModelVersion);
+        return embedding != null ? FaceTemplateSet.of(embedding) : null;
+    }
+
+    /**
+     * Field updates that store a burst enrollment: the set itself (deleted for a set of one,
+     * which the single embedding already covers), its primary template as the single embedding
+     * in {@code embeddingField} for readers that take one, the model tags, and the set's
+     * leave-one-out scores as the user's first genuine scores.
+     */
+    public static Map<String, Object> templateUpdates(String embeddingField, FaceTemplateSet templates, String modelVersion) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(embeddingField, toBlob(templates.primary()));
+        updates.put(modelFieldOf(embeddingField), modelVersion);
+        updates.put(FACE_TEMPLATES, templates.size() > 1 ? toBlob(templates) : FieldValue.delete());
+        updates.put(FACE_TEMPLATES_MODEL, templates.size() > 1 ? modelVersion : FieldValue.delete());
+        updates.put(FACE_GENUINE_SCORES, enrollmentGenuineScores(templates)); // Scores against the previous face no longer apply
+        return updates;
+    }
+
+    /**
+     * The set's leave-one-out scores, as stored in {@value #FACE_GENUINE_SCORES}.
+     */
+    public static List<Double> enrollmentGenuineScores(FaceTemplateSet templates) {
+        List<Double> scores = new ArrayList<>();
+        for (float score : templates.leaveOneOutScores(FaceTemplateSet.DEFAULT_FUSION)) {
+            scores.add((double) score);
+        }
+        return scores;
+    }
+
+    public static boolean hasAny(DocumentSnapshot document) {
+        return readForLogin(document) != null;
+    }
+
+    /**
+     * @return the user's calibrated match threshold for this model, or NaN if there is none.
+     */
+    public static float readThreshold(DocumentSnapshot document, String currentModelVersion) {
+        Double threshold = document.getDouble(FACE_MATCH_THRESHOLD);
+        String model = document.getString(FACE_MATCH_THRESHOLD_MODEL);
+        if (threshold == null || currentModelVersion == null || !currentModelVersion.equals(model)) {
+            return Float.NaN;
+        }
+        return threshold.floatValue();
+    }
+
+    public static float[] readGenuineScores(DocumentSnapshot document) {
+        Object value = document.get(FACE_GENUINE_SCORES);
+        float[] scores = value instanceof List ? EmbeddingCodec.decodeLegacy((List<?>) value) : null;
+        return scores != null ? scores : new float[0];
+    }
+
+    /**
+     * Appends the fused similarity of a successful verification to the user's genuine scores,
+     * keeping the newest {@value #MAX_GENUINE_SCORES}. Runs as a transaction in the background.
+     */
+    public static void recordGenuineScore(FirebaseFirestore db, DocumentReference userRef, double score) {
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot document = transaction.get(userRef);
+                    List<Double> scores = new ArrayList<>();
+                    for (float previous : readGenuineScores(document)) {
+                        scores.add((double) previous);
+                    }
+                    scores.add(score);
+                    if (scores.size() > MAX_GENUINE_SCORES) {
+                        scores = new ArrayList<>(scores.subList(scores.size() - MAX_GENUINE_SCORES, scores.size()));
+                    }
+                    transaction.update(userRef, FACE_GENUINE_SCORES, scores);
+                    return null;
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "Could not record genuine score for " + userRef.getId() + ": " + e.getMessage()));
+    }
+
+    static float[] decode(Object value) {
+        if (value instanceof Blob) {
+            try {
+                return EmbeddingCodec.decode(((Blob) value).toBytes());
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Unreadable embedding blob: " + e.getMessage());
+                return null;
+            }
+        }
+        if (value instanceof List) {
+            return EmbeddingCodec.decodeLegacy((List<?>) value);
+        }
+        return null;
+    }
+
+    /**
+     * Rewrites any legacy {@code List<Double>} embedding fields of this document as Blobs. Only
+     * call it for the signed-in user's own document; the write runs in the background and a
+     * failure just leaves the legacy form, which stays readable.
+     */
+    public static void migrate(DocumentReference userRef, DocumentSnapshot document) {
+        Map<String, Object> updates = new HashMap<>();
+        for (String field : new String[]{FACE_EMBEDDING, FACE_EMBEDDING_FOR_LOGIN}) {
+            Object value = document.get(field);
+            if (value instanceof List) {
+                float[] embedding = EmbeddingCodec.decodeLegacy((List<?>) value);
+                if (embedding != null) {
+                    updates.put(field, toBlob(embedding));
+                    updates.put(modelFieldOf(field), EmbeddingModelVersion.LEGACY); // Arrays predate version tags
+                }
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        userRef.update(updates)
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Migrated " + updates.keySet() + " to compact embeddings for " + userRef.getId()))
+                .addOnFailureListener(e -> Log.w(TAG, "Embedding migration failed for " + userRef.getId() + ": " + e.getMessage()));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.smartattendancesystem;
+
+/**
+ * Allocation-free similarity kernels for face embeddings.
+ *
+ * Embeddings are L2-normalized once when they are stored or loaded, after which cosine
+ * similarity is a single dot product. The dot product is unrolled into four independent
+ * accumulators, which breaks the add dependency chain and lets ART/HotSpot keep the loop
+ * in registers (and vectorize it where the JIT supports that).
+ */
+public final class EmbeddingMath {
+
+    private EmbeddingMath() {
+    }
+
+    /**
+     * Scales the embedding to unit length in place and returns it. A zero vector is left as is.
+     */
+    public static float[] l2Normalize(float[] embedding) {
+        float norm = (float) Math.sqrt(dot(embedding, embedding));
+        if (norm > 0f) {
+            float inverse = 1f / norm;
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] *= inverse;
+            }
+        }
+        return embedding;
+    }
+
+    public static boolean isNormalized(float[] embedding, float tolerance) {
+        return Math.abs(dot(embedding, embedding) - 1f) <= tolerance;
+    }
+
+    /**
+     * Dot product of two equally sized vectors. For L2-normalized embeddings this is the
+     * cosine similarity.
+     */
+    public static float dot(float[] a, float[] b) {
+        return dot(a, b, 0, a.length);
+    }
+
+    /**
+     * Dot product of {@code query} with the {@code dim} floats of {@code matrix} starting at {@code offset}.
+     */
+    public static float dot(float[] query, float[] matrix, int offset, int dim) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int limit = dim - 3;
+        for (; i < limit; i += 4) {
+            s0 += query[i] * matrix[offset + i];
+            s1 += query[i + 1] * matrix[offset + i + 1];
+            s2 += query[i + 2] * matrix[offset + i + 2];
+            s3 += query[i + 3] * matrix[offset + i + 3];
+        }
+        for (; i < dim; i++) {
+            s0 += query[i] * matrix[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Scores one query against {@code count} stored embeddings laid out row by row in
+     * {@code matrix} (row {@code r} starts at {@code r * dim}), writing one score per row into {@code out}.
+     * With normalized rows and query the scores are cosine similarities.
+     */
+    public static void dotMany(float[] query, float[] matrix, int count, int dim, float[] out) {
+        for (int row = 0, offset = 0; row < count; row++, offset += dim) {
+            out[row] = dot(query, matrix, offset, dim);
+        }
+    }
+
+    /**
+     * Cosine similarity for embeddings that are not known to be normalized, in one pass.
+     */
+    public static float cosineSimilarity(float[] a, float[] b) {
+        float dot = 0f, normA = 0f, normB = 0f;
+        for (int i = 0; i < a.length; i++) {
+            float x = a[i];
+            float y = b[i];
+            dot += x * y;
+            normA += x * x;
+            normB += y * y;
+        }
+        if (normA == 0f || normB == 0f) {
+            return 0f;
+        }
+        return dot / (float) Math.sqrt(normA * normB);
+    }
+
+    public static float euclideanDistance(float[] a, float[] b) {
+        float s0 = 0f, s1 = 0f;
+        int i = 0;
+        for (; i < a.length - 1; i += 2) {
+            float d0 = a[i] - b[i];
+            float d1 = a[i + 1] - b[i + 1];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+        }
+        if (i < a.length) {
+            float d = a[i] - b[i];
+            s0 += d * d;
+        }
+        return (float) Math.sqrt(s0 + s1);
+    }
+}
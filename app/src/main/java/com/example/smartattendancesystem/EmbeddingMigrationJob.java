@@ -0,0 +1,280 @@
+package com.example.smartattendancesystem;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Recomputes stored embeddings that a different model produced, from the face photos saved with
+ * them: {@code faceImageUrl} for {@code faceEmbedding}, {@code faceImageLoginUrl} for
+ * {@code faceEmbeddingForLogin}. Each rewritten field gets the current model version tag. Burst
+ * templates ({@code faceTemplates}) have no photos of their own to redo, so a stale set is deleted
+ * and the user matches against the re-embedded single embedding until they enroll again.
+ *
+ * {@link #startIfModelChanged(Context)} runs a pass over the whole users collection, at most
+ * {@link #BATCH_SIZE} documents per query with a pause between batches and one photo at a time,
+ * so it stays in the background. Once a pass completes, the model version is recorded and later
+ * launches skip the scan until the model changes again; either way ThresholdCalibrationJob runs
+ * next if it is due. {@link #reembed} does the same for a
+ * single user whose own embedding turns out to be stale at verification time.
+ *
+ * A job object is one-shot and all callbacks arrive on the main thread.
+ */
+public class EmbeddingMigrationJob {
+
+    private static final String TAG = "EmbeddingMigrationJob";
+
+    private static final int BATCH_SIZE = 10;
+    private static final long BATCH_PAUSE_MS = 5000;
+    private static final long MAX_IMAGE_BYTES = 5L * 1024 * 1024;
+    private static final String PREFS = "embedding_migration";
+    private static final String KEY_COMPLETED_MODEL = "completedModelVersion";
+
+    private static boolean passRunning = false; // One full pass per process at a time, main thread only
+
+    public interface Callback {
+        void onFinished(int reembedded, int failed);
+    }
+
+    private interface FieldCallback {
+        void onDone(boolean reembedded);
+    }
+
+    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final FirebaseStorage storage = FirebaseStorage.getInstance();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final FaceRecognitionHelper faceRecognitionHelper;
+    private final ExecutorService workerExecutor;
+    private final String modelVersion;
+    private final FaceDetector faceDetector;
+    private int reembedded = 0;
+    private int failed = 0;
+    private boolean scanComplete = true;
+
+    /**
+     * @param workerExecutor where photos are decoded and embedded; the caller owns it.
+     */
+    public EmbeddingMigrationJob(FaceRecognitionHelper faceRecognitionHelper, ExecutorService workerExecutor) {
+        this.faceRecognitionHelper = faceRecognitionHelper;
+        this.workerExecutor = workerExecutor;
+        this.modelVersion = FaceEmbeddingEngine.getModelVersion();
+        this.faceDetector = FaceDetection.getClient(new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+                .build());
+    }
+
+    /**
+     * Starts a background pass over all users unless one already completed for the loaded model.
+     * Needs write access to other users' documents, so only call it for an admin.
+     */
+    public static void startIfModelChanged(Context context) {
+        if (passRunning) {
+            return;
+        }
+        passRunning = true;
+        Context appContext = context.getApplicationContext();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        executor.execute(() -> {
+            FaceRecognitionHelper helper;
+            try {
+                helper = FaceEmbeddingEngine.acquire(appContext); // Loads the model off the main thread if needed
+            } catch (Exception e) {
+                Log.e(TAG, "Cannot re-embed without the face model: " + e.getMessage(), e);
+                mainHandler.post(() -> passRunning = false);
+                executor.shutdown();
+                return;
+            }
+            SharedPreferences prefs = appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            String current = FaceEmbeddingEngine.getModelVersion();
+            if (current == null || current.equals(prefs.getString(KEY_COMPLETED_MODEL, null))) {
+                FaceEmbeddingEngine.release();
+                mainHandler.post(() -> {
+                    passRunning = false;
+                    ThresholdCalibrationJob.startIfDue(appContext); // Embeddings are current, thresholds may not be
+                });
+                executor.shutdown();
+                return;
+            }
+            mainHandler.post(() -> {
+                Log.d(TAG, "Starting re-embedding pass for model " + current);
+                EmbeddingMigrationJob job = new EmbeddingMigrationJob(helper, executor);
+                job.runPage(null, (reembedded, failed) -> {
+                    Log.d(TAG, "Re-embedding pass " + (job.scanComplete ? "finished" : "stopped") + ": "
+                            + reembedded + " embeddings updated, " + failed + " failed.");
+                    if (job.scanComplete) {
+                        // Per-user failures (no face in the photo, photo missing) would fail again; those
+                        // users are re-embedded or asked to re-register when they next verify
+                        prefs.edit().putString(KEY_COMPLETED_MODEL, current).apply();
+                    }
+                    FaceEmbeddingEngine.release();
+                    executor.shutdown();
+                    passRunning = false;
+                    ThresholdCalibrationJob.startIfDue(appContext); // Recalibrate on the new embeddings
+                });
+            });
+        });
+    }
+
+    /**
+     * Re-embeds whichever embedding fields of this user document are stale.
+     */
+    public void reembed(DocumentSnapshot document, Callback callback) {
+        reembedDocument(document, () -> finish(callback));
+    }
+
+    private void runPage(DocumentSnapshot startAfter, Callback callback) {
+        Query query = db.collection("users").orderBy(FieldPath.documentId()).limit(BATCH_SIZE);
+        if (startAfter != null) {
+            query = query.startAfter(startAfter);
+        }
+        query.get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    List<DocumentSnapshot> documents = queryDocumentSnapshots.getDocuments();
+                    reembedDocuments(documents, 0, () -> {
+                        if (documents.size() < BATCH_SIZE) {
+                            finish(callback);
+                        } else {
+                            DocumentSnapshot last = documents.get(documents.size() - 1);
+                            mainHandler.postDelayed(() -> runPage(last, callback), BATCH_PAUSE_MS);
+                        }
+                    });
+                })
+                .addOnFailureListener(e -> {
+                    // Leave the pass unfinished so the next launch retries it
+                    Log.e(TAG, "Could not load users to re-embed: " + e.getMessage(), e);
+                    scanComplete = false;
+                    finish(callback);
+                });
+    }
+
+    private void reembedDocuments(List<DocumentSnapshot> documents, int index, Runnable onDone) {
+        if (index >= documents.size()) {
+            onDone.run();
+            return;
+        }
+        reembedDocument(documents.get(index), () -> reembedDocuments(documents, index + 1, onDone));
+    }
+
+    private void reembedDocument(DocumentSnapshot document, Runnable onDone) {
+        if (document.get(EmbeddingFields.FACE_TEMPLATES) != null
+                && !EmbeddingFields.isCompatible(document, EmbeddingFields.FACE_TEMPLATES, modelVersion)) {
+            document.getReference()
+                    .update(EmbeddingFields.FACE_TEMPLATES, FieldValue.delete(), EmbeddingFields.FACE_TEMPLATES_MODEL, FieldValue.delete())
+                    .addOnSuccessListener(aVoid -> Log.d(TAG, "Dropped stale face templates of " + document.getId()))
+                    .addOnFailureListener(e -> Log.w(TAG, "Could not drop stale face templates of " + document.getId() + ": " + e.getMessage()));
+        }
+        List<String> staleFields = new ArrayList<>();
+        for (String field : new String[]{EmbeddingFields.FACE_EMBEDDING, EmbeddingFields.FACE_EMBEDDING_FOR_LOGIN}) {
+            if (document.get(field) != null && !EmbeddingFields.isCompatible(document, field, modelVersion)) {
+                staleFields.add(field);
+            }
+        }
+        reembedFields(document, staleFields, 0, onDone);
+    }
+
+    private void reembedFields(DocumentSnapshot document, List<String> fields, int index, Runnable onDone) {
+        if (index >= fields.size()) {
+            onDone.run();
+            return;
+        }
+        String field = fields.get(index);
+        String urlField = EmbeddingFields.FACE_EMBEDDING_FOR_LOGIN.equals(field) ? "faceImageLoginUrl" : "faceImageUrl";
+        String url = document.getString(urlField);
+        if (url == null || url.isEmpty()) {
+            Log.w(TAG, "No " + urlField + " to re-embed " + field + " of " + document.getId());
+            failed++;
+            reembedFields(document, fields, index + 1, onDone);
+            return;
+        }
+        reembedField(document.getReference(), field, url, ok -> {
+            if (ok) {
+                reembedded++;
+            } else {
+                failed++;
+            }
+            reembedFields(document, fields, index + 1, onDone);
+        });
+    }
+
+    // Download the photo, detect the face, embed it and write it back with the current model tag
+    private void reembedField(DocumentReference userRef, String field, String url, FieldCallback callback) {
+        storage.getReferenceFromUrl(url).getBytes(MAX_IMAGE_BYTES)
+                .addOnSuccessListener(bytes -> workerExecutor.execute(() -> {
+                    Bitmap photo = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+                    if (photo == null) {
+                        Log.w(TAG, "Unreadable photo for " + field + " of " + userRef.getId());
+                        mainHandler.post(() -> callback.onDone(false));
+                        return;
+                    }
+                    faceDetector.process(InputImage.fromBitmap(photo, 0))
+                            .addOnSuccessListener(faces -> {
+                                Rect faceBox = faces.isEmpty() ? null : faces.get(0).getBoundingBox();
+                                if (faceBox == null || faceBox.isEmpty()) {
+                                    Log.w(TAG, "No face in the photo for " + field + " of " + userRef.getId());
+                                    photo.recycle();
+                                    callback.onDone(false);
+                                    return;
+                                }
+                                workerExecutor.execute(() -> {
+                                    float[] embedding = faceRecognitionHelper.getFaceEmbedding(photo, faceBox);
+                                    photo.recycle();
+                                    mainHandler.post(() -> saveEmbedding(userRef, field, embedding, callback));
+                                });
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.w(TAG, "Face detection failed for " + field + " of " + userRef.getId() + ": " + e.getMessage());
+                                photo.recycle();
+                                callback.onDone(false);
+                            });
+                }))
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Could not download the photo for " + field + " of " + userRef.getId() + ": " + e.getMessage());
+                    callback.onDone(false);
+                });
+    }
+
+    private void saveEmbedding(DocumentReference userRef, String field, float[] embedding, FieldCallback callback) {
+        if (embedding == null) {
+            callback.onDone(false);
+            return;
+        }
+        EmbeddingMath.l2Normalize(embedding);
+        userRef.update(field, EmbeddingFields.toBlob(embedding), EmbeddingFields.modelFieldOf(field), modelVersion)
+                .addOnSuccessListener(aVoid -> {
+                    Log.d(TAG, "Re-embedded " + field + " of " + userRef.getId() + " with model " + modelVersion);
+                    callback.onDone(true);
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Could not save re-embedded " + field + " of " + userRef.getId() + ": " + e.getMessage());
+                    callback.onDone(false);
+                });
+    }
+
+    private void finish(Callback callback) {
+        faceDetector.close();
+        callback.onFinished(reembedded, failed);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.smartattendancesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies the model that produced a stored embedding, so embeddings from different models are
+ * never compared with each other.
+ *
+ * A version is a fingerprint of the model file ({@code "sha256:"} plus the first 16 hex digits of
+ * its SHA-256), so replacing {@code output_model.tflite} changes the version without anyone
+ * having to remember to bump a constant. Embeddings saved before versions were recorded carry no
+ * tag; they all came from the model bundled at that time, {@link #LEGACY}.
+ */
+public final class EmbeddingModelVersion {
+
+    private static final String PREFIX = "sha256:";
+    private static final int HEX_DIGITS = 16;
+
+    /** Fingerprint of the output_model.tflite that produced every untagged embedding. */
+    public static final String LEGACY = PREFIX + "8e28f9b5d9bacb6a";
+
+    private EmbeddingModelVersion() {
+    }
+
+    public static String fingerprint(InputStream model) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = model.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toVersion(digest.digest());
+    }
+
+    /**
+     * Same as {@link #fingerprint(InputStream)}, for a model already in memory, e.g. memory-mapped.
+     * Reads from the start to the limit without moving {@code model}'s position.
+     */
+    public static String fingerprint(ByteBuffer model) {
+        ByteBuffer view = model.duplicate();
+        view.rewind();
+        MessageDigest digest = newDigest();
+        digest.update(view);
+        return toVersion(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Guaranteed on Android and the JVM
+        }
+    }
+
+    private static String toVersion(byte[] hash) {
+        StringBuilder version = new StringBuilder(PREFIX);
+        for (int i = 0; i < HEX_DIGITS / 2; i++) {
+            version.append(String.format("%02x", hash[i] & 0xFF));
+        }
+        return version.toString();
+    }
+
+    /**
+     * The version a stored tag stands for: the tag itself, or {@link #LEGACY} when there is none.
+     */
+    public static String orLegacy(String storedVersion) {
+        return storedVersion == null || storedVersion.isEmpty() ? LEGACY : storedVersion;
+    }
+
+    /**
+     * @param storedVersion  tag saved with the embedding, possibly null for untagged records.
+     * @param currentVersion version of the model loaded now; null (not loaded yet) is never compatible.
+     */
+    public static boolean isCompatible(String storedVersion, String currentVersion) {
+        return currentVersion != null && orLegacy(storedVersion).equals(currentVersion);
+    }
+}
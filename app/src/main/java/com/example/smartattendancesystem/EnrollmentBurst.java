@@ -0,0 +1,103 @@
+package com.example.smartattendancesystem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the shots of one enrollment (RegisterActivity, ProfileActivity) until there are
+ * {@code targetShots}, then picks the {@link FaceTemplateSet} and the photo to keep with it.
+ *
+ * @param <P> the photo type; only handed back, never inspected.
+ */
+public class EnrollmentBurst<P> {
+
+    private final int targetShots;
+    private final int maxTemplates;
+    private final List<P> photos = new ArrayList<>();
+    private final List<float[]> embeddings = new ArrayList<>();
+    private final List<Float> qualities = new ArrayList<>();
+
+    private FaceTemplateSet templates;
+    private int primaryIndex = -1;
+
+    public EnrollmentBurst(int targetShots, int maxTemplates) {
+        if (targetShots < 1 || maxTemplates < 1) {
+            throw new IllegalArgumentException("Need at least one shot and one template.");
+        }
+        this.targetShots = targetShots;
+        this.maxTemplates = maxTemplates;
+    }
+
+    /**
+     * @param embedding the shot's embedding; kept as is, so pass one the caller no longer writes to.
+     * @param quality   in (0, 1], see FacePhotoJob#qualityOf.
+     */
+    public void add(P photo, float[] embedding, float quality) {
+        if (templates != null) {
+            throw new IllegalStateException("Burst already selected.");
+        }
+        photos.add(photo);
+        embeddings.add(embedding);
+        qualities.add(quality);
+    }
+
+    public int size() {
+        return photos.size();
+    }
+
+    public int getTargetShots() {
+        return targetShots;
+    }
+
+    public boolean isComplete() {
+        return photos.size() >= targetShots;
+    }
+
+    /**
+     * Picks the templates from the shots so far; a burst cut short still enrolls what it has.
+     *
+     * @throws IllegalStateException if there are no shots.
+     */
+    public FaceTemplateSet select() {
+        if (templates != null) {
+            return templates;
+        }
+        if (photos.isEmpty()) {
+            throw new IllegalStateException("No shots to enroll.");
+        }
+        float[] weights = new float[qualities.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = qualities.get(i);
+        }
+        templates = FaceTemplateSet.select(embeddings, weights, maxTemplates);
+
+        // The primary template is a normalized copy of one shot's embedding: find which
+        float[] primary = templates.primary();
+        float best = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < embeddings.size(); i++) {
+            float similarity = EmbeddingMath.cosineSimilarity(primary, embeddings.get(i));
+            if (similarity > best) {
+                best = similarity;
+                primaryIndex = i;
+            }
+        }
+        return templates;
+    }
+
+    /**
+     * @return the photo of the primary template, the one to store with the set. Call {@link #select} first.
+     */
+    public P getPrimaryPhoto() {
+        if (templates == null) {
+            throw new IllegalStateException("Call select() first.");
+        }
+        return photos.get(primaryIndex);
+    }
+
+    /**
+     * @return every shot's photo, e.g. to release the ones not kept.
+     */
+    public List<P> getPhotos() {
+        return new ArrayList<>(photos);
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.smartattendancesystem;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-app face capture for enrollment and login, in place of the system camera's thumbnail.
+ *
+ * Runs the front camera's analysis stream through the same ML Kit detector as VerifyActivity,
+ * guides the user into the {@link FaceGuide} oval and keeps the best full-resolution frames
+ * (scored by FaceQualityGate and FacePhotoJob#qualityOf) in a {@link CaptureFrameSelector}.
+ * Once it holds {@link #EXTRA_SHOTS} good frames, or the time runs out with at least one, the
+ * frames and their face boxes go into a {@link FaceCaptureSession}, whose id is returned in
+ * {@link #EXTRA_SESSION_ID}; callers take it with {@link #claimSession}. RESULT_CANCELED if the
+ * user backs out.
+ */
+public class FaceCaptureActivity extends AppCompatActivity {
+
+    private static final String TAG = "FaceCaptureActivity";
+    private static final int REQUEST_CAMERA_PERMISSION = 200;
+
+    public static final String EXTRA_SHOTS = "FACE_CAPTURE_SHOTS";
+    public static final String EXTRA_SESSION_ID = "FACE_CAPTURE_SESSION_ID";
+
+    private static final float TARGET_ANALYSIS_FPS = 10f;
+    private static final float MIN_ANALYSIS_FPS = 4f;
+    private static final float GOOD_FRAME_SCORE = 0.5f; // Gate score times pose/size quality
+    private static final float MIN_YAW_SEPARATION = 6f; // Degrees between kept frames
+    private static final long SETTLE_NANOS = 1_000_000_000L; // Keep looking this long after the first good frame
+    private static final long TIMEOUT_NANOS = 8_000_000_000L; // Then settle for whatever was kept
+
+    private PreviewView previewView;
+    private FaceGuideOverlay guideOverlay;
+    private TextView txtCaptureHint;
+
+    private FaceDetector faceDetector;
+    private ExecutorService cameraExecutor; // For CameraX ImageAnalysis
+    private ProcessCameraProvider cameraProvider;
+
+    private final CameraFrameConverter frameConverter = new CameraFrameConverter(); // One frame in flight at a time
+    private final AdaptiveFrameScheduler frameScheduler = new AdaptiveFrameScheduler(TARGET_ANALYSIS_FPS, MIN_ANALYSIS_FPS);
+    private final FaceQualityGate qualityGate = new FaceQualityGate(); // Main thread only
+
+    // Main thread only
+    private CaptureFrameSelector<FaceCaptureSession.Shot> frameSelector;
+    private long captureStartNanos;
+    private long firstKeptNanos = -1;
+    private volatile boolean capturing = true;
+
+    /**
+     * @param shots how many frames to return, at most; more give EnrollmentBurst more to choose from.
+     */
+    public static Intent newIntent(Context context, int shots) {
+        Intent intent = new Intent(context, FaceCaptureActivity.class);
+        intent.putExtra(EXTRA_SHOTS, shots);
+        return intent;
+    }
+
+    /**
+     * @return the captured session of a RESULT_OK result, now owned by the caller, or null if
+     * there is none (e.g. the process was restarted in between).
+     */
+    public static FaceCaptureSession claimSession(Intent data) {
+        return data == null ? null : FaceCaptureSession.claim(data.getStringExtra(EXTRA_SESSION_ID));
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_face_capture);
+
+        previewView = findViewById(R.id.preview_view_capture);
+        guideOverlay = findViewById(R.id.face_guide_overlay);
+        txtCaptureHint = findViewById(R.id.txt_capture_hint);
+
+        int shots = Math.max(1, getIntent().getIntExtra(EXTRA_SHOTS, 1));
+        frameSelector = new CaptureFrameSelector<>(shots, MIN_YAW_SEPARATION);
+
+        faceDetector = FaceDetection.getClient(VerifyActivity.liveFaceDetectorOptions());
+        cameraExecutor = Executors.newSingleThreadExecutor();
+
+        captureStartNanos = System.nanoTime();
+        requestCameraPermission();
+    }
+
+    private void requestCameraPermission() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
+        } else {
+            startCamera();
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_CAMERA_PERMISSION) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                startCamera();
+            } else {
+                Toast.makeText(this, "Camera permission is required for face capture.", Toast.LENGTH_LONG).show();
+                setResult(RESULT_CANCELED);
+                finish();
+            }
+        }
+    }
+
+    private void startCamera() {
+        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this);
+        cameraProviderFuture.addListener(() -> {
+            try {
+                cameraProvider = cameraProviderFuture.get();
+                bindCameraUseCases(cameraProvider);
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting camera: " + e.getMessage(), e);
+                Toast.makeText(this, "Error starting camera.", Toast.LENGTH_SHORT).show();
+                setResult(RESULT_CANCELED);
+                finish();
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    private void bindCameraUseCases(@NonNull ProcessCameraProvider cameraProvider) {
+        Preview preview = new Preview.Builder().build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+        CameraSelector cameraSelector = new CameraSelector.Builder()
+                .requireLensFacing(CameraSelector.LENS_FACING_FRONT)
+                .build();
+
+        // Default 4:3 analysis frames, upright 3:4 like the preview and overlay, so FaceGuide lines up
+        ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .build();
+
+        imageAnalysis.setAnalyzer(cameraExecutor, imageProxy -> {
+            final long frameStartNanos = System.nanoTime();
+            if (!capturing || !frameScheduler.tryAcquire(frameStartNanos)) {
+                imageProxy.close();
+                return;
+            }
+            // Reused upright frame owned by frameConverter; safe because only one frame is in flight
+            Bitmap frame = frameConverter.toBitmap(imageProxy);
+            if (frame == null) {
+                frameScheduler.onFrameFinished(frameStartNanos, System.nanoTime());
+                return;
+            }
+            faceDetector.process(InputImage.fromBitmap(frame, 0)) // Rotation already applied during conversion
+                    .addOnSuccessListener(faces -> onFacesDetected(frame, faces))
+                    .addOnFailureListener(e -> Log.e(TAG, "Face detection failed: " + e.getMessage()))
+                    .addOnCompleteListener(task -> frameScheduler.onFrameFinished(frameStartNanos, System.nanoTime()));
+        });
+
+        cameraProvider.unbindAll();
+        cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
+    }
+
+    // ML Kit answers on the main thread, while frame still holds this detection's pixels
+    private void onFacesDetected(Bitmap frame, List<Face> faces) {
+        if (!capturing) {
+            return;
+        }
+        int width = frameConverter.getFrameWidth();
+        int height = frameConverter.getFrameHeight();
+        FaceGuide.Hint hint = FaceGuide.Hint.NO_FACE;
+        Face face = null;
+        if (faces.size() == 1) { // Two people in view would make the enrollment ambiguous
+            face = faces.get(0);
+            Rect box = face.getBoundingBox();
+            hint = FaceGuide.check(box.left, box.top, box.right, box.bottom, width, height);
+        }
+        guideOverlay.setAligned(hint == FaceGuide.Hint.HOLD_STILL);
+
+        if (hint == FaceGuide.Hint.HOLD_STILL) {
+            Rect box = face.getBoundingBox();
+            float yaw = face.getHeadEulerAngleY();
+            float roll = face.getHeadEulerAngleZ();
+            FaceQualityGate.Result quality = qualityGate.evaluate(frameConverter.getPixels(), width, height,
+                    box.left, box.top, box.right, box.bottom, yaw, roll);
+            if (!quality.passed()) {
+                txtCaptureHint.setText(hintFor(quality.reason));
+            } else {
+                float faceQuality = FacePhotoJob.qualityOf(face, width, height);
+                float score = quality.score * faceQuality;
+                if (frameSelector.accepts(score, yaw)) {
+                    // Copy out of the converter's reused bitmap before the next frame overwrites it
+                    FaceCaptureSession.Shot released = frameSelector.offer(new FaceCaptureSession.Shot(
+                            frame.copy(Bitmap.Config.ARGB_8888, false), new Rect(box), faceQuality), score, yaw);
+                    if (released != null) {
+                        released.photo.recycle();
+                    }
+                    if (firstKeptNanos < 0) {
+                        firstKeptNanos = System.nanoTime();
+                    }
+                }
+                txtCaptureHint.setText("Hold still...");
+            }
+        } else {
+            txtCaptureHint.setText(faces.size() > 1 ? "Only one face should be in view." : hintFor(hint));
+        }
+
+        long now = System.nanoTime();
+        boolean settled = firstKeptNanos >= 0 && now - firstKeptNanos >= SETTLE_NANOS && frameSelector.isFull(GOOD_FRAME_SCORE);
+        boolean timedOut = now - captureStartNanos >= TIMEOUT_NANOS && frameSelector.size() > 0;
+        if (settled || timedOut) {
+            finishCapture();
+        }
+    }
+
+    private static String hintFor(FaceGuide.Hint hint) {
+        switch (hint) {
+            case MOVE_CLOSER:
+                return "Move closer to the camera.";
+            case MOVE_BACK:
+                return "Move a little further away.";
+            case CENTER_FACE:
+                return "Center your face in the oval.";
+            case HOLD_STILL:
+                return "Hold still...";
+            default:
+                return "No face detected. Please center your face.";
+        }
+    }
+
+    private static String hintFor(FaceQualityGate.Reason reason) {
+        switch (reason) {
+            case POSE_TOO_ANGLED:
+                return "Look straight at the camera.";
+            case TOO_DARK:
+                return "Too dark. Move to a brighter place.";
+            case TOO_BRIGHT:
+                return "Too bright. Avoid direct light on your face.";
+            case TOO_BLURRY:
+                return "Hold still, the picture is blurry.";
+            default:
+                return "Move closer to the camera.";
+        }
+    }
+
+    // Stop the camera and hand the kept frames back in memory; only the session id goes in the result
+    private void finishCapture() {
+        capturing = false;
+        if (cameraProvider != null) {
+            cameraProvider.unbindAll();
+        }
+        List<FaceCaptureSession.Shot> shots = frameSelector.take();
+        Log.d(TAG, "Captured " + shots.size() + " face photos. " + frameScheduler.describe() + ", gate " + qualityGate.describeCounts());
+
+        Intent result = new Intent();
+        result.putExtra(EXTRA_SESSION_ID, FaceCaptureSession.register(shots));
+        setResult(RESULT_OK, result);
+        finish();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        capturing = false;
+        if (frameSelector != null) {
+            for (FaceCaptureSession.Shot shot : frameSelector.take()) {
+                shot.photo.recycle();
+            }
+        }
+        if (cameraExecutor != null) {
+            cameraExecutor.shutdown();
+        }
+        if (faceDetector != null) {
+            faceDetector.close();
+        }
+    }
+}
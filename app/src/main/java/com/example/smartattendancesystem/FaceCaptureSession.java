@@ -0,0 +1,165 @@
+package com.example.smartattendancesystem;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The frames of one FaceCaptureActivity run, handed to the next screen in memory instead of as
+ * JPEG bytes or files: only a session id travels in the Intent.
+ *
+ * Each {@link Shot} keeps the face box found at capture time, so callers skip detection, and
+ * its embedding once computed, so the verification and the upload of the same frame share it.
+ * {@link #claim} hands the session and its bitmaps to one caller, which recycles them (directly
+ * or via {@link #release}) when done. Sessions live only as long as the process; a claim after
+ * the process was restarted finds nothing and the user captures again.
+ */
+public final class FaceCaptureSession {
+
+    private static final String TAG = "FaceCaptureSession";
+    // Unclaimed sessions kept at most; older ones are released, e.g. when a caller went away
+    private static final int MAX_PENDING_SESSIONS = 2;
+
+    private static final Map<String, FaceCaptureSession> pendingSessions = new LinkedHashMap<>(); // Guarded by itself
+
+    public static final class Shot {
+        public final Bitmap photo;     // Full resolution, upright
+        public final Rect faceBox;     // In photo coordinates
+        public final float quality;    // FacePhotoJob#qualityOf at capture time
+        private float[] embedding;     // Guarded by this shot
+        private String embeddingModel;
+
+        Shot(Bitmap photo, Rect faceBox, float quality) {
+            this.photo = photo;
+            this.faceBox = faceBox;
+            this.quality = quality;
+        }
+
+        /**
+         * Embeds the face box once and caches the result for later calls with the same model.
+         * Call off the main thread; null if the embedding failed.
+         *
+         * @return the cached embedding, not to be modified.
+         */
+        public synchronized float[] embed(FaceRecognitionHelper faceRecognitionHelper) {
+            String modelVersion = FaceEmbeddingEngine.getModelVersion();
+            if (needsEmbedding(modelVersion)) {
+                embedding = faceRecognitionHelper.getFaceEmbedding(photo, faceBox);
+                embeddingModel = modelVersion;
+            }
+            return embedding;
+        }
+
+        private synchronized boolean needsEmbedding(String modelVersion) {
+            return embedding == null || !EmbeddingModelVersion.isCompatible(embeddingModel, modelVersion);
+        }
+
+        private synchronized void cacheEmbedding(float[] embedding, String modelVersion) {
+            if (needsEmbedding(modelVersion)) {
+                this.embedding = embedding;
+                embeddingModel = modelVersion;
+            }
+        }
+    }
+
+    /**
+     * Embeds the shots that have no current embedding in one batched interpreter run, so the
+     * {@link Shot#embed} calls that follow hit the cache. Call off the main thread. If the batch
+     * fails nothing is cached and each shot embeds on its own later, reporting its own failure.
+     */
+    public static void embedAll(List<Shot> shots, FaceRecognitionHelper faceRecognitionHelper) {
+        String modelVersion = FaceEmbeddingEngine.getModelVersion();
+        List<Shot> pending = new ArrayList<>();
+        List<Bitmap> photos = new ArrayList<>();
+        List<Rect> faceBoxes = new ArrayList<>();
+        for (Shot shot : shots) {
+            if (shot.needsEmbedding(modelVersion)) {
+                pending.add(shot);
+                photos.add(shot.photo);
+                faceBoxes.add(shot.faceBox);
+            }
+        }
+        if (pending.size() < 2) {
+            return; // Nothing to batch
+        }
+        List<float[]> embeddings = faceRecognitionHelper.getFaceEmbeddings(photos, faceBoxes);
+        if (embeddings == null) {
+            Log.w(TAG, "Batched embedding of " + pending.size() + " shots failed, embedding one by one.");
+            return;
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            pending.get(i).cacheEmbedding(embeddings.get(i), modelVersion);
+        }
+    }
+
+    private final List<Shot> shots;
+
+    private FaceCaptureSession(List<Shot> shots) {
+        this.shots = shots;
+    }
+
+    /**
+     * Registers the captured shots, best first, for one later {@link #claim}.
+     *
+     * @return the id to pass to the next screen.
+     */
+    static String register(List<Shot> shots) {
+        String id = UUID.randomUUID().toString();
+        List<FaceCaptureSession> evicted = new ArrayList<>();
+        synchronized (pendingSessions) {
+            pendingSessions.put(id, new FaceCaptureSession(new ArrayList<>(shots)));
+            Iterator<FaceCaptureSession> oldest = pendingSessions.values().iterator();
+            while (pendingSessions.size() > MAX_PENDING_SESSIONS) {
+                evicted.add(oldest.next());
+                oldest.remove();
+            }
+        }
+        for (FaceCaptureSession session : evicted) {
+            Log.w(TAG, "Releasing an unclaimed capture session.");
+            session.release();
+        }
+        return id;
+    }
+
+    /**
+     * @return the session, now owned by the caller, or null if the id is unknown or already claimed.
+     */
+    public static FaceCaptureSession claim(String id) {
+        if (id == null) {
+            return null;
+        }
+        synchronized (pendingSessions) {
+            return pendingSessions.remove(id);
+        }
+    }
+
+    /**
+     * @return the shots, best first; never empty.
+     */
+    public List<Shot> getShots() {
+        return Collections.unmodifiableList(shots);
+    }
+
+    public Shot best() {
+        return shots.get(0);
+    }
+
+    /**
+     * Recycles every shot's bitmap; for callers that did not hand the bitmaps on.
+     */
+    public void release() {
+        for (Shot shot : shots) {
+            if (!shot.photo.isRecycled()) {
+                shot.photo.recycle();
+            }
+        }
+    }
+}
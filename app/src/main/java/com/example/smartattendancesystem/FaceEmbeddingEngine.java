@@ -0,0 +1,217 @@
+package com.example.smartattendancesystem;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process-wide owner of the face embedding model.
+ *
+ * Activities call {@link #acquire(Context)} in onCreate and {@link #release()} in onDestroy
+ * instead of building their own {@link FaceRecognitionHelper}, so the model is mapped and the
+ * interpreter built once per process. The helper is kept loaded while the app is in use, even
+ * when no screen currently holds it, and is only closed once it is unreferenced and the system
+ * asks the app to trim memory. {@link #prewarm(Context)} loads it in the background at splash.
+ *
+ * If the int8-quantized variant of the model is bundled in assets it is preferred over the
+ * float32 one; the helper detects the tensor types and quantization params from the model.
+ *
+ * {@link #getModelVersion()} tags every embedding this app stores. It fingerprints the float32
+ * model, which the quantized variant is derived from and shares an embedding space with (see
+ * EmbeddingDriftHarness); only when no float32 model is bundled is the loaded one used.
+ */
+public final class FaceEmbeddingEngine {
+
+    private static final String TAG = "FaceEmbeddingEngine";
+    public static final String MODEL_PATH = "output_model.tflite";
+    public static final String QUANTIZED_MODEL_PATH = "output_model_int8.tflite";
+
+    private static FaceRecognitionHelper helper;
+    private static FutureTask<FaceRecognitionHelper> loading; // Load in progress, if any; joined instead of started twice
+    private static volatile String modelVersion; // Set before the helper is built, and never changes after
+    private static int refCount = 0;
+    private static boolean trimCallbacksRegistered = false;
+
+    private FaceEmbeddingEngine() {
+    }
+
+    /**
+     * Returns the shared helper, loading the model on first use. Every successful call
+     * must be balanced by one {@link #release()}. The helper itself is thread-safe.
+     */
+    public static FaceRecognitionHelper acquire(Context context) throws IOException {
+        while (true) {
+            FaceRecognitionHelper loaded = getOrLoad(context);
+            synchronized (FaceEmbeddingEngine.class) {
+                if (helper == loaded) {
+                    refCount++;
+                    Log.d(TAG, "Acquired shared FaceRecognitionHelper, refCount = " + refCount);
+                    return loaded;
+                }
+            }
+            // Closed to free memory before it could be counted; load it again
+        }
+    }
+
+    public static synchronized void release() {
+        if (refCount == 0) {
+            Log.w(TAG, "release() called without a matching acquire().");
+            return;
+        }
+        refCount--;
+        Log.d(TAG, "Released shared FaceRecognitionHelper, refCount = " + refCount);
+    }
+
+    /**
+     * Loads the model on a background thread so the first screen that needs it opens instantly.
+     */
+    public static void prewarm(Context context) {
+        Context appContext = context.getApplicationContext();
+        new Thread(() -> {
+            try {
+                getOrLoad(appContext);
+                Log.d(TAG, "Face embedding model pre-warmed.");
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to pre-warm face embedding model: " + e.getMessage(), e);
+            }
+        }, "FaceEmbeddingPrewarm").start();
+    }
+
+    // The model load and first-launch delegate probe take a while, so they run outside the lock:
+    // acquire() on the main thread would otherwise wait for the monitor as well as the model
+    private static FaceRecognitionHelper getOrLoad(Context context) throws IOException {
+        Context appContext = context.getApplicationContext();
+        FutureTask<FaceRecognitionHelper> task;
+        boolean loadHere = false;
+        synchronized (FaceEmbeddingEngine.class) {
+            if (helper != null) {
+                return helper;
+            }
+            if (loading == null) {
+                loading = new FutureTask<>(() -> load(appContext));
+                loadHere = true;
+            }
+            task = loading;
+        }
+        if (loadHere) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the face embedding model.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to load the face embedding model.", cause);
+        }
+    }
+
+    // Runs once per load, on the first thread to ask; publishes the helper before waiters return
+    private static FaceRecognitionHelper load(Context appContext) throws IOException {
+        try {
+            long start = System.currentTimeMillis();
+            String modelPath = resolveModelPath(appContext);
+            String modelFingerprint = fingerprintAsset(appContext, modelPath); // Also keys the remembered delegate
+            if (modelVersion == null) {
+                modelVersion = versionOf(appContext, modelPath, modelFingerprint); // Available before the probe finishes
+            }
+            FaceRecognitionHelper loaded = new FaceRecognitionHelper(appContext, modelPath, modelFingerprint);
+            Log.d(TAG, "Face embedding model " + modelVersion + " loaded in " + (System.currentTimeMillis() - start) + " ms.");
+            synchronized (FaceEmbeddingEngine.class) {
+                helper = loaded;
+                loading = null;
+                registerTrimCallbacks(appContext);
+            }
+            return loaded;
+        } catch (Throwable e) {
+            synchronized (FaceEmbeddingEngine.class) {
+                loading = null; // The next caller tries again
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Version of the loaded model's embeddings (an {@link EmbeddingModelVersion}), or null before
+     * the model has been loaded. Activities holding a helper from {@link #acquire} can rely on it.
+     * Never waits for a load in progress.
+     */
+    public static String getModelVersion() {
+        return modelVersion;
+    }
+
+    // The float32 model's fingerprint, reusing the loaded one's when that is the float32 model or
+    // no float32 model is bundled
+    private static String versionOf(Context context, String loadedPath, String loadedFingerprint) {
+        if (MODEL_PATH.equals(loadedPath)) {
+            return loadedFingerprint;
+        }
+        try {
+            return fingerprintAsset(context, MODEL_PATH);
+        } catch (IOException e) {
+            return loadedFingerprint;
+        }
+    }
+
+    private static String fingerprintAsset(Context context, String path) throws IOException {
+        try (InputStream in = context.getAssets().open(path)) {
+            return EmbeddingModelVersion.fingerprint(in);
+        }
+    }
+
+    /**
+     * Returns the quantized model path when that asset is bundled, otherwise the float32 one.
+     */
+    public static String resolveModelPath(Context context) {
+        try (InputStream ignored = context.getAssets().open(QUANTIZED_MODEL_PATH)) {
+            return QUANTIZED_MODEL_PATH;
+        } catch (IOException e) {
+            return MODEL_PATH;
+        }
+    }
+
+    private static synchronized void closeIfUnused() {
+        if (helper != null && refCount == 0) {
+            helper.close();
+            helper = null;
+            Log.d(TAG, "Shared FaceRecognitionHelper closed to free memory.");
+        }
+    }
+
+    private static void registerTrimCallbacks(Context appContext) {
+        if (trimCallbacksRegistered) {
+            return;
+        }
+        trimCallbacksRegistered = true;
+        appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_BACKGROUND) {
+                    closeIfUnused();
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                closeIfUnused();
+            }
+        });
+    }
+}
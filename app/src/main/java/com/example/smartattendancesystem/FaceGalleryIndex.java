@@ -0,0 +1,212 @@
+package com.example.smartattendancesystem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory 1:N face gallery, e.g. every enrolled student of a class section.
+ *
+ * Embeddings are copied, L2-normalized and packed row by row into one contiguous float matrix,
+ * so a query is scored against the whole gallery by {@link EmbeddingMath#dotMany} in a single
+ * linear scan. Students can be added, re-enrolled (replaced) or removed incrementally; removal
+ * moves the last row into the freed slot so the matrix stays dense.
+ *
+ * For large cohorts an approximate {@link HnswIndex} can be switched on with
+ * {@link #enableApproximateSearch(int)}; it is kept in sync with the matrix and used once the
+ * gallery reaches the given size. Smaller galleries always use the exact scan.
+ */
+public class FaceGalleryIndex {
+
+    public static class Match {
+        public final String id;
+        public final float score; // Cosine similarity, higher is more similar
+
+        Match(String id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + score + ")";
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int dim;
+    private float[] matrix;
+    private String[] ids;
+    private int size = 0;
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private float[] scores; // Scratch buffer for the brute-force scan
+
+    private HnswIndex approximateIndex;
+    private int approximateMinSize = Integer.MAX_VALUE;
+
+    public FaceGalleryIndex(int dim) {
+        if (dim <= 0) {
+            throw new IllegalArgumentException("Embedding dimension must be positive.");
+        }
+        this.dim = dim;
+        this.matrix = new float[INITIAL_CAPACITY * dim];
+        this.ids = new String[INITIAL_CAPACITY];
+        this.scores = new float[INITIAL_CAPACITY];
+    }
+
+    public int getDimension() {
+        return dim;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean contains(String id) {
+        return rowById.containsKey(id);
+    }
+
+    /**
+     * Adds the embedding for {@code id}, replacing any previous one (e.g. after re-enrollment).
+     */
+    public synchronized void put(String id, float[] embedding) {
+        if (id == null || embedding == null || embedding.length != dim) {
+            throw new IllegalArgumentException("Gallery entries need an id and a " + dim + "-dimensional embedding.");
+        }
+        Integer row = rowById.get(id);
+        if (row == null) {
+            ensureCapacity(size + 1);
+            row = size++;
+            ids[row] = id;
+            rowById.put(id, row);
+        }
+        int offset = row * dim;
+        System.arraycopy(embedding, 0, matrix, offset, dim);
+        normalizeRow(offset);
+
+        if (approximateIndex != null) {
+            float[] normalized = new float[dim];
+            System.arraycopy(matrix, offset, normalized, 0, dim);
+            approximateIndex.put(id, normalized);
+        }
+    }
+
+    /**
+     * Removes {@code id} from the gallery, e.g. when a student leaves the section.
+     *
+     * @return true if the id was present.
+     */
+    public synchronized boolean remove(String id) {
+        Integer row = rowById.remove(id);
+        if (row == null) {
+            return false;
+        }
+        int last = --size;
+        if (row != last) {
+            System.arraycopy(matrix, last * dim, matrix, row * dim, dim);
+            ids[row] = ids[last];
+            rowById.put(ids[row], row);
+        }
+        ids[last] = null;
+        if (approximateIndex != null) {
+            approximateIndex.remove(id);
+        }
+        return true;
+    }
+
+    /**
+     * Builds an HNSW graph over the gallery and uses it for searches once the gallery has at
+     * least {@code minSize} entries. Results are then approximate.
+     */
+    public synchronized void enableApproximateSearch(int minSize) {
+        approximateMinSize = minSize;
+        if (approximateIndex == null) {
+            approximateIndex = new HnswIndex(dim);
+            for (int row = 0; row < size; row++) {
+                float[] normalized = new float[dim];
+                System.arraycopy(matrix, row * dim, normalized, 0, dim);
+                approximateIndex.put(ids[row], normalized);
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code k} gallery entries most similar to {@code query}, best first.
+     */
+    public synchronized List<Match> search(float[] query, int k) {
+        if (query == null || query.length != dim) {
+            throw new IllegalArgumentException("Query must be a " + dim + "-dimensional embedding.");
+        }
+        float[] normalizedQuery = EmbeddingMath.l2Normalize(query.clone());
+        if (approximateIndex != null && size >= approximateMinSize) {
+            List<Match> matches = new ArrayList<>();
+            for (HnswIndex.Result result : approximateIndex.search(normalizedQuery, k)) {
+                matches.add(new Match(result.label, result.score));
+            }
+            return matches;
+        }
+        return exactSearch(normalizedQuery, k);
+    }
+
+    private List<Match> exactSearch(float[] normalizedQuery, int k) {
+        int resultCount = Math.min(k, size);
+        List<Match> matches = new ArrayList<>(resultCount);
+        if (resultCount <= 0) {
+            return matches;
+        }
+        EmbeddingMath.dotMany(normalizedQuery, matrix, size, dim, scores);
+
+        // Partial insertion sort: keep the best k rows, best first (k is small)
+        int[] topRows = new int[resultCount];
+        float[] topScores = new float[resultCount];
+        int filled = 0;
+        for (int row = 0; row < size; row++) {
+            float score = scores[row];
+            if (filled == resultCount && score <= topScores[filled - 1]) {
+                continue;
+            }
+            int position = filled < resultCount ? filled++ : resultCount - 1;
+            while (position > 0 && topScores[position - 1] < score) {
+                topScores[position] = topScores[position - 1];
+                topRows[position] = topRows[position - 1];
+                position--;
+            }
+            topScores[position] = score;
+            topRows[position] = row;
+        }
+        for (int i = 0; i < resultCount; i++) {
+            matches.add(new Match(ids[topRows[i]], topScores[i]));
+        }
+        return matches;
+    }
+
+    private void normalizeRow(int offset) {
+        float sumSquares = 0f;
+        for (int i = offset; i < offset + dim; i++) {
+            sumSquares += matrix[i] * matrix[i];
+        }
+        float norm = (float) Math.sqrt(sumSquares);
+        if (norm > 0f) {
+            float inverse = 1f / norm;
+            for (int i = offset; i < offset + dim; i++) {
+                matrix[i] *= inverse;
+            }
+        }
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(rows, ids.length * 2);
+        float[] newMatrix = new float[newCapacity * dim];
+        System.arraycopy(matrix, 0, newMatrix, 0, size * dim);
+        matrix = newMatrix;
+        String[] newIds = new String[newCapacity];
+        System.arraycopy(ids, 0, newIds, 0, size);
+        ids = newIds;
+        scores = new float[newCapacity];
+    }
+}
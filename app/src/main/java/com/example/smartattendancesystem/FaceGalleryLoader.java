@@ -0,0 +1,97 @@
+package com.example.smartattendancesystem;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+
+/**
+ * Builds a {@link FaceGalleryIndex} from the enrolled students of a class offering and keeps it
+ * up to date while it is in use: students who enroll, re-enroll or leave are added, replaced or
+ * removed incrementally rather than the whole roster being read again.
+ *
+ * Students are matched on the offering's faculty and course (student documents carry no
+ * section). Each student is keyed by matricOrStaffId and uses the login embedding when present,
+ * falling back to the registration one, the same preference as VerifyActivity. Embeddings made by
+ * another model than the loaded one are skipped until EmbeddingMigrationJob has redone them.
+ */
+public class FaceGalleryLoader {
+
+    private static final String TAG = "FaceGalleryLoader";
+
+    // Switch to the approximate index once a roster gets this large
+    private static final int APPROXIMATE_SEARCH_MIN_SIZE = 2000;
+
+    public interface Callback {
+        /** Called once, with the first full roster; later changes update the same gallery in place. */
+        void onGalleryLoaded(FaceGalleryIndex gallery);
+
+        void onGalleryError(String message);
+    }
+
+    private final FirebaseFirestore db;
+
+    public FaceGalleryLoader(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    /**
+     * Loads the roster and listens for enrollment changes until the returned registration is removed.
+     */
+    public ListenerRegistration watchRoster(String faculty, String course, int embeddingSize, Callback callback) {
+        FaceGalleryIndex gallery = new FaceGalleryIndex(embeddingSize);
+        boolean[] loaded = {false}; // Listener runs on the main thread
+        return db.collection("users")
+                .whereEqualTo("role", "Student")
+                .whereEqualTo("faculty", faculty)
+                .whereEqualTo("course", course)
+                .addSnapshotListener((queryDocumentSnapshots, e) -> {
+                    if (e != null || queryDocumentSnapshots == null) {
+                        Log.e(TAG, "Error loading roster: " + (e != null ? e.getMessage() : "no snapshot"));
+                        if (!loaded[0]) {
+                            callback.onGalleryError("Failed to load class roster.");
+                        }
+                        return;
+                    }
+                    if (!loaded[0] && queryDocumentSnapshots.size() >= APPROXIMATE_SEARCH_MIN_SIZE) {
+                        gallery.enableApproximateSearch(APPROXIMATE_SEARCH_MIN_SIZE);
+                    }
+                    int skipped = 0;
+                    for (DocumentChange change : queryDocumentSnapshots.getDocumentChanges()) {
+                        QueryDocumentSnapshot document = change.getDocument();
+                        String matric = document.getString("matricOrStaffId");
+                        if (matric == null) {
+                            skipped++;
+                            continue;
+                        }
+                        float[] embedding = change.getType() == DocumentChange.Type.REMOVED
+                                ? null : readEmbedding(document, embeddingSize);
+                        if (embedding != null) {
+                            gallery.put(matric, embedding); // Enrolled or re-enrolled
+                            continue;
+                        }
+                        gallery.remove(matric); // Left the course, or no usable embedding any more
+                        if (change.getType() != DocumentChange.Type.REMOVED) {
+                            skipped++;
+                        }
+                    }
+                    if (!loaded[0]) {
+                        loaded[0] = true;
+                        Log.d(TAG, "Loaded " + gallery.size() + " faces for " + faculty + " / " + course
+                                + " (" + skipped + " students without a usable embedding).");
+                        callback.onGalleryLoaded(gallery);
+                    } else {
+                        Log.d(TAG, "Roster of " + faculty + " / " + course + " changed: "
+                                + queryDocumentSnapshots.getDocumentChanges().size() + " students, now " + gallery.size() + " faces.");
+                    }
+                });
+    }
+
+    private static float[] readEmbedding(QueryDocumentSnapshot document, int embeddingSize) {
+        // Blob or legacy array, from the loaded model only
+        float[] embedding = EmbeddingFields.readForLogin(document, FaceEmbeddingEngine.getModelVersion());
+        return embedding != null && embedding.length == embeddingSize ? embedding : null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.smartattendancesystem;
+
+/**
+ * The oval the user lines their face up with on the capture screen, and the check of a detected
+ * face box against it.
+ *
+ * The oval is given in fractions of the frame width and height, so the overlay drawn over the
+ * preview (FaceGuideOverlay) and the check on analysis frames agree as long as both have the
+ * same aspect ratio. The front preview is mirrored and the analysis frame is not; the oval is
+ * centred horizontally, so that makes no difference.
+ */
+public final class FaceGuide {
+
+    public enum Hint {
+        NO_FACE,
+        MOVE_CLOSER,
+        MOVE_BACK,
+        CENTER_FACE,
+        HOLD_STILL // Face is in the oval: frames can be kept
+    }
+
+    static final float CENTER_X = 0.5f;          // Of the width
+    static final float CENTER_Y = 0.45f;         // Of the height, a little above the middle
+    static final float RADIUS_X = 0.32f;         // Of the width
+    static final float RADIUS_Y = 0.42f;         // Of the width too, so the oval keeps its shape
+    static final float MAX_CENTER_OFFSET = 0.3f; // Face centre within this share of the radii
+    static final float MIN_FILL = 0.6f;          // Face width over oval width
+    static final float MAX_FILL = 1.15f;
+
+    private FaceGuide() {
+    }
+
+    public static float left(int width) {
+        return (CENTER_X - RADIUS_X) * width;
+    }
+
+    public static float top(int width, int height) {
+        return CENTER_Y * height - RADIUS_Y * width;
+    }
+
+    public static float right(int width) {
+        return (CENTER_X + RADIUS_X) * width;
+    }
+
+    public static float bottom(int width, int height) {
+        return CENTER_Y * height + RADIUS_Y * width;
+    }
+
+    /**
+     * @return what the user should do about the face box {@code [left, right) x [top, bottom)}
+     * in a {@code frameWidth} x {@code frameHeight} frame; an empty box means no face.
+     */
+    public static Hint check(int left, int top, int right, int bottom, int frameWidth, int frameHeight) {
+        if (right <= left || bottom <= top || frameWidth <= 0 || frameHeight <= 0) {
+            return Hint.NO_FACE;
+        }
+        float radiusX = RADIUS_X * frameWidth;
+        float radiusY = RADIUS_Y * frameWidth;
+        float fill = (right - left) / (2f * radiusX);
+        if (fill < MIN_FILL) {
+            return Hint.MOVE_CLOSER;
+        }
+        if (fill > MAX_FILL) {
+            return Hint.MOVE_BACK;
+        }
+        float dx = (0.5f * (left + right) - CENTER_X * frameWidth) / radiusX;
+        float dy = (0.5f * (top + bottom) - CENTER_Y * frameHeight) / radiusY;
+        if (dx * dx + dy * dy > MAX_CENTER_OFFSET * MAX_CENTER_OFFSET) {
+            return Hint.CENTER_FACE;
+        }
+        return Hint.HOLD_STILL;
+    }
+}
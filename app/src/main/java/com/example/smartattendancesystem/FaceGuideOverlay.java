@@ -0,0 +1,66 @@
+package com.example.smartattendancesystem;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Dims the camera preview outside the {@link FaceGuide} oval and outlines the oval, green while
+ * the face is lined up. Must cover the same area as the preview.
+ */
+public class FaceGuideOverlay extends View {
+
+    private static final int DIM_COLOR = 0x99000000;
+    private static final int SEARCHING_COLOR = Color.WHITE;
+    private static final int ALIGNED_COLOR = 0xFF4CAF50; // Material green 500
+
+    private final Paint dimPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint outlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path dimPath = new Path();
+    private final RectF oval = new RectF();
+    private boolean aligned = false;
+
+    public FaceGuideOverlay(Context context) {
+        this(context, null);
+    }
+
+    public FaceGuideOverlay(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        dimPaint.setColor(DIM_COLOR);
+        outlinePaint.setStyle(Paint.Style.STROKE);
+        outlinePaint.setStrokeWidth(4f * getResources().getDisplayMetrics().density);
+        outlinePaint.setColor(SEARCHING_COLOR);
+        dimPath.setFillType(Path.FillType.EVEN_ODD); // The oval punches a hole in the dimmed rectangle
+    }
+
+    public void setAligned(boolean aligned) {
+        if (this.aligned != aligned) {
+            this.aligned = aligned;
+            outlinePaint.setColor(aligned ? ALIGNED_COLOR : SEARCHING_COLOR);
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        oval.set(FaceGuide.left(width), FaceGuide.top(width, height), FaceGuide.right(width), FaceGuide.bottom(width, height));
+        dimPath.reset();
+        dimPath.addRect(0, 0, width, height, Path.Direction.CW);
+        dimPath.addOval(oval, Path.Direction.CW);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawPath(dimPath, dimPaint);
+        canvas.drawOval(oval, outlinePaint);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.smartattendancesystem;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetector;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A still photo on its way through a detect -> embed -> save {@link FramePipeline}, as used by
+ * RegisterActivity and ProfileActivity. A stage that stops the job leaves a user-facing reason
+ * in {@link #failureMessage}. Shots from a {@link FaceCaptureSession} arrive with their face
+ * box and skip detection, and reuse the shot's cached embedding.
+ */
+public class FacePhotoJob {
+
+    public final Bitmap photo;
+    public final FaceCaptureSession.Shot shot; // Null for photos from elsewhere
+    public Rect faceBox;
+    public float quality; // qualityOf the detected face, for weighting enrollment shots
+    public float[] embedding;
+    public String failureMessage;
+
+    public FacePhotoJob(Bitmap photo) {
+        this.photo = photo;
+        this.shot = null;
+    }
+
+    // Takes over the shot's bitmap
+    public FacePhotoJob(FaceCaptureSession.Shot shot) {
+        this.photo = shot.photo;
+        this.shot = shot;
+        this.faceBox = shot.faceBox;
+        this.quality = shot.quality;
+    }
+
+    /**
+     * Weight of a detected face for enrollment and for the fused verification decision, in
+     * [0.05, 1]: larger and more frontal faces count more.
+     */
+    public static float qualityOf(Face face, int frameWidth, int frameHeight) {
+        Rect box = face.getBoundingBox();
+        float faceSide = Math.min(box.width(), box.height());
+        float sizeScore = Math.min(1f, faceSide / (0.3f * Math.min(frameWidth, frameHeight))); // Full weight from 30% of the frame
+        Float yaw = face.getHeadEulerAngleY();
+        Float roll = face.getHeadEulerAngleZ();
+        float offAxis = (yaw == null ? 0f : Math.abs(yaw)) + (roll == null ? 0f : Math.abs(roll));
+        float poseScore = Math.max(0f, 1f - offAxis / 60f);
+        return Math.max(0.05f, sizeScore * poseScore);
+    }
+
+    /**
+     * Starts a pipeline with the two shared stages: ML Kit detection (called from the main
+     * thread, which is also where it reports back) and the embedding on {@code workerExecutor}.
+     * Callers append their own save stage. Each stage queues up to {@code capacity} photos, so a
+     * whole capture session can be submitted at once.
+     */
+    public static FramePipeline<FacePhotoJob> newDetectAndEmbedPipeline(String name, FaceDetector faceDetector,
+                                                                        FaceRecognitionHelper faceRecognitionHelper,
+                                                                        Executor mainExecutor, Executor workerExecutor, int capacity,
+                                                                        FramePipeline.Listener<FacePhotoJob> listener) {
+        return new FramePipeline<>(name, listener)
+                .addAsyncStage("detect", mainExecutor, capacity, (job, handoff) -> {
+                    if (job.faceBox != null) {
+                        handoff.pass(); // Found at capture time
+                        return;
+                    }
+                    faceDetector.process(InputImage.fromBitmap(job.photo, 0))
+                            .addOnSuccessListener(faces -> {
+                                if (faces.isEmpty()) {
+                                    job.failureMessage = "No face detected in the picture. Please try again.";
+                                    handoff.stop();
+                                    return;
+                                }
+                                Face face = faces.get(0);
+                                job.faceBox = face.getBoundingBox();
+                                if (job.faceBox.isEmpty()) {
+                                    job.failureMessage = "Failed to crop face from image.";
+                                    handoff.stop();
+                                    return;
+                                }
+                                job.quality = qualityOf(face, job.photo.getWidth(), job.photo.getHeight());
+                                handoff.pass();
+                            })
+                            .addOnFailureListener(e -> {
+                                job.failureMessage = "Face detection failed: " + e.getMessage();
+                                handoff.fail(e);
+                            });
+                })
+                .addStage("embed", workerExecutor, capacity, job -> {
+                    // Samples only the face box from the photo, no cropped copy; a shot may
+                    // already have its embedding from FaceCaptureSession.embedAll
+                    job.embedding = job.shot != null
+                            ? job.shot.embed(faceRecognitionHelper)
+                            : faceRecognitionHelper.getFaceEmbedding(job.photo, job.faceBox);
+                    if (job.embedding == null) {
+                        job.failureMessage = "Failed to generate face embedding.";
+                        return false;
+                    }
+                    return true;
+                });
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.smartattendancesystem;
+
+import java.util.Locale;
+
+/**
+ * Cheap pre-inference check that a detected face is worth embedding.
+ *
+ * Looks at the face box size, head pose, exposure (mean luma and share of clipped pixels) and
+ * sharpness (variance of the Laplacian) of the face region. The region is sampled on a grid of
+ * at most {@link #SAMPLE_SIZE} x {@link #SAMPLE_SIZE} luma values, so a check costs a few
+ * thousand pixel reads regardless of the face size. Every rejection is counted per reason.
+ *
+ * Not thread-safe: the sample buffer is reused between calls.
+ */
+public class FaceQualityGate {
+
+    public enum Reason {
+        OK,
+        FACE_TOO_SMALL,
+        POSE_TOO_ANGLED,
+        TOO_DARK,
+        TOO_BRIGHT,
+        TOO_BLURRY
+    }
+
+    public static class Result {
+        public Reason reason;
+        public float sharpness;  // Variance of the Laplacian on the sampled luma
+        public float meanLuma;   // 0..255
+        public float score;      // 0..1, for weighting frames that passed
+
+        public boolean passed() {
+            return reason == Reason.OK;
+        }
+    }
+
+    static final int SAMPLE_SIZE = 64;
+
+    private final int minFaceSize;
+    private final float maxYaw;
+    private final float maxRoll;
+    private final float minMeanLuma;
+    private final float maxMeanLuma;
+    private final float maxClippedFraction;
+    private final float minSharpness;
+
+    private final int[] luma = new int[SAMPLE_SIZE * SAMPLE_SIZE];
+    private final long[] reasonCounts = new long[Reason.values().length];
+    private final Result result = new Result();
+
+    /**
+     * Thresholds suited to the front camera at arm's length: faces of at least 80 px, within
+     * 25 degrees of frontal, mean luma 50..210 with under 30% clipped pixels, and a Laplacian
+     * variance of at least 40.
+     */
+    public FaceQualityGate() {
+        this(80, 25f, 25f, 50f, 210f, 0.3f, 40f);
+    }
+
+    public FaceQualityGate(int minFaceSize, float maxYaw, float maxRoll, float minMeanLuma, float maxMeanLuma,
+                           float maxClippedFraction, float minSharpness) {
+        this.minFaceSize = minFaceSize;
+        this.maxYaw = maxYaw;
+        this.maxRoll = maxRoll;
+        this.minMeanLuma = minMeanLuma;
+        this.maxMeanLuma = maxMeanLuma;
+        this.maxClippedFraction = maxClippedFraction;
+        this.minSharpness = minSharpness;
+    }
+
+    /**
+     * Scores the face region {@code [left, right) x [top, bottom)} of an ARGB frame. The region
+     * is clipped to the frame. The returned Result is reused by the next call.
+     */
+    public Result evaluate(int[] argb, int frameWidth, int frameHeight,
+                           int left, int top, int right, int bottom, float yaw, float roll) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(frameWidth, right);
+        bottom = Math.min(frameHeight, bottom);
+        int width = right - left;
+        int height = bottom - top;
+
+        result.sharpness = 0f;
+        result.meanLuma = 0f;
+        result.score = 0f;
+
+        if (width < minFaceSize || height < minFaceSize) {
+            return reject(Reason.FACE_TOO_SMALL);
+        }
+        if (Math.abs(yaw) > maxYaw || Math.abs(roll) > maxRoll) {
+            return reject(Reason.POSE_TOO_ANGLED);
+        }
+
+        // Sample the region on a regular grid into luma (BT.601 weights)
+        int samplesX = Math.min(SAMPLE_SIZE, width);
+        int samplesY = Math.min(SAMPLE_SIZE, height);
+        long lumaSum = 0;
+        int clipped = 0;
+        for (int sy = 0; sy < samplesY; sy++) {
+            int row = (top + sy * height / samplesY) * frameWidth;
+            for (int sx = 0; sx < samplesX; sx++) {
+                int pixel = argb[row + left + sx * width / samplesX];
+                int y = (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+                luma[sy * samplesX + sx] = y;
+                lumaSum += y;
+                if (y < 16 || y > 239) {
+                    clipped++;
+                }
+            }
+        }
+        int sampleCount = samplesX * samplesY;
+        result.meanLuma = (float) lumaSum / sampleCount;
+        float clippedFraction = (float) clipped / sampleCount;
+        if (result.meanLuma < minMeanLuma || (clippedFraction > maxClippedFraction && result.meanLuma < 128f)) {
+            return reject(Reason.TOO_DARK);
+        }
+        if (result.meanLuma > maxMeanLuma || clippedFraction > maxClippedFraction) {
+            return reject(Reason.TOO_BRIGHT);
+        }
+
+        result.sharpness = laplacianVariance(samplesX, samplesY);
+        if (result.sharpness < minSharpness) {
+            return reject(Reason.TOO_BLURRY);
+        }
+
+        // Passed: score rises with sharpness and size, saturating at 4x the minimums
+        float sharpnessScore = Math.min(1f, result.sharpness / (4f * minSharpness));
+        float sizeScore = Math.min(1f, Math.min(width, height) / (4f * minFaceSize));
+        result.score = 0.25f + 0.75f * sharpnessScore * (0.5f + 0.5f * sizeScore);
+        result.reason = Reason.OK;
+        reasonCounts[Reason.OK.ordinal()]++;
+        return result;
+    }
+
+    // 4-neighbour Laplacian over the interior of the sampled grid
+    private float laplacianVariance(int samplesX, int samplesY) {
+        double sum = 0;
+        double sumSquares = 0;
+        int count = 0;
+        for (int y = 1; y < samplesY - 1; y++) {
+            int row = y * samplesX;
+            for (int x = 1; x < samplesX - 1; x++) {
+                int i = row + x;
+                int laplacian = luma[i - 1] + luma[i + 1] + luma[i - samplesX] + luma[i + samplesX] - 4 * luma[i];
+                sum += laplacian;
+                sumSquares += (double) laplacian * laplacian;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0f;
+        }
+        double mean = sum / count;
+        return (float) (sumSquares / count - mean * mean);
+    }
+
+    private Result reject(Reason reason) {
+        result.reason = reason;
+        reasonCounts[reason.ordinal()]++;
+        return result;
+    }
+
+    public long getCount(Reason reason) {
+        return reasonCounts[reason.ordinal()];
+    }
+
+    public String describeCounts() {
+        StringBuilder builder = new StringBuilder("quality gate:");
+        for (Reason reason : Reason.values()) {
+            builder.append(String.format(Locale.US, " %s=%d", reason.name().toLowerCase(Locale.US), reasonCounts[reason.ordinal()]));
+        }
+        return builder.toString();
+    }
+}
@@ -2,37 +2,82 @@ package com.example.smartattendancesystem;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.util.Log;
 
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
 import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
-import org.tensorflow.lite.support.common.ops.NormalizeOp;
-import org.tensorflow.lite.DataType;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class FaceRecognitionHelper {
 
     private static final String TAG = "FaceRecognitionHelper";
+    private static final float IMAGE_MEAN = 127.5f;
+    private static final float IMAGE_STD = 127.5f;
+    // Bitmap regions up to this many pixels are read in one getPixels call into roiPixels;
+    // larger ones, e.g. a close face in a full-resolution photo, are read row by row
+    private static final int MAX_ROI_PIXELS = 512 * 512;
+
     private Interpreter tflite; // MADE NON-STATIC
-    private ImageProcessor imageProcessor; // MADE NON-STATIC
+    private TfliteDelegateSelector.LoadedInterpreter loadedInterpreter; // Owns tflite and its delegate, if any
     private int inputImageWidth;
     private int inputImageHeight;
     private int outputEmbeddingSize; // MADE NON-STATIC
 
+    // Tensor types and quantization params, detected from the model so the same helper runs both
+    // the float32 model and a post-training int8/uint8 quantized variant of it.
+    private DataType inputDataType;
+    private float inputScale;
+    private int inputZeroPoint;
+    private DataType outputDataType;
+    private float outputScale;
+    private int outputZeroPoint;
+
+    // Buffers owned by the helper and reused on every inference call, so the
+    // steady-state path does not touch the Java heap (see getFaceEmbedding(Bitmap, float[])).
+    private ByteBuffer inputBuffer;
+    private ByteBuffer outputBuffer;
+    private Object[] interpreterInputs; // Wrappers handed to runForMultipleInputsOutputs, built once
+    private final Map<Integer, Object> interpreterOutputs = new HashMap<>();
+    private final FaceRoiSampler roiSampler = new FaceRoiSampler(); // Crop + resize + normalize in one pass
+    private int[] roiPixels = new int[0]; // Source pixels of a small face region, at most MAX_ROI_PIXELS
+    private final BitmapRows bitmapRows = new BitmapRows(); // Row reader for larger regions
+    private final Rect roiRect = new Rect();
+
+    // Batched inference state. The interpreter input is resized lazily and only when the
+    // requested batch size differs from the current one; the batch buffers are kept for reuse
+    // as long as the same batch size is requested again.
+    private final InterpreterBatch batch = new InterpreterBatch(this::resizeInterpreter); // Serial runs where the delegate cannot resize
+    private ByteBuffer batchInputBuffer;
+    private ByteBuffer batchOutputBuffer;
+    private int batchBuffersSize = 0;
+
     public FaceRecognitionHelper(Context context, String modelPath) throws IOException {
+        this(context, modelPath, null);
+    }
+
+    /**
+     * @param modelFingerprint the model's {@link EmbeddingModelVersion#fingerprint}, if the caller
+     *                         already has it; null to have it computed here.
+     */
+    public FaceRecognitionHelper(Context context, String modelPath, String modelFingerprint) throws IOException {
         try {
             MappedByteBuffer tfliteModel = FileUtil.loadMappedFile(context, modelPath);
-            Interpreter.Options options = new Interpreter.Options();
-            options.setNumThreads(2); // You can adjust thread count based on device capabilities
-            tflite = new Interpreter(tfliteModel, options);
+            String fingerprint = modelFingerprint != null ? modelFingerprint : EmbeddingModelVersion.fingerprint(tfliteModel);
+            // Runs on the fastest backend that matches CPU output (probed once per device)
+            loadedInterpreter = TfliteDelegateSelector.openBest(context, modelPath, fingerprint, tfliteModel);
+            tflite = loadedInterpreter.interpreter;
 
             int[] inputShape = tflite.getInputTensor(0).shape();
             // Input shape is typically [BATCH_SIZE, HEIGHT, WIDTH, CHANNELS]
@@ -44,16 +89,24 @@ public class FaceRecognitionHelper {
             // Output shape is typically [BATCH_SIZE, EMBEDDING_SIZE]
             outputEmbeddingSize = outputShape[1]; // Embedding size is at index 1
 
-            Log.d(TAG, "TFLite Model Loaded: Input shape = " + Arrays.toString(inputShape) +
+            Tensor inputTensor = tflite.getInputTensor(0);
+            inputDataType = inputTensor.dataType();
+            inputScale = inputTensor.quantizationParams().getScale();
+            inputZeroPoint = inputTensor.quantizationParams().getZeroPoint();
+            Tensor outputTensor = tflite.getOutputTensor(0);
+            outputDataType = outputTensor.dataType();
+            outputScale = outputTensor.quantizationParams().getScale();
+            outputZeroPoint = outputTensor.quantizationParams().getZeroPoint();
+            checkSupportedType(inputDataType);
+            checkSupportedType(outputDataType);
+
+            Log.d(TAG, "TFLite Model Loaded on " + loadedInterpreter.backend + ": Input shape = " + Arrays.toString(inputShape) +
+                    " (" + inputDataType + ", scale=" + inputScale + ", zeroPoint=" + inputZeroPoint + ")" +
                     ", Output shape = " + Arrays.toString(outputShape) +
+                    " (" + outputDataType + ", scale=" + outputScale + ", zeroPoint=" + outputZeroPoint + ")" +
                     ", Embedding Size = " + outputEmbeddingSize);
 
-            // Image processor for preprocessing the input bitmap
-            imageProcessor = new ImageProcessor.Builder()
-                    .add(new ResizeOp(inputImageHeight, inputImageWidth, ResizeOp.ResizeMethod.BILINEAR))
-                    // CHANGE TO THIS:
-                    .add(new NormalizeOp(127.5f, 127.5f)) // Normalize from [0, 255] to [-1, 1] as indicated by your model's graph
-                    .build();
+            allocateBuffers();
 
         } catch (IOException e) {
             Log.e(TAG, "Error loading TFLite model from assets: " + modelPath, e);
@@ -64,38 +117,369 @@ public class FaceRecognitionHelper {
         }
     }
 
+    /**
+     * Allocates the input/output buffers once, so that inference calls can reuse them.
+     */
+    private void allocateBuffers() {
+        inputBuffer = ByteBuffer.allocateDirect(inputDataType.byteSize() * inputImageWidth * inputImageHeight * 3); // RGB
+        inputBuffer.order(ByteOrder.nativeOrder());
+        outputBuffer = ByteBuffer.allocateDirect(outputDataType.byteSize() * outputEmbeddingSize);
+        outputBuffer.order(ByteOrder.nativeOrder()); // Use native byte order
+        interpreterInputs = new Object[]{inputBuffer};
+        interpreterOutputs.put(0, outputBuffer);
+    }
+
+    public TfliteDelegateSelector.Backend getBackend() {
+        return loadedInterpreter.backend;
+    }
+
+    /**
+     * True when the loaded model takes quantized (int8/uint8) input rather than float32.
+     */
+    public boolean isQuantized() {
+        return inputDataType != DataType.FLOAT32;
+    }
+
+    public int getEmbeddingSize() {
+        return outputEmbeddingSize;
+    }
+
+    /**
+     * The longer side of the model's input, i.e. the most face pixels an embedding ever uses.
+     */
+    public int getInputSize() {
+        return Math.max(inputImageWidth, inputImageHeight);
+    }
+
+    /**
+     * Convenience overload that returns a freshly allocated embedding.
+     * Prefer {@link #getFaceEmbedding(Bitmap, float[])} on per-frame paths.
+     */
     public float[] getFaceEmbedding(Bitmap faceBitmap) { // MADE NON-STATIC
+        float[] embedding = new float[outputEmbeddingSize];
+        return getFaceEmbedding(faceBitmap, embedding) ? embedding : null;
+    }
+
+    /**
+     * Runs the model on the given face and writes the embedding into {@code outEmbedding}.
+     * After the first call no heap allocation happens: resizing, normalization and the
+     * interpreter input/output all go through buffers owned by this helper.
+     *
+     * @param outEmbedding Caller-owned array of at least {@link #getEmbeddingSize()} floats.
+     * @return true on success, false if the helper is closed, the input is invalid or inference failed.
+     */
+    public synchronized boolean getFaceEmbedding(Bitmap faceBitmap, float[] outEmbedding) {
         if (tflite == null || faceBitmap == null) {
             Log.e(TAG, "TFLite Interpreter is not initialized or input bitmap is null.");
-            return null;
+            return false;
+        }
+        if (outEmbedding == null || outEmbedding.length < outputEmbeddingSize) {
+            Log.e(TAG, "Output array is null or smaller than the embedding size (" + outputEmbeddingSize + ").");
+            return false;
         }
 
-        TensorImage tensorImage = new TensorImage(DataType.FLOAT32); // Ensure model input is FLOAT32
-        tensorImage.load(faceBitmap);
-        tensorImage = imageProcessor.process(tensorImage);
-
-        // Allocate output buffer based on the expected embedding size
-        ByteBuffer outputBuffer = ByteBuffer.allocateDirect(4 * outputEmbeddingSize); // 4 bytes per float
-        outputBuffer.order(ByteOrder.nativeOrder()); // Use native byte order
+        fillInputBuffer(faceBitmap);
+        return runAndRead(outEmbedding);
+    }
 
+    /**
+     * Runs the interpreter on the helper-owned input buffer, leaving the result in the output buffer.
+     * Package-private so the allocation test can measure the interpreter on its own.
+     */
+    synchronized boolean runInference() {
+        if (tflite == null || !resizeBatch(1)) {
+            return false;
+        }
+        outputBuffer.rewind();
         try {
             // Run inference
-            tflite.run(tensorImage.getBuffer(), outputBuffer);
+            tflite.runForMultipleInputsOutputs(interpreterInputs, interpreterOutputs);
         } catch (Exception e) {
             Log.e(TAG, "Error running TFLite inference: " + e.getMessage(), e);
-            return null;
+            return false;
         }
+        return true;
+    }
 
-        outputBuffer.rewind(); // Reset buffer position to read from the beginning
+    /**
+     * Bilinear-resizes the bitmap and writes the pixels, normalized from [0, 255] to [-1, 1]
+     * as indicated by the model's graph, into the input buffer.
+     */
+    private void fillInputBuffer(Bitmap faceBitmap) {
+        inputBuffer.rewind();
+        writeImage(faceBitmap, inputBuffer);
+        inputBuffer.rewind();
+    }
+
+    /**
+     * Writes one preprocessed image at the buffer's current position, advancing it.
+     */
+    private void writeImage(Bitmap faceBitmap, ByteBuffer dst) {
+        roiRect.set(0, 0, faceBitmap.getWidth(), faceBitmap.getHeight());
+        writeBitmapRegion(faceBitmap, roiRect, dst);
+    }
+
+    /**
+     * Reads only the pixels of {@code region} (already inside the bitmap) and samples them into the buffer.
+     */
+    private void writeBitmapRegion(Bitmap source, Rect region, ByteBuffer dst) {
+        int width = region.width();
+        int height = region.height();
+        if (width * height > MAX_ROI_PIXELS) {
+            // Only the rows the resize blends are read, two at a time
+            bitmapRows.set(source, region);
+            try {
+                if (inputDataType == DataType.FLOAT32) {
+                    roiSampler.sampleNormalized(bitmapRows, width, height,
+                            inputImageWidth, inputImageHeight, IMAGE_MEAN, IMAGE_STD, dst);
+                } else {
+                    roiSampler.sampleQuantized(bitmapRows, width, height, inputImageWidth, inputImageHeight,
+                            IMAGE_MEAN, IMAGE_STD, inputScale, inputZeroPoint, inputDataType == DataType.UINT8, dst);
+                }
+            } finally {
+                bitmapRows.set(null, null); // Do not keep the caller's bitmap alive
+            }
+            return;
+        }
+        if (roiPixels.length < width * height) {
+            roiPixels = new int[width * height];
+        }
+        source.getPixels(roiPixels, 0, width, region.left, region.top, width, height);
+        writeRegion(roiPixels, width, 0, 0, width, height, dst);
+    }
+
+    private static final class BitmapRows implements FaceRoiSampler.RowSource {
+        private Bitmap bitmap;
+        private int left;
+        private int top;
+        private int width;
+
+        void set(Bitmap bitmap, Rect region) {
+            this.bitmap = bitmap;
+            if (region != null) {
+                left = region.left;
+                top = region.top;
+                width = region.width();
+            }
+        }
+
+        @Override
+        public void readRow(int row, int[] dst) {
+            bitmap.getPixels(dst, 0, width, left, top + row, width, 1);
+        }
+    }
+
+    private void writeRegion(int[] pixels, int stride, int left, int top, int width, int height, ByteBuffer dst) {
+        if (inputDataType == DataType.FLOAT32) {
+            roiSampler.sampleNormalized(pixels, stride, left, top, width, height,
+                    inputImageWidth, inputImageHeight, IMAGE_MEAN, IMAGE_STD, dst);
+        } else {
+            roiSampler.sampleQuantized(pixels, stride, left, top, width, height,
+                    inputImageWidth, inputImageHeight, IMAGE_MEAN, IMAGE_STD,
+                    inputScale, inputZeroPoint, inputDataType == DataType.UINT8, dst);
+        }
+    }
+
+    /**
+     * Embeds the face inside {@code faceBox} of a full ARGB frame (e.g. from CameraFrameConverter)
+     * without building any intermediate bitmap: only the box is read, resized and normalized
+     * straight into the interpreter input.
+     *
+     * @return false if the box does not overlap the frame or inference failed.
+     */
+    public synchronized boolean getFaceEmbedding(int[] argbFrame, int frameWidth, int frameHeight,
+                                                 Rect faceBox, float[] outEmbedding) {
+        if (tflite == null || argbFrame == null || outEmbedding == null || outEmbedding.length < outputEmbeddingSize) {
+            Log.e(TAG, "TFLite Interpreter is not initialized or the frame/output array is invalid.");
+            return false;
+        }
+        if (!clipToFrame(faceBox, frameWidth, frameHeight)) {
+            return false;
+        }
+        inputBuffer.rewind();
+        writeRegion(argbFrame, frameWidth, roiRect.left, roiRect.top, roiRect.width(), roiRect.height(), inputBuffer);
+        inputBuffer.rewind();
+        return runAndRead(outEmbedding);
+    }
+
+    /**
+     * Embeds the face inside {@code faceBox} of a photo, reading only that region of the bitmap.
+     * Replaces cropping with Bitmap.createBitmap before calling {@link #getFaceEmbedding(Bitmap)}.
+     */
+    public synchronized boolean getFaceEmbedding(Bitmap source, Rect faceBox, float[] outEmbedding) {
+        if (tflite == null || source == null || outEmbedding == null || outEmbedding.length < outputEmbeddingSize) {
+            Log.e(TAG, "TFLite Interpreter is not initialized or the bitmap/output array is invalid.");
+            return false;
+        }
+        if (!clipToFrame(faceBox, source.getWidth(), source.getHeight())) {
+            return false;
+        }
+        inputBuffer.rewind();
+        writeBitmapRegion(source, roiRect, inputBuffer);
+        inputBuffer.rewind();
+        return runAndRead(outEmbedding);
+    }
+
+    /**
+     * Convenience overload of {@link #getFaceEmbedding(Bitmap, Rect, float[])} returning a new array.
+     */
+    public float[] getFaceEmbedding(Bitmap source, Rect faceBox) {
         float[] embedding = new float[outputEmbeddingSize];
-        outputBuffer.asFloatBuffer().get(embedding); // Read floats into the array
+        return getFaceEmbedding(source, faceBox, embedding) ? embedding : null;
+    }
+
+    // Clips the detector's box to the frame into roiRect; boxes may extend past the edges
+    private boolean clipToFrame(Rect faceBox, int frameWidth, int frameHeight) {
+        if (faceBox == null) {
+            Log.e(TAG, "Face bounding box is null.");
+            return false;
+        }
+        roiRect.set(faceBox);
+        if (!roiRect.intersect(0, 0, frameWidth, frameHeight) || roiRect.isEmpty()) {
+            Log.e(TAG, "Invalid bounding box for the face region. BBox: " + faceBox.toShortString() +
+                    ", Frame size: " + frameWidth + "x" + frameHeight);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean runAndRead(float[] outEmbedding) {
+        if (!runInference()) {
+            return false;
+        }
+        outputBuffer.rewind(); // Reset buffer position to read from the beginning
+        readEmbedding(outputBuffer, outEmbedding); // Read (and dequantize if needed) into the array
+        return true;
+    }
+
+    /**
+     * Reads one embedding from the buffer's current position, dequantizing
+     * x = (q - zeroPoint) * scale for quantized outputs.
+     */
+    private void readEmbedding(ByteBuffer src, float[] dst) {
+        if (outputDataType == DataType.FLOAT32) {
+            for (int i = 0; i < outputEmbeddingSize; i++) {
+                dst[i] = src.getFloat();
+            }
+        } else if (outputDataType == DataType.UINT8) {
+            for (int i = 0; i < outputEmbeddingSize; i++) {
+                dst[i] = ((src.get() & 0xFF) - outputZeroPoint) * outputScale;
+            }
+        } else {
+            for (int i = 0; i < outputEmbeddingSize; i++) {
+                dst[i] = (src.get() - outputZeroPoint) * outputScale;
+            }
+        }
+    }
 
-        return embedding;
+    private static void checkSupportedType(DataType dataType) {
+        if (dataType != DataType.FLOAT32 && dataType != DataType.INT8 && dataType != DataType.UINT8) {
+            throw new IllegalArgumentException("Unsupported tensor type for face embedding model: " + dataType);
+        }
     }
 
-    public void close() {
+    /**
+     * Embeds several faces with a single interpreter invocation, e.g. the shots of an enrollment
+     * burst. Like {@link #getFaceEmbedding(Bitmap, Rect, float[])} only the face boxes are read.
+     *
+     * @return One embedding per photo, in the same order, or null if any photo is null, any box
+     *         misses its photo or inference failed.
+     */
+    public synchronized List<float[]> getFaceEmbeddings(List<Bitmap> sources, List<Rect> faceBoxes) {
+        if (tflite == null || sources == null || faceBoxes == null || sources.size() != faceBoxes.size()) {
+            Log.e(TAG, "TFLite Interpreter is not initialized or the photo/box lists are invalid.");
+            return null;
+        }
+        int batchSize = sources.size();
+        List<float[]> embeddings = new ArrayList<>(batchSize);
+        if (batchSize == 0) {
+            return embeddings;
+        }
+        for (Bitmap source : sources) {
+            if (source == null) {
+                Log.e(TAG, "Input list contains a null bitmap.");
+                return null;
+            }
+        }
+
+        if (batchSize == 1 || !resizeBatch(batchSize)) {
+            // Single face, or the active delegate cannot take a dynamic batch: run one by one
+            for (int i = 0; i < batchSize; i++) {
+                float[] embedding = getFaceEmbedding(sources.get(i), faceBoxes.get(i));
+                if (embedding == null) {
+                    return null;
+                }
+                embeddings.add(embedding);
+            }
+            return embeddings;
+        }
+
+        ensureBatchBuffers(batchSize);
+        batchInputBuffer.rewind();
+        for (int i = 0; i < batchSize; i++) {
+            Bitmap source = sources.get(i);
+            if (!clipToFrame(faceBoxes.get(i), source.getWidth(), source.getHeight())) {
+                return null;
+            }
+            writeBitmapRegion(source, roiRect, batchInputBuffer);
+        }
+        batchInputBuffer.rewind();
+        batchOutputBuffer.rewind();
+
+        try {
+            tflite.run(batchInputBuffer, batchOutputBuffer);
+        } catch (Exception e) {
+            Log.e(TAG, "Error running batched TFLite inference: " + e.getMessage(), e);
+            return null;
+        }
+
+        batchOutputBuffer.rewind();
+        for (int i = 0; i < batchSize; i++) {
+            float[] embedding = new float[outputEmbeddingSize];
+            readEmbedding(batchOutputBuffer, embedding);
+            embeddings.add(embedding);
+        }
+        return embeddings;
+    }
+
+    /**
+     * Resizes the interpreter's batch dimension if it differs from the current one.
+     *
+     * @return false if the resize failed; batch size 1 is then restored where possible.
+     */
+    private boolean resizeBatch(int batchSize) {
+        if (batchSize != 1 && !batch.isBatchingSupported()) {
+            return false; // Already known, run serially
+        }
+        if (batch.resize(batchSize)) {
+            return true;
+        }
+        Log.w(TAG, "Could not resize interpreter to batch " + batchSize
+                + (batch.getCurrentSize() == 1 ? ", back at batch 1: " : ", batch 1 not restored: ")
+                + batch.getLastError().getMessage());
+        return false;
+    }
+
+    private void resizeInterpreter(int batchSize) {
+        tflite.resizeInput(0, new int[]{batchSize, inputImageHeight, inputImageWidth, 3});
+        tflite.allocateTensors();
+    }
+
+    private void ensureBatchBuffers(int batchSize) {
+        if (batchBuffersSize == batchSize) {
+            return;
+        }
+        // The interpreter requires buffers of exactly the tensor size, so these are per batch size
+        batchInputBuffer = ByteBuffer.allocateDirect(batchSize * inputBuffer.capacity());
+        batchInputBuffer.order(ByteOrder.nativeOrder());
+        batchOutputBuffer = ByteBuffer.allocateDirect(batchSize * outputBuffer.capacity());
+        batchOutputBuffer.order(ByteOrder.nativeOrder());
+        batchBuffersSize = batchSize;
+    }
+
+    public synchronized void close() {
         if (tflite != null) {
-            tflite.close();
+            loadedInterpreter.close(); // Closes the interpreter, then its delegate
             tflite = null; // Set to null after closing
             Log.d(TAG, "TFLite Interpreter closed.");
         }
@@ -112,16 +496,13 @@ public class FaceRecognitionHelper {
         if (embedding1.length != embedding2.length) {
             throw new IllegalArgumentException("Embeddings must have the same dimension for comparison.");
         }
-        double sumSquaredDiff = 0;
-        for (int i = 0; i < embedding1.length; i++) {
-            sumSquaredDiff += Math.pow(embedding1[i] - embedding2[i], 2);
-        }
-        return Math.sqrt(sumSquaredDiff);
+        return EmbeddingMath.euclideanDistance(embedding1, embedding2);
     }
 
     /**
      * Calculates the Cosine Similarity between two face embeddings.
-     * Values closer to 1.0 indicate higher similarity.
+     * Values closer to 1.0 indicate higher similarity. For embeddings already L2-normalized
+     * with {@link EmbeddingMath#l2Normalize(float[])}, {@link EmbeddingMath#dot(float[], float[])} is cheaper.
      */
     public double calculateCosineSimilarity(float[] embedding1, float[] embedding2) {
         if (embedding1 == null || embedding2 == null) {
@@ -130,18 +511,6 @@ public class FaceRecognitionHelper {
         if (embedding1.length != embedding2.length) {
             throw new IllegalArgumentException("Embeddings must have the same dimension for comparison.");
         }
-        double dotProduct = 0.0;
-        double normA = 0.0; // Magnitude of embedding1
-        double normB = 0.0; // Magnitude of embedding2
-        for (int i = 0; i < embedding1.length; i++) {
-            dotProduct += embedding1[i] * embedding2[i];
-            normA += Math.pow(embedding1[i], 2);
-            normB += Math.pow(embedding2[i], 2);
-        }
-        // Avoid division by zero
-        if (normA == 0.0 || normB == 0.0) {
-            return 0.0; // Or handle as an error, depending on desired behavior
-        }
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+        return EmbeddingMath.cosineSimilarity(embedding1, embedding2); // Returns 0.0 if either vector is zero
     }
 }
\ No newline at end of file
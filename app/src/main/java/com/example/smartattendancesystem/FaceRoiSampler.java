@@ -0,0 +1,222 @@
+package com.example.smartattendancesystem;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Samples a face region of interest straight out of a frame's ARGB pixels into model input.
+ *
+ * Crop, bilinear resize and normalization happen in one pass: only the pixels inside the ROI
+ * are read, and each output pixel is written directly to the destination (model-sized ARGB,
+ * the float32 interpreter buffer, or the quantized one). This replaces the
+ * Bitmap.createBitmap crop followed by a resize into a scratch bitmap and a separate
+ * normalization loop. Sample positions use pixel centres, matching a filtered Canvas scale.
+ *
+ * Instead of a pixel array the ROI can come from a {@link RowSource}, e.g. a large bitmap read
+ * row by row: only the two source rows each output row blends are fetched, into a two-row
+ * buffer, so a big face box never has to be copied out whole.
+ *
+ * The per-column sample tables are kept between calls, so sampling does not allocate once
+ * warm. Not thread-safe: FaceRecognitionHelper owns one and calls it under its own lock.
+ */
+public class FaceRoiSampler {
+
+    private static final int OUTPUT_ARGB = 0;
+    private static final int OUTPUT_FLOAT = 1;
+    private static final int OUTPUT_QUANTIZED = 2;
+
+    /**
+     * Supplies the ROI one row at a time.
+     */
+    public interface RowSource {
+        /** Writes the ROI's {@code row}-th row, all of its pixels, to the start of {@code dst}. */
+        void readRow(int row, int[] dst);
+    }
+
+    private int[] column0 = new int[0];
+    private int[] column1 = new int[0];
+    private float[] columnWeight = new float[0];
+
+    // Two-row cache for RowSource input; rows are fetched in increasing order
+    private int[][] rowPixels = {new int[0], new int[0]};
+    private final int[] cachedRow = new int[2];
+
+    /**
+     * Samples the ROI into {@code dst} as model-sized ARGB pixels (mostly for tests and debugging).
+     *
+     * @param srcStride Pixels per row of {@code src}. The ROI must lie inside the source.
+     */
+    public void sampleArgb(int[] src, int srcStride, int left, int top, int width, int height,
+                           int dstWidth, int dstHeight, int[] dst) {
+        sample(src, srcStride, null, left, top, width, height, dstWidth, dstHeight,
+                OUTPUT_ARGB, dst, null, 0f, 1f, 1f, 0, false);
+    }
+
+    /**
+     * Samples the ROI into a float32 model input buffer as RGB triplets normalized to
+     * (channel - mean) / std, starting at the buffer's current position.
+     */
+    public void sampleNormalized(int[] src, int srcStride, int left, int top, int width, int height,
+                                 int dstWidth, int dstHeight, float mean, float std, ByteBuffer dst) {
+        sample(src, srcStride, null, left, top, width, height, dstWidth, dstHeight,
+                OUTPUT_FLOAT, null, dst, mean, std, 1f, 0, false);
+    }
+
+    /**
+     * Samples the ROI into a quantized (int8/uint8) model input buffer: the same normalization,
+     * then q = round(x / scale) + zeroPoint clamped to the type's range.
+     */
+    public void sampleQuantized(int[] src, int srcStride, int left, int top, int width, int height,
+                                int dstWidth, int dstHeight, float mean, float std,
+                                float scale, int zeroPoint, boolean unsigned, ByteBuffer dst) {
+        sample(src, srcStride, null, left, top, width, height, dstWidth, dstHeight,
+                OUTPUT_QUANTIZED, null, dst, mean, std, scale, zeroPoint, unsigned);
+    }
+
+    /**
+     * Like {@link #sampleArgb(int[], int, int, int, int, int, int, int, int[])}, reading the
+     * {@code width} x {@code height} ROI through {@code rows}.
+     */
+    public void sampleArgb(RowSource rows, int width, int height, int dstWidth, int dstHeight, int[] dst) {
+        sample(null, 0, rows, 0, 0, width, height, dstWidth, dstHeight,
+                OUTPUT_ARGB, dst, null, 0f, 1f, 1f, 0, false);
+    }
+
+    /**
+     * Like {@link #sampleNormalized(int[], int, int, int, int, int, int, int, float, float, ByteBuffer)},
+     * reading the {@code width} x {@code height} ROI through {@code rows}.
+     */
+    public void sampleNormalized(RowSource rows, int width, int height,
+                                 int dstWidth, int dstHeight, float mean, float std, ByteBuffer dst) {
+        sample(null, 0, rows, 0, 0, width, height, dstWidth, dstHeight,
+                OUTPUT_FLOAT, null, dst, mean, std, 1f, 0, false);
+    }
+
+    /**
+     * Like {@link #sampleQuantized(int[], int, int, int, int, int, int, int, float, float, float, int, boolean, ByteBuffer)},
+     * reading the {@code width} x {@code height} ROI through {@code rows}.
+     */
+    public void sampleQuantized(RowSource rows, int width, int height, int dstWidth, int dstHeight,
+                                float mean, float std, float scale, int zeroPoint, boolean unsigned, ByteBuffer dst) {
+        sample(null, 0, rows, 0, 0, width, height, dstWidth, dstHeight,
+                OUTPUT_QUANTIZED, null, dst, mean, std, scale, zeroPoint, unsigned);
+    }
+
+    // Reads from src, or from rows when src is null
+    private void sample(int[] src, int srcStride, RowSource rows, int left, int top, int width, int height,
+                        int dstWidth, int dstHeight, int output, int[] argbOut, ByteBuffer bufferOut,
+                        float mean, float std, float scale, int zeroPoint, boolean unsigned) {
+        if (width <= 0 || height <= 0 || dstWidth <= 0 || dstHeight <= 0) {
+            throw new IllegalArgumentException("ROI and output size must be positive.");
+        }
+        prepareColumns(left, width, dstWidth);
+        if (src == null) {
+            prepareRows(width);
+        }
+
+        float rowScale = (float) height / dstHeight;
+        float inverseStd = 1f / std;
+        float inverseScale = 1f / scale;
+        int minQ = unsigned ? 0 : -128;
+        int maxQ = unsigned ? 255 : 127;
+        int outIndex = 0;
+
+        for (int y = 0; y < dstHeight; y++) {
+            float sourceY = clamp((y + 0.5f) * rowScale - 0.5f, 0f, height - 1);
+            int y0 = (int) sourceY;
+            int y1 = Math.min(y0 + 1, height - 1);
+            float wy = sourceY - y0;
+            int[] src0 = src;
+            int[] src1 = src;
+            int row0 = (top + y0) * srcStride;
+            int row1 = (top + y1) * srcStride;
+            if (src == null) {
+                src0 = fetchRow(rows, y0);
+                src1 = fetchRow(rows, y1);
+                row0 = 0;
+                row1 = 0;
+            }
+
+            for (int x = 0; x < dstWidth; x++) {
+                int p00 = src0[row0 + column0[x]];
+                int p01 = src0[row0 + column1[x]];
+                int p10 = src1[row1 + column0[x]];
+                int p11 = src1[row1 + column1[x]];
+                float wx = columnWeight[x];
+
+                float r = bilinear((p00 >> 16) & 0xFF, (p01 >> 16) & 0xFF, (p10 >> 16) & 0xFF, (p11 >> 16) & 0xFF, wx, wy);
+                float g = bilinear((p00 >> 8) & 0xFF, (p01 >> 8) & 0xFF, (p10 >> 8) & 0xFF, (p11 >> 8) & 0xFF, wx, wy);
+                float b = bilinear(p00 & 0xFF, p01 & 0xFF, p10 & 0xFF, p11 & 0xFF, wx, wy);
+
+                switch (output) {
+                    case OUTPUT_FLOAT:
+                        bufferOut.putFloat((r - mean) * inverseStd);
+                        bufferOut.putFloat((g - mean) * inverseStd);
+                        bufferOut.putFloat((b - mean) * inverseStd);
+                        break;
+                    case OUTPUT_QUANTIZED:
+                        bufferOut.put(quantize((r - mean) * inverseStd, inverseScale, zeroPoint, minQ, maxQ));
+                        bufferOut.put(quantize((g - mean) * inverseStd, inverseScale, zeroPoint, minQ, maxQ));
+                        bufferOut.put(quantize((b - mean) * inverseStd, inverseScale, zeroPoint, minQ, maxQ));
+                        break;
+                    default:
+                        argbOut[outIndex++] = 0xFF000000 | (Math.round(r) << 16) | (Math.round(g) << 8) | Math.round(b);
+                        break;
+                }
+            }
+        }
+    }
+
+    // Source columns and weights depend only on the ROI's horizontal extent, so compute them once per call
+    private void prepareColumns(int left, int width, int dstWidth) {
+        if (column0.length < dstWidth) {
+            column0 = new int[dstWidth];
+            column1 = new int[dstWidth];
+            columnWeight = new float[dstWidth];
+        }
+        float columnScale = (float) width / dstWidth;
+        for (int x = 0; x < dstWidth; x++) {
+            float sourceX = clamp((x + 0.5f) * columnScale - 0.5f, 0f, width - 1);
+            int x0 = (int) sourceX;
+            column0[x] = left + x0;
+            column1[x] = left + Math.min(x0 + 1, width - 1);
+            columnWeight[x] = sourceX - x0;
+        }
+    }
+
+    private void prepareRows(int width) {
+        if (rowPixels[0].length < width) {
+            rowPixels = new int[][]{new int[width], new int[width]};
+        }
+        cachedRow[0] = -1;
+        cachedRow[1] = -1;
+    }
+
+    // Output rows only move down, so the slot holding the lower row is the one to reuse
+    private int[] fetchRow(RowSource rows, int row) {
+        if (cachedRow[0] == row) {
+            return rowPixels[0];
+        }
+        if (cachedRow[1] == row) {
+            return rowPixels[1];
+        }
+        int slot = cachedRow[0] <= cachedRow[1] ? 0 : 1;
+        rows.readRow(row, rowPixels[slot]);
+        cachedRow[slot] = row;
+        return rowPixels[slot];
+    }
+
+    private static float bilinear(int c00, int c01, int c10, int c11, float wx, float wy) {
+        float top = c00 + (c01 - c00) * wx;
+        float bottom = c10 + (c11 - c10) * wx;
+        return top + (bottom - top) * wy;
+    }
+
+    private static byte quantize(float normalized, float inverseScale, int zeroPoint, int minQ, int maxQ) {
+        int q = Math.round(normalized * inverseScale) + zeroPoint;
+        return (byte) Math.max(minQ, Math.min(maxQ, q));
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.smartattendancesystem;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A user's enrolled face as up to {@link #MAX_TEMPLATES} L2-normalized embeddings, chosen from a
+ * burst of captures to cover different poses and expressions, and matched as one reference.
+ *
+ * {@link #select} keeps the most diverse of the usable candidates: frames that disagree with the
+ * rest of the burst (a bad crop, someone else in front of the camera) are dropped, the best
+ * quality frame becomes the primary template, and each further template is the candidate least
+ * similar to those already chosen, until the set is full or the rest are near-duplicates.
+ *
+ * A probe's score is the {@link Fusion} of its similarities to the templates. With
+ * {@link Fusion#MAX}, {@link #firstAbove} stops at the first template that already clears a
+ * bound, so a confident match usually costs a single dot product.
+ *
+ * Serialized with {@link #encode}; each template is an {@link EmbeddingCodec} record, so a full
+ * set of 128-d INT8 templates takes under 700 bytes. Immutable.
+ */
+public final class FaceTemplateSet {
+
+    public enum Fusion {
+        MAX,  // Best single template: tolerant of pose changes the primary does not cover
+        MEAN  // Average over templates: steadier, but pulled down by templates far from the probe
+    }
+
+    public static final int MAX_TEMPLATES = 5;
+    public static final Fusion DEFAULT_FUSION = Fusion.MAX;
+
+    static final int FORMAT_VERSION = 1;
+    // Candidates this similar to a chosen template add nothing to the set
+    static final float DUPLICATE_SIMILARITY = 0.98f;
+    // Candidates further than this many MADs below the burst's median agreement are outliers
+    static final float OUTLIER_MADS = 3f;
+
+    private final float[] templates; // count * dim, row-major
+    private final int count;
+    private final int dim;
+
+    private FaceTemplateSet(float[] templates, int count, int dim) {
+        this.templates = templates;
+        this.count = count;
+        this.dim = dim;
+    }
+
+    /**
+     * A single-template set, for users enrolled before template sets or from one photo.
+     */
+    public static FaceTemplateSet of(float[] embedding) {
+        if (embedding == null || embedding.length == 0) {
+            throw new IllegalArgumentException("An embedding is required.");
+        }
+        return new FaceTemplateSet(EmbeddingMath.l2Normalize(embedding.clone()), 1, embedding.length);
+    }
+
+    // Templates already chosen and normalized, in order, e.g. read back from EmbeddingCache
+    static FaceTemplateSet ofTemplates(List<float[]> templates) {
+        if (templates.isEmpty() || templates.size() > MAX_TEMPLATES) {
+            throw new IllegalArgumentException("Expected 1.." + MAX_TEMPLATES + " templates, got " + templates.size());
+        }
+        int dim = templates.get(0).length;
+        float[] flat = new float[templates.size() * dim];
+        for (int t = 0; t < templates.size(); t++) {
+            if (templates.get(t).length != dim) {
+                throw new IllegalArgumentException("Templates have different dimensions.");
+            }
+            System.arraycopy(templates.get(t), 0, flat, t * dim, dim);
+        }
+        return new FaceTemplateSet(flat, templates.size(), dim);
+    }
+
+    /**
+     * Picks at most {@code maxTemplates} templates from a burst.
+     *
+     * @param candidates embeddings of one capture session, all of the same length; copied.
+     * @param qualities  weight of each candidate in (0, 1], higher for sharper, larger, more frontal faces.
+     * @throws IllegalArgumentException if there are no candidates.
+     */
+    public static FaceTemplateSet select(List<float[]> candidates, float[] qualities, int maxTemplates) {
+        if (candidates == null || candidates.isEmpty() || qualities == null || qualities.length < candidates.size()) {
+            throw new IllegalArgumentException("Need at least one candidate with a quality.");
+        }
+        maxTemplates = Math.max(1, Math.min(maxTemplates, MAX_TEMPLATES));
+        int n = candidates.size();
+        int dim = candidates.get(0).length;
+        float[][] normalized = new float[n][];
+        for (int i = 0; i < n; i++) {
+            if (candidates.get(i).length != dim) {
+                throw new IllegalArgumentException("Candidates must all have " + dim + " dimensions.");
+            }
+            normalized[i] = EmbeddingMath.l2Normalize(candidates.get(i).clone());
+        }
+
+        boolean[] inlier = inliers(normalized);
+        int primary = -1;
+        for (int i = 0; i < n; i++) {
+            if (inlier[i] && (primary < 0 || qualities[i] > qualities[primary])) {
+                primary = i;
+            }
+        }
+
+        // Greedy farthest-point selection: maxSimilarity[i] is candidate i's similarity to its closest chosen template
+        List<Integer> chosen = new ArrayList<>();
+        chosen.add(primary);
+        float[] maxSimilarity = new float[n];
+        for (int i = 0; i < n; i++) {
+            maxSimilarity[i] = EmbeddingMath.dot(normalized[i], normalized[primary]);
+        }
+        while (chosen.size() < maxTemplates) {
+            int next = -1;
+            float bestGain = 0f;
+            for (int i = 0; i < n; i++) {
+                if (!inlier[i] || chosen.contains(i) || maxSimilarity[i] >= DUPLICATE_SIMILARITY) {
+                    continue;
+                }
+                float gain = (1f - maxSimilarity[i]) * qualities[i]; // Novel and well captured
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            chosen.add(next);
+            for (int i = 0; i < n; i++) {
+                maxSimilarity[i] = Math.max(maxSimilarity[i], EmbeddingMath.dot(normalized[i], normalized[next]));
+            }
+        }
+
+        float[] templates = new float[chosen.size() * dim];
+        for (int t = 0; t < chosen.size(); t++) {
+            System.arraycopy(normalized[chosen.get(t)], 0, templates, t * dim, dim);
+        }
+        return new FaceTemplateSet(templates, chosen.size(), dim);
+    }
+
+    // Robust outlier test on each candidate's similarity to the burst's mean direction
+    private static boolean[] inliers(float[][] normalized) {
+        int n = normalized.length;
+        boolean[] inlier = new boolean[n];
+        Arrays.fill(inlier, true);
+        if (n < 3) {
+            return inlier; // Too few to tell which one is the odd one out
+        }
+        int dim = normalized[0].length;
+        float[] centroid = new float[dim];
+        for (float[] embedding : normalized) {
+            for (int d = 0; d < dim; d++) {
+                centroid[d] += embedding[d];
+            }
+        }
+        EmbeddingMath.l2Normalize(centroid);
+        float[] agreement = new float[n];
+        for (int i = 0; i < n; i++) {
+            agreement[i] = EmbeddingMath.dot(normalized[i], centroid);
+        }
+        float median = median(agreement.clone());
+        float[] deviations = new float[n];
+        for (int i = 0; i < n; i++) {
+            deviations[i] = Math.abs(agreement[i] - median);
+        }
+        float mad = Math.max(median(deviations), 1e-3f);
+        for (int i = 0; i < n; i++) {
+            inlier[i] = agreement[i] >= median - OUTLIER_MADS * mad;
+        }
+        return inlier;
+    }
+
+    private static float median(float[] values) {
+        Arrays.sort(values);
+        int middle = values.length / 2;
+        return values.length % 2 == 1 ? values[middle] : 0.5f * (values[middle - 1] + values[middle]);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getDimension() {
+        return dim;
+    }
+
+    /**
+     * @return a copy of the primary (best quality) template, for readers that take one embedding.
+     */
+    public float[] primary() {
+        return Arrays.copyOf(templates, dim);
+    }
+
+    /**
+     * @return a copy of template {@code index}; the primary is 0.
+     */
+    public float[] template(int index) {
+        return Arrays.copyOfRange(templates, index * dim, (index + 1) * dim);
+    }
+
+    /**
+     * Fused cosine similarity of an L2-normalized probe to the set.
+     */
+    public float score(float[] normalizedProbe, Fusion fusion) {
+        checkProbe(normalizedProbe);
+        float max = Float.NEGATIVE_INFINITY;
+        float sum = 0f;
+        for (int t = 0; t < count; t++) {
+            float similarity = EmbeddingMath.dot(normalizedProbe, templates, t * dim, dim);
+            max = Math.max(max, similarity);
+            sum += similarity;
+        }
+        return fusion == Fusion.MAX ? max : sum / count;
+    }
+
+    /**
+     * Fast path for {@link Fusion#MAX}: the similarity of the first template, primary first, that
+     * exceeds {@code bound}, or NaN if none does. A non-NaN result is a lower bound on the MAX
+     * score, so any decision "score > bound" can be taken without scoring the other templates.
+     */
+    public float firstAbove(float[] normalizedProbe, float bound) {
+        checkProbe(normalizedProbe);
+        for (int t = 0; t < count; t++) {
+            float similarity = EmbeddingMath.dot(normalizedProbe, templates, t * dim, dim);
+            if (similarity > bound) {
+                return similarity;
+            }
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Each template scored against the others: genuine scores from the enrollment itself, so a
+     * new user's threshold calibration has some before their first verification. Empty for a set
+     * of one. Optimistic, since the templates share one capture session.
+     */
+    public float[] leaveOneOutScores(Fusion fusion) {
+        if (count < 2) {
+            return new float[0];
+        }
+        float[] scores = new float[count];
+        for (int t = 0; t < count; t++) {
+            float[] probe = template(t);
+            float max = Float.NEGATIVE_INFINITY;
+            float sum = 0f;
+            for (int other = 0; other < count; other++) {
+                if (other != t) {
+                    float similarity = EmbeddingMath.dot(probe, templates, other * dim, dim);
+                    max = Math.max(max, similarity);
+                    sum += similarity;
+                }
+            }
+            scores[t] = fusion == Fusion.MAX ? max : sum / (count - 1);
+        }
+        return scores;
+    }
+
+    private void checkProbe(float[] probe) {
+        if (probe == null || probe.length != dim) {
+            throw new IllegalArgumentException("Probe must have " + dim + " dimensions.");
+        }
+    }
+
+    /**
+     * Layout: byte format version, byte template count, then per template a ushort length and
+     * the template's {@link EmbeddingCodec} bytes (INT8).
+     */
+    public byte[] encode() {
+        byte[][] encoded = new byte[count][];
+        int length = 2;
+        for (int t = 0; t < count; t++) {
+            encoded[t] = EmbeddingCodec.encode(template(t));
+            length += 2 + encoded[t].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put((byte) FORMAT_VERSION);
+        buffer.put((byte) count);
+        for (byte[] template : encoded) {
+            buffer.putShort((short) template.length);
+            buffer.put(template);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a complete template set of a known version.
+     */
+    public static FaceTemplateSet decode(byte[] bytes) {
+        if (bytes == null || bytes.length < 2) {
+            throw new IllegalArgumentException("Template set is too short.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int version = buffer.get() & 0xFF;
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported template set version " + version);
+        }
+        int count = buffer.get() & 0xFF;
+        if (count < 1 || count > MAX_TEMPLATES) {
+            throw new IllegalArgumentException("Template set has " + count + " templates, expected 1.." + MAX_TEMPLATES);
+        }
+        float[] templates = null;
+        int dim = 0;
+        for (int t = 0; t < count; t++) {
+            if (buffer.remaining() < 2) {
+                throw new IllegalArgumentException("Template set is truncated.");
+            }
+            int length = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < length) {
+                throw new IllegalArgumentException("Template set is truncated.");
+            }
+            byte[] encoded = new byte[length];
+            buffer.get(encoded);
+            float[] template = EmbeddingMath.l2Normalize(EmbeddingCodec.decode(encoded)); // Undo INT8 rounding of the norm
+            if (templates == null) {
+                dim = template.length;
+                templates = new float[count * dim];
+            } else if (template.length != dim) {
+                throw new IllegalArgumentException("Templates have different dimensions.");
+            }
+            System.arraycopy(template, 0, templates, t * dim, dim);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Template set has trailing bytes.");
+        }
+        return new FaceTemplateSet(templates, count, dim);
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.smartattendancesystem;
+
+import java.util.Locale;
+
+/**
+ * Decides per frame whether the face detector has to run, and follows the face in between.
+ *
+ * After each detection the face box is sampled into a small luma template. On the next
+ * {@code detectInterval - 1} frames the box is propagated by matching that template (zero-mean
+ * normalized cross-correlation, coarse grid search refined to one pixel) in a window around the
+ * last position, which costs a few thousand pixel reads instead of a detector pass. A weak match
+ * counts as track loss and forces a detection on the next frame.
+ *
+ * Detections also report whether the face is still the same person: ML Kit's tracking ID when
+ * the detector provides one, box overlap otherwise. Callers use that to keep or drop per-face
+ * state (fused embeddings, liveness) across frames.
+ *
+ * Not thread-safe: only one frame is in the pipeline at a time, and AdaptiveFrameScheduler's
+ * lock orders the accesses from the camera and main threads.
+ */
+public class FaceTrackScheduler {
+
+    public enum Action {
+        DETECT,
+        TRACK
+    }
+
+    public static final int NO_TRACKING_ID = -1;
+
+    static final int TEMPLATE_SIZE = 16;
+    private static final int SEARCH_CELLS = 4;              // Search +/- 4 template cells, a quarter of the box
+    private static final float SAME_FACE_MIN_OVERLAP = 0.3f; // IoU fallback when no tracking ID is reported
+
+    private final int detectInterval;
+    private final float minMatchScore;
+
+    private final float[] template = new float[TEMPLATE_SIZE * TEMPLATE_SIZE]; // Zero-mean luma
+    private final float[] candidate = new float[TEMPLATE_SIZE * TEMPLATE_SIZE];
+    private float templateNorm = 0f;
+
+    private boolean hasTrack = false;
+    private boolean hasIdentity = false; // A face was detected since reset; survives brief losses
+    private int trackingId = NO_TRACKING_ID;
+    private int left, top, right, bottom;
+    private int framesSinceDetection = 0;
+    private float lastMatchScore = 0f;
+
+    private long detections = 0;
+    private long trackedFrames = 0;
+    private long trackLosses = 0;
+    private long identityChanges = 0;
+
+    /**
+     * @param detectInterval Run the detector at least every this many frames (1 = every frame).
+     * @param minMatchScore  Template correlation below which the track counts as lost, in (0, 1).
+     */
+    public FaceTrackScheduler(int detectInterval, float minMatchScore) {
+        if (detectInterval < 1) {
+            throw new IllegalArgumentException("detectInterval must be at least 1.");
+        }
+        this.detectInterval = detectInterval;
+        this.minMatchScore = minMatchScore;
+    }
+
+    /**
+     * @param needsDetection True when this frame needs detector output regardless of the track,
+     *                       e.g. eye-open probabilities for the liveness check.
+     */
+    public Action nextAction(boolean needsDetection) {
+        if (!hasTrack || needsDetection || framesSinceDetection + 1 >= detectInterval) {
+            return Action.DETECT;
+        }
+        return Action.TRACK;
+    }
+
+    /**
+     * Records a detector result and resamples the template from the same frame.
+     *
+     * @param id ML Kit tracking ID, or {@link #NO_TRACKING_ID} if the detector did not report one.
+     * @return true if this is a different face from the last detected one (or the first face).
+     */
+    public boolean onDetected(int id, int boxLeft, int boxTop, int boxRight, int boxBottom,
+                              int[] argb, int frameWidth, int frameHeight) {
+        boolean sameFace = hasIdentity && (id != NO_TRACKING_ID && trackingId != NO_TRACKING_ID
+                ? id == trackingId
+                : overlap(boxLeft, boxTop, boxRight, boxBottom) >= SAME_FACE_MIN_OVERLAP);
+        if (hasIdentity && !sameFace) {
+            identityChanges++;
+        }
+
+        hasTrack = true;
+        hasIdentity = true;
+        trackingId = id;
+        left = boxLeft;
+        top = boxTop;
+        right = boxRight;
+        bottom = boxBottom;
+        framesSinceDetection = 0;
+        detections++;
+        templateNorm = sample(argb, frameWidth, frameHeight, left, top, template);
+        return !sameFace;
+    }
+
+    /**
+     * Called when the detector found no face: the track ends, but the next detection is still
+     * compared with the last face.
+     */
+    public void onFaceLost() {
+        if (hasTrack) {
+            trackLosses++;
+        }
+        hasTrack = false;
+    }
+
+    /**
+     * Moves the tracked box to where the template matches best in this frame.
+     *
+     * @return false if the match is too weak; the track is then dropped and the next frame detects.
+     */
+    public boolean track(int[] argb, int frameWidth, int frameHeight) {
+        if (!hasTrack) {
+            return false;
+        }
+        framesSinceDetection++;
+        if (templateNorm <= 0f) {
+            // Flat template, nothing to lock onto
+            onFaceLost();
+            return false;
+        }
+
+        int width = right - left;
+        int step = Math.max(1, width / TEMPLATE_SIZE);
+        int bestX = left;
+        int bestY = top;
+        float bestScore = -1f;
+        for (int dy = -SEARCH_CELLS; dy <= SEARCH_CELLS; dy++) {
+            for (int dx = -SEARCH_CELLS; dx <= SEARCH_CELLS; dx++) {
+                int x = left + dx * step;
+                int y = top + dy * step;
+                float score = score(argb, frameWidth, frameHeight, x, y);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+        }
+        // Refine around the best cell, halving the step down to one pixel
+        while (step > 1) {
+            step /= 2;
+            int centerX = bestX;
+            int centerY = bestY;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx == 0 && dy == 0) {
+                        continue;
+                    }
+                    int x = centerX + dx * step;
+                    int y = centerY + dy * step;
+                    float score = score(argb, frameWidth, frameHeight, x, y);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestX = x;
+                        bestY = y;
+                    }
+                }
+            }
+        }
+
+        lastMatchScore = bestScore;
+        if (bestScore < minMatchScore) {
+            onFaceLost();
+            return false;
+        }
+        int height = bottom - top;
+        left = bestX;
+        top = bestY;
+        right = bestX + width;
+        bottom = bestY + height;
+        trackedFrames++;
+        return true;
+    }
+
+    // Correlation of the template with the box placed at (x, y)
+    private float score(int[] argb, int frameWidth, int frameHeight, int x, int y) {
+        float norm = sample(argb, frameWidth, frameHeight, x, y, candidate);
+        if (norm <= 0f) {
+            return 0f;
+        }
+        float dot = 0f;
+        for (int i = 0; i < template.length; i++) {
+            dot += template[i] * candidate[i];
+        }
+        return dot / (templateNorm * norm);
+    }
+
+    /**
+     * Samples the current-size box at (x, y) into TEMPLATE_SIZE^2 zero-mean luma values, clamping
+     * to the frame. Returns the L2 norm of the result.
+     */
+    private float sample(int[] argb, int frameWidth, int frameHeight, int x, int y, float[] out) {
+        int width = Math.max(1, right - left);
+        int height = Math.max(1, bottom - top);
+        float sum = 0f;
+        for (int ty = 0; ty < TEMPLATE_SIZE; ty++) {
+            int py = clamp(y + (2 * ty + 1) * height / (2 * TEMPLATE_SIZE), frameHeight);
+            int row = py * frameWidth;
+            for (int tx = 0; tx < TEMPLATE_SIZE; tx++) {
+                int px = clamp(x + (2 * tx + 1) * width / (2 * TEMPLATE_SIZE), frameWidth);
+                int pixel = argb[row + px];
+                float luma = (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+                out[ty * TEMPLATE_SIZE + tx] = luma;
+                sum += luma;
+            }
+        }
+        float mean = sum / out.length;
+        float sumSquares = 0f;
+        for (int i = 0; i < out.length; i++) {
+            out[i] -= mean;
+            sumSquares += out[i] * out[i];
+        }
+        return (float) Math.sqrt(sumSquares);
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : (value >= size ? size - 1 : value);
+    }
+
+    // Intersection over union of the given box with the tracked one
+    private float overlap(int boxLeft, int boxTop, int boxRight, int boxBottom) {
+        int intersectWidth = Math.min(right, boxRight) - Math.max(left, boxLeft);
+        int intersectHeight = Math.min(bottom, boxBottom) - Math.max(top, boxTop);
+        if (intersectWidth <= 0 || intersectHeight <= 0) {
+            return 0f;
+        }
+        float intersection = (float) intersectWidth * intersectHeight;
+        float union = (float) (right - left) * (bottom - top)
+                + (float) (boxRight - boxLeft) * (boxBottom - boxTop) - intersection;
+        return intersection / union;
+    }
+
+    public void reset() {
+        hasTrack = false;
+        hasIdentity = false;
+        trackingId = NO_TRACKING_ID;
+        framesSinceDetection = 0;
+        lastMatchScore = 0f;
+    }
+
+    public boolean hasTrack() {
+        return hasTrack;
+    }
+
+    public int getTrackingId() {
+        return trackingId;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    public float getLastMatchScore() {
+        return lastMatchScore;
+    }
+
+    public String describe() {
+        return String.format(Locale.US, "tracker: detections=%d tracked=%d losses=%d identity changes=%d",
+                detections, trackedFrames, trackLosses, identityChanges);
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.smartattendancesystem;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The app's {@link UploadQueue}: uploads to Firebase Storage and writes the download URLs to
+ * Firestore, merged into the named documents. Screens enqueue an image and carry on; the upload
+ * survives leaving the screen and the process, and is retried when the network comes back.
+ *
+ * Uploads belong to the account signed in when they are queued, and wait while another account
+ * is signed in, so they never run under someone else's permissions.
+ *
+ * Observers are called on the queue's thread, so activities post to the UI thread themselves.
+ */
+public final class FirebaseUploadQueue {
+
+    private static final String TAG = "FirebaseUploadQueue";
+    private static final String QUEUE_DIRECTORY = "upload_queue";
+    private static final long BASE_BACKOFF_MILLIS = 2_000;
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60_000;
+    private static final int MAX_ATTEMPTS = 8;
+
+    private static final ScheduledExecutorService queueExecutor = Executors.newSingleThreadScheduledExecutor();
+    // Compresses and copies images for enqueue, off the callers' main thread
+    private static final ExecutorService stagingExecutor = Executors.newSingleThreadExecutor();
+
+    private static UploadQueue instance;
+    private static boolean watchingNetwork = false;
+
+    private FirebaseUploadQueue() {
+    }
+
+    /**
+     * @return the shared queue, or null if its directory cannot be used; enqueue helpers then log and drop the upload.
+     */
+    public static synchronized UploadQueue get(Context context) {
+        if (instance != null) {
+            return instance;
+        }
+        try {
+            File directory = new File(context.getApplicationContext().getFilesDir(), QUEUE_DIRECTORY);
+            UploadQueue queue = new UploadQueue(directory, new Storage(), new Metadata(), FirebaseUploadQueue::currentAccount,
+                    queueExecutor, BASE_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS, MAX_ATTEMPTS);
+            // Runs the uploads parked for an account as soon as it signs back in
+            FirebaseAuth.getInstance().addAuthStateListener(auth -> queue.accountChanged());
+            instance = queue;
+        } catch (IOException e) {
+            Log.e(TAG, "Upload queue unavailable: " + e.getMessage(), e);
+        }
+        return instance;
+    }
+
+    /**
+     * Resumes uploads left over from an earlier run and retries waiting ones whenever a network
+     * becomes available. Safe to call more than once.
+     */
+    public static void start(Context context) {
+        Context appContext = context.getApplicationContext();
+        stagingExecutor.execute(() -> {
+            UploadQueue queue = get(appContext);
+            if (queue == null) {
+                return;
+            }
+            queue.resume();
+            watchNetwork(appContext, queue);
+        });
+    }
+
+    private static String currentAccount() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        return user != null ? user.getUid() : null;
+    }
+
+    private static synchronized void watchNetwork(Context context, UploadQueue queue) {
+        if (watchingNetwork) {
+            return;
+        }
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return;
+        }
+        connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                if (queue.getPendingCount() > 0) {
+                    Log.d(TAG, "Network available, retrying " + queue.getPendingCount() + " pending uploads.");
+                    queue.retryNow();
+                }
+            }
+        });
+        watchingNetwork = true;
+    }
+
+    /**
+     * Compresses {@code bitmap} for {@code target} and queues it for upload to {@code basePath}
+     * plus the extension of the format chosen, with its download URL going to {@code fields} of
+     * {@code document} (a Firestore path such as {@code users/<uid>}), if any. Returns at once.
+     *
+     * @param recycle true to hand the bitmap over; it is recycled once compressed.
+     */
+    public static void enqueueImage(Context context, Bitmap bitmap, boolean recycle, ImageCompression.Target target,
+                                    String basePath, String document, String... fields) {
+        Context appContext = context.getApplicationContext();
+        String owner = currentAccount(); // Now, not once staged: the user may have signed out by then
+        stagingExecutor.execute(() -> {
+            try {
+                ImageCompressor.Compressed image = ImageCompressor.compress(bitmap, target, appContext.getCacheDir(), 0);
+                enqueueFile(appContext, image, owner, basePath, null, document, fields);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Could not queue upload to " + basePath + ": " + e.getMessage(), e);
+            } finally {
+                if (recycle && !bitmap.isRecycled()) {
+                    bitmap.recycle();
+                }
+            }
+        });
+    }
+
+    /**
+     * Streams the image at {@code uri}, e.g. a picked gallery image, at the resolution
+     * {@code target} needs and queues it like {@link #enqueueImage}. Returns at once.
+     */
+    public static void enqueueImageUri(Context context, Uri uri, ImageCompression.Target target,
+                                       String basePath, String document, String... fields) {
+        stageUri(context, uri, target, basePath, null, document, fields);
+    }
+
+    /**
+     * Like {@link #enqueueImageUri}, but stores the image in {@code directory} under the hash of
+     * its encoded bytes, so an identical image is never uploaded twice.
+     */
+    public static void enqueueImageUriByContent(Context context, Uri uri, ImageCompression.Target target,
+                                                String directory, String document, String... fields) {
+        stageUri(context, uri, target, null, directory, document, fields);
+    }
+
+    /**
+     * Queues a generated QR code, stored by content in {@code directory}, written from its
+     * modules rather than from a render so the upload is module-exact.
+     *
+     * @param modules row-major, {@code modulesPerSide} squared entries; true for dark.
+     */
+    public static void enqueueQrCodeByContent(Context context, boolean[] modules, int modulesPerSide,
+                                              String directory, String document, String... fields) {
+        Context appContext = context.getApplicationContext();
+        String owner = currentAccount();
+        stagingExecutor.execute(() -> {
+            try {
+                ImageCompressor.Compressed image = ImageCompressor.compressQrCode(modules, modulesPerSide, appContext.getCacheDir());
+                enqueueFile(appContext, image, owner, null, directory, document, fields);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Could not queue upload to " + directory + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // A null basePath names the file after its content, in contentDirectory
+    private static void stageUri(Context context, Uri uri, ImageCompression.Target target,
+                                 String basePath, String contentDirectory, String document, String... fields) {
+        Context appContext = context.getApplicationContext();
+        String owner = currentAccount();
+        stagingExecutor.execute(() -> {
+            try {
+                ImageCompressor.Compressed image = ImageCompressor.compress(appContext.getContentResolver(), uri, target, appContext.getCacheDir());
+                enqueueFile(appContext, image, owner, basePath, contentDirectory, document, fields);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Could not queue upload to " + (basePath != null ? basePath : contentDirectory) + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private static void enqueueFile(Context context, ImageCompressor.Compressed image, String owner, String basePath,
+                                    String contentDirectory, String document, String... fields) throws IOException {
+        UploadQueue queue = get(context);
+        if (queue == null) {
+            image.file.delete();
+            throw new IOException("Upload queue unavailable");
+        }
+        String id;
+        try {
+            id = basePath != null
+                    ? queue.enqueue(image.file, true, owner, basePath + image.extension, document, fields)
+                    : queue.enqueueByContent(image.file, true, owner, contentDirectory, image.extension, document, fields);
+        } catch (IOException | RuntimeException e) {
+            image.file.delete(); // Already gone if the queue took it
+            throw e;
+        }
+        Log.d(TAG, "Queued upload " + id + " to " + (basePath != null ? basePath + image.extension : contentDirectory));
+    }
+
+    private static final class Storage implements UploadQueue.RemoteStorage {
+        @Override
+        public void lookup(String path, UploadQueue.LookupCallback callback) {
+            // A download URL only exists for a stored file; any failure just means uploading it
+            FirebaseStorage.getInstance().getReference().child(path).getDownloadUrl()
+                    .addOnSuccessListener(queueExecutor, uri -> {
+                        Log.d(TAG, path + " is already stored, skipping its upload.");
+                        callback.onFound(uri.toString());
+                    })
+                    .addOnFailureListener(queueExecutor, e -> callback.onMissing());
+        }
+
+        @Override
+        public void upload(String path, File file, String contentHash, UploadQueue.UploadCallback callback) {
+            StorageReference ref = FirebaseStorage.getInstance().getReference().child(path);
+            // Staged blobs have no extension to guess the type from
+            StorageMetadata metadata = new StorageMetadata.Builder().setContentType(contentTypeOf(path)).build();
+            ref.putFile(Uri.fromFile(file), metadata)
+                    .continueWithTask(task -> {
+                        if (!task.isSuccessful()) {
+                            throw task.getException();
+                        }
+                        return ref.getDownloadUrl();
+                    })
+                    .addOnSuccessListener(queueExecutor, uri -> callback.onUploaded(uri.toString()))
+                    .addOnFailureListener(queueExecutor, e -> {
+                        Log.w(TAG, "Upload to " + path + " failed: " + e.getMessage());
+                        callback.onFailed(e, isRetryable(e));
+                    });
+        }
+
+        private static String contentTypeOf(String path) {
+            if (path.endsWith(".webp")) {
+                return "image/webp";
+            } else if (path.endsWith(".png")) {
+                return "image/png";
+            } else if (path.endsWith(".jpg")) {
+                return "image/jpeg";
+            }
+            return "application/octet-stream";
+        }
+
+        // Errors that come back on every retry; anything else may be the network
+        private static boolean isRetryable(Exception e) {
+            if (!(e instanceof StorageException)) {
+                return true;
+            }
+            switch (((StorageException) e).getErrorCode()) {
+                case StorageException.ERROR_NOT_AUTHORIZED:
+                case StorageException.ERROR_BUCKET_NOT_FOUND:
+                case StorageException.ERROR_PROJECT_NOT_FOUND:
+                case StorageException.ERROR_QUOTA_EXCEEDED:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    private static final class Metadata implements UploadQueue.MetadataStore {
+        @Override
+        public void write(Map<String, Map<String, String>> fieldsByDocument, UploadQueue.WriteCallback callback) {
+            FirebaseFirestore db = FirebaseFirestore.getInstance();
+            WriteBatch batch = db.batch();
+            for (Map.Entry<String, Map<String, String>> document : fieldsByDocument.entrySet()) {
+                Map<String, Object> fields = new HashMap<>(document.getValue());
+                batch.set(db.document(document.getKey()), fields, SetOptions.merge());
+            }
+            batch.commit()
+                    .addOnSuccessListener(queueExecutor, aVoid -> {
+                        Log.d(TAG, "Saved download URLs to " + fieldsByDocument.keySet());
+                        callback.onWritten();
+                    })
+                    .addOnFailureListener(queueExecutor, e -> {
+                        Log.w(TAG, "Could not save download URLs: " + e.getMessage());
+                        callback.onFailed(e, isRetryable(e));
+                    });
+        }
+
+        // Errors that come back on every retry; anything else may be the network or a busy backend
+        private static boolean isRetryable(Exception e) {
+            if (!(e instanceof FirebaseFirestoreException)) {
+                return true;
+            }
+            switch (((FirebaseFirestoreException) e).getCode()) {
+                case PERMISSION_DENIED:
+                case UNAUTHENTICATED:
+                case NOT_FOUND:
+                case INVALID_ARGUMENT:
+                case FAILED_PRECONDITION:
+                case OUT_OF_RANGE:
+                case UNIMPLEMENTED:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.smartattendancesystem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A chain of processing stages (detect, quality check, embed, compare, ...) for face frames or photos.
+ *
+ * Each stage runs on the Executor it was added with (a worker thread, or the main thread for
+ * UI work) and handles one item at a time. Between stages sits a bounded queue that drops its
+ * oldest item when full, so a slow stage sheds stale frames instead of building a backlog.
+ * {@link #cancel()} stops the pipeline for good, for example once verification has navigated
+ * away, and {@link #clear()} only discards what is queued. Every stage keeps a
+ * {@link LatencyHistogram} of its processing time.
+ *
+ * The listener hears about every submitted item exactly once, whether it completed, was stopped
+ * by a stage, dropped, cancelled or failed. Callers release per-item resources there. It is
+ * called on whichever thread the item ended on.
+ */
+public class FramePipeline<T> {
+
+    public enum Outcome {
+        COMPLETED, // Passed the last stage
+        STOPPED,   // A stage decided not to pass it on
+        DROPPED,   // Pushed out of a full queue by a newer item, or cleared
+        CANCELLED, // The pipeline was cancelled
+        FAILED     // A stage threw
+    }
+
+    public interface Step<T> {
+        /**
+         * @return true to pass the item to the next stage, false to stop it here.
+         */
+        boolean process(T item) throws Exception;
+    }
+
+    /**
+     * A stage whose work finishes later, e.g. an ML Kit Task. The stage takes no further items
+     * until the handoff is used.
+     */
+    public interface AsyncStep<T> {
+        void process(T item, Handoff handoff);
+    }
+
+    /**
+     * Completes an async stage; exactly one of the methods must be called, from any thread.
+     */
+    public interface Handoff {
+        void pass();
+
+        void stop();
+
+        void fail(Throwable error);
+    }
+
+    public interface Listener<T> {
+        void onFinished(T item, Outcome outcome, Throwable error);
+    }
+
+    private final String name;
+    private final Listener<T> listener;
+    private final List<Stage> stages = new ArrayList<>();
+    private volatile boolean cancelled = false;
+
+    public FramePipeline(String name, Listener<T> listener) {
+        this.name = name;
+        this.listener = listener;
+    }
+
+    public FramePipeline<T> addStage(String stageName, Executor executor, int capacity, Step<T> step) {
+        return addStage(new Stage(stageName, executor, capacity, step, null));
+    }
+
+    public FramePipeline<T> addAsyncStage(String stageName, Executor executor, int capacity, AsyncStep<T> step) {
+        return addStage(new Stage(stageName, executor, capacity, null, step));
+    }
+
+    private FramePipeline<T> addStage(Stage stage) {
+        if (stage.capacity < 1) {
+            throw new IllegalArgumentException("Stage capacity must be at least 1.");
+        }
+        if (!stages.isEmpty()) {
+            stages.get(stages.size() - 1).next = stage;
+        }
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Queues an item at the first stage. Stages must all be added before the first submit.
+     *
+     * @return false if the pipeline is cancelled; the item is then reported as CANCELLED.
+     */
+    public boolean submit(T item) {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("Pipeline " + name + " has no stages.");
+        }
+        if (cancelled) {
+            finish(item, Outcome.CANCELLED, null);
+            return false;
+        }
+        stages.get(0).offer(item);
+        return true;
+    }
+
+    /**
+     * Discards queued items. Items a stage is working on run to the end of that stage.
+     */
+    public void clear() {
+        for (Stage stage : stages) {
+            stage.drain(Outcome.DROPPED);
+        }
+    }
+
+    /**
+     * Stops the pipeline permanently: queued items are reported CANCELLED, items a stage is
+     * working on are cancelled when that stage returns, and later submits are refused.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Stage stage : stages) {
+            stage.drain(Outcome.CANCELLED);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the stage's processing-time histogram, or null if there is no such stage.
+     */
+    public LatencyHistogram getLatency(String stageName) {
+        for (Stage stage : stages) {
+            if (stage.name.equals(stageName)) {
+                return stage.latency;
+            }
+        }
+        return null;
+    }
+
+    public String describe() {
+        StringBuilder builder = new StringBuilder(name).append(" pipeline:");
+        for (Stage stage : stages) {
+            builder.append(' ').append(stage.name).append("[").append(stage.latency.describe())
+                    .append(" dropped=").append(stage.getDropped()).append("]");
+        }
+        return builder.toString();
+    }
+
+    private void finish(T item, Outcome outcome, Throwable error) {
+        if (listener != null) {
+            listener.onFinished(item, outcome, error);
+        }
+    }
+
+    private final class Stage {
+        final String name;
+        final Executor executor;
+        final int capacity;
+        final Step<T> step;
+        final AsyncStep<T> asyncStep;
+        final LatencyHistogram latency = new LatencyHistogram();
+        Stage next;
+
+        // Guarded by this stage
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private boolean busy = false; // A drain task is scheduled or an item is being processed
+        private long dropped = 0;
+
+        Stage(String name, Executor executor, int capacity, Step<T> step, AsyncStep<T> asyncStep) {
+            this.name = name;
+            this.executor = executor;
+            this.capacity = capacity;
+            this.step = step;
+            this.asyncStep = asyncStep;
+        }
+
+        void offer(T item) {
+            T evicted = null;
+            boolean schedule = false;
+            synchronized (this) {
+                if (queue.size() >= capacity) {
+                    evicted = queue.pollFirst();
+                    dropped++;
+                }
+                queue.addLast(item);
+                if (!busy) {
+                    busy = true;
+                    schedule = true;
+                }
+            }
+            if (evicted != null) {
+                finish(evicted, Outcome.DROPPED, null);
+            }
+            if (schedule) {
+                schedule();
+            }
+        }
+
+        void drain(Outcome outcome) {
+            List<T> drained;
+            synchronized (this) {
+                drained = new ArrayList<>(queue);
+                queue.clear();
+                if (outcome == Outcome.DROPPED) {
+                    dropped += drained.size();
+                }
+            }
+            for (T item : drained) {
+                finish(item, outcome, null);
+            }
+        }
+
+        synchronized long getDropped() {
+            return dropped;
+        }
+
+        private void runNext() {
+            T item;
+            synchronized (this) {
+                item = queue.pollFirst();
+                if (item == null) {
+                    busy = false;
+                    return;
+                }
+            }
+            if (cancelled) {
+                finish(item, Outcome.CANCELLED, null);
+                continueDraining();
+                return;
+            }
+
+            long startNanos = System.nanoTime();
+            if (asyncStep != null) {
+                runAsync(item, startNanos);
+                return;
+            }
+            try {
+                boolean passOn = step.process(item);
+                latency.record(System.nanoTime() - startNanos);
+                handOver(item, passOn);
+            } catch (Exception e) {
+                latency.record(System.nanoTime() - startNanos);
+                finish(item, Outcome.FAILED, e);
+            }
+            continueDraining();
+        }
+
+        private void runAsync(T item, long startNanos) {
+            AtomicBoolean done = new AtomicBoolean(false);
+            Handoff handoff = new Handoff() {
+                @Override
+                public void pass() {
+                    complete(true, null);
+                }
+
+                @Override
+                public void stop() {
+                    complete(false, null);
+                }
+
+                @Override
+                public void fail(Throwable error) {
+                    complete(false, error);
+                }
+
+                private void complete(boolean passOn, Throwable error) {
+                    if (!done.compareAndSet(false, true)) {
+                        throw new IllegalStateException("Stage " + name + " completed an item twice.");
+                    }
+                    latency.record(System.nanoTime() - startNanos);
+                    if (error != null) {
+                        finish(item, Outcome.FAILED, error);
+                    } else {
+                        handOver(item, passOn);
+                    }
+                    continueDraining();
+                }
+            };
+            try {
+                asyncStep.process(item, handoff);
+            } catch (Exception e) {
+                if (!done.get()) {
+                    handoff.fail(e);
+                }
+            }
+        }
+
+        private void handOver(T item, boolean passOn) {
+            if (cancelled) {
+                finish(item, Outcome.CANCELLED, null);
+            } else if (!passOn) {
+                finish(item, Outcome.STOPPED, null);
+            } else if (next == null) {
+                finish(item, Outcome.COMPLETED, null);
+            } else {
+                next.offer(item);
+            }
+        }
+
+        private void continueDraining() {
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    busy = false;
+                    return;
+                }
+            }
+            schedule();
+        }
+
+        // The owning screen may already have shut the executor down; nothing queued can run then
+        private void schedule() {
+            try {
+                executor.execute(this::runNext);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    busy = false;
+                }
+                drain(Outcome.CANCELLED);
+            }
+        }
+    }
+}
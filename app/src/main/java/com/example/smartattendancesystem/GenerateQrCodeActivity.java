@@ -18,8 +18,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
+import com.google.firebase.firestore.SetOptions;
 
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
@@ -28,7 +27,6 @@ import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
 import com.journeyapps.barcodescanner.BarcodeEncoder;
 
-import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -43,10 +41,11 @@ public class GenerateQrCodeActivity extends AppCompatActivity {
     private Button downloadQrButton, uploadQrButton;
 
     private FirebaseFirestore db;
-    private FirebaseStorage storage;
     private FirebaseAuth mAuth;
 
     private Bitmap generatedQrBitmap;
+    private boolean[] generatedQrModules; // One entry per module, margin included; what gets uploaded
+    private int generatedQrModuleCount;
 
     // Data passed from previous activity
     private String faculty, course, section, time, enrollmentId;
@@ -62,7 +61,6 @@ public class GenerateQrCodeActivity extends AppCompatActivity {
         setContentView(R.layout.activity_generate_qr_code);
 
         db = FirebaseFirestore.getInstance();
-        storage = FirebaseStorage.getInstance();
         mAuth = FirebaseAuth.getInstance();
         lecturerFirebaseUid = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
 
@@ -149,6 +147,15 @@ public class GenerateQrCodeActivity extends AppCompatActivity {
             hints.put(EncodeHintType.MARGIN, 1);
 
             BitMatrix bitMatrix = multiFormatWriter.encode(text, BarcodeFormat.QR_CODE, 500, 500, hints);
+            // A zero size gives the bare matrix, one pixel per module
+            BitMatrix modules = multiFormatWriter.encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
+            generatedQrModuleCount = modules.getWidth();
+            generatedQrModules = new boolean[generatedQrModuleCount * generatedQrModuleCount];
+            for (int y = 0; y < generatedQrModuleCount; y++) {
+                for (int x = 0; x < generatedQrModuleCount; x++) {
+                    generatedQrModules[y * generatedQrModuleCount + x] = modules.get(x, y);
+                }
+            }
 
             BarcodeEncoder barcodeEncoder = new BarcodeEncoder();
             generatedQrBitmap = barcodeEncoder.createBitmap(bitMatrix);
@@ -226,33 +233,14 @@ public class GenerateQrCodeActivity extends AppCompatActivity {
             return;
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        generatedQrBitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-        byte[] data = baos.toByteArray();
-
-        StorageReference qrCodeRef = storage.getReference()
-                .child("qrcodes/" + enrollmentId + ".png");
-
-        qrCodeRef.putBytes(data)
-                .addOnSuccessListener(taskSnapshot -> {
-                    qrCodeRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                        String downloadUrl = uri.toString();
-                        saveQrCodeMetadataToFirestore(downloadUrl);
-                    }).addOnFailureListener(e -> {
-                        Toast.makeText(GenerateQrCodeActivity.this, "Failed to get QR download URL.", Toast.LENGTH_SHORT).show();
-                        Log.e(TAG, "Failed to get QR download URL: " + e.getMessage(), e);
-                    });
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(GenerateQrCodeActivity.this, "Failed to upload QR code: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    Log.e(TAG, "Failed to upload QR code to Storage: " + e.getMessage(), e);
-                });
+        // Save the metadata first; the image follows through the upload queue, which fills in
+        // qrCodeImageUrl once it is up
+        saveQrCodeMetadataToFirestore(generatedQrModules, generatedQrModuleCount);
     }
 
-    private void saveQrCodeMetadataToFirestore(String downloadUrl) {
+    private void saveQrCodeMetadataToFirestore(boolean[] qrModules, int qrModuleCount) {
         Map<String, Object> qrCodeData = new HashMap<>();
         qrCodeData.put("enrollmentId", enrollmentId);
-        qrCodeData.put("qrCodeImageUrl", downloadUrl);
         qrCodeData.put("generatedAt", com.google.firebase.firestore.FieldValue.serverTimestamp());
         qrCodeData.put("faculty", faculty);
         qrCodeData.put("course", course);
@@ -263,9 +251,14 @@ public class GenerateQrCodeActivity extends AppCompatActivity {
         qrCodeData.put("lecturerId", lecturerId);
         qrCodeData.put("lecturerUsername", lecturerUsername);
 
+        // Merged, so an image URL already saved for the same QR code survives a re-upload
         db.collection("qrcodes").document(enrollmentId)
-                .set(qrCodeData)
+                .set(qrCodeData, SetOptions.merge())
                 .addOnSuccessListener(aVoid -> {
+                    // Uploaded at a few pixels per module rather than as the 500px render, and stored
+                    // under the hash of the PNG, so generating the same QR code again uploads nothing
+                    FirebaseUploadQueue.enqueueQrCodeByContent(this, qrModules, qrModuleCount,
+                            "qrcodes", "qrcodes/" + enrollmentId, "qrCodeImageUrl");
                     Toast.makeText(GenerateQrCodeActivity.this, "QR Code uploaded successfully!", Toast.LENGTH_SHORT).show();
                     Log.d(TAG, "QR Code metadata saved to Firestore for enrollment: " + enrollmentId);
                 })
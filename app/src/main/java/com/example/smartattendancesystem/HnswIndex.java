@@ -0,0 +1,303 @@
+package com.example.smartattendancesystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Approximate nearest-neighbour index (Hierarchical Navigable Small World graph) over
+ * L2-normalized embeddings, scored by dot product.
+ *
+ * Used by {@link FaceGalleryIndex} for cohorts large enough that a linear scan becomes the
+ * bottleneck. Vectors live in one contiguous matrix indexed by node. Removal marks the node
+ * as deleted (it still routes searches but is never returned) and the graph is rebuilt from
+ * the live nodes once more than half of it is deleted.
+ */
+public class HnswIndex {
+
+    public static class Result {
+        public final String label;
+        public final float score;
+
+        Result(String label, float score) {
+            this.label = label;
+            this.score = score;
+        }
+    }
+
+    private static final int M = 16;              // Links per node on upper levels
+    private static final int M_LEVEL0 = 2 * M;    // Links per node on the bottom level
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF_SEARCH = 64;
+    private static final double LEVEL_MULTIPLIER = 1.0 / Math.log(M);
+
+    private final int dim;
+    private final Random random = new Random(42L);
+
+    private float[] vectors = new float[0];
+    private final List<String> labels = new ArrayList<>();
+    private final List<int[][]> links = new ArrayList<>();    // links.get(node)[level] -> neighbour nodes
+    private final List<int[]> linkCounts = new ArrayList<>(); // linkCounts.get(node)[level] -> used slots
+    private boolean[] deleted = new boolean[0];
+    private final Map<String, Integer> nodeByLabel = new HashMap<>();
+    private int nodeCount = 0;
+    private int deletedCount = 0;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    // Visited marks for searchLayer, reset cheaply by bumping the stamp
+    private int[] visitedStamps = new int[0];
+    private int currentStamp = 0;
+
+    public HnswIndex(int dim) {
+        this.dim = dim;
+    }
+
+    public int size() {
+        return nodeCount - deletedCount;
+    }
+
+    /**
+     * Inserts a normalized vector under {@code label}, replacing any previous vector for it.
+     */
+    public void put(String label, float[] normalizedVector) {
+        remove(label);
+        insert(label, normalizedVector);
+    }
+
+    public boolean remove(String label) {
+        Integer node = nodeByLabel.remove(label);
+        if (node == null) {
+            return false;
+        }
+        deleted[node] = true;
+        deletedCount++;
+        if (deletedCount > nodeCount / 2) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Returns up to {@code k} live entries with the highest dot product to the query, best first.
+     */
+    public List<Result> search(float[] normalizedQuery, int k) {
+        List<Result> results = new ArrayList<>();
+        if (entryPoint < 0 || k <= 0) {
+            return results;
+        }
+        int current = entryPoint;
+        for (int level = maxLevel; level > 0; level--) {
+            current = greedyClosest(normalizedQuery, current, level);
+        }
+        List<Scored> candidates = searchLayer(normalizedQuery, current, Math.max(EF_SEARCH, k), 0);
+        for (Scored candidate : candidates) {
+            if (!deleted[candidate.node]) {
+                results.add(new Result(labels.get(candidate.node), candidate.score));
+                if (results.size() == k) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    private void insert(String label, float[] vector) {
+        int node = nodeCount++;
+        ensureCapacity(nodeCount);
+        System.arraycopy(vector, 0, vectors, node * dim, dim);
+        labels.add(label);
+        nodeByLabel.put(label, node);
+
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * LEVEL_MULTIPLIER);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[(l == 0 ? M_LEVEL0 : M) + 1]; // One spare slot before pruning
+        }
+        links.add(nodeLinks);
+        linkCounts.add(new int[level + 1]);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Scored> candidates = searchLayer(vector, current, EF_CONSTRUCTION, l);
+            int maxLinks = l == 0 ? M_LEVEL0 : M;
+            for (int i = 0; i < candidates.size() && i < maxLinks; i++) {
+                int neighbour = candidates.get(i).node;
+                addLink(node, neighbour, l);
+                addLink(neighbour, node, l);
+            }
+            current = candidates.get(0).node;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    private void addLink(int from, int to, int level) {
+        int[] fromLinks = links.get(from)[level];
+        int[] counts = linkCounts.get(from);
+        fromLinks[counts[level]++] = to;
+        int maxLinks = level == 0 ? M_LEVEL0 : M;
+        if (counts[level] > maxLinks) {
+            // Too many links: drop the one least similar to this node
+            int worstIndex = 0;
+            float worstScore = Float.MAX_VALUE;
+            for (int i = 0; i < counts[level]; i++) {
+                float score = similarity(from, fromLinks[i]);
+                if (score < worstScore) {
+                    worstScore = score;
+                    worstIndex = i;
+                }
+            }
+            fromLinks[worstIndex] = fromLinks[--counts[level]];
+        }
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentScore = score(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links.get(current)[level];
+            int count = linkCounts.get(current)[level];
+            for (int i = 0; i < count; i++) {
+                float score = score(query, neighbours[i]);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search on one level, returning up to {@code ef} nodes sorted best first.
+     */
+    private List<Scored> searchLayer(float[] query, int start, int ef, int level) {
+        currentStamp++;
+        PriorityQueue<Scored> toVisit = new PriorityQueue<>((a, b) -> Float.compare(b.score, a.score)); // Best first
+        PriorityQueue<Scored> found = new PriorityQueue<>((a, b) -> Float.compare(a.score, b.score));   // Worst first
+
+        Scored first = new Scored(start, score(query, start));
+        visitedStamps[start] = currentStamp;
+        toVisit.add(first);
+        found.add(first);
+
+        while (!toVisit.isEmpty()) {
+            Scored candidate = toVisit.poll();
+            if (found.size() >= ef && candidate.score < found.peek().score) {
+                break;
+            }
+            int[][] nodeLinks = links.get(candidate.node);
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            int[] neighbours = nodeLinks[level];
+            int count = linkCounts.get(candidate.node)[level];
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbours[i];
+                if (visitedStamps[neighbour] == currentStamp) {
+                    continue;
+                }
+                visitedStamps[neighbour] = currentStamp;
+                float score = score(query, neighbour);
+                if (found.size() < ef || score > found.peek().score) {
+                    Scored scored = new Scored(neighbour, score);
+                    toVisit.add(scored);
+                    found.add(scored);
+                    if (found.size() > ef) {
+                        found.poll();
+                    }
+                }
+            }
+        }
+
+        List<Scored> sorted = new ArrayList<>(found);
+        Collections.sort(sorted, (a, b) -> Float.compare(b.score, a.score));
+        return sorted;
+    }
+
+    private void rebuild() {
+        float[] oldVectors = vectors;
+        List<String> oldLabels = new ArrayList<>(labels);
+        boolean[] oldDeleted = deleted;
+        int oldCount = nodeCount;
+
+        vectors = new float[0];
+        labels.clear();
+        links.clear();
+        linkCounts.clear();
+        deleted = new boolean[0];
+        visitedStamps = new int[0];
+        nodeByLabel.clear();
+        nodeCount = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+
+        float[] vector = new float[dim];
+        for (int node = 0; node < oldCount; node++) {
+            if (!oldDeleted[node]) {
+                System.arraycopy(oldVectors, node * dim, vector, 0, dim);
+                insert(oldLabels.get(node), vector);
+            }
+        }
+    }
+
+    private float score(float[] query, int node) {
+        return EmbeddingMath.dot(query, vectors, node * dim, dim);
+    }
+
+    private float similarity(int a, int b) {
+        float sum = 0f;
+        int offsetA = a * dim;
+        int offsetB = b * dim;
+        for (int i = 0; i < dim; i++) {
+            sum += vectors[offsetA + i] * vectors[offsetB + i];
+        }
+        return sum;
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (nodes <= deleted.length) {
+            return;
+        }
+        int newCapacity = Math.max(nodes, Math.max(16, deleted.length * 2));
+        float[] newVectors = new float[newCapacity * dim];
+        System.arraycopy(vectors, 0, newVectors, 0, vectors.length);
+        vectors = newVectors;
+        boolean[] newDeleted = new boolean[newCapacity];
+        System.arraycopy(deleted, 0, newDeleted, 0, deleted.length);
+        deleted = newDeleted;
+        int[] newStamps = new int[newCapacity];
+        System.arraycopy(visitedStamps, 0, newStamps, 0, visitedStamps.length);
+        visitedStamps = newStamps;
+    }
+
+    private static class Scored {
+        final int node;
+        final float score;
+
+        Scored(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+}
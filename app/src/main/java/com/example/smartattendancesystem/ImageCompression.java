@@ -0,0 +1,232 @@
+package com.example.smartattendancesystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Decides how small an uploaded image can get for what it is used for, and encodes QR codes as
+ * 1-bit PNGs, which Android's own PNG encoder cannot write.
+ *
+ * Face photos only need to be sharp enough to detect and embed the face again later, so they
+ * are scaled until the smallest face {@link FaceGuide} accepts still covers the model input
+ * with some margin. Profile photos only show in small avatars. QR codes are bilevel: a
+ * generated one is written at a whole number of pixels per module, and a picked image that is
+ * essentially black and white is kept lossless at one bit per pixel. Everything else is
+ * photographic and goes lossy.
+ *
+ * Pure Java; ImageCompressor does the Android decoding and encoding.
+ */
+public final class ImageCompression {
+
+    public enum Kind {
+        FACE,
+        PHOTO,
+        QR_CODE
+    }
+
+    static final float FACE_DETAIL_MARGIN = 1.5f;        // Face pixels over model input, for re-detection and alignment
+    static final int PHOTO_MAX_SIDE = 720;
+    static final int QR_IMAGE_MAX_SIDE = 1024;           // Enough for a phone photo of a printed code to scan
+    static final int QR_PIXELS_PER_MODULE = 8;
+    static final float MIN_BILEVEL_SHARE = 0.98f;        // Pixels that must be clearly dark or light
+    private static final int DARK_MAX_LUMA = 64;
+    private static final int LIGHT_MIN_LUMA = 192;
+
+    private ImageCompression() {
+    }
+
+    /**
+     * What an image is for, and so how far it may be scaled down and how it is encoded.
+     */
+    public static final class Target {
+        public final Kind kind;
+        public final int quality; // For lossy formats
+        private final int modelInputSize;
+
+        private Target(Kind kind, int quality, int modelInputSize) {
+            this.kind = kind;
+            this.quality = quality;
+            this.modelInputSize = modelInputSize;
+        }
+
+        /**
+         * @param modelInputSize the embedding model's input side, FaceRecognitionHelper#getInputSize.
+         */
+        public static Target face(int modelInputSize) {
+            if (modelInputSize < 1) {
+                throw new IllegalArgumentException("Model input size must be positive.");
+            }
+            return new Target(Kind.FACE, 80, modelInputSize);
+        }
+
+        public static Target photo() {
+            return new Target(Kind.PHOTO, 80, 0);
+        }
+
+        public static Target qrCode() {
+            return new Target(Kind.QR_CODE, 90, 0);
+        }
+
+        /**
+         * @return the longest side a {@code width} x {@code height} image of this kind needs.
+         */
+        public int maxSide(int width, int height) {
+            switch (kind) {
+                case FACE:
+                    // The guide's smallest accepted face is this share of the frame's width,
+                    // the short side of a portrait capture
+                    float faceShare = 2f * FaceGuide.RADIUS_X * FaceGuide.MIN_FILL;
+                    float shortSide = modelInputSize * FACE_DETAIL_MARGIN / faceShare;
+                    return (int) Math.ceil(shortSide * Math.max(width, height) / Math.max(1, Math.min(width, height)));
+                case PHOTO:
+                    return PHOTO_MAX_SIDE;
+                default:
+                    return QR_IMAGE_MAX_SIDE;
+            }
+        }
+    }
+
+    /**
+     * @return the largest power-of-two {@code inSampleSize} that keeps the longest side at or
+     * above {@code maxSide}; the decoder's cheap downsampling, finished by an exact scale.
+     */
+    public static int sampleSizeFor(int width, int height, int maxSide) {
+        int longest = Math.max(width, height);
+        int sampleSize = 1;
+        while (longest / (sampleSize * 2) >= maxSide) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * @return {width, height} scaled so the longest side is at most {@code maxSide}; never enlarged.
+     */
+    public static int[] scaledSize(int width, int height, int maxSide) {
+        int longest = Math.max(width, height);
+        if (longest <= maxSide) {
+            return new int[]{width, height};
+        }
+        float scale = (float) maxSide / longest;
+        return new int[]{Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale))};
+    }
+
+    /**
+     * @return which pixels are dark if at least {@code minShare} of them are clearly dark or
+     * light, e.g. a screenshot or scan of a QR code; null for photographic content. Transparent
+     * pixels count as light.
+     */
+    public static boolean[] toBilevel(int[] argb, float minShare) {
+        boolean[] dark = new boolean[argb.length];
+        int clear = 0;
+        for (int i = 0; i < argb.length; i++) {
+            int pixel = argb[i];
+            int luma = (pixel >>> 24) < 128 ? 255
+                    : (((pixel >> 16) & 0xFF) * 299 + ((pixel >> 8) & 0xFF) * 587 + (pixel & 0xFF) * 114) / 1000;
+            dark[i] = luma < 128;
+            if (luma <= DARK_MAX_LUMA || luma >= LIGHT_MIN_LUMA) {
+                clear++;
+            }
+        }
+        return clear >= minShare * argb.length ? dark : null;
+    }
+
+    /**
+     * Encodes a bilevel image as a 1-bit grayscale PNG, each pixel drawn as a {@code scale} x
+     * {@code scale} block; for QR codes that is one module per source pixel.
+     *
+     * @param dark row-major, {@code width * height} entries.
+     */
+    public static byte[] encodeBilevelPng(boolean[] dark, int width, int height, int scale) {
+        if (width < 1 || height < 1 || scale < 1 || dark.length != width * height) {
+            throw new IllegalArgumentException("Expected a non-empty width x height image and a positive scale.");
+        }
+        int outWidth = width * scale;
+        int outHeight = height * scale;
+        int rowBytes = (outWidth + 7) / 8;
+        try {
+            ByteArrayOutputStream pixels = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(pixels, deflater)) {
+                byte[] row = new byte[1 + rowBytes]; // Leading 0: no filter
+                for (int y = 0; y < height; y++) {
+                    Arrays.fill(row, (byte) 0);
+                    for (int x = 0; x < outWidth; x++) {
+                        if (!dark[y * width + x / scale]) {
+                            row[1 + x / 8] |= (byte) (0x80 >>> (x % 8)); // 1 is white
+                        }
+                    }
+                    for (int repeat = 0; repeat < scale; repeat++) {
+                        out.write(row);
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(png);
+            out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerOut = new DataOutputStream(header);
+            headerOut.writeInt(outWidth);
+            headerOut.writeInt(outHeight);
+            headerOut.writeByte(1); // Bit depth
+            headerOut.writeByte(0); // Grayscale
+            headerOut.writeByte(0); // Deflate
+            headerOut.writeByte(0); // Adaptive filtering
+            headerOut.writeByte(0); // Not interlaced
+            writeChunk(out, "IHDR", header.toByteArray());
+            writeChunk(out, "IDAT", pixels.toByteArray());
+            writeChunk(out, "IEND", new byte[0]);
+            return png.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory PNG encoding failed", e); // Byte arrays do not throw
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Running total of upload bytes before and after compression. Thread-safe.
+     */
+    public static final class Savings {
+        private long bytesBefore;
+        private long bytesAfter;
+
+        /**
+         * @param before what the image would have cost the old way, e.g. the picked file.
+         */
+        public synchronized void add(long before, long after) {
+            bytesBefore += before;
+            bytesAfter += after;
+        }
+
+        public synchronized long getBytesBefore() {
+            return bytesBefore;
+        }
+
+        public synchronized long getBytesAfter() {
+            return bytesAfter;
+        }
+
+        public synchronized long getBytesSaved() {
+            return bytesBefore - bytesAfter;
+        }
+    }
+}
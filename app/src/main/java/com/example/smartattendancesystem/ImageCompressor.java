@@ -0,0 +1,217 @@
+package com.example.smartattendancesystem;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encodes images for upload the way {@link ImageCompression} decides: scaled to what their use
+ * needs, WebP for photographic content and 1-bit PNG for QR codes. Gallery images are streamed
+ * with {@code inSampleSize}, so a 12 MP photo is never decoded at full size. Each image's size
+ * is logged; where the original size is already known, e.g. a picked file's length, so are the
+ * bytes saved and a running total for the process. Nothing is encoded twice just to measure.
+ *
+ * Blocks on encoding and I/O, so call it off the main thread.
+ */
+final class ImageCompressor {
+
+    private static final String TAG = "ImageCompressor";
+
+    static final ImageCompression.Savings savings = new ImageCompression.Savings();
+
+    static final class Compressed {
+        final File file;
+        final String extension; // ".webp", ".jpg" or ".png"
+
+        Compressed(File file, String extension) {
+            this.file = file;
+            this.extension = extension;
+        }
+    }
+
+    private ImageCompressor() {
+    }
+
+    /**
+     * Compresses {@code source} for {@code target} into a temporary file in {@code directory}.
+     * The source is left alone, not recycled.
+     *
+     * @param originalBytes what the image cost before, for the savings report; 0 if not known.
+     */
+    static Compressed compress(Bitmap source, ImageCompression.Target target, File directory, long originalBytes) throws IOException {
+        int[] size = ImageCompression.scaledSize(source.getWidth(), source.getHeight(),
+                target.maxSide(source.getWidth(), source.getHeight()));
+        Bitmap scaled = size[0] == source.getWidth() && size[1] == source.getHeight()
+                ? source : Bitmap.createScaledBitmap(source, size[0], size[1], true);
+        try {
+            File file = File.createTempFile("upload", null, directory);
+            String extension;
+            boolean[] bilevel = null;
+            if (target.kind == ImageCompression.Kind.QR_CODE) {
+                int[] pixels = new int[size[0] * size[1]];
+                scaled.getPixels(pixels, 0, size[0], 0, 0, size[0], size[1]);
+                bilevel = ImageCompression.toBilevel(pixels, ImageCompression.MIN_BILEVEL_SHARE);
+            }
+            try (OutputStream out = new FileOutputStream(file)) {
+                if (bilevel != null) {
+                    out.write(ImageCompression.encodeBilevelPng(bilevel, size[0], size[1], 1)); // Screenshot or scan of a code
+                    extension = ".png";
+                } else if (scaled.compress(webpLossy(), target.quality, out)) {
+                    extension = ".webp";
+                } else {
+                    extension = ".jpg"; // No WebP encoder on this device
+                    if (!scaled.compress(Bitmap.CompressFormat.JPEG, target.quality, out)) {
+                        file.delete();
+                        throw new IOException("Could not compress image");
+                    }
+                }
+            } catch (IOException e) {
+                file.delete();
+                throw e;
+            }
+            report(target.kind, source.getWidth(), source.getHeight(), size, extension, originalBytes, file.length());
+            return new Compressed(file, extension);
+        } finally {
+            if (scaled != source) {
+                scaled.recycle();
+            }
+        }
+    }
+
+    /**
+     * Streams the image at {@code uri} at the resolution {@code target} needs and compresses it
+     * like {@link #compress}.
+     */
+    static Compressed compress(ContentResolver resolver, Uri uri, ImageCompression.Target target, File directory) throws IOException {
+        Bitmap decoded = decodeSampled(resolver, uri, target);
+        try {
+            return compress(decoded, target, directory, lengthOf(resolver, uri));
+        } finally {
+            decoded.recycle();
+        }
+    }
+
+    /**
+     * Decodes the image at {@code uri} at the smallest {@code inSampleSize} that still covers
+     * {@code target}, upright per its EXIF orientation. Also cheap enough for previews.
+     */
+    static Bitmap decodeSampled(ContentResolver resolver, Uri uri, ImageCompression.Target target) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(resolver, uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Not an image: " + uri);
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = ImageCompression.sampleSizeFor(bounds.outWidth, bounds.outHeight,
+                target.maxSide(bounds.outWidth, bounds.outHeight));
+        Bitmap decoded;
+        try (InputStream in = open(resolver, uri)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Could not decode " + uri);
+        }
+        return rotateUpright(decoded, orientationOf(resolver, uri));
+    }
+
+    /**
+     * Writes a QR code's modules, one per {@code modules} entry, at {@link ImageCompression#QR_PIXELS_PER_MODULE}.
+     */
+    static Compressed compressQrCode(boolean[] modules, int modulesPerSide, File directory) throws IOException {
+        byte[] png = ImageCompression.encodeBilevelPng(modules, modulesPerSide, modulesPerSide, ImageCompression.QR_PIXELS_PER_MODULE);
+        File file = File.createTempFile("upload", null, directory);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(png);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        int side = modulesPerSide * ImageCompression.QR_PIXELS_PER_MODULE;
+        report(ImageCompression.Kind.QR_CODE, modulesPerSide, modulesPerSide, new int[]{side, side}, ".png", 0, png.length);
+        return new Compressed(file, ".png");
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpLossy() {
+        // Before API 30 WEBP is lossy for any quality below 100
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    // before is 0 when the original size is not known
+    private static void report(ImageCompression.Kind kind, int width, int height, int[] size, String extension,
+                               long before, long after) {
+        String message = "Compressed " + kind + " " + width + "x" + height + " to " + size[0] + "x" + size[1] + " "
+                + extension + ": " + after + " bytes";
+        if (before > 0) {
+            savings.add(before, after);
+            message += " from " + before + " (" + (before - after) + " saved, " + savings.getBytesSaved() + " saved in total)";
+        }
+        Log.d(TAG, message);
+    }
+
+    private static InputStream open(ContentResolver resolver, Uri uri) throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Could not open " + uri);
+        }
+        return in;
+    }
+
+    // 0 if the provider does not say
+    private static long lengthOf(ContentResolver resolver, Uri uri) {
+        try (AssetFileDescriptor descriptor = resolver.openAssetFileDescriptor(uri, "r")) {
+            return descriptor != null ? Math.max(0, descriptor.getLength()) : 0;
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static int orientationOf(ContentResolver resolver, Uri uri) {
+        try (InputStream in = open(resolver, uri)) {
+            return new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException | RuntimeException e) {
+            return ExifInterface.ORIENTATION_NORMAL; // PNGs and the like carry no EXIF
+        }
+    }
+
+    // Takes over the bitmap; decoding drops EXIF, so the rotation has to be applied to the pixels
+    private static Bitmap rotateUpright(Bitmap bitmap, int orientation) {
+        int degrees;
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                degrees = 90;
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                degrees = 180;
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                degrees = 270;
+                break;
+            default:
+                return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postRotate(degrees);
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) {
+            bitmap.recycle();
+        }
+        return rotated;
+    }
+}
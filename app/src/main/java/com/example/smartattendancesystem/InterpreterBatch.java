@@ -0,0 +1,72 @@
+package com.example.smartattendancesystem;
+
+/**
+ * Tracks the batch dimension of an interpreter's input and resizes it only when a different
+ * batch size is asked for. When a resize to N > 1 fails (some delegates cannot take a dynamic
+ * batch) the interpreter is put back to batch 1, so single-face inference keeps working, and
+ * batching is not tried again. The resize itself is passed in so tests can make it fail.
+ *
+ * Not thread-safe; FaceRecognitionHelper only calls it under its own lock.
+ */
+final class InterpreterBatch {
+
+    interface Resizer {
+        /** Resizes the input to {@code batchSize} and reallocates the tensors. */
+        void resize(int batchSize) throws Exception;
+    }
+
+    private static final int UNKNOWN = -1; // A restore to batch 1 failed as well
+
+    private final Resizer resizer;
+    private int currentSize = 1;
+    private boolean batchingUnsupported = false;
+    private Exception lastError;
+
+    InterpreterBatch(Resizer resizer) {
+        this.resizer = resizer;
+    }
+
+    /**
+     * @return true if the input now has {@code batchSize} rows. On false the input is back at
+     *         batch 1 if that could be restored, and {@link #getLastError()} says why.
+     */
+    boolean resize(int batchSize) {
+        if (batchSize == currentSize) {
+            return true;
+        }
+        if (batchSize != 1 && batchingUnsupported) {
+            return false;
+        }
+        try {
+            resizer.resize(batchSize);
+            currentSize = batchSize;
+            return true;
+        } catch (Exception e) {
+            lastError = e;
+        }
+        currentSize = UNKNOWN; // Retried on the next call unless restored below
+        if (batchSize != 1) {
+            batchingUnsupported = true;
+            // The failed call may have left the input half-resized, so batch 1 is set again
+            try {
+                resizer.resize(1);
+                currentSize = 1;
+            } catch (Exception e) {
+                lastError = e;
+            }
+        }
+        return false;
+    }
+
+    int getCurrentSize() {
+        return currentSize;
+    }
+
+    boolean isBatchingSupported() {
+        return !batchingUnsupported;
+    }
+
+    Exception getLastError() {
+        return lastError;
+    }
+}
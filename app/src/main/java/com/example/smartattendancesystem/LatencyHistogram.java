@@ -0,0 +1,87 @@
+package com.example.smartattendancesystem;
+
+import java.util.Locale;
+
+/**
+ * Fixed-size latency histogram with power-of-two buckets from 0.125 ms to about 4 s.
+ *
+ * Recording is O(1) and allocation-free; percentiles are read back as the upper edge of the
+ * bucket they fall in, which is precise enough to see which pipeline stage dominates.
+ * Thread-safe: stages record from their own threads while the analyzer logs.
+ */
+public class LatencyHistogram {
+
+    private static final long SMALLEST_BUCKET_NANOS = 125_000L; // 0.125 ms
+    static final int BUCKETS = 16;                              // Last bucket is open-ended
+
+    private final long[] counts = new long[BUCKETS];
+    private long total = 0;
+    private long sumNanos = 0;
+    private long maxNanos = 0;
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[bucketOf(nanos)]++;
+        total++;
+        sumNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    static int bucketOf(long nanos) {
+        int bucket = 0;
+        long upper = SMALLEST_BUCKET_NANOS;
+        while (nanos > upper && bucket < BUCKETS - 1) {
+            upper <<= 1;
+            bucket++;
+        }
+        return bucket;
+    }
+
+    // Upper edge of a bucket; the open-ended last bucket reports the largest value seen
+    private long upperEdgeNanos(int bucket) {
+        return bucket == BUCKETS - 1 ? maxNanos : SMALLEST_BUCKET_NANOS << bucket;
+    }
+
+    /**
+     * @param fraction e.g. 0.5 for the median or 0.99 for the tail.
+     * @return the latency in ms at or below which that fraction of samples fell, 0 if empty.
+     */
+    public synchronized float percentileMillis(double fraction) {
+        if (total == 0) {
+            return 0f;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(upperEdgeNanos(bucket), maxNanos) / 1_000_000f;
+            }
+        }
+        return maxNanos / 1_000_000f;
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    public synchronized float getMeanMillis() {
+        return total == 0 ? 0f : sumNanos / (float) total / 1_000_000f;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        total = 0;
+        sumNanos = 0;
+        maxNanos = 0;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US, "n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms",
+                total, getMeanMillis(), percentileMillis(0.5), percentileMillis(0.9), percentileMillis(0.99));
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.smartattendancesystem;
 
+import android.app.AlertDialog;
 import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
@@ -20,14 +21,21 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class LecturerChooseClassActivity extends AppCompatActivity {
 
     private static final String TAG = "LecturerChooseClass";
+    private static final int REQUEST_IDENTIFY_FACE = 100;
+    private static final int IDENTIFY_CANDIDATES = 3;
 
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
@@ -38,6 +46,15 @@ public class LecturerChooseClassActivity extends AppCompatActivity {
     private EnrolledCourseAdapter adapter;
     private List<EnrolledCourse> enrolledCoursesList;
 
+    // "Who is this?": the face is searched in the gallery of the class whose button was tapped.
+    // One roster is watched at a time, so students enrolling meanwhile are added to it.
+    private FaceRecognitionHelper faceRecognitionHelper; // Null if the model failed to load
+    private ExecutorService embeddingExecutorService;
+    private FaceGalleryLoader galleryLoader;
+    private ListenerRegistration rosterRegistration; // Main thread only, like the fields below
+    private String rosterKey; // Faculty and course of the watched roster
+    private FaceGalleryIndex gallery; // Null until the watched roster has loaded
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -55,11 +72,118 @@ public class LecturerChooseClassActivity extends AppCompatActivity {
         enrolledCoursesRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         enrolledCoursesRecyclerView.setAdapter(adapter);
 
+        try {
+            faceRecognitionHelper = FaceEmbeddingEngine.acquire(this); // Shared, loaded once per process
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to initialize FaceRecognitionHelper: " + e.getMessage());
+        }
+        embeddingExecutorService = Executors.newSingleThreadExecutor();
+        galleryLoader = new FaceGalleryLoader(db);
+
         setupBottomNavigation();
 
         fetchEnrolledCourses();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (rosterRegistration != null) {
+            rosterRegistration.remove();
+            rosterRegistration = null;
+        }
+        embeddingExecutorService.shutdown();
+        if (faceRecognitionHelper != null) {
+            FaceEmbeddingEngine.release(); // Shared helper stays loaded for the next screen
+        }
+    }
+
+    // Starts watching the course's roster, if not already, and captures the face to identify
+    private void identifyFace(EnrolledCourse course) {
+        if (faceRecognitionHelper == null) {
+            Toast.makeText(this, "Face recognition features not initialized.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String key = course.getFaculty() + "/" + course.getCourse();
+        if (!key.equals(rosterKey)) {
+            if (rosterRegistration != null) {
+                rosterRegistration.remove();
+            }
+            rosterKey = key;
+            gallery = null;
+            // Loads while the camera is open
+            rosterRegistration = galleryLoader.watchRoster(course.getFaculty(), course.getCourse(),
+                    faceRecognitionHelper.getEmbeddingSize(), new FaceGalleryLoader.Callback() {
+                        @Override
+                        public void onGalleryLoaded(FaceGalleryIndex loaded) {
+                            if (key.equals(rosterKey)) {
+                                gallery = loaded;
+                            }
+                        }
+
+                        @Override
+                        public void onGalleryError(String message) {
+                            if (key.equals(rosterKey)) {
+                                Toast.makeText(LecturerChooseClassActivity.this, message, Toast.LENGTH_SHORT).show();
+                                rosterRegistration.remove();
+                                rosterRegistration = null;
+                                rosterKey = null; // Tried again on the next tap
+                            }
+                        }
+                    });
+        }
+        startActivityForResult(FaceCaptureActivity.newIntent(this, 1), REQUEST_IDENTIFY_FACE);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != REQUEST_IDENTIFY_FACE || resultCode != RESULT_OK) {
+            return;
+        }
+        FaceCaptureSession session = FaceCaptureActivity.claimSession(data);
+        if (session == null) {
+            Toast.makeText(this, "Failed to capture image. Please try again.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        FaceGalleryIndex searched = gallery;
+        if (searched == null) {
+            session.release();
+            Toast.makeText(this, "Class roster is still loading. Please try again.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        FaceCaptureSession.Shot shot = session.best();
+        embeddingExecutorService.execute(() -> {
+            float[] embedding = shot.embed(faceRecognitionHelper);
+            List<FaceGalleryIndex.Match> matches = embedding != null ? searched.search(embedding, IDENTIFY_CANDIDATES) : null;
+            session.release();
+            runOnUiThread(() -> showMatches(matches));
+        });
+    }
+
+    private void showMatches(List<FaceGalleryIndex.Match> matches) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        String message;
+        if (matches == null) {
+            message = "Failed to generate face embedding.";
+        } else if (matches.isEmpty()) {
+            message = "No student of this class has enrolled a face yet.";
+        } else {
+            StringBuilder candidates = new StringBuilder("Closest enrolled students:");
+            for (FaceGalleryIndex.Match match : matches) {
+                candidates.append(String.format(Locale.US, "\n%s (similarity %.2f)", match.id, match.score));
+            }
+            message = candidates.toString();
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Who is this?")
+                .setMessage(message)
+                .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+                .show();
+    }
+
     private void setupBottomNavigation() {
         ImageButton backButton = findViewById(R.id.backButton);
         ImageButton homeButton = findViewById(R.id.homeButton);
@@ -216,6 +340,8 @@ public class LecturerChooseClassActivity extends AppCompatActivity {
                 intent.putExtra("classLocationName", course.getClassLocationName()); // NEW: Pass location name
                 startActivity(intent);
             });
+
+            holder.identifyFaceButton.setOnClickListener(v -> identifyFace(course));
         }
 
         @Override
@@ -226,11 +352,13 @@ public class LecturerChooseClassActivity extends AppCompatActivity {
         public class CourseViewHolder extends RecyclerView.ViewHolder {
             TextView courseDetailsTextView;
             Button generateQrButton;
+            Button identifyFaceButton;
 
             public CourseViewHolder(@NonNull View itemView) {
                 super(itemView);
                 courseDetailsTextView = itemView.findViewById(R.id.courseDetailsTextView);
                 generateQrButton = itemView.findViewById(R.id.generateQrButton);
+                identifyFaceButton = itemView.findViewById(R.id.identifyFaceButton);
             }
         }
     }
@@ -20,8 +20,6 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 import com.squareup.picasso.Picasso;
 
 import java.io.IOException;
@@ -32,7 +30,8 @@ public class LecturerProfileActivity extends AppCompatActivity {
 
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
-    private FirebaseStorage storage;
+    private UploadQueue uploadQueue;
+    private final UploadQueue.Observer uploadObserver = this::onUploadChanged;
 
     private EditText nameField, lecturerIdField, emailField, passwordField;
     private ImageView profileImageView;
@@ -53,7 +52,10 @@ public class LecturerProfileActivity extends AppCompatActivity {
         // Firebase
         mAuth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
-        storage = FirebaseStorage.getInstance();
+        uploadQueue = FirebaseUploadQueue.get(this);
+        if (uploadQueue != null) {
+            uploadQueue.addObserver(uploadObserver);
+        }
 
         // UI Components
         nameField = findViewById(R.id.nameField);
@@ -246,7 +248,7 @@ public class LecturerProfileActivity extends AppCompatActivity {
         if (requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null) {
             selectedImageUri = data.getData();
             try {
-                Bitmap bitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), selectedImageUri);
+                Bitmap bitmap = ImageCompressor.decodeSampled(getContentResolver(), selectedImageUri, ImageCompression.Target.photo());
                 profileImageView.setImageBitmap(bitmap);
             } catch (IOException e) {
                 Log.e(TAG, "Image load failed", e);
@@ -257,24 +259,36 @@ public class LecturerProfileActivity extends AppCompatActivity {
 
     private void uploadProfileImage(Uri imageUri) {
         String userId = mAuth.getCurrentUser().getUid();
-        StorageReference imageRef = storage.getReference().child("profile_images/" + userId + ".jpg");
-
-        imageRef.putFile(imageUri)
-                .addOnSuccessListener(taskSnapshot -> imageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                    String imageUrl = uri.toString();
-                    db.collection("users").document(userId).update("profileImageUrl", imageUrl)
-                            .addOnSuccessListener(aVoid -> {
-                                Toast.makeText(this, "Image updated!", Toast.LENGTH_SHORT).show();
-                                loadUserDetails();
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Image URL update failed", e);
-                                Toast.makeText(this, "Failed to update image URL.", Toast.LENGTH_SHORT).show();
-                            });
-                }))
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Image upload failed", e);
-                    Toast.makeText(this, "Image upload failed.", Toast.LENGTH_SHORT).show();
-                });
+        // Uploads in the background; onUploadChanged reloads the profile once the URL is saved
+        FirebaseUploadQueue.enqueueImageUri(this, imageUri, ImageCompression.Target.photo(), "profile_images/" + userId, "users/" + userId, "profileImageUrl");
+        Toast.makeText(this, "Uploading image...", Toast.LENGTH_SHORT).show();
+    }
+
+    // Called on the upload queue's thread for every upload; reacts to this user's profile image only
+    private void onUploadChanged(UploadQueue.Upload upload) {
+        if (mAuth.getCurrentUser() == null || !upload.isFinished()
+                || !upload.path.startsWith("profile_images/" + mAuth.getCurrentUser().getUid() + ".")) { // Any extension
+            return;
+        }
+        runOnUiThread(() -> {
+            if (isDestroyed()) {
+                return;
+            }
+            if (upload.state == UploadQueue.State.UPLOADED) {
+                Toast.makeText(this, "Image updated!", Toast.LENGTH_SHORT).show();
+                loadUserDetails();
+            } else {
+                Log.e(TAG, "Image upload failed: " + upload.error);
+                Toast.makeText(this, "Image upload failed.", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (uploadQueue != null) {
+            uploadQueue.removeObserver(uploadObserver);
+        }
     }
 }
@@ -0,0 +1,151 @@
+package com.example.smartattendancesystem;
+
+/**
+ * Frame-sequence liveness check, replacing the single-frame eye-open / head-angle heuristic.
+ *
+ * Fed once per analyzed frame with ML Kit's eye-open probabilities, head yaw and three landmarks,
+ * it looks for:
+ * <ul>
+ *     <li>a blink: eyes seen open, then closed, then open again;</li>
+ *     <li>head motion: the yaw range over the attempt, or</li>
+ *     <li>3D parallax: how far the nose moves relative to the eyes. The nose offset is expressed
+ *     in the eye axis' own frame and divided by the eye distance, so it is unchanged when a flat
+ *     photo is moved, rotated or scaled in front of the camera, but shifts when a real head turns.</li>
+ * </ul>
+ * The face counts as live after a blink plus either kind of motion. All state is a handful of
+ * scalars, so memory is O(1) however long the attempt runs.
+ *
+ * Not thread-safe: VerifyActivity updates it from the detector callbacks on the main thread.
+ */
+public class LivenessTracker {
+
+    public enum Challenge {
+        BLINK,
+        MOVE_HEAD,
+        DONE
+    }
+
+    private static final float EYE_OPEN = 0.6f;
+    private static final float EYE_CLOSED = 0.3f;
+    private static final float MIN_YAW_RANGE = 8f;         // Degrees
+    private static final float MIN_PARALLAX_RANGE = 0.08f; // Nose shift as a fraction of the eye distance
+    private static final float PARALLAX_SMOOTHING = 0.5f;  // EWMA weight of the newest frame, damps landmark noise
+
+    // Blink state: waiting for open eyes, then for closed eyes, then for open eyes again
+    private boolean eyesSeenOpen = false;
+    private boolean eyesSeenClosed = false;
+    private int blinkCount = 0;
+
+    private float minYaw = Float.NaN;
+    private float maxYaw = Float.NaN;
+
+    private float smoothedParallax = Float.NaN;
+    private float minParallax = Float.NaN;
+    private float maxParallax = Float.NaN;
+
+    private int frames = 0;
+
+    public void reset() {
+        eyesSeenOpen = false;
+        eyesSeenClosed = false;
+        blinkCount = 0;
+        minYaw = maxYaw = Float.NaN;
+        smoothedParallax = minParallax = maxParallax = Float.NaN;
+        frames = 0;
+    }
+
+    /**
+     * Adds one frame. Pass {@code Float.NaN} for anything the detector did not report.
+     */
+    public void update(float leftEyeOpen, float rightEyeOpen, float yaw,
+                       float leftEyeX, float leftEyeY, float rightEyeX, float rightEyeY,
+                       float noseX, float noseY) {
+        frames++;
+        updateBlink(leftEyeOpen, rightEyeOpen);
+
+        if (!Float.isNaN(yaw)) {
+            minYaw = Float.isNaN(minYaw) ? yaw : Math.min(minYaw, yaw);
+            maxYaw = Float.isNaN(maxYaw) ? yaw : Math.max(maxYaw, yaw);
+        }
+
+        float parallax = noseParallax(leftEyeX, leftEyeY, rightEyeX, rightEyeY, noseX, noseY);
+        if (!Float.isNaN(parallax)) {
+            smoothedParallax = Float.isNaN(smoothedParallax)
+                    ? parallax
+                    : smoothedParallax + PARALLAX_SMOOTHING * (parallax - smoothedParallax);
+            minParallax = Float.isNaN(minParallax) ? smoothedParallax : Math.min(minParallax, smoothedParallax);
+            maxParallax = Float.isNaN(maxParallax) ? smoothedParallax : Math.max(maxParallax, smoothedParallax);
+        }
+    }
+
+    private void updateBlink(float leftEyeOpen, float rightEyeOpen) {
+        if (Float.isNaN(leftEyeOpen) || Float.isNaN(rightEyeOpen)) {
+            return;
+        }
+        float eyesOpen = (leftEyeOpen + rightEyeOpen) / 2f;
+        if (eyesOpen >= EYE_OPEN) {
+            if (eyesSeenClosed) {
+                blinkCount++;
+                eyesSeenClosed = false;
+            }
+            eyesSeenOpen = true;
+        } else if (eyesOpen <= EYE_CLOSED && eyesSeenOpen) {
+            eyesSeenClosed = true;
+        }
+    }
+
+    // Along-eye-axis offset of the nose from the eye midpoint, in eye distances
+    private static float noseParallax(float leftEyeX, float leftEyeY, float rightEyeX, float rightEyeY,
+                                      float noseX, float noseY) {
+        if (Float.isNaN(leftEyeX) || Float.isNaN(rightEyeX) || Float.isNaN(noseX)) {
+            return Float.NaN;
+        }
+        float axisX = rightEyeX - leftEyeX;
+        float axisY = rightEyeY - leftEyeY;
+        float eyeDistanceSquared = axisX * axisX + axisY * axisY;
+        if (eyeDistanceSquared < 1f) {
+            return Float.NaN;
+        }
+        float offsetX = noseX - (leftEyeX + rightEyeX) / 2f;
+        float offsetY = noseY - (leftEyeY + rightEyeY) / 2f;
+        return (offsetX * axisX + offsetY * axisY) / eyeDistanceSquared;
+    }
+
+    public boolean hasBlinked() {
+        return blinkCount > 0;
+    }
+
+    public boolean hasMoved() {
+        return yawRange() >= MIN_YAW_RANGE || parallaxRange() >= MIN_PARALLAX_RANGE;
+    }
+
+    public boolean isLive() {
+        return hasBlinked() && hasMoved();
+    }
+
+    /**
+     * What the user still has to do, for the on-screen prompt.
+     */
+    public Challenge getPendingChallenge() {
+        if (!hasBlinked()) {
+            return Challenge.BLINK;
+        }
+        return hasMoved() ? Challenge.DONE : Challenge.MOVE_HEAD;
+    }
+
+    public float yawRange() {
+        return Float.isNaN(minYaw) ? 0f : maxYaw - minYaw;
+    }
+
+    public float parallaxRange() {
+        return Float.isNaN(minParallax) ? 0f : maxParallax - minParallax;
+    }
+
+    public int getBlinkCount() {
+        return blinkCount;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+}
@@ -1,9 +1,7 @@
 package com.example.smartattendancesystem;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.util.Log; // Import Log for debugging
 import android.view.View; // Import View for visibility control
 import android.widget.Button;
@@ -16,11 +14,6 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
-
-import java.io.ByteArrayOutputStream;
-import java.util.List; // Import List for face embedding
 
 public class LoginActivity extends AppCompatActivity {
 
@@ -32,7 +25,6 @@ public class LoginActivity extends AppCompatActivity {
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
 
-    private Bitmap capturedPhotoBitmap; // To temporarily hold the captured bitmap
     private String loggedInUserMatricOrStaffId; // To store the matric or staff ID of the logged-in user
 
     @Override
@@ -69,11 +61,8 @@ public class LoginActivity extends AppCompatActivity {
                                 String email = document.getString("email");
                                 loggedInUserMatricOrStaffId = document.getString("matricOrStaffId");
 
-                                // Check for face embedding existence
-                                List<Double> faceEmbedding = (List<Double>) document.get("faceEmbedding"); // Primary face
-                                List<Double> faceEmbeddingForLogin = (List<Double>) document.get("faceEmbeddingForLogin"); // Face used for login
-
-                                if ((faceEmbedding != null && !faceEmbedding.isEmpty()) || (faceEmbeddingForLogin != null && !faceEmbeddingForLogin.isEmpty())) {
+                                // Check for face embedding existence (primary or login face, Blob or legacy array)
+                                if (EmbeddingFields.hasAny(document)) {
                                     // User has face data, prompt them to use the face scan login
                                     showLoading(false); // Hide spinner
                                     Toast.makeText(LoginActivity.this, "This account requires 'Login with Face Scan'. Please use that button.", Toast.LENGTH_LONG).show();
@@ -130,11 +119,8 @@ public class LoginActivity extends AppCompatActivity {
                                 String email = document.getString("email");
                                 loggedInUserMatricOrStaffId = document.getString("matricOrStaffId");
 
-                                // Check for face embedding existence for face scan path
-                                List<Double> faceEmbedding = (List<Double>) document.get("faceEmbedding"); // Primary face
-                                List<Double> faceEmbeddingForLogin = (List<Double>) document.get("faceEmbeddingForLogin"); // Face used for login
-
-                                if ((faceEmbedding == null || faceEmbedding.isEmpty()) && (faceEmbeddingForLogin == null || faceEmbeddingForLogin.isEmpty())) {
+                                // Check for face embedding existence for face scan path (Blob or legacy array)
+                                if (!EmbeddingFields.hasAny(document)) {
                                     // User does NOT have face data, prompt them to use the standard login
                                     showLoading(false); // Hide spinner
                                     Toast.makeText(LoginActivity.this, "No face registered for this account. Please use the 'Login' button or register a face.", Toast.LENGTH_LONG).show();
@@ -189,29 +175,23 @@ public class LoginActivity extends AppCompatActivity {
     }
 
     private void openCamera() {
-        Intent cameraIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
-        if (cameraIntent.resolveActivity(getPackageManager()) != null) {
-            startActivityForResult(cameraIntent, 100);
-        } else {
-            showLoading(false); // Hide spinner if camera app not found
-            Toast.makeText(this, "No camera app found.", Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "No camera app found for capture.");
-        }
+        // One full-resolution frame from our own camera screen rather than the system camera's thumbnail
+        startActivityForResult(FaceCaptureActivity.newIntent(this, 1), 100);
     }
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
-        if (requestCode == 100 && resultCode == RESULT_OK && data != null && data.getExtras() != null) {
-            capturedPhotoBitmap = (Bitmap) data.getExtras().get("data");
-            if (capturedPhotoBitmap != null) {
-                // Loading continues, saveFaceImageToStorage will keep spinner visible
-                saveFaceImageToStorage(capturedPhotoBitmap);
+        if (requestCode == 100 && resultCode == RESULT_OK && data != null) {
+            String captureSessionId = data.getStringExtra(FaceCaptureActivity.EXTRA_SESSION_ID);
+            if (captureSessionId != null) {
+                // VerifyActivity embeds the captured face and uploads it in the background
+                navigateToVerify(captureSessionId);
             } else {
                 showLoading(false); // Hide spinner if image capture failed
                 Toast.makeText(this, "Failed to capture image data.", Toast.LENGTH_SHORT).show();
-                Log.e(TAG, "Captured photo bitmap is null in onActivityResult.");
+                Log.e(TAG, "Captured face session id is missing in onActivityResult.");
             }
         } else if (requestCode == 100 && resultCode == RESULT_CANCELED) {
             showLoading(false); // Hide spinner if face capture cancelled
@@ -225,68 +205,15 @@ public class LoginActivity extends AppCompatActivity {
         }
     }
 
-    private void saveFaceImageToStorage(Bitmap photoToSave) {
-        if (mAuth.getCurrentUser() == null) {
-            showLoading(false); // Hide spinner if user not logged in (shouldn't happen here)
-            Toast.makeText(this, "User not logged in to save image.", Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "saveFaceImageToStorage: Current user is null.");
-            return;
-        }
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        photoToSave.compress(Bitmap.CompressFormat.JPEG, 90, baos);
-        byte[] data = baos.toByteArray();
-
-        StorageReference storageRef = FirebaseStorage.getInstance().getReference().child("face_images_login/" + mAuth.getCurrentUser().getUid() + ".jpg");
-
-        storageRef.putBytes(data)
-                .addOnSuccessListener(taskSnapshot -> {
-                    storageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                        saveFaceImageUrlToFirestore(uri.toString(), photoToSave);
-                        Log.d(TAG, "Image uploaded to Storage. URI: " + uri.toString());
-                    }).addOnFailureListener(e -> {
-                        showLoading(false); // Hide spinner on URL retrieval failure
-                        Toast.makeText(LoginActivity.this, "Failed to get image URL from Firebase Storage: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                        Log.e(TAG, "Failed to get image URL: " + e.getMessage());
-                    });
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false); // Hide spinner on storage upload failure
-                    Toast.makeText(LoginActivity.this, "Error saving face image to storage: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "Error saving face image to storage: " + e.getMessage());
-                });
-    }
-
-    private void saveFaceImageUrlToFirestore(String faceImageUrl, Bitmap capturedPhoto) {
-        String userId = mAuth.getCurrentUser().getUid();
-        db.collection("users").document(userId)
-                .update("faceImageLoginUrl", faceImageUrl)
-                .addOnSuccessListener(aVoid -> {
-                    Toast.makeText(LoginActivity.this, "Face image captured and saved successfully.", Toast.LENGTH_SHORT).show();
-                    // Navigation will happen, so loading state can be maintained until VerifyActivity takes over
-                    navigateToVerify(capturedPhoto);
-                    Log.d(TAG, "faceImageLoginUrl updated in Firestore.");
-                    // No need to showLoading(false) here, as LoginActivity will finish
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false); // Hide spinner on Firestore update failure
-                    Toast.makeText(LoginActivity.this, "Error saving face image URL to Firestore: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "Error saving faceImageLoginUrl to Firestore: " + e.getMessage());
-                });
-    }
-
     /**
-     * Navigates to the VerifyActivity, passing the captured photo and user's matric/staff ID.
+     * Navigates to the VerifyActivity, passing the capture session (in memory, see
+     * FaceCaptureSession) and user's matric/staff ID.
      * This path is taken *only* by the "Login with Face Scan" button flow.
      */
-    private void navigateToVerify(Bitmap capturedPhoto) {
+    private void navigateToVerify(String captureSessionId) {
         Intent intent = new Intent(LoginActivity.this, VerifyActivity.class);
 
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        capturedPhoto.compress(Bitmap.CompressFormat.JPEG, 90, stream);
-        byte[] byteArray = stream.toByteArray();
-
-        intent.putExtra("LIVE_FACE_BITMAP_BYTE_ARRAY", byteArray);
+        intent.putExtra(FaceCaptureActivity.EXTRA_SESSION_ID, captureSessionId);
         intent.putExtra("USER_MATRIC_OR_STAFF_ID", loggedInUserMatricOrStaffId);
 
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TASK | Intent.FLAG_ACTIVITY_NEW_TASK);
@@ -1,8 +1,8 @@
 package com.example.smartattendancesystem;
 
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
@@ -17,25 +17,21 @@ import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 import com.squareup.picasso.Picasso;
 
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -44,10 +40,13 @@ public class ProfileActivity extends AppCompatActivity {
     private static final String TAG = "ProfileActivity";
     private static final int PICK_IMAGE_REQUEST = 1;
     private static final int CAPTURE_LOGIN_FACE_REQUEST = 2;
+    // Frames per login-face enrollment, all from one FaceCaptureActivity session; the most diverse usable ones become the user's templates
+    private static final int ENROLLMENT_SHOTS = 3;
 
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
-    private FirebaseStorage storage;
+    private UploadQueue uploadQueue;
+    private final UploadQueue.Observer uploadObserver = this::onUploadChanged;
 
     private EditText nameField, studentMatricField, emailField, passwordField;
     private ImageView profileImageView;
@@ -61,6 +60,9 @@ public class ProfileActivity extends AppCompatActivity {
     private FaceDetector faceDetector;
     private FaceRecognitionHelper faceRecognitionHelper;
     private ExecutorService mlKitExecutorService;
+    private FramePipeline<FacePhotoJob> loginFacePipeline;
+    private EnrollmentBurst<Bitmap> loginFaceBurst; // Main thread only
+    private int pendingLoginShots; // Captured photos still in loginFacePipeline; main thread only
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -70,7 +72,10 @@ public class ProfileActivity extends AppCompatActivity {
         // Initialize Firebase instances
         mAuth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
-        storage = FirebaseStorage.getInstance();
+        uploadQueue = FirebaseUploadQueue.get(this);
+        if (uploadQueue != null) {
+            uploadQueue.addObserver(uploadObserver);
+        }
 
         // Initialize ML Kit Face Detector
         FaceDetectorOptions options = new FaceDetectorOptions.Builder()
@@ -82,14 +87,15 @@ public class ProfileActivity extends AppCompatActivity {
 
         // Initialize FaceRecognitionHelper
         try {
-            faceRecognitionHelper = new FaceRecognitionHelper(this, "output_model.tflite");
-            Log.d(TAG, "FaceRecognitionHelper initialized successfully.");
+            faceRecognitionHelper = FaceEmbeddingEngine.acquire(this); // Shared, loaded once per process
+            Log.d(TAG, "FaceRecognitionHelper acquired successfully.");
         } catch (IOException e) {
             Log.e(TAG, "Failed to initialize FaceRecognitionHelper: " + e.getMessage());
             Toast.makeText(this, "Error: Face recognition model not loaded. Face capture disabled.", Toast.LENGTH_LONG).show();
         }
 
         mlKitExecutorService = Executors.newSingleThreadExecutor();
+        loginFacePipeline = buildLoginFacePipeline();
 
         // Initialize UI components
         nameField = findViewById(R.id.studentNameField);
@@ -308,13 +314,16 @@ public class ProfileActivity extends AppCompatActivity {
             Toast.makeText(this, "Face recognition features not initialized.", Toast.LENGTH_SHORT).show();
             return;
         }
-        Intent cameraIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
-        if (cameraIntent.resolveActivity(getPackageManager()) != null) {
-            startActivityForResult(cameraIntent, CAPTURE_LOGIN_FACE_REQUEST);
-        } else {
-            Toast.makeText(this, "No camera app found.", Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "No camera app found for login face capture.");
+        if (loginFaceBurst != null) {
+            Toast.makeText(this, "Still processing the last capture.", Toast.LENGTH_SHORT).show();
+            return;
         }
+        launchLoginFaceCamera();
+    }
+
+    private void launchLoginFaceCamera() {
+        // Full-resolution frames from our own camera screen rather than the system camera's thumbnail
+        startActivityForResult(FaceCaptureActivity.newIntent(this, ENROLLMENT_SHOTS), CAPTURE_LOGIN_FACE_REQUEST);
     }
 
     @Override
@@ -325,7 +334,7 @@ public class ProfileActivity extends AppCompatActivity {
                 selectedImageUri = data.getData();
                 if (selectedImageUri != null) {
                     try {
-                        Bitmap bitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), selectedImageUri);
+                        Bitmap bitmap = ImageCompressor.decodeSampled(getContentResolver(), selectedImageUri, ImageCompression.Target.photo());
                         profileImageView.setImageBitmap(bitmap);
                     } catch (IOException e) {
                         Log.e(TAG, "Error loading general profile image from gallery.", e);
@@ -333,13 +342,12 @@ public class ProfileActivity extends AppCompatActivity {
                     }
                 }
             } else if (requestCode == CAPTURE_LOGIN_FACE_REQUEST) {
-                Bundle extras = data.getExtras();
-                Bitmap capturedBitmap = (Bitmap) extras.get("data");
-                if (capturedBitmap != null) {
-                    processAndSaveLoginFace(capturedBitmap);
+                FaceCaptureSession session = FaceCaptureActivity.claimSession(data);
+                if (session != null) {
+                    processAndSaveLoginFace(session);
                 } else {
                     Toast.makeText(this, "Failed to capture image data for login face.", Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "Captured bitmap is null for login face.");
+                    Log.e(TAG, "Captured face session is missing for login face.");
                 }
             }
         } else if (resultCode == RESULT_CANCELED) {
@@ -349,163 +357,142 @@ public class ProfileActivity extends AppCompatActivity {
 
     private void uploadProfileImage(Uri imageUri) {
         String userId = mAuth.getCurrentUser().getUid();
-        StorageReference imageRef = storage.getReference().child("profile_images/" + userId + ".jpg");
-
-        imageRef.putFile(imageUri)
-                .addOnSuccessListener(taskSnapshot -> {
-                    taskSnapshot.getStorage().getDownloadUrl().addOnSuccessListener(uri -> {
-                        String imageUrl = uri.toString();
-                        DocumentReference userRef = db.collection("users").document(userId);
-                        userRef.update("profileImageUrl", imageUrl)
-                                .addOnSuccessListener(aVoid -> {
-                                    Toast.makeText(ProfileActivity.this, "Profile image updated!", Toast.LENGTH_SHORT).show();
-                                    loadUserDetails();
-                                })
-                                .addOnFailureListener(e -> {
-                                    Toast.makeText(ProfileActivity.this, "Error updating profile image URL.", Toast.LENGTH_SHORT).show();
-                                    Log.e(TAG, "Error updating profileImageUrl in Firestore", e);
-                                });
-                    }).addOnFailureListener(e -> {
-                        Toast.makeText(ProfileActivity.this, "Failed to get download URL for profile image.", Toast.LENGTH_SHORT).show();
-                        Log.e(TAG, "Failed to get download URL for profile image", e);
-                    });
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(ProfileActivity.this, "Failed to upload profile image.", Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "Profile image upload failed", e);
-                });
+        // Uploads in the background; onUploadChanged reloads the profile once the URL is saved
+        FirebaseUploadQueue.enqueueImageUri(this, imageUri, ImageCompression.Target.photo(), "profile_images/" + userId, "users/" + userId, "profileImageUrl");
+        Toast.makeText(this, "Uploading profile image...", Toast.LENGTH_SHORT).show();
     }
 
-    private void processAndSaveLoginFace(Bitmap capturedBitmap) {
+    private void processAndSaveLoginFace(FaceCaptureSession session) {
         if (mAuth.getCurrentUser() == null) {
             Toast.makeText(this, "User not logged in. Cannot save face data.", Toast.LENGTH_SHORT).show();
-            if (!capturedBitmap.isRecycled()) {
-                capturedBitmap.recycle();
-            }
+            session.release();
             return;
         }
 
         Toast.makeText(this, "Processing face for login...", Toast.LENGTH_LONG).show();
 
-        mlKitExecutorService.execute(() -> {
-            InputImage image = InputImage.fromBitmap(capturedBitmap, 0);
-
-            faceDetector.process(image)
-                    .addOnSuccessListener(faces -> {
-                        if (!faces.isEmpty()) {
-                            Face face = faces.get(0);
-                            Bitmap croppedFaceBitmap = cropFaceFromBitmap(capturedBitmap, face.getBoundingBox());
-
-                            if (croppedFaceBitmap != null) {
-                                float[] faceEmbedding = faceRecognitionHelper.getFaceEmbedding(croppedFaceBitmap);
-                                if (!croppedFaceBitmap.isRecycled()) {
-                                    croppedFaceBitmap.recycle();
-                                }
-
-                                if (faceEmbedding != null) {
-                                    uploadLoginFaceToFirebaseStorage(capturedBitmap, faceEmbedding);
-                                } else {
-                                    runOnUiThread(() -> Toast.makeText(ProfileActivity.this, "Failed to generate face embedding.", Toast.LENGTH_SHORT).show());
-                                    Log.e(TAG, "Failed to generate face embedding from captured bitmap.");
-                                    if (!capturedBitmap.isRecycled()) {
-                                        capturedBitmap.recycle();
-                                    }
-                                }
-                            } else {
-                                runOnUiThread(() -> Toast.makeText(ProfileActivity.this, "Failed to crop face from image.", Toast.LENGTH_SHORT).show());
-                                Log.e(TAG, "Failed to crop face from captured bitmap.");
-                                if (!capturedBitmap.isRecycled()) {
-                                    capturedBitmap.recycle();
-                                }
-                            }
-                        } else {
-                            runOnUiThread(() -> Toast.makeText(ProfileActivity.this, "No face detected in the picture. Please try again.", Toast.LENGTH_LONG).show());
-                            Log.w(TAG, "No face detected in the captured bitmap for login.");
-                            if (!capturedBitmap.isRecycled()) {
-                                capturedBitmap.recycle();
-                            }
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        runOnUiThread(() -> Toast.makeText(ProfileActivity.this, "Face detection failed: " + e.getMessage(), Toast.LENGTH_LONG).show());
-                        Log.e(TAG, "ML Kit Face Detection error for login face: " + e.getMessage(), e);
-                        if (!capturedBitmap.isRecycled()) {
-                            capturedBitmap.recycle();
+        List<FaceCaptureSession.Shot> shots = session.getShots();
+        loginFaceBurst = new EnrollmentBurst<>(shots.size(), FaceTemplateSet.MAX_TEMPLATES);
+        pendingLoginShots = shots.size();
+        // One batched interpreter run for the whole burst, queued on the embed stage's executor
+        // ahead of the jobs, which then find their embeddings cached on the shots
+        mlKitExecutorService.execute(() -> FaceCaptureSession.embedAll(shots, faceRecognitionHelper));
+        for (FaceCaptureSession.Shot shot : shots) {
+            loginFacePipeline.submit(new FacePhotoJob(shot)); // Face box from the capture, no second detection
+        }
+    }
+
+    /**
+     * Detect on the main thread, embed on mlKitExecutorService, then add the shot to the burst on
+     * the main thread. A job that does not make it that far gets its bitmap recycled here; the
+     * burst's photos are recycled once its templates are saved.
+     */
+    private FramePipeline<FacePhotoJob> buildLoginFacePipeline() {
+        return FacePhotoJob.newDetectAndEmbedPipeline("profile", faceDetector, faceRecognitionHelper,
+                ContextCompat.getMainExecutor(this), mlKitExecutorService, ENROLLMENT_SHOTS, (job, outcome, error) -> {
+                    if (outcome == FramePipeline.Outcome.COMPLETED) {
+                        Log.d(TAG, "Login face processed: " + loginFacePipeline.describe());
+                    } else {
+                        Log.w(TAG, "Login face processing " + outcome + ": " + job.failureMessage, error);
+                        if (!job.photo.isRecycled()) {
+                            job.photo.recycle();
                         }
-                    });
-        });
+                    }
+                    runOnUiThread(this::onLoginShotProcessed);
+                })
+                .addStage("burst", ContextCompat.getMainExecutor(this), ENROLLMENT_SHOTS, job -> {
+                    if (loginFaceBurst == null) {
+                        job.photo.recycle(); // Screen is going away
+                        return true;
+                    }
+                    loginFaceBurst.add(job.photo, job.embedding, job.quality);
+                    return true;
+                });
     }
 
-    private void uploadLoginFaceToFirebaseStorage(Bitmap bitmap, float[] embedding) {
+    // Once every captured photo is through the pipeline, enroll the usable ones
+    private void onLoginShotProcessed() {
+        if (loginFaceBurst == null || --pendingLoginShots > 0) {
+            return;
+        }
+        if (loginFaceBurst.size() > 0) {
+            finishLoginFaceEnrollment();
+        } else {
+            loginFaceBurst = null;
+            Toast.makeText(this, "No usable face in the captured photos. Please try again.", Toast.LENGTH_LONG).show();
+        }
+    }
+
+    // Pick the templates from the burst and save them; the primary shot's photo is queued for upload
+    private void finishLoginFaceEnrollment() {
+        EnrollmentBurst<Bitmap> burst = loginFaceBurst;
+        loginFaceBurst = null;
+        FaceTemplateSet templates = burst.select();
+        Log.d(TAG, "Selected " + templates.size() + " login face templates from " + burst.size() + " shots.");
+        Bitmap primaryPhoto = burst.getPrimaryPhoto();
+        for (Bitmap photo : burst.getPhotos()) {
+            if (photo != primaryPhoto) {
+                photo.recycle();
+            }
+        }
+        saveLoginFace(primaryPhoto, templates);
+    }
+
+    private void saveLoginFace(Bitmap bitmap, FaceTemplateSet templates) {
         String userId = mAuth.getCurrentUser().getUid();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
-        byte[] imageData = baos.toByteArray();
-
-        String filename = "face_images_login/" + userId + ".jpg";
-        StorageReference storageRef = storage.getReference().child(filename);
-
-        storageRef.putBytes(imageData)
-                .addOnSuccessListener(taskSnapshot -> {
-                    taskSnapshot.getStorage().getDownloadUrl().addOnSuccessListener(uri -> {
-                        String downloadUrl = uri.toString();
-                        Log.d(TAG, "Login face image uploaded to Storage: " + downloadUrl);
-
-                        List<Double> embeddingList = new ArrayList<>();
-                        for (float f : embedding) {
-                            embeddingList.add((double) f);
-                        }
 
-                        DocumentReference userRef = db.collection("users").document(userId);
-                        userRef.update("faceImageLoginUrl", downloadUrl, "faceEmbeddingForLogin", embeddingList)
-                                .addOnSuccessListener(aVoid -> {
-                                    runOnUiThread(() -> Toast.makeText(ProfileActivity.this, "Login face updated successfully!", Toast.LENGTH_SHORT).show());
-                                    Log.d(TAG, "Firestore updated with new faceImageLoginUrl and faceEmbeddingForLogin.");
-                                    loadUserDetails();
-                                })
-                                .addOnFailureListener(e -> {
-                                    runOnUiThread(() -> Toast.makeText(ProfileActivity.this, "Error saving login face data to Firestore: " + e.getMessage(), Toast.LENGTH_LONG).show());
-                                    Log.e(TAG, "Error updating Firestore with login face data", e);
-                                });
-                    }).addOnFailureListener(e -> {
-                        runOnUiThread(() -> Toast.makeText(ProfileActivity.this, "Failed to get download URL for login face.", Toast.LENGTH_SHORT).show());
-                        Log.e(TAG, "Failed to get download URL for login face", e);
-                    });
+        // Unit-length templates; the primary one also goes in faceEmbeddingForLogin. Verification
+        // only needs these, so they are saved straight away and the photo follows via the upload queue.
+        String modelVersion = FaceEmbeddingEngine.getModelVersion();
+        DocumentReference userRef = db.collection("users").document(userId);
+        Map<String, Object> updates = EmbeddingFields.templateUpdates(EmbeddingFields.FACE_EMBEDDING_FOR_LOGIN, templates, modelVersion);
+        userRef.update(updates)
+                .addOnSuccessListener(aVoid -> {
+                    Toast.makeText(ProfileActivity.this, "Login face updated successfully!", Toast.LENGTH_SHORT).show();
+                    Log.d(TAG, "Firestore updated with " + templates.size() + " login face templates.");
+                    // Keep the local verification cache in step with the new login face
+                    String matricOrStaffId = studentMatricField.getText().toString().trim();
+                    Context appContext = getApplicationContext();
+                    if (!mlKitExecutorService.isShutdown()) {
+                        mlKitExecutorService.execute(() -> EmbeddingCacheKeystore.remember(appContext, matricOrStaffId, userId, modelVersion, Float.NaN, templates));
+                    }
+                    FirebaseUploadQueue.enqueueImage(this, bitmap, true, ImageCompression.Target.face(faceRecognitionHelper.getInputSize()),
+                            "face_images_login/" + userId, "users/" + userId, "faceImageLoginUrl");
                 })
                 .addOnFailureListener(e -> {
-                    runOnUiThread(() -> Toast.makeText(ProfileActivity.this, "Failed to upload login face image.", Toast.LENGTH_SHORT).show());
-                    Log.e(TAG, "Login face image upload failed", e);
-                })
-                .addOnCompleteListener(task -> {
-                    if (bitmap != null && !bitmap.isRecycled()) {
-                        bitmap.recycle();
-                    }
+                    Toast.makeText(ProfileActivity.this, "Error saving login face data to Firestore: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    Log.e(TAG, "Error updating Firestore with login face data", e);
+                    bitmap.recycle();
                 });
     }
 
-    private Bitmap cropFaceFromBitmap(Bitmap sourceBitmap, Rect boundingBox) {
-        int x = boundingBox.left;
-        int y = boundingBox.top;
-        int width = boundingBox.width();
-        int height = boundingBox.height();
-        int padding = (int) (0.1 * Math.min(width, height));
-        x = Math.max(0, x - padding);
-        y = Math.max(0, y - padding);
-        width = Math.min(sourceBitmap.getWidth() - x, width + (2 * padding));
-        height = Math.min(sourceBitmap.getHeight() - y, height + (2 * padding));
-
-        if (width <= 0 || height <= 0) {
-            Log.e(TAG, "Invalid bounding box dimensions for cropping. BBox: " + boundingBox.toString() +
-                    ", Bitmap size: " + sourceBitmap.getWidth() + "x" + sourceBitmap.getHeight());
-            return null;
+    // Called on the upload queue's thread for every upload; reacts to this user's images only
+    private void onUploadChanged(UploadQueue.Upload upload) {
+        if (mAuth.getCurrentUser() == null || !upload.isFinished()) {
+            return;
         }
-
-        try {
-            return Bitmap.createBitmap(sourceBitmap, x, y, width, height);
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Error cropping bitmap: " + e.getMessage(), e);
-            return null;
+        String userId = mAuth.getCurrentUser().getUid();
+        // Paths end in whichever extension the compressor picked
+        boolean profileImage = upload.path.startsWith("profile_images/" + userId + ".");
+        if (!profileImage && !upload.path.startsWith("face_images_login/" + userId + ".")) {
+            return;
         }
+        String what = profileImage ? "profile image" : "login face image";
+        runOnUiThread(() -> {
+            if (isDestroyed()) {
+                return;
+            }
+            if (upload.state == UploadQueue.State.UPLOADED) {
+                Log.d(TAG, "Uploaded " + what + ": " + upload.downloadUrl);
+                if (profileImage) {
+                    Toast.makeText(ProfileActivity.this, "Profile image updated!", Toast.LENGTH_SHORT).show();
+                }
+                loadUserDetails();
+            } else {
+                Log.e(TAG, "Upload of " + what + " failed: " + upload.error);
+                Toast.makeText(ProfileActivity.this, "Failed to upload " + what + ".", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void performLogout() {
@@ -521,6 +508,18 @@ public class ProfileActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (uploadQueue != null) {
+            uploadQueue.removeObserver(uploadObserver);
+        }
+        if (loginFacePipeline != null) {
+            loginFacePipeline.cancel();
+        }
+        if (loginFaceBurst != null) {
+            for (Bitmap photo : loginFaceBurst.getPhotos()) {
+                photo.recycle();
+            }
+            loginFaceBurst = null;
+        }
         if (mlKitExecutorService != null) {
             mlKitExecutorService.shutdown();
         }
@@ -528,7 +527,7 @@ public class ProfileActivity extends AppCompatActivity {
             faceDetector.close();
         }
         if (faceRecognitionHelper != null) {
-            faceRecognitionHelper.close();
+            FaceEmbeddingEngine.release(); // Shared helper stays loaded for the next screen
         }
     }
 }
\ No newline at end of file
@@ -22,15 +22,10 @@ import androidx.core.content.ContextCompat;
 
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
-import com.google.firebase.storage.UploadTask;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 public class QrUploadManualActivity extends AppCompatActivity {
 
@@ -45,8 +40,6 @@ public class QrUploadManualActivity extends AppCompatActivity {
     private Uri selectedImageUri; // To store the URI of the selected image
 
     // Firebase
-    private FirebaseStorage firebaseStorage;
-    private StorageReference storageReference;
     private FirebaseFirestore db;
 
     @Override
@@ -65,8 +58,6 @@ public class QrUploadManualActivity extends AppCompatActivity {
         closeManualUploadButton = findViewById(R.id.closeManualUploadButton);
 
         // Initialize Firebase
-        firebaseStorage = FirebaseStorage.getInstance();
-        storageReference = firebaseStorage.getReference();
         db = FirebaseFirestore.getInstance();
 
         setupListeners();
@@ -125,8 +116,8 @@ public class QrUploadManualActivity extends AppCompatActivity {
         if (requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null && data.getData() != null) {
             selectedImageUri = data.getData();
             try {
-                // Display the selected image
-                Bitmap bitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), selectedImageUri);
+                // Display the selected image, decoded no larger than it will be uploaded
+                Bitmap bitmap = ImageCompressor.decodeSampled(getContentResolver(), selectedImageUri, ImageCompression.Target.qrCode());
                 selectedQrImageView.setImageBitmap(bitmap);
                 Toast.makeText(this, "Image selected!", Toast.LENGTH_SHORT).show();
             } catch (IOException e) {
@@ -154,45 +145,18 @@ public class QrUploadManualActivity extends AppCompatActivity {
             return;
         }
 
-        Toast.makeText(this, "Uploading QR data and image...", Toast.LENGTH_LONG).show();
-
-        try {
-            Bitmap bitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), selectedImageUri);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-            byte[] imageData = baos.toByteArray();
-
-            String imagePath = "manual_qrcodes/" + UUID.randomUUID().toString() + ".png";
-            StorageReference imageRef = storageReference.child(imagePath);
-
-            UploadTask uploadTask = imageRef.putBytes(imageData);
-            uploadTask.addOnSuccessListener(taskSnapshot -> {
-                imageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                    String imageUrl = uri.toString();
-                    Log.d(TAG, "Image uploaded. URL: " + imageUrl);
-                    saveQrDetailsToFirestore(faculty, course, section, time, imageUrl);
-                }).addOnFailureListener(e -> {
-                    Toast.makeText(QrUploadManualActivity.this, "Failed to get image URL.", Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "Failed to get image download URL: " + e.getMessage());
-                });
-            }).addOnFailureListener(e -> {
-                Toast.makeText(QrUploadManualActivity.this, "Image upload failed.", Toast.LENGTH_SHORT).show();
-                Log.e(TAG, "Image upload to Firebase Storage failed: " + e.getMessage());
-            });
-
-        } catch (IOException e) {
-            Toast.makeText(this, "Error processing image for upload.", Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "Error converting image URI to bitmap: " + e.getMessage());
-        }
+        // Save the details first; the image follows through the upload queue, which fills in
+        // qr_image_url once it is up, so nothing here waits on the upload
+        saveQrDetailsToFirestore(faculty, course, section, time, selectedImageUri);
     }
 
-    private void saveQrDetailsToFirestore(String faculty, String course, String section, String time, String imageUrl) {
+    private void saveQrDetailsToFirestore(String faculty, String course, String section, String time, Uri imageUri) {
         Map<String, Object> qrData = new HashMap<>();
         qrData.put("faculty", faculty);
         qrData.put("course", course);
         qrData.put("section", section);
         qrData.put("class_time", time);
-        qrData.put("qr_image_url", imageUrl);
+        qrData.put("qr_image_url", null); // Set by the upload queue
         qrData.put("uploaded_at", FieldValue.serverTimestamp()); // Timestamp of upload
 
         // You might want to add a field to distinguish between generated and manually uploaded QRs, e.g.,
@@ -200,8 +164,12 @@ public class QrUploadManualActivity extends AppCompatActivity {
 
         db.collection("qrcode").add(qrData)
                 .addOnSuccessListener(documentReference -> {
-                    Toast.makeText(QrUploadManualActivity.this, "QR details saved successfully!", Toast.LENGTH_LONG).show();
-                    Log.d(TAG, "QR data saved to Firestore with ID: " + documentReference.getId());
+                    String documentId = documentReference.getId();
+                    // Stored under the hash of the compressed image, so uploading the same QR image again costs no bandwidth
+                    FirebaseUploadQueue.enqueueImageUriByContent(this, imageUri, ImageCompression.Target.qrCode(),
+                            "manual_qrcodes", "qrcode/" + documentId, "qr_image_url");
+                    Toast.makeText(QrUploadManualActivity.this, "QR details saved successfully! The image is uploading in the background.", Toast.LENGTH_LONG).show();
+                    Log.d(TAG, "QR data saved to Firestore with ID: " + documentId);
                     // Optionally, clear fields or close activity after successful upload
                     clearFields();
                 })
@@ -1,10 +1,10 @@
 package com.example.smartattendancesystem;
 
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
@@ -15,18 +15,15 @@ import android.widget.Spinner; // Import Spinner
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -39,6 +36,8 @@ public class RegisterActivity extends AppCompatActivity {
 
     private static final String TAG = "RegisterActivity";
     private static final int REQUEST_IMAGE_CAPTURE = 100;
+    // Frames per enrollment, all from one FaceCaptureActivity session; the most diverse usable ones become the user's templates
+    private static final int ENROLLMENT_SHOTS = 3;
 
     private EditText edtUsername, edtEmail, edtPassword, edtConfirmPassword, edtMatricOrStaffId;
     private Button btnRegister;
@@ -46,12 +45,14 @@ public class RegisterActivity extends AppCompatActivity {
 
     private FirebaseFirestore db;
     private FirebaseAuth mAuth;
-    private FirebaseStorage storage;
     private String role;
 
     private FaceDetector faceDetector;
     private FaceRecognitionHelper faceRecognitionHelper;
     private ExecutorService executorService;
+    private FramePipeline<FacePhotoJob> facePipeline;
+    private EnrollmentBurst<Bitmap> enrollmentBurst; // Main thread only
+    private int pendingShots; // Captured photos still in facePipeline; main thread only
 
     // Data for spinners
     private List<String> facultyList = new ArrayList<>();
@@ -69,7 +70,6 @@ public class RegisterActivity extends AppCompatActivity {
 
         db = FirebaseFirestore.getInstance();
         mAuth = FirebaseAuth.getInstance();
-        storage = FirebaseStorage.getInstance();
 
         FaceDetectorOptions options = new FaceDetectorOptions.Builder()
                 .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
@@ -79,8 +79,8 @@ public class RegisterActivity extends AppCompatActivity {
         faceDetector = FaceDetection.getClient(options);
 
         try {
-            faceRecognitionHelper = new FaceRecognitionHelper(this, "output_model.tflite");
-            Log.d(TAG, "FaceRecognitionHelper initialized successfully.");
+            faceRecognitionHelper = FaceEmbeddingEngine.acquire(this); // Shared, loaded once per process
+            Log.d(TAG, "FaceRecognitionHelper acquired successfully.");
         } catch (IOException e) {
             Log.e(TAG, "Failed to initialize FaceRecognitionHelper: " + e.getMessage());
             Toast.makeText(this, "Error: Face recognition model not loaded.", Toast.LENGTH_LONG).show();
@@ -89,6 +89,7 @@ public class RegisterActivity extends AppCompatActivity {
         }
 
         executorService = Executors.newSingleThreadExecutor();
+        facePipeline = buildFacePipeline();
 
         edtUsername = findViewById(R.id.edt_username);
         edtEmail = findViewById(R.id.edt_email);
@@ -339,128 +340,106 @@ public class RegisterActivity extends AppCompatActivity {
     }
 
     private void captureFace() {
-        Intent cameraIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
-        if (cameraIntent.resolveActivity(getPackageManager()) != null) {
-            startActivityForResult(cameraIntent, REQUEST_IMAGE_CAPTURE);
-            Log.d(TAG, "Camera intent launched.");
-        } else {
-            Toast.makeText(this, "No camera app found.", Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "No camera app found.");
-        }
+        // Full-resolution frames from our own camera screen rather than the system camera's thumbnail
+        startActivityForResult(FaceCaptureActivity.newIntent(this, ENROLLMENT_SHOTS), REQUEST_IMAGE_CAPTURE);
+        Log.d(TAG, "Face capture launched.");
     }
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        if (requestCode == REQUEST_IMAGE_CAPTURE && resultCode == RESULT_OK && data != null && data.getExtras() != null) {
-            Bitmap photo = (Bitmap) data.getExtras().get("data");
-            if (photo != null) {
-                Log.d(TAG, "Photo captured. Starting face processing...");
-                processAndSaveFaceData(photo);
+        if (requestCode == REQUEST_IMAGE_CAPTURE && resultCode == RESULT_OK) {
+            FaceCaptureSession session = FaceCaptureActivity.claimSession(data);
+            if (session != null) {
+                Log.d(TAG, session.getShots().size() + " photos captured. Starting face processing...");
+                processAndSaveFaceData(session);
             } else {
-                Toast.makeText(this, "Failed to capture image. Photo is null.", Toast.LENGTH_SHORT).show();
-                Log.e(TAG, "Captured photo bitmap is null.");
+                Toast.makeText(this, "Failed to capture image. Please try again.", Toast.LENGTH_SHORT).show();
+                Log.e(TAG, "Captured face session is missing.");
             }
+        } else if (requestCode == REQUEST_IMAGE_CAPTURE) {
+            Toast.makeText(this, "Face capture cancelled. Your face is needed to finish registering.", Toast.LENGTH_LONG).show();
+            Log.d(TAG, "Face capture cancelled.");
         }
     }
 
-    private void processAndSaveFaceData(Bitmap photo) {
-        InputImage image = InputImage.fromBitmap(photo, 0);
-
-        faceDetector.process(image)
-                .addOnSuccessListener(faces -> {
-                    if (!faces.isEmpty()) {
-                        Face face = faces.get(0);
-                        Log.d(TAG, "Face detected. Bounding Box: " + face.getBoundingBox().toShortString());
-
-                        Bitmap croppedFaceBitmap = cropFaceFromBitmap(photo, face.getBoundingBox());
-
-                        if (croppedFaceBitmap != null) {
-                            executorService.execute(() -> {
-                                Log.d(TAG, "Generating face embedding...");
-                                float[] faceEmbedding = faceRecognitionHelper.getFaceEmbedding(croppedFaceBitmap);
+    private void processAndSaveFaceData(FaceCaptureSession session) {
+        Log.d(TAG, "Generating embeddings...");
+        List<FaceCaptureSession.Shot> shots = session.getShots();
+        enrollmentBurst = new EnrollmentBurst<>(shots.size(), FaceTemplateSet.MAX_TEMPLATES);
+        pendingShots = shots.size();
+        // One batched interpreter run for the whole burst, queued on the embed stage's executor
+        // ahead of the jobs, which then find their embeddings cached on the shots
+        executorService.execute(() -> FaceCaptureSession.embedAll(shots, faceRecognitionHelper));
+        for (FaceCaptureSession.Shot shot : shots) {
+            facePipeline.submit(new FacePhotoJob(shot)); // Face box from the capture, no second detection
+        }
+    }
 
-                                if (faceEmbedding != null) {
-                                    Log.d(TAG, "Face embedding generated successfully. Size: " + faceEmbedding.length);
-                                    runOnUiThread(() -> saveFaceImageAndEmbedding(photo, faceEmbedding));
-                                } else {
-                                    runOnUiThread(() -> Toast.makeText(RegisterActivity.this, "Failed to generate face embedding.", Toast.LENGTH_SHORT).show());
-                                }
-                            });
-                        } else {
-                            Toast.makeText(RegisterActivity.this, "Failed to crop face from image.", Toast.LENGTH_SHORT).show();
-                        }
-                    } else {
-                        Toast.makeText(RegisterActivity.this, "No face detected in the image. Please try again.", Toast.LENGTH_LONG).show();
+    /**
+     * Detect on the main thread, embed on executorService, save on the main thread. Failures
+     * from any stage surface as a Toast.
+     */
+    private FramePipeline<FacePhotoJob> buildFacePipeline() {
+        return FacePhotoJob.newDetectAndEmbedPipeline("register", faceDetector, faceRecognitionHelper,
+                ContextCompat.getMainExecutor(this), executorService, ENROLLMENT_SHOTS, (job, outcome, error) -> {
+                    if (outcome == FramePipeline.Outcome.COMPLETED) {
+                        Log.d(TAG, "Face processed: " + facePipeline.describe());
+                    } else if (job.failureMessage != null) {
+                        Log.w(TAG, "Face processing " + outcome + ": " + job.failureMessage);
                     }
+                    runOnUiThread(this::onShotProcessed);
                 })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(RegisterActivity.this, "Face detection failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                .addStage("save", ContextCompat.getMainExecutor(this), ENROLLMENT_SHOTS, job -> {
+                    Log.d(TAG, "Face embedding generated successfully. Size: " + job.embedding.length);
+                    if (enrollmentBurst != null) {
+                        enrollmentBurst.add(job.photo, job.embedding, job.quality);
+                    }
+                    return true;
                 });
     }
 
-    private Bitmap cropFaceFromBitmap(Bitmap sourceBitmap, android.graphics.Rect boundingBox) {
-        int x = boundingBox.left;
-        int y = boundingBox.top;
-        int width = boundingBox.width();
-        int height = boundingBox.height();
-
-        // Ensure the bounding box is within the bitmap's bounds to prevent IllegalArgumentException
-        x = Math.max(0, x);
-        y = Math.max(0, y);
-        width = Math.min(width, sourceBitmap.getWidth() - x);
-        height = Math.min(height, sourceBitmap.getHeight() - y);
-
-        if (width <= 0 || height <= 0) {
-            Log.e(TAG, "Invalid crop dimensions: width=" + width + ", height=" + height + ". Original Bitmap: " + sourceBitmap.getWidth() + "x" + sourceBitmap.getHeight());
-            return null; // Return null or handle this case appropriately
+    // Once every captured photo is through the pipeline, enroll the usable ones or capture again
+    private void onShotProcessed() {
+        if (enrollmentBurst == null || --pendingShots > 0) {
+            return;
+        }
+        if (enrollmentBurst.size() > 0) {
+            finishEnrollment();
+        } else {
+            enrollmentBurst = null;
+            Toast.makeText(this, "No usable face in the captured photos. Please try again.", Toast.LENGTH_LONG).show();
+            captureFace();
         }
-        return Bitmap.createBitmap(sourceBitmap, x, y, width, height);
     }
 
+    // Pick the templates from the burst and save them with the primary shot's photo
+    private void finishEnrollment() {
+        EnrollmentBurst<Bitmap> burst = enrollmentBurst;
+        enrollmentBurst = null;
+        FaceTemplateSet templates = burst.select();
+        Log.d(TAG, "Selected " + templates.size() + " face templates from " + burst.size() + " shots.");
+        saveFaceImageAndEmbedding(burst.getPrimaryPhoto(), templates);
+    }
 
-    private void saveFaceImageAndEmbedding(Bitmap photo, float[] faceEmbedding) {
+    private void saveFaceImageAndEmbedding(Bitmap photo, FaceTemplateSet templates) {
         String userId = mAuth.getCurrentUser().getUid(); // Firebase Auth UID will be the Firestore Document ID
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        photo.compress(Bitmap.CompressFormat.JPEG, 80, baos);
-        byte[] imageData = baos.toByteArray();
-
-        FirebaseStorage storage = FirebaseStorage.getInstance();
-        StorageReference storageRef = storage.getReference().child("face_images/" + userId + ".jpg");
-
-        storageRef.putBytes(imageData)
-                .addOnSuccessListener(taskSnapshot -> {
-                    storageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                        String faceImageUrl = uri.toString();
-                        saveUserDataToFirestore(userId, faceImageUrl, faceEmbedding);
-                    });
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(RegisterActivity.this, "Error saving face image to storage: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    // Optional: Delete Firebase Auth user if image upload fails
-                    mAuth.getCurrentUser().delete().addOnCompleteListener(deleteTask -> {
-                        if (deleteTask.isSuccessful()) {
-                            Log.d(TAG, "Firebase user deleted due to face image upload failure.");
-                        } else {
-                            Log.e(TAG, "Failed to delete Firebase user after image error: " + deleteTask.getException().getMessage());
-                        }
-                    });
-                });
+        // The account is usable without the photo, so save it now and let the upload queue fill
+        // in the image URLs once the photo is up
+        saveUserDataToFirestore(userId, photo, templates);
     }
 
-    private void saveUserDataToFirestore(String userId, String faceImageUrl, float[] faceEmbedding) {
+    private void saveUserDataToFirestore(String userId, Bitmap photo, FaceTemplateSet templates) {
         // Retrieve selected values from SharedPreferences
         // These values were stored just before calling captureFace()
         String selectedFaculty = getApplication().getSharedPreferences("reg_data", MODE_PRIVATE).getString("selectedFaculty", "N/A");
         String selectedCourse = getApplication().getSharedPreferences("reg_data", MODE_PRIVATE).getString("selectedCourse", "N/A");
         String selectedYear = getApplication().getSharedPreferences("reg_data", MODE_PRIVATE).getString("selectedYear", "N/A");
 
-        // Convert faceEmbedding (float[]) to List<Double> for Firestore compatibility
-        List<Double> embeddingList = new ArrayList<>();
-        for (float f : faceEmbedding) {
-            embeddingList.add((double) f);
-        }
+        // Compact Blob (EmbeddingCodec) instead of a List<Double>; templates are unit length, so
+        // comparisons only need a dot product. The primary template doubles as the single embedding.
+        Blob embeddingBlob = EmbeddingFields.toBlob(templates.primary());
 
         String customUserIdFromInput = edtMatricOrStaffId.getText().toString().trim();
         String currentRole = getRoleFromMatric(customUserIdFromInput); // Re-determine role for safety
@@ -468,9 +447,9 @@ public class RegisterActivity extends AppCompatActivity {
         // Prepare the user object to save to Firestore
         User user = new User(
                 edtEmail.getText().toString(),
-                embeddingList,
-                faceImageUrl,
-                faceImageUrl, // faceImageLoginUrl (using same as general face image for now)
+                embeddingBlob,
+                null, // faceImageUrl, set by the upload queue
+                null, // faceImageLoginUrl (same as the general face image for now)
                 customUserIdFromInput, // matricOrStaffId
                 edtPassword.getText().toString(), // password (still here, but strongly consider security implications)
                 "", // profileImageUrl (empty for now)
@@ -482,12 +461,25 @@ public class RegisterActivity extends AppCompatActivity {
                 selectedCourse,  // Pass the selected course
                 selectedYear     // Pass the selected year
         );
+        String modelVersion = FaceEmbeddingEngine.getModelVersion();
+        user.setFaceEmbeddingModel(modelVersion); // Lets a later model change find and re-embed this record
+        if (templates.size() > 1) {
+            user.setFaceTemplates(EmbeddingFields.toBlob(templates));
+            user.setFaceTemplatesModel(modelVersion);
+            user.setFaceGenuineScores(EmbeddingFields.enrollmentGenuineScores(templates)); // Seeds threshold calibration
+        }
 
         FirebaseFirestore db = FirebaseFirestore.getInstance();
         db.collection("users").document(userId) // Use Firebase Auth UID as the document ID
                 .set(user)
                 .addOnSuccessListener(aVoid -> {
                     Toast.makeText(RegisterActivity.this, "Registration successful!", Toast.LENGTH_LONG).show();
+                    // Queued only now, so the URLs are merged into the saved document rather than overwritten by it
+                    FirebaseUploadQueue.enqueueImage(this, photo, true, ImageCompression.Target.face(faceRecognitionHelper.getInputSize()),
+                            "face_images/" + userId, "users/" + userId, "faceImageUrl", "faceImageLoginUrl");
+                    // First verification on this device can start from the local cache
+                    Context appContext = getApplicationContext();
+                    executorService.execute(() -> EmbeddingCacheKeystore.remember(appContext, customUserIdFromInput, userId, modelVersion, Float.NaN, templates));
                     // Clear SharedPreferences data after successful save
                     getApplication().getSharedPreferences("reg_data", MODE_PRIVATE).edit().clear().apply();
                     // Navigate to success screen or another activity
@@ -512,7 +504,10 @@ public class RegisterActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         if (faceRecognitionHelper != null) {
-            faceRecognitionHelper.close();
+            FaceEmbeddingEngine.release(); // Shared helper stays loaded for the next screen
+        }
+        if (facePipeline != null) {
+            facePipeline.cancel();
         }
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
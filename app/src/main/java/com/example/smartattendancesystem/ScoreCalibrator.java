@@ -0,0 +1,131 @@
+package com.example.smartattendancesystem;
+
+import java.util.Arrays;
+
+/**
+ * Picks a match threshold from score samples so that impostors are accepted at no more than a
+ * target false-accept rate (FAR), and reports the false-reject rate (FRR) that threshold implies
+ * for the genuine samples.
+ *
+ * Impostor scores are similarities between different people's stored embeddings; genuine scores
+ * are the fused similarities of this user's successful verifications. With enough impostor
+ * samples in the tail ({@code n * FAR >= }{@link #MIN_TAIL_SAMPLES}) the threshold is the
+ * empirical quantile. With fewer, the tail is extrapolated from a Gaussian fit, and the threshold
+ * is never below the highest impostor seen, since accepting any observed impostor already
+ * exceeds a small FAR. A threshold is never set below {@code floor}.
+ */
+public final class ScoreCalibrator {
+
+    public static final int MIN_TAIL_SAMPLES = 5;
+
+    /** Result of {@link #calibrate}. */
+    public static final class Calibration {
+        public final float threshold;
+        public final double expectedFrr; // NaN without genuine samples
+        public final int impostorSamples;
+        public final int genuineSamples;
+
+        Calibration(float threshold, double expectedFrr, int impostorSamples, int genuineSamples) {
+            this.threshold = threshold;
+            this.expectedFrr = expectedFrr;
+            this.impostorSamples = impostorSamples;
+            this.genuineSamples = genuineSamples;
+        }
+    }
+
+    private ScoreCalibrator() {
+    }
+
+    /**
+     * @param impostorScores first {@code impostorCount} entries are used; must be at least 2.
+     * @param genuineScores  may be null or empty.
+     */
+    public static Calibration calibrate(float[] impostorScores, int impostorCount, float[] genuineScores,
+                                        double targetFar, float floor) {
+        float threshold = Math.max(floor, thresholdAtFar(impostorScores, impostorCount, targetFar));
+        int genuineCount = genuineScores == null ? 0 : genuineScores.length;
+        double frr = genuineCount == 0 ? Double.NaN : rejectRate(genuineScores, genuineCount, threshold);
+        return new Calibration(threshold, frr, impostorCount, genuineCount);
+    }
+
+    public static float thresholdAtFar(float[] impostorScores, int count, double targetFar) {
+        if (count < 2 || count > impostorScores.length) {
+            throw new IllegalArgumentException("Need at least 2 impostor scores, got " + count);
+        }
+        if (!(targetFar > 0 && targetFar < 1)) {
+            throw new IllegalArgumentException("Target FAR must be in (0, 1): " + targetFar);
+        }
+        float[] sorted = Arrays.copyOf(impostorScores, count);
+        Arrays.sort(sorted);
+
+        if (count * targetFar >= MIN_TAIL_SAMPLES) {
+            // Accept when score >= threshold: at most floor(count * FAR) impostors may be at or above it
+            int allowedAbove = (int) Math.floor(count * targetFar);
+            return Math.nextUp(sorted[count - 1 - allowedAbove]);
+        }
+
+        double mean = 0;
+        for (float score : sorted) {
+            mean += score;
+        }
+        mean /= count;
+        double variance = 0;
+        for (float score : sorted) {
+            variance += (score - mean) * (score - mean);
+        }
+        double sd = Math.sqrt(variance / (count - 1));
+        float gaussian = (float) (mean + upperTailZ(targetFar) * sd);
+        return Math.max(gaussian, Math.nextUp(sorted[count - 1]));
+    }
+
+    /**
+     * Fraction of the first {@code count} genuine scores that fall below {@code threshold}.
+     */
+    public static double rejectRate(float[] genuineScores, int count, float threshold) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        int rejected = 0;
+        for (int i = 0; i < count; i++) {
+            if (genuineScores[i] < threshold) {
+                rejected++;
+            }
+        }
+        return rejected / (double) count;
+    }
+
+    /**
+     * z such that P(Z > z) = p for a standard normal Z (Acklam's rational approximation,
+     * relative error below 1.2e-9).
+     */
+    static double upperTailZ(double p) {
+        return -inverseNormal(p);
+    }
+
+    private static double inverseNormal(double p) {
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00};
+        final double low = 0.02425;
+
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+}
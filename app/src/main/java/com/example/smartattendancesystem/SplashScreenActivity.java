@@ -20,6 +20,12 @@ public class SplashScreenActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);  // Make sure you have a splash screen layout
 
+        // Load the face recognition model while the splash is showing
+        FaceEmbeddingEngine.prewarm(this);
+
+        // Pick up image uploads an earlier run did not finish
+        FirebaseUploadQueue.start(this);
+
         // Check for camera permission
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
                 != PackageManager.PERMISSION_GRANTED) {
@@ -0,0 +1,208 @@
+package com.example.smartattendancesystem;
+
+import java.util.Arrays;
+
+/**
+ * Makes a match / no-match decision from a stream of live embeddings instead of a single frame.
+ *
+ * The last {@code windowSize} frames are kept in a ring buffer. Their normalized embeddings are
+ * fused into a quality-weighted mean (maintained incrementally, O(dim) per frame), and the fused
+ * embedding's similarity to the reference {@link FaceTemplateSet}, under the given
+ * {@link FaceTemplateSet.Fusion} rule, is the running score. A decision is emitted as soon as the
+ * score is confidently on one side of the threshold: the margin is the weighted spread of the
+ * per-frame similarities divided by the square root of the effective number of frames, times
+ * {@code confidenceZ}. If no confident decision is reached within {@code maxFrames} frames, the
+ * fused score alone decides. With MAX fusion a match is called as soon as one template clears the
+ * threshold by the margin, without scoring the rest.
+ *
+ * Not thread-safe: VerifyActivity only feeds it from mlKitExecutorService.
+ */
+public class StreamingVerifier {
+
+    public enum Decision {
+        PENDING,
+        MATCH,
+        NO_MATCH
+    }
+
+    private final FaceTemplateSet reference;
+    private final FaceTemplateSet.Fusion fusion;
+    private final int dim;
+    private final float threshold;
+    private final int windowSize;
+    private final int minFrames;
+    private final int maxFrames;
+    private final float confidenceZ;
+
+    // Ring buffer of the frames in the window
+    private final float[] windowEmbeddings;
+    private final float[] windowWeights;
+    private final float[] windowSimilarities;
+    private int windowCount = 0;
+    private int nextSlot = 0;
+
+    private final float[] weightedSum; // Sum of weight * embedding over the window
+    private final float[] fused;       // Scratch for the normalized fused embedding
+    private int framesSeen = 0;
+    private float fusedSimilarity = 0f;
+    private float margin = Float.POSITIVE_INFINITY;
+
+    /**
+     * @param normalizedReference The stored, L2-normalized embedding to verify against.
+     */
+    public StreamingVerifier(float[] normalizedReference, float threshold, int windowSize,
+                             int minFrames, int maxFrames, float confidenceZ) {
+        this(referenceOf(normalizedReference), FaceTemplateSet.DEFAULT_FUSION, threshold, windowSize,
+                minFrames, maxFrames, confidenceZ);
+    }
+
+    /**
+     * @param reference The user's enrolled templates to verify against.
+     */
+    public StreamingVerifier(FaceTemplateSet reference, FaceTemplateSet.Fusion fusion, float threshold,
+                             int windowSize, int minFrames, int maxFrames, float confidenceZ) {
+        if (reference == null) {
+            throw new IllegalArgumentException("A reference embedding is required.");
+        }
+        if (windowSize < 1 || minFrames < 1 || minFrames > windowSize || maxFrames < minFrames) {
+            throw new IllegalArgumentException("Expected 1 <= minFrames <= windowSize and minFrames <= maxFrames.");
+        }
+        this.reference = reference;
+        this.fusion = fusion;
+        this.dim = reference.getDimension();
+        this.threshold = threshold;
+        this.windowSize = windowSize;
+        this.minFrames = minFrames;
+        this.maxFrames = maxFrames;
+        this.confidenceZ = confidenceZ;
+        this.windowEmbeddings = new float[windowSize * dim];
+        this.windowWeights = new float[windowSize];
+        this.windowSimilarities = new float[windowSize];
+        this.weightedSum = new float[dim];
+        this.fused = new float[dim];
+    }
+
+    private static FaceTemplateSet referenceOf(float[] normalizedReference) {
+        if (normalizedReference == null || normalizedReference.length == 0) {
+            throw new IllegalArgumentException("A reference embedding is required.");
+        }
+        return FaceTemplateSet.of(normalizedReference);
+    }
+
+    /**
+     * Adds one frame.
+     *
+     * @param normalizedEmbedding The frame's L2-normalized embedding; copied, so the caller may reuse it.
+     * @param quality             Weight in (0, 1], higher for sharper, larger, more frontal faces.
+     *                            Frames with quality 0 or less are ignored.
+     */
+    public Decision addFrame(float[] normalizedEmbedding, float quality) {
+        if (normalizedEmbedding == null || normalizedEmbedding.length != dim) {
+            throw new IllegalArgumentException("Embedding must have " + dim + " dimensions.");
+        }
+        if (quality <= 0f) {
+            return framesSeen >= maxFrames ? decideOnScore() : Decision.PENDING;
+        }
+        float weight = Math.min(quality, 1f);
+        framesSeen++;
+
+        int offset = nextSlot * dim;
+        if (windowCount == windowSize) {
+            // Evict the oldest frame from the running sum
+            float oldWeight = windowWeights[nextSlot];
+            for (int i = 0; i < dim; i++) {
+                weightedSum[i] -= oldWeight * windowEmbeddings[offset + i];
+            }
+        } else {
+            windowCount++;
+        }
+        System.arraycopy(normalizedEmbedding, 0, windowEmbeddings, offset, dim);
+        windowWeights[nextSlot] = weight;
+        windowSimilarities[nextSlot] = reference.score(normalizedEmbedding, fusion);
+        for (int i = 0; i < dim; i++) {
+            weightedSum[i] += weight * normalizedEmbedding[i];
+        }
+        nextSlot = (nextSlot + 1) % windowSize;
+
+        System.arraycopy(weightedSum, 0, fused, 0, dim);
+        EmbeddingMath.l2Normalize(fused);
+        margin = confidenceMargin();
+
+        if (windowCount >= minFrames && fusion == FaceTemplateSet.Fusion.MAX) {
+            // Any one template clearing the bound settles MAX, whatever the others score
+            float confident = reference.firstAbove(fused, threshold + margin);
+            if (!Float.isNaN(confident)) {
+                fusedSimilarity = confident;
+                return Decision.MATCH;
+            }
+        }
+        fusedSimilarity = reference.score(fused, fusion);
+
+        if (windowCount >= minFrames) {
+            if (fusedSimilarity - margin > threshold) {
+                return Decision.MATCH;
+            }
+            if (fusedSimilarity + margin < threshold) {
+                return Decision.NO_MATCH;
+            }
+        }
+        return framesSeen >= maxFrames ? decideOnScore() : Decision.PENDING;
+    }
+
+    private Decision decideOnScore() {
+        if (windowCount == 0) {
+            return Decision.NO_MATCH;
+        }
+        return fusedSimilarity > threshold ? Decision.MATCH : Decision.NO_MATCH;
+    }
+
+    // z * weighted standard deviation of per-frame similarities / sqrt(effective sample size)
+    private float confidenceMargin() {
+        float weightSum = 0f;
+        float weightSquareSum = 0f;
+        float mean = 0f;
+        for (int i = 0; i < windowCount; i++) {
+            weightSum += windowWeights[i];
+            weightSquareSum += windowWeights[i] * windowWeights[i];
+            mean += windowWeights[i] * windowSimilarities[i];
+        }
+        mean /= weightSum;
+        float variance = 0f;
+        for (int i = 0; i < windowCount; i++) {
+            float d = windowSimilarities[i] - mean;
+            variance += windowWeights[i] * d * d;
+        }
+        variance /= weightSum;
+        float effectiveFrames = weightSum * weightSum / weightSquareSum;
+        return confidenceZ * (float) Math.sqrt(variance / effectiveFrames);
+    }
+
+    public void reset() {
+        Arrays.fill(weightedSum, 0f);
+        windowCount = 0;
+        nextSlot = 0;
+        framesSeen = 0;
+        fusedSimilarity = 0f;
+        margin = Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * After an early MATCH under MAX fusion this is the score of the template that settled it, a
+     * lower bound on the full fused score.
+     */
+    public float getFusedSimilarity() {
+        return fusedSimilarity;
+    }
+
+    public float getMargin() {
+        return margin;
+    }
+
+    public int getFramesSeen() {
+        return framesSeen;
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.smartattendancesystem;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.Random;
+
+/**
+ * Picks the TFLite execution backend (plain CPU, XNNPACK, NNAPI or GPU) for a model.
+ *
+ * On the first launch every available backend is probed with a short self-benchmark on a
+ * fixed pseudo-random input. A backend is only eligible if its output matches the plain CPU
+ * output within tolerance; the fastest eligible one wins and is remembered per device and
+ * model, so later launches skip the probe. Any backend that fails to load (missing driver,
+ * no GPU, no NNAPI, non-Android JVM) is simply skipped, leaving the CPU/XNNPACK path.
+ */
+public class TfliteDelegateSelector {
+
+    private static final String TAG = "TfliteDelegateSelector";
+    private static final String PREFS_NAME = "tflite_delegate";
+    private static final int NUM_THREADS = 2;
+    private static final int WARM_UP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+    private static final double MIN_COSINE_VS_CPU = 0.999; // Outputs must agree with the CPU reference
+    private static final long PROBE_SEED = 42L;
+
+    public enum Backend {
+        CPU, XNNPACK, NNAPI, GPU
+    }
+
+    /**
+     * An interpreter together with the delegate it was built with, which must outlive it.
+     */
+    public static class LoadedInterpreter {
+        public final Interpreter interpreter;
+        public final Backend backend;
+        private final Delegate delegate;
+
+        LoadedInterpreter(Interpreter interpreter, Backend backend, Delegate delegate) {
+            this.interpreter = interpreter;
+            this.backend = backend;
+            this.delegate = delegate;
+        }
+
+        public void close() {
+            interpreter.close();
+            if (delegate != null) {
+                try {
+                    delegate.close();
+                } catch (Exception e) {
+                    Log.w(TAG, "Error closing " + backend + " delegate: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private TfliteDelegateSelector() {
+    }
+
+    /**
+     * Opens an interpreter on the best backend for this device, probing on first use.
+     * Falls back to XNNPACK and then plain CPU if the remembered backend no longer loads.
+     *
+     * @param modelFingerprint {@link EmbeddingModelVersion#fingerprint} of {@code model}, so the
+     *                         remembered backend is dropped when the model changes.
+     */
+    public static LoadedInterpreter openBest(Context context, String modelPath, String modelFingerprint,
+                                             MappedByteBuffer model) throws Exception {
+        String key = prefsKey(modelPath, modelFingerprint);
+        Backend backend = selectBackend(context, key, model);
+        try {
+            return open(model, backend);
+        } catch (Throwable t) {
+            Log.w(TAG, "Stored backend " + backend + " failed to load, falling back. " + t.getMessage());
+            prefs(context).edit().remove(key).apply();
+        }
+        try {
+            return open(model, Backend.XNNPACK);
+        } catch (Throwable t) {
+            Log.w(TAG, "XNNPACK failed to load, using plain CPU. " + t.getMessage());
+        }
+        return open(model, Backend.CPU);
+    }
+
+    /**
+     * Returns the remembered backend for this device and model, or probes and remembers one.
+     */
+    public static Backend selectBackend(Context context, String modelPath, MappedByteBuffer model) {
+        return selectBackend(context, prefsKey(modelPath, EmbeddingModelVersion.fingerprint(model)), model);
+    }
+
+    private static Backend selectBackend(Context context, String key, MappedByteBuffer model) {
+        SharedPreferences prefs = prefs(context);
+        String stored = prefs.getString(key, null);
+        if (stored != null) {
+            try {
+                return Backend.valueOf(stored);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring unknown stored backend: " + stored);
+            }
+        }
+
+        Backend chosen = probe(model);
+        prefs.edit().putString(key, chosen.name()).apply();
+        return chosen;
+    }
+
+    /**
+     * Builds an interpreter on the given backend. Throws if the backend is not available here.
+     */
+    public static LoadedInterpreter open(MappedByteBuffer model, Backend backend) throws Exception {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(NUM_THREADS);
+        Delegate delegate = null;
+        switch (backend) {
+            case CPU:
+                options.setUseXNNPACK(false);
+                break;
+            case XNNPACK:
+                options.setUseXNNPACK(true);
+                break;
+            case NNAPI:
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1) {
+                    throw new UnsupportedOperationException("NNAPI requires API 27.");
+                }
+                delegate = new NnApiDelegate();
+                options.addDelegate(delegate);
+                break;
+            case GPU:
+                CompatibilityList compatibilityList = new CompatibilityList();
+                try {
+                    if (!compatibilityList.isDelegateSupportedOnThisDevice()) {
+                        throw new UnsupportedOperationException("GPU delegate not supported on this device.");
+                    }
+                    delegate = new GpuDelegate(compatibilityList.getBestOptionsForThisDevice());
+                } finally {
+                    compatibilityList.close();
+                }
+                options.addDelegate(delegate);
+                break;
+        }
+
+        model.rewind();
+        try {
+            return new LoadedInterpreter(new Interpreter(model, options), backend, delegate);
+        } catch (Throwable t) {
+            if (delegate != null) {
+                delegate.close();
+            }
+            throw t instanceof Exception ? (Exception) t : new Exception(t);
+        }
+    }
+
+    /**
+     * Benchmarks every backend against the plain CPU reference and returns the fastest one
+     * whose output agrees with it. Never throws; returns CPU if nothing else works.
+     */
+    static Backend probe(MappedByteBuffer model) {
+        LoadedInterpreter reference;
+        try {
+            reference = open(model, Backend.CPU);
+        } catch (Throwable t) {
+            Log.e(TAG, "CPU reference interpreter failed to load, skipping probe.", t);
+            return Backend.CPU;
+        }
+
+        ByteBuffer input;
+        ByteBuffer referenceOutput;
+        Backend best = Backend.CPU;
+        long bestNanos;
+        try {
+            input = createProbeInput(reference.interpreter);
+            referenceOutput = allocateOutput(reference.interpreter);
+            bestNanos = benchmark(reference.interpreter, input, referenceOutput);
+        } finally {
+            reference.close();
+        }
+        Log.d(TAG, "Probe CPU: " + bestNanos / 1000 + " us/run");
+
+        for (Backend candidate : new Backend[]{Backend.XNNPACK, Backend.NNAPI, Backend.GPU}) {
+            LoadedInterpreter loaded = null;
+            try {
+                loaded = open(model, candidate);
+                ByteBuffer output = allocateOutput(loaded.interpreter);
+                long nanos = benchmark(loaded.interpreter, input, output);
+                double agreement = cosine(loaded.interpreter.getOutputTensor(0), referenceOutput, output);
+                Log.d(TAG, "Probe " + candidate + ": " + nanos / 1000 + " us/run, cosine vs CPU = " + agreement);
+                if (agreement >= MIN_COSINE_VS_CPU && nanos < bestNanos) {
+                    best = candidate;
+                    bestNanos = nanos;
+                }
+            } catch (Throwable t) {
+                Log.d(TAG, "Backend " + candidate + " unavailable: " + t.getMessage());
+            } finally {
+                if (loaded != null) {
+                    loaded.close();
+                }
+            }
+        }
+
+        Log.i(TAG, "Selected TFLite backend: " + best);
+        return best;
+    }
+
+    private static long benchmark(Interpreter interpreter, ByteBuffer input, ByteBuffer output) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            runOnce(interpreter, input, output);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            runOnce(interpreter, input, output);
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / TIMED_RUNS;
+    }
+
+    private static void runOnce(Interpreter interpreter, ByteBuffer input, ByteBuffer output) {
+        input.rewind();
+        output.rewind();
+        interpreter.run(input, output);
+    }
+
+    /**
+     * Fixed pseudo-random input (floats in [-1, 1], or raw bytes for a quantized model),
+     * so every backend sees exactly the same data.
+     */
+    private static ByteBuffer createProbeInput(Interpreter interpreter) {
+        Tensor inputTensor = interpreter.getInputTensor(0);
+        ByteBuffer input = ByteBuffer.allocateDirect(inputTensor.numBytes()).order(ByteOrder.nativeOrder());
+        Random random = new Random(PROBE_SEED);
+        if (inputTensor.dataType() == DataType.FLOAT32) {
+            while (input.remaining() >= 4) {
+                input.putFloat(random.nextFloat() * 2f - 1f);
+            }
+        } else {
+            byte[] bytes = new byte[input.capacity()];
+            random.nextBytes(bytes);
+            input.put(bytes);
+        }
+        input.rewind();
+        return input;
+    }
+
+    private static ByteBuffer allocateOutput(Interpreter interpreter) {
+        return ByteBuffer.allocateDirect(interpreter.getOutputTensor(0).numBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Cosine similarity of two output buffers of the given tensor's type. Quantized values are
+     * shifted by the zero point; the scale cancels out.
+     */
+    private static double cosine(Tensor outputTensor, ByteBuffer a, ByteBuffer b) {
+        DataType type = outputTensor.dataType();
+        int zeroPoint = outputTensor.quantizationParams().getZeroPoint();
+        int valueSize = type.byteSize();
+        a.rewind();
+        b.rewind();
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        while (a.remaining() >= valueSize && b.remaining() >= valueSize) {
+            float x = readValue(a, type, zeroPoint);
+            float y = readValue(b, type, zeroPoint);
+            dot += x * y;
+            normA += x * x;
+            normB += y * y;
+        }
+        if (normA == 0.0 || normB == 0.0) {
+            return normA == normB ? 1.0 : 0.0;
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private static float readValue(ByteBuffer buffer, DataType type, int zeroPoint) {
+        if (type == DataType.FLOAT32) {
+            return buffer.getFloat();
+        }
+        if (type == DataType.UINT8) {
+            return (buffer.get() & 0xFF) - zeroPoint;
+        }
+        return buffer.get() - zeroPoint;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // Keyed by model and build fingerprint, so a model replaced under the same name or an
+    // OS/driver update triggers a fresh probe.
+    private static String prefsKey(String modelPath, String modelFingerprint) {
+        return modelPath + "|" + modelFingerprint + "|" + Build.FINGERPRINT;
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.smartattendancesystem;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Calibrates every user's match threshold at {@link #TARGET_FAR} with {@link ScoreCalibrator} and
+ * stores it in their document (see EmbeddingFields), where VerifyActivity picks it up.
+ *
+ * Impostor scores are what VerifyActivity would score the other users in a user's cohort
+ * (students of the same faculty and course, or staff of the same role), the people most likely
+ * to stand in front of that phone: each one's primary template probing the user's
+ * {@link FaceTemplateSet} under {@link FaceTemplateSet#DEFAULT_FUSION}. A user with fewer than
+ * {@link #MIN_IMPOSTOR_SAMPLES} cohort peers gets the cohort-wide threshold, and a cohort that
+ * small the global one. Genuine scores are the user's recorded successful verifications, seeded
+ * by their enrollment templates, and only feed the reported false-reject rate: the threshold is set by the FAR target, never loosened to
+ * save retries, and never below {@link #THRESHOLD_FLOOR}.
+ *
+ * Runs for an admin at most once every {@link #RECALIBRATE_INTERVAL_MS} or when the model
+ * changes, after EmbeddingMigrationJob has checked for stale embeddings; users are read and
+ * written in pages with a pause in between.
+ */
+public class ThresholdCalibrationJob {
+
+    private static final String TAG = "ThresholdCalibration";
+
+    public static final double TARGET_FAR = 0.001;
+    /** The uncalibrated VerifyActivity threshold; calibration only ever tightens it. */
+    public static final float THRESHOLD_FLOOR = 0.02f;
+    private static final int MIN_IMPOSTOR_SAMPLES = 50;
+    private static final int MAX_IMPOSTORS_PER_USER = 2000;
+    private static final int MAX_POOL_SAMPLES = 200_000; // Cohort and global pair samples
+    private static final int PAGE_SIZE = 100;
+    private static final int WRITE_BATCH_SIZE = 200;
+    private static final long PAGE_PAUSE_MS = 1000;
+    private static final long RECALIBRATE_INTERVAL_MS = 24L * 60 * 60 * 1000;
+    private static final String PREFS = "threshold_calibration";
+    private static final String KEY_LAST_RUN = "lastRunMillis";
+    private static final String KEY_MODEL = "modelVersion";
+
+    private static boolean running = false; // Main thread only
+
+    private static final class Subject {
+        final DocumentReference userRef;
+        final String cohort;
+        final FaceTemplateSet templates;
+        final float[] probe; // Primary template, for scoring against other users
+        final float[] genuineScores;
+
+        Subject(DocumentReference userRef, String cohort, FaceTemplateSet templates, float[] genuineScores) {
+            this.userRef = userRef;
+            this.cohort = cohort;
+            this.templates = templates;
+            this.probe = templates.primary();
+            this.genuineScores = genuineScores;
+        }
+    }
+
+    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final SharedPreferences prefs;
+    private final String modelVersion;
+    private final List<Subject> subjects = new ArrayList<>();
+
+    private ThresholdCalibrationJob(Context appContext, String modelVersion) {
+        this.prefs = appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.modelVersion = modelVersion;
+    }
+
+    /**
+     * Starts a calibration pass if the last one is older than a day or was for another model.
+     * Needs the model version, so call it once the face model has been loaded at least once, and
+     * only for an admin, who may write every user document.
+     */
+    public static void startIfDue(Context context) {
+        String modelVersion = FaceEmbeddingEngine.getModelVersion();
+        if (running || modelVersion == null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        boolean sameModel = modelVersion.equals(prefs.getString(KEY_MODEL, null));
+        if (sameModel && System.currentTimeMillis() - prefs.getLong(KEY_LAST_RUN, 0) < RECALIBRATE_INTERVAL_MS) {
+            return;
+        }
+        running = true;
+        Log.d(TAG, "Starting threshold calibration for model " + modelVersion);
+        new ThresholdCalibrationJob(appContext, modelVersion).loadPage(null);
+    }
+
+    private void loadPage(DocumentSnapshot startAfter) {
+        Query query = db.collection("users").orderBy(FieldPath.documentId()).limit(PAGE_SIZE);
+        if (startAfter != null) {
+            query = query.startAfter(startAfter);
+        }
+        query.get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    List<DocumentSnapshot> documents = queryDocumentSnapshots.getDocuments();
+                    for (DocumentSnapshot document : documents) {
+                        FaceTemplateSet templates = EmbeddingFields.readTemplatesForLogin(document, modelVersion);
+                        if (templates != null) {
+                            subjects.add(new Subject(document.getReference(), cohortOf(document),
+                                    templates, EmbeddingFields.readGenuineScores(document)));
+                        }
+                    }
+                    if (documents.size() < PAGE_SIZE) {
+                        // One task on its own thread, which ends with it however it ends
+                        ExecutorService worker = Executors.newSingleThreadExecutor();
+                        worker.execute(this::calibrate);
+                        worker.shutdown();
+                    } else {
+                        DocumentSnapshot last = documents.get(documents.size() - 1);
+                        mainHandler.postDelayed(() -> loadPage(last), PAGE_PAUSE_MS);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Could not load users to calibrate: " + e.getMessage(), e);
+                    finish(false);
+                });
+    }
+
+    private static String cohortOf(DocumentSnapshot document) {
+        String role = document.getString("role");
+        if ("Student".equals(role)) {
+            return role + "/" + document.getString("faculty") + "/" + document.getString("course");
+        }
+        return String.valueOf(role);
+    }
+
+    // Worker thread: all the dot products, then hand the updates back to the main thread. A
+    // failure ends the run there too, so the next startIfDue can try again.
+    private void calibrate() {
+        try {
+            calibrateAll();
+        } catch (RuntimeException | OutOfMemoryError e) {
+            Log.e(TAG, "Threshold calibration failed: " + e.getMessage(), e);
+            mainHandler.post(() -> finish(false));
+        }
+    }
+
+    private void calibrateAll() {
+        long start = System.currentTimeMillis();
+        Map<String, List<Integer>> cohorts = new LinkedHashMap<>();
+        List<Integer> everyone = new ArrayList<>();
+        for (int i = 0; i < subjects.size(); i++) {
+            cohorts.computeIfAbsent(subjects.get(i).cohort, key -> new ArrayList<>()).add(i);
+            everyone.add(i);
+        }
+        ScorePool global = pairScores(everyone);
+
+        Map<DocumentReference, Map<String, Object>> updates = new LinkedHashMap<>();
+        float[] userScores = new float[MAX_IMPOSTORS_PER_USER];
+        for (Map.Entry<String, List<Integer>> cohort : cohorts.entrySet()) {
+            List<Integer> members = cohort.getValue();
+            ScorePool cohortPool = null;
+            int stride = (members.size() - 1) / MAX_IMPOSTORS_PER_USER + 1; // Spread the sample over the whole cohort
+            for (int index : members) {
+                Subject subject = subjects.get(index);
+                int count = 0;
+                for (int j = 0; j < members.size() && count < MAX_IMPOSTORS_PER_USER; j += stride) {
+                    int other = members.get(j);
+                    if (other != index) {
+                        userScores[count++] = subject.templates.score(subjects.get(other).probe, FaceTemplateSet.DEFAULT_FUSION);
+                    }
+                }
+
+                String scope;
+                ScoreCalibrator.Calibration calibration;
+                if (count >= MIN_IMPOSTOR_SAMPLES) {
+                    scope = "user";
+                    calibration = ScoreCalibrator.calibrate(userScores, count, subject.genuineScores, TARGET_FAR, THRESHOLD_FLOOR);
+                } else {
+                    if (cohortPool == null) {
+                        cohortPool = pairScores(members);
+                    }
+                    ScorePool pool = cohortPool.count >= MIN_IMPOSTOR_SAMPLES ? cohortPool : global;
+                    if (pool.count < MIN_IMPOSTOR_SAMPLES) {
+                        continue; // Too few enrolled users to say anything; VerifyActivity keeps its default
+                    }
+                    scope = pool == global ? "global" : "cohort";
+                    calibration = ScoreCalibrator.calibrate(pool.scores, pool.count, subject.genuineScores, TARGET_FAR, THRESHOLD_FLOOR);
+                }
+                updates.put(subject.userRef, toFields(calibration, scope));
+            }
+        }
+        Log.d(TAG, "Calibrated " + updates.size() + " of " + subjects.size() + " users in "
+                + (System.currentTimeMillis() - start) + " ms (" + global.count + " global impostor pairs).");
+        mainHandler.post(() -> writeUpdates(new ArrayList<>(updates.entrySet()), 0));
+    }
+
+    private Map<String, Object> toFields(ScoreCalibrator.Calibration calibration, String scope) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(EmbeddingFields.FACE_MATCH_THRESHOLD, (double) calibration.threshold);
+        fields.put(EmbeddingFields.FACE_MATCH_THRESHOLD_MODEL, modelVersion);
+        fields.put(EmbeddingFields.FACE_MATCH_THRESHOLD_SCOPE, scope);
+        fields.put(EmbeddingFields.FACE_MATCH_FRR, Double.isNaN(calibration.expectedFrr) ? FieldValue.delete() : calibration.expectedFrr);
+        return fields;
+    }
+
+    private static final class ScorePool {
+        final float[] scores;
+        final int count;
+
+        ScorePool(float[] scores, int count) {
+            this.scores = scores;
+            this.count = count;
+        }
+    }
+
+    // Scores of distinct pairs among these users (the second probing the first's templates), evenly subsampled to MAX_POOL_SAMPLES
+    private ScorePool pairScores(List<Integer> members) {
+        long pairs = (long) members.size() * (members.size() - 1) / 2;
+        long stride = Math.max(1, pairs / MAX_POOL_SAMPLES + (pairs % MAX_POOL_SAMPLES == 0 ? 0 : 1));
+        float[] scores = new float[(int) Math.min(pairs, MAX_POOL_SAMPLES)];
+        int count = 0;
+        long pair = 0;
+        for (int a = 0; a < members.size() && count < scores.length; a++) {
+            for (int b = a + 1; b < members.size() && count < scores.length; b++, pair++) {
+                if (pair % stride == 0) {
+                    scores[count++] = subjects.get(members.get(a)).templates.score(subjects.get(members.get(b)).probe, FaceTemplateSet.DEFAULT_FUSION);
+                }
+            }
+        }
+        return new ScorePool(scores, count);
+    }
+
+    private void writeUpdates(List<Map.Entry<DocumentReference, Map<String, Object>>> updates, int from) {
+        if (from >= updates.size()) {
+            finish(true);
+            return;
+        }
+        int to = Math.min(updates.size(), from + WRITE_BATCH_SIZE);
+        WriteBatch batch = db.batch();
+        for (int i = from; i < to; i++) {
+            batch.update(updates.get(i).getKey(), updates.get(i).getValue());
+        }
+        batch.commit()
+                .addOnSuccessListener(aVoid -> mainHandler.postDelayed(() -> writeUpdates(updates, to), PAGE_PAUSE_MS))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Could not save calibrated thresholds: " + e.getMessage(), e);
+                    finish(false);
+                });
+    }
+
+    private void finish(boolean completed) {
+        if (completed) {
+            prefs.edit()
+                    .putLong(KEY_LAST_RUN, System.currentTimeMillis())
+                    .putString(KEY_MODEL, modelVersion)
+                    .apply();
+            Log.d(TAG, "Threshold calibration saved.");
+        }
+        running = false;
+    }
+}
@@ -0,0 +1,926 @@
+package com.example.smartattendancesystem;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent background queue of file uploads, so screens hand a file over and move on instead of
+ * waiting on the network.
+ *
+ * {@link #enqueue} copies (or moves) the file into the queue's directory under its SHA-256 and
+ * records it in a journal, so pending uploads survive the process; a new queue on the same
+ * directory picks them up. There is one upload per destination, meaning the document fields
+ * that receive its URL, or its path if there are none. The same content for the same
+ * destination is not uploaded twice, and new content replaces a pending upload instead of
+ * queueing behind it. Failed uploads are retried with exponential backoff up to
+ * {@code maxAttempts}, or until the storage reports an error that will not go away.
+ *
+ * A manifest remembers the content and URL last uploaded to each path, so sending the same
+ * bytes to a path again costs nothing. {@link #enqueueByContent} goes further and names the
+ * file after its hash. Identical images, e.g. a QR code generated again or shared by two
+ * classes, then share one stored object. Before uploading such a file the queue asks the
+ * storage whether it already exists, which covers files uploaded from other devices or before
+ * the manifest forgot them. The manifest trusts that stored files are never deleted.
+ *
+ * An upload may name document fields to receive its download URL. Those writes are collected
+ * for {@link #METADATA_BATCH_MILLIS} and sent to the {@link MetadataStore} as one batch. A
+ * failed write is retried with the same backoff and attempt limit as uploads. If a batch fails
+ * with an error that will not go away, documents are written one at a time until the one that
+ * cannot be written is found; its uploads fail and the others go through.
+ *
+ * Each upload records the account that queued it. While another account (or none) is signed
+ * in, its uploads and URL writes are parked rather than run, and failures are not counted
+ * against them; {@link #accountChanged} picks them up when their account is back.
+ *
+ * {@link RemoteStorage} and {@link MetadataStore} are Firebase Storage and Firestore on device
+ * (FirebaseUploadQueue) and local stand-ins in tests. Observers hear about every state change on
+ * the queue's executor. enqueue hashes and copies the file, so call it off the main thread; the
+ * other methods are cheap. Thread-safe.
+ */
+public class UploadQueue {
+
+    public enum State {
+        QUEUED,
+        UPLOADING,
+        WAITING_TO_RETRY,
+        WRITING_METADATA, // Uploaded, download URL not yet written to its document
+        UPLOADED,
+        FAILED
+    }
+
+    public interface RemoteStorage extends ContentLookup {
+        /**
+         * Uploads {@code file} to {@code path} and calls back exactly once, from any thread.
+         */
+        void upload(String path, File file, String contentHash, UploadCallback callback);
+    }
+
+    /**
+     * Existence check for content-addressed files.
+     */
+    public interface ContentLookup {
+        /**
+         * Calls back exactly once, from any thread: {@code onFound} if a file exists at
+         * {@code path}, {@code onMissing} if not or if that cannot be told right now.
+         */
+        void lookup(String path, LookupCallback callback);
+    }
+
+    public interface LookupCallback {
+        void onFound(String downloadUrl);
+
+        void onMissing();
+    }
+
+    public interface UploadCallback {
+        void onUploaded(String downloadUrl);
+
+        /**
+         * @param retryable false for errors a retry cannot fix, e.g. a permission error.
+         */
+        void onFailed(Exception error, boolean retryable);
+    }
+
+    public interface MetadataStore {
+        /**
+         * Merges the fields into their documents in one batch and calls back exactly once, from any thread.
+         *
+         * @param fieldsByDocument document path to field name to value.
+         */
+        void write(Map<String, Map<String, String>> fieldsByDocument, WriteCallback callback);
+    }
+
+    public interface WriteCallback {
+        void onWritten();
+
+        /**
+         * @param retryable false for errors a retry cannot fix, e.g. a permission error.
+         */
+        void onFailed(Exception error, boolean retryable);
+    }
+
+    public interface Accounts {
+        /**
+         * @return the id of the signed-in account, or null if none.
+         */
+        String getCurrentAccount();
+    }
+
+    public interface Observer {
+        void onUploadChanged(Upload upload);
+    }
+
+    /**
+     * Snapshot of one upload.
+     */
+    public static final class Upload {
+        public final String id;
+        public final String owner; // Account that queued it; null runs under any account
+        public final String path;
+        public final String contentHash;
+        public final String document; // Null if no document gets the download URL
+        public final List<String> fields; // Empty if no document
+        public final State state;
+        public final int attempts;
+        public final int writeAttempts; // Of the download URL to its document
+        public final String downloadUrl;
+        public final String error;
+
+        Upload(Entry entry) {
+            this.id = entry.id;
+            this.owner = entry.owner;
+            this.path = entry.path;
+            this.contentHash = entry.contentHash;
+            this.document = entry.document;
+            this.fields = entry.fields;
+            this.state = entry.state;
+            this.attempts = entry.attempts;
+            this.writeAttempts = entry.writeAttempts;
+            this.downloadUrl = entry.downloadUrl;
+            this.error = entry.error;
+        }
+
+        public boolean isFinished() {
+            return state == State.UPLOADED || state == State.FAILED;
+        }
+    }
+
+    static final long METADATA_BATCH_MILLIS = 300;
+    private static final int JOURNAL_FORMAT = 4;
+    private static final String JOURNAL = "uploads.journal";
+    private static final int MANIFEST_FORMAT = 1;
+    private static final String MANIFEST = "uploads.manifest";
+    private static final int MAX_MANIFEST_ENTRIES = 256;
+    private static final String BLOBS = "blobs";
+    private static final int MAX_CONCURRENT_UPLOADS = 2;
+    private static final int MAX_FINISHED = 32; // Finished uploads kept for dedupe and getUpload
+
+    // Guarded by this queue
+    private static final class Entry {
+        final String id;
+        String owner;
+        String path;
+        boolean contentAddressed; // Path names the content, so an existing file there is this one
+        String contentHash;
+        String document;
+        List<String> fields = Collections.emptyList();
+        State state = State.QUEUED;
+        int attempts;
+        int writeAttempts;
+        long nextAttemptAtMillis;
+        String downloadUrl;
+        String error;
+        String uploadingHash; // Content of the upload in flight, to notice a replacement
+
+        Entry(String id, String path) {
+            this.id = id;
+            this.path = path;
+        }
+
+        String destination() {
+            return destinationOf(path, document, fields);
+        }
+
+        boolean isLive() {
+            return state != State.UPLOADED && state != State.FAILED;
+        }
+    }
+
+    private final File directory;
+    private final File blobDirectory;
+    private final RemoteStorage storage;
+    private final MetadataStore metadataStore;
+    private final Accounts accounts;
+    private final ScheduledExecutorService executor;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Entry> entriesByDestination = new LinkedHashMap<>(); // Oldest first
+    // Path to {content hash, download URL} of what was last uploaded there, least recently used first
+    private final Map<String, String[]> manifest = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            return size() > MAX_MANIFEST_ENTRIES;
+        }
+    };
+    private long pumpScheduledAtMillis = Long.MAX_VALUE;
+    private boolean metadataFlushScheduled = false;
+    private boolean metadataWriteInFlight = false;
+    private int metadataFailures = 0;
+    private boolean writeDocumentsSeparately = false; // After a batch failed for good, to find the document at fault
+
+    /**
+     * Loads the journal in {@code directory}; uploads that were in flight when the process died
+     * are queued again. Call {@link #resume} to start them.
+     *
+     * @param executor runs retries, metadata batches and observer calls; a single thread will do.
+     */
+    public UploadQueue(File directory, RemoteStorage storage, MetadataStore metadataStore, Accounts accounts,
+                       ScheduledExecutorService executor, long baseBackoffMillis, long maxBackoffMillis,
+                       int maxAttempts) throws IOException {
+        if (baseBackoffMillis < 0 || maxBackoffMillis < baseBackoffMillis || maxAttempts < 1) {
+            throw new IllegalArgumentException("Expected 0 <= base <= max backoff and at least one attempt.");
+        }
+        this.directory = directory;
+        this.blobDirectory = new File(directory, BLOBS);
+        this.storage = storage;
+        this.metadataStore = metadataStore;
+        this.accounts = accounts;
+        this.executor = executor;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxAttempts = maxAttempts;
+        if (!blobDirectory.isDirectory() && !blobDirectory.mkdirs()) {
+            throw new IOException("Could not create " + blobDirectory);
+        }
+        synchronized (this) {
+            loadManifest();
+            loadJournal();
+        }
+    }
+
+    /**
+     * Delay before retry number {@code attempts} (1 for the first retry): {@code base * 2^(attempts - 1)},
+     * at most {@code max}.
+     */
+    static long backoffMillis(int attempts, long base, long max) {
+        if (attempts < 1 || base <= 0) {
+            return 0;
+        }
+        int shift = Math.min(attempts - 1, 30);
+        return Math.min(max, base << shift);
+    }
+
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Queues {@code source} for upload to {@code path}.
+     *
+     * @param moveSource true to take the file over (e.g. a temporary file), false to copy it.
+     * @param owner      account the upload belongs to, usually the one signed in; null for any.
+     * @param document   document to merge the download URL into, or null.
+     * @param fields     fields of {@code document} that receive the URL.
+     * @return the upload's id; an existing one if this content is already queued or uploaded for the destination.
+     */
+    public String enqueue(File source, boolean moveSource, String owner, String path, String document,
+                          String... fields) throws IOException {
+        return enqueue(source, moveSource, owner, path, null, null, document, fields);
+    }
+
+    /**
+     * Queues {@code source} for upload to {@link #contentAddressedPath} in {@code directory},
+     * skipping the upload if that file already exists. Otherwise like {@link #enqueue}.
+     *
+     * @param extension appended to the hash, e.g. {@code ".png"}.
+     */
+    public String enqueueByContent(File source, boolean moveSource, String owner, String directory, String extension,
+                                   String document, String... fields) throws IOException {
+        return enqueue(source, moveSource, owner, null, directory, extension, document, fields);
+    }
+
+    /**
+     * @return the storage path of content with this SHA-256 in {@code directory}.
+     */
+    public static String contentAddressedPath(String directory, String contentHash, String extension) {
+        return directory + "/" + contentHash + extension;
+    }
+
+    // The fields an upload fills in, or its path if it fills in none
+    static String destinationOf(String path, String document, List<String> fields) {
+        return document == null ? path : document + "#" + String.join(",", fields);
+    }
+
+    // A null path names the file after its content, in contentDirectory with contentExtension
+    private String enqueue(File source, boolean moveSource, String owner, String path, String contentDirectory,
+                           String contentExtension, String document, String... fields) throws IOException {
+        if ((document == null) != (fields.length == 0)) {
+            throw new IllegalArgumentException("A document needs fields and fields need a document.");
+        }
+        List<String> fieldList = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(fields)));
+        String hash = sha256Hex(source);
+        boolean contentAddressed = path == null;
+        if (contentAddressed) {
+            path = contentAddressedPath(contentDirectory, hash, contentExtension);
+        }
+        String destination = destinationOf(path, document, fieldList);
+        String id;
+        synchronized (this) {
+            Entry existing = entriesByDestination.get(destination);
+            if (existing != null && hash.equals(existing.contentHash) && path.equals(existing.path)
+                    && existing.state != State.FAILED && Objects.equals(owner, existing.owner)) {
+                if (moveSource) {
+                    source.delete();
+                }
+                return existing.id; // Same content to the same place: nothing new to do
+            }
+
+            File blob = blobFor(hash);
+            if (!blob.isFile()) {
+                File temp = new File(blobDirectory, hash + ".tmp");
+                if (moveSource) {
+                    Files.move(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (!temp.renameTo(blob)) {
+                    temp.delete();
+                    throw new IOException("Could not stage " + blob);
+                }
+            } else if (moveSource) {
+                source.delete();
+            }
+
+            Entry entry;
+            String replacedHash = null;
+            if (existing != null && existing.isLive()) {
+                entry = existing; // Replace the pending content; an upload in flight is redone when it lands
+                replacedHash = existing.contentHash;
+            } else {
+                if (existing != null) {
+                    entriesByDestination.remove(destination);
+                }
+                entry = new Entry(UUID.randomUUID().toString(), path);
+                entriesByDestination.put(destination, entry);
+            }
+            entry.owner = owner;
+            entry.path = path;
+            entry.contentAddressed = contentAddressed;
+            entry.contentHash = hash;
+            entry.document = document;
+            entry.fields = fieldList;
+            entry.attempts = 0;
+            entry.writeAttempts = 0;
+            entry.error = null;
+            entry.nextAttemptAtMillis = 0;
+            if (entry.state != State.UPLOADING) {
+                entry.state = State.QUEUED;
+                entry.downloadUrl = null;
+            }
+            if (replacedHash != null && !replacedHash.equals(hash)) {
+                releaseBlobIfUnused(replacedHash);
+            }
+            id = entry.id;
+            changed(entry);
+        }
+        resume();
+        return id;
+    }
+
+    /**
+     * Starts whatever can be uploaded now; retries waiting for their backoff are left alone.
+     */
+    public void resume() {
+        executor.execute(this::pump);
+    }
+
+    /**
+     * Runs waiting retries now, e.g. once the network is back.
+     */
+    public void retryNow() {
+        synchronized (this) {
+            for (Entry entry : entriesByDestination.values()) {
+                if (entry.state == State.WAITING_TO_RETRY) {
+                    entry.nextAttemptAtMillis = 0;
+                }
+            }
+        }
+        resume();
+    }
+
+    /**
+     * Runs the uploads and URL writes of the account now signed in, parked until it was.
+     */
+    public void accountChanged() {
+        synchronized (this) {
+            for (Entry entry : entriesByDestination.values()) {
+                if (entry.state == State.WRITING_METADATA && !isParked(entry)) {
+                    scheduleMetadataFlush(0);
+                    break;
+                }
+            }
+        }
+        resume();
+    }
+
+    /**
+     * @return a snapshot of the upload, or null if it is unknown or long finished.
+     */
+    public synchronized Upload getUpload(String id) {
+        for (Entry entry : entriesByDestination.values()) {
+            if (entry.id.equals(id)) {
+                return new Upload(entry);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return how many uploads are not finished yet.
+     */
+    public synchronized int getPendingCount() {
+        int pending = 0;
+        for (Entry entry : entriesByDestination.values()) {
+            if (entry.isLive()) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    private void pump() {
+        List<Runnable> toStart = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            int uploading = 0;
+            for (Entry entry : entriesByDestination.values()) {
+                if (entry.state == State.UPLOADING) {
+                    uploading++;
+                }
+            }
+            long nextWakeAt = Long.MAX_VALUE;
+            for (Entry entry : entriesByDestination.values()) {
+                if (isParked(entry)) {
+                    continue;
+                }
+                boolean due = entry.state == State.QUEUED
+                        || (entry.state == State.WAITING_TO_RETRY && entry.nextAttemptAtMillis <= now);
+                if (due && isUploading(entry.path)) {
+                    continue; // Picked up when the upload to the same path lands, likely from the manifest
+                }
+                String[] uploaded = due ? manifest.get(entry.path) : null;
+                if (uploaded != null && uploaded[0].equals(entry.contentHash)) {
+                    uploadSucceeded(entry, uploaded[1]); // Already there: no bandwidth spent
+                    changed(entry);
+                } else if (due && uploading < MAX_CONCURRENT_UPLOADS) {
+                    entry.state = State.UPLOADING;
+                    entry.uploadingHash = entry.contentHash;
+                    entry.attempts++;
+                    uploading++;
+                    toStart.add(startUpload(entry.id, entry.path, entry.contentHash, entry.contentAddressed));
+                    changed(entry);
+                } else if (entry.state == State.WAITING_TO_RETRY) {
+                    nextWakeAt = Math.min(nextWakeAt, entry.nextAttemptAtMillis);
+                }
+            }
+            if (nextWakeAt != Long.MAX_VALUE && nextWakeAt < pumpScheduledAtMillis) {
+                pumpScheduledAtMillis = nextWakeAt;
+                executor.schedule(() -> {
+                    synchronized (this) {
+                        pumpScheduledAtMillis = Long.MAX_VALUE;
+                    }
+                    pump();
+                }, Math.max(0, nextWakeAt - now), TimeUnit.MILLISECONDS);
+            }
+        }
+        for (Runnable start : toStart) {
+            start.run();
+        }
+    }
+
+    // Caller holds the lock. Parked: queued by an account that is not signed in now.
+    private boolean isParked(Entry entry) {
+        return entry.owner != null && !entry.owner.equals(accounts.getCurrentAccount());
+    }
+
+    // Caller holds the lock
+    private boolean isUploading(String path) {
+        for (Entry entry : entriesByDestination.values()) {
+            if (entry.state == State.UPLOADING && path.equals(entry.path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Runs outside the lock: a content-addressed file is looked up before it is uploaded
+    private Runnable startUpload(String id, String path, String hash, boolean contentAddressed) {
+        UploadCallback callback = new UploadCallback() {
+            @Override
+            public void onUploaded(String downloadUrl) {
+                onUploadFinished(id, path, hash, downloadUrl, null, false);
+            }
+
+            @Override
+            public void onFailed(Exception error, boolean retryable) {
+                onUploadFinished(id, path, hash, null, error, retryable);
+            }
+        };
+        if (!contentAddressed) {
+            return () -> storage.upload(path, blobFor(hash), hash, callback);
+        }
+        return () -> storage.lookup(path, new LookupCallback() {
+            @Override
+            public void onFound(String downloadUrl) {
+                callback.onUploaded(downloadUrl);
+            }
+
+            @Override
+            public void onMissing() {
+                storage.upload(path, blobFor(hash), hash, callback);
+            }
+        });
+    }
+
+    private void onUploadFinished(String id, String path, String hash, String downloadUrl, Exception error, boolean retryable) {
+        synchronized (this) {
+            if (error == null) {
+                remember(path, hash, downloadUrl); // Even if the entry moved on, the file is there now
+            }
+            Entry entry = find(id);
+            if (entry == null || entry.state != State.UPLOADING) {
+                return;
+            }
+            entry.uploadingHash = null;
+            if (!hash.equals(entry.contentHash) || !path.equals(entry.path)) {
+                entry.state = State.QUEUED; // Replaced while uploading: send the new content
+                entry.attempts = 0;
+                releaseBlobIfUnused(hash);
+            } else if (error == null) {
+                uploadSucceeded(entry, downloadUrl);
+            } else if (isParked(entry)) {
+                entry.state = State.QUEUED; // Likely failed for the sign-out; retried when the account is back
+                entry.attempts--;
+            } else {
+                entry.error = String.valueOf(error.getMessage());
+                if (!retryable || entry.attempts >= maxAttempts) {
+                    finish(entry, State.FAILED);
+                } else {
+                    entry.state = State.WAITING_TO_RETRY;
+                    entry.nextAttemptAtMillis = System.currentTimeMillis()
+                            + backoffMillis(entry.attempts, baseBackoffMillis, maxBackoffMillis);
+                }
+            }
+            changed(entry);
+        }
+        resume();
+    }
+
+    // Caller holds the lock and calls changed(entry) afterwards
+    private void uploadSucceeded(Entry entry, String downloadUrl) {
+        entry.downloadUrl = downloadUrl;
+        entry.error = null;
+        if (entry.document != null) {
+            entry.state = State.WRITING_METADATA;
+            scheduleMetadataFlush(METADATA_BATCH_MILLIS);
+        } else {
+            finish(entry, State.UPLOADED);
+        }
+    }
+
+    // Caller holds the lock
+    private void scheduleMetadataFlush(long delayMillis) {
+        if (!metadataFlushScheduled && !metadataWriteInFlight) {
+            metadataFlushScheduled = true;
+            executor.schedule(this::flushMetadata, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushMetadata() {
+        Map<String, Map<String, String>> fieldsByDocument = new LinkedHashMap<>();
+        Map<String, String> batch = new HashMap<>(); // Entry id to the URL it wrote
+        synchronized (this) {
+            metadataFlushScheduled = false;
+            for (Entry entry : entriesByDestination.values()) {
+                if (entry.state == State.WRITING_METADATA && !isParked(entry)) {
+                    Map<String, String> fields = fieldsByDocument.get(entry.document);
+                    if (fields == null) {
+                        if (writeDocumentsSeparately && !fieldsByDocument.isEmpty()) {
+                            continue;
+                        }
+                        fields = new LinkedHashMap<>();
+                        fieldsByDocument.put(entry.document, fields);
+                    }
+                    for (String field : entry.fields) {
+                        fields.put(field, entry.downloadUrl);
+                    }
+                    batch.put(entry.id, entry.downloadUrl);
+                }
+            }
+            if (batch.isEmpty()) {
+                writeDocumentsSeparately = false;
+                return;
+            }
+            metadataWriteInFlight = true;
+        }
+        int documents = fieldsByDocument.size();
+        metadataStore.write(fieldsByDocument, new WriteCallback() {
+            @Override
+            public void onWritten() {
+                onMetadataWritten(batch, documents, null, false);
+            }
+
+            @Override
+            public void onFailed(Exception error, boolean retryable) {
+                onMetadataWritten(batch, documents, error, retryable);
+            }
+        });
+    }
+
+    private void onMetadataWritten(Map<String, String> batch, int documents, Exception error, boolean retryable) {
+        synchronized (this) {
+            metadataWriteInFlight = false;
+            long delayMillis = METADATA_BATCH_MILLIS;
+            if (error != null && !retryable && documents > 1) {
+                writeDocumentsSeparately = true; // Nothing was written; find the document that cannot be
+            } else {
+                if (error == null) {
+                    metadataFailures = 0;
+                } else if (retryable) {
+                    metadataFailures++;
+                    delayMillis = Math.max(METADATA_BATCH_MILLIS, backoffMillis(metadataFailures, baseBackoffMillis, maxBackoffMillis));
+                }
+                for (Map.Entry<String, String> written : batch.entrySet()) {
+                    Entry entry = find(written.getKey());
+                    // Only if nothing replaced the upload in the meantime
+                    if (entry == null || entry.state != State.WRITING_METADATA || !written.getValue().equals(entry.downloadUrl)) {
+                        continue;
+                    }
+                    if (error == null) {
+                        entry.error = null;
+                        finish(entry, State.UPLOADED);
+                    } else if (isParked(entry)) {
+                        continue; // Signed out during the write; tried again when the account is back
+                    } else {
+                        entry.writeAttempts++;
+                        entry.error = "Could not save download URL: " + error.getMessage();
+                        if (!retryable || entry.writeAttempts >= maxAttempts) {
+                            finish(entry, State.FAILED);
+                        }
+                    }
+                    changed(entry);
+                }
+            }
+            boolean pending = false;
+            for (Entry entry : entriesByDestination.values()) {
+                if (entry.state == State.WRITING_METADATA && !isParked(entry)) {
+                    pending = true; // Left to retry, or landed during the write
+                    break;
+                }
+            }
+            if (pending) {
+                scheduleMetadataFlush(delayMillis);
+            } else {
+                writeDocumentsSeparately = false;
+            }
+        }
+    }
+
+    // Caller holds the lock and calls changed(entry) afterwards
+    private void finish(Entry entry, State state) {
+        entry.state = state;
+        releaseBlobIfUnused(entry.contentHash);
+        int finished = 0;
+        for (Entry other : entriesByDestination.values()) {
+            if (!other.isLive()) {
+                finished++;
+            }
+        }
+        Iterator<Entry> oldest = entriesByDestination.values().iterator();
+        while (finished > MAX_FINISHED && oldest.hasNext()) {
+            Entry other = oldest.next();
+            if (!other.isLive() && other != entry) {
+                oldest.remove();
+                finished--;
+            }
+        }
+    }
+
+    private Entry find(String id) {
+        for (Entry entry : entriesByDestination.values()) {
+            if (entry.id.equals(id)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void releaseBlobIfUnused(String hash) {
+        for (Entry entry : entriesByDestination.values()) {
+            if ((entry.isLive() && hash.equals(entry.contentHash)) || hash.equals(entry.uploadingHash)) {
+                return; // Still to be uploaded, or being read by an upload in flight
+            }
+        }
+        File blob = blobFor(hash);
+        if (blob.isFile()) {
+            blob.delete();
+        }
+    }
+
+    private File blobFor(String hash) {
+        return new File(blobDirectory, hash);
+    }
+
+    // Caller holds the lock: persist, then tell observers on the executor
+    private void changed(Entry entry) {
+        try {
+            saveJournal();
+        } catch (IOException e) {
+            entry.error = "Could not save upload journal: " + e.getMessage(); // Keeps running from memory
+        }
+        Upload snapshot = new Upload(entry);
+        if (!observers.isEmpty()) {
+            executor.execute(() -> {
+                for (Observer observer : observers) {
+                    observer.onUploadChanged(snapshot);
+                }
+            });
+        }
+    }
+
+    private void saveJournal() throws IOException {
+        // Write to a temporary file and rename, so a crash never leaves a half-written journal
+        File target = new File(directory, JOURNAL);
+        File temp = new File(directory, JOURNAL + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeByte(JOURNAL_FORMAT);
+            out.writeInt(entriesByDestination.size());
+            for (Entry entry : entriesByDestination.values()) {
+                out.writeUTF(entry.id);
+                writeNullable(out, entry.owner);
+                out.writeUTF(entry.path);
+                out.writeBoolean(entry.contentAddressed);
+                out.writeUTF(entry.contentHash);
+                writeNullable(out, entry.document);
+                out.writeInt(entry.fields.size());
+                for (String field : entry.fields) {
+                    out.writeUTF(field);
+                }
+                out.writeByte(entry.state.ordinal());
+                out.writeInt(entry.attempts);
+                out.writeInt(entry.writeAttempts);
+                out.writeLong(entry.nextAttemptAtMillis);
+                writeNullable(out, entry.downloadUrl);
+                writeNullable(out, entry.error);
+            }
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Could not replace " + target);
+        }
+    }
+
+    // A journal that cannot be read is dropped along with its staged files
+    private void loadJournal() {
+        File file = new File(directory, JOURNAL);
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            int format = in.readByte();
+            if (format < 1 || format > JOURNAL_FORMAT) {
+                throw new IOException("Unknown upload journal format");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String owner = format >= 4 ? readNullable(in) : null; // Older entries run under any account
+                Entry entry = new Entry(id, in.readUTF());
+                entry.owner = owner;
+                entry.contentAddressed = format >= 2 && in.readBoolean(); // Format 1 had plain paths only
+                entry.contentHash = in.readUTF();
+                entry.document = readNullable(in);
+                int fieldCount = in.readInt();
+                List<String> fields = new ArrayList<>(fieldCount);
+                for (int f = 0; f < fieldCount; f++) {
+                    fields.add(in.readUTF());
+                }
+                entry.fields = Collections.unmodifiableList(fields);
+                entry.state = State.values()[in.readByte()];
+                entry.attempts = in.readInt();
+                entry.writeAttempts = format >= 3 ? in.readInt() : 0;
+                entry.nextAttemptAtMillis = in.readLong();
+                entry.downloadUrl = readNullable(in);
+                entry.error = readNullable(in);
+                if (entry.state == State.UPLOADING) {
+                    entry.state = State.QUEUED; // Interrupted by the process going away
+                }
+                if (entry.isLive() && entry.state != State.WRITING_METADATA && !blobFor(entry.contentHash).isFile()) {
+                    entry.state = State.FAILED;
+                    entry.error = "Staged file is missing.";
+                }
+                entriesByDestination.put(entry.destination(), entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            entriesByDestination.clear();
+            File[] blobs = blobDirectory.listFiles();
+            if (blobs != null) {
+                for (File blob : blobs) {
+                    blob.delete();
+                }
+            }
+            file.delete();
+            return;
+        }
+        for (Entry entry : entriesByDestination.values()) {
+            if (entry.state == State.WRITING_METADATA) {
+                scheduleMetadataFlush(0);
+                break;
+            }
+        }
+    }
+
+    // Caller holds the lock. The manifest is only a cache, so failing to save it is not an error.
+    private void remember(String path, String hash, String downloadUrl) {
+        manifest.put(path, new String[]{hash, downloadUrl});
+        File target = new File(directory, MANIFEST);
+        File temp = new File(directory, MANIFEST + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+                out.writeByte(MANIFEST_FORMAT);
+                out.writeInt(manifest.size());
+                for (Map.Entry<String, String[]> uploaded : manifest.entrySet()) {
+                    out.writeUTF(uploaded.getKey());
+                    out.writeUTF(uploaded.getValue()[0]);
+                    out.writeUTF(uploaded.getValue()[1]);
+                }
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            temp.delete();
+        }
+    }
+
+    // A manifest that cannot be read is dropped; uploads then happen once more
+    private void loadManifest() {
+        File file = new File(directory, MANIFEST);
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readByte() != MANIFEST_FORMAT) {
+                throw new IOException("Unknown upload manifest format");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                manifest.put(in.readUTF(), new String[]{in.readUTF(), in.readUTF()});
+            }
+        } catch (IOException | RuntimeException e) {
+            manifest.clear();
+            file.delete();
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static String sha256Hex(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Guaranteed on Android and the JVM
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+}
@@ -1,12 +1,17 @@
 package com.example.smartattendancesystem;
 
 import com.google.firebase.firestore.DocumentId;
+
 import java.util.List;
 
 public class User {
 
     private String email;
-    private List<Double> faceEmbedding;
+    private Object faceEmbedding; // EmbeddingCodec Blob, or List<Double> on records not migrated yet; read it via EmbeddingFields
+    private String faceEmbeddingModel; // EmbeddingModelVersion that produced faceEmbedding, null on records from before it was recorded
+    private Object faceTemplates; // FaceTemplateSet Blob from a burst enrollment, null for single-photo records
+    private String faceTemplatesModel;
+    private List<Double> faceGenuineScores; // See EmbeddingFields.FACE_GENUINE_SCORES
     private String faceImageUrl;
     private String faceImageLoginUrl;
     private String matricOrStaffId;
@@ -31,7 +36,7 @@ public class User {
     }
 
     // Constructor with all fields, including the new ones
-    public User(String email, List<Double> faceEmbedding, String faceImageUrl, String faceImageLoginUrl,
+    public User(String email, Object faceEmbedding, String faceImageUrl, String faceImageLoginUrl,
                 String matricOrStaffId, String password, String profileImageUrl, String role,
                 String id, String userID, String username, // Existing fields
                 String faculty, String course, String year) { // New fields
@@ -54,7 +59,11 @@ public class User {
     // --- Getters for all fields ---
 
     public String getEmail() { return email; }
-    public List<Double> getFaceEmbedding() { return faceEmbedding; }
+    public Object getFaceEmbedding() { return faceEmbedding; }
+    public String getFaceEmbeddingModel() { return faceEmbeddingModel; }
+    public Object getFaceTemplates() { return faceTemplates; }
+    public String getFaceTemplatesModel() { return faceTemplatesModel; }
+    public List<Double> getFaceGenuineScores() { return faceGenuineScores; }
     public String getFaceImageUrl() { return faceImageUrl; }
     public String getFaceImageLoginUrl() { return faceImageLoginUrl; }
     public String getMatricOrStaffId() { return matricOrStaffId; }
@@ -71,7 +80,11 @@ public class User {
     // --- Setters for all fields ---
 
     public void setEmail(String email) { this.email = email; }
-    public void setFaceEmbedding(List<Double> faceEmbedding) { this.faceEmbedding = faceEmbedding; }
+    public void setFaceEmbedding(Object faceEmbedding) { this.faceEmbedding = faceEmbedding; }
+    public void setFaceEmbeddingModel(String faceEmbeddingModel) { this.faceEmbeddingModel = faceEmbeddingModel; }
+    public void setFaceTemplates(Object faceTemplates) { this.faceTemplates = faceTemplates; }
+    public void setFaceTemplatesModel(String faceTemplatesModel) { this.faceTemplatesModel = faceTemplatesModel; }
+    public void setFaceGenuineScores(List<Double> faceGenuineScores) { this.faceGenuineScores = faceGenuineScores; }
     public void setFaceImageUrl(String faceImageUrl) { this.faceImageUrl = faceImageUrl; }
     public void setFaceImageLoginUrl(String faceImageLoginUrl) { this.faceImageLoginUrl = faceImageLoginUrl; }
     public void setMatricOrStaffId(String matricOrStaffId) { this.matricOrStaffId = matricOrStaffId; }
@@ -1,16 +1,16 @@
 package com.example.smartattendancesystem;
 
 import android.Manifest;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
-import android.graphics.ImageFormat;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler; // Import Handler
 import android.os.Looper; // Import Looper
+import android.os.PowerManager;
 import android.util.Log;
 import android.view.View; // Import View
 import android.widget.Button;
@@ -22,7 +22,6 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
@@ -31,21 +30,17 @@ import androidx.core.content.ContextCompat;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.face.FaceLandmark;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -67,12 +62,75 @@ public class VerifyActivity extends AppCompatActivity {
     private FaceRecognitionHelper faceRecognitionHelper;
     private String currentUserId;
     private String userMatricOrStaffId; // To store the matric/staff ID received from LoginActivity
-    private float[] storedFaceEmbedding; // The reference embedding for comparison
-    private boolean isVerifying = false; // Flag to control live verification process
+    private FaceTemplateSet storedTemplates; // The user's reference templates for comparison
+    private String storedEmbeddingModel; // EmbeddingModelVersion that produced storedTemplates
+    private EmbeddingCache.Record cachedEmbedding; // Local cache entry storedTemplates came from, if any
+    private boolean reembedAttempted = false; // Stale stored embeddings are re-embedded at most once per screen
+    private float[] liveFaceEmbeddingBuffer; // Reused for every analyzed frame, only touched on mlKitExecutorService
+    private volatile boolean isVerifying = false; // Flag to control live verification process, read on the camera thread
     private boolean isInitialFaceProcessingDone = false; // Flag for initial password-login face processing
 
     private boolean hasNavigatedToSuccess = false;
 
+    // Multi-frame decision: fuse up to 8 recent frames, decide after 3 at the earliest and 15 at the latest,
+    // against the user's calibrated threshold for this model or, until they have one, the uncalibrated floor
+    private volatile float matchThreshold = ThresholdCalibrationJob.THRESHOLD_FLOOR; // Read on mlKitExecutorService
+    private float calibratedThreshold = Float.NaN; // As stored for the user, NaN if not calibrated
+    private static final int VERIFY_WINDOW_FRAMES = 8;
+    private static final int VERIFY_MIN_FRAMES = 3;
+    private static final int VERIFY_MAX_FRAMES = 15;
+    private static final float VERIFY_CONFIDENCE_Z = 2f;
+    private StreamingVerifier streamingVerifier; // One per attempt, only touched on mlKitExecutorService
+    private final FaceQualityGate qualityGate = new FaceQualityGate(); // Only used on mlKitExecutorService
+
+    // Liveness runs alongside embedding: frames are embedded while the blink / head-motion challenge
+    // is still open, and a match is only accepted once it has passed
+    private static final long LIVENESS_TIMEOUT_NANOS = 10_000_000_000L;
+    private final LivenessTracker livenessTracker = new LivenessTracker(); // Only touched in detector callbacks (main thread)
+    private volatile LivenessTracker.Challenge livenessChallenge = LivenessTracker.Challenge.BLINK; // Read on mlKitExecutorService
+    private long verificationStartNanos = 0;
+    private volatile boolean matchHeld = false; // Matched the tracked face, waiting for liveness; no more embeddings needed
+    private double heldMatchSimilarity = 0; // Only touched on mlKitExecutorService
+
+    // Detect every 3rd frame once liveness has passed and follow the face in between;
+    // a new tracked face drops the fused window and the liveness progress
+    private static final int DETECT_EVERY_FRAMES = 3;
+    private static final float MIN_TRACK_MATCH = 0.7f;
+    private final FaceTrackScheduler faceTracker = new FaceTrackScheduler(DETECT_EVERY_FRAMES, MIN_TRACK_MATCH);
+    private float trackedYaw, trackedRoll, trackedFrameQuality; // Pose and weight from the last detection, reused on tracked frames
+
+    // Analysis rate: aim for 8 fps, never slower than 2 fps even when hot or slow
+    private static final float TARGET_ANALYSIS_FPS = 8f;
+    private static final float MIN_ANALYSIS_FPS = 2f;
+    private static final long FRAME_STATS_LOG_INTERVAL_NANOS = 5_000_000_000L;
+    private final AdaptiveFrameScheduler frameScheduler = new AdaptiveFrameScheduler(TARGET_ANALYSIS_FPS, MIN_ANALYSIS_FPS);
+    private long lastFrameStatsLogNanos = 0;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+    private final CameraFrameConverter frameConverter = new CameraFrameConverter(); // Written on cameraExecutor, read while that frame is in flight
+    private FramePipeline<VerifyFrame> verifyPipeline;
+
+    /**
+     * One analyzed frame on its way through verifyPipeline. Its pixels stay in frameConverter,
+     * which is safe because frameScheduler admits one frame at a time.
+     */
+    private static final class VerifyFrame {
+        final long startNanos;
+        final Bitmap bitmap;
+        Rect faceBox;
+        float yaw;
+        float roll;
+        float quality;          // Size and pose weight from the detector
+        float weight;           // quality times the quality-gate score
+        boolean reuseHeldMatch; // The tracked face already matched; only the decision is left
+        boolean matched;
+        double similarity;
+
+        VerifyFrame(long startNanos, Bitmap bitmap) {
+            this.startNanos = startNanos;
+            this.bitmap = bitmap;
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -103,17 +161,11 @@ public class VerifyActivity extends AppCompatActivity {
         }
         Log.d(TAG, "User Matric/Staff ID received: " + userMatricOrStaffId);
 
-        FaceDetectorOptions options =
-                new FaceDetectorOptions.Builder()
-                        .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
-                        .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
-                        .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
-                        .build();
-        faceDetector = FaceDetection.getClient(options);
+        faceDetector = FaceDetection.getClient(liveFaceDetectorOptions());
 
         try {
-            faceRecognitionHelper = new FaceRecognitionHelper(this, "output_model.tflite");
-            Log.d(TAG, "FaceRecognitionHelper initialized successfully.");
+            faceRecognitionHelper = FaceEmbeddingEngine.acquire(this); // Shared, loaded once per process
+            Log.d(TAG, "FaceRecognitionHelper acquired successfully.");
         } catch (IOException e) {
             Log.e(TAG, "Failed to initialize FaceRecognitionHelper: " + e.getMessage(), e);
             Toast.makeText(this, "Error: Face recognition model not loaded. Cannot perform verification.", Toast.LENGTH_LONG).show();
@@ -128,13 +180,21 @@ public class VerifyActivity extends AppCompatActivity {
 
         cameraExecutor = Executors.newSingleThreadExecutor();
         mlKitExecutorService = Executors.newSingleThreadExecutor();
+        verifyPipeline = buildVerifyPipeline();
+        registerThermalListener();
 
         btnCaptureAndVerify.setOnClickListener(v -> {
-            if (storedFaceEmbedding == null && !isInitialFaceProcessingDone) {
+            if (storedTemplates == null && !isInitialFaceProcessingDone) {
                 Toast.makeText(this, "User face data is still being loaded or processed. Please wait.", Toast.LENGTH_LONG).show();
                 return;
             }
             if (!isVerifying) {
+                mlKitExecutorService.execute(() -> streamingVerifier = null); // Start the new attempt from an empty window
+                livenessTracker.reset();
+                livenessChallenge = LivenessTracker.Challenge.BLINK;
+                matchHeld = false;
+                faceTracker.reset();
+                verificationStartNanos = System.nanoTime();
                 isVerifying = true; // Set flag to true to start processing frames
                 txtVerificationResult.setText("Scanning for face...");
                 txtVerificationResult.setTextColor(ContextCompat.getColor(this, android.R.color.black));
@@ -145,15 +205,16 @@ public class VerifyActivity extends AppCompatActivity {
             }
         });
 
-        byte[] liveFaceBitmapByteArray = getIntent().getByteArrayExtra("LIVE_FACE_BITMAP_BYTE_ARRAY");
-        if (liveFaceBitmapByteArray != null && liveFaceBitmapByteArray.length > 0) {
+        // The face captured at login, handed over in memory with its detection result
+        FaceCaptureSession loginCapture = FaceCaptureSession.claim(getIntent().getStringExtra(FaceCaptureActivity.EXTRA_SESSION_ID));
+        if (loginCapture != null) {
             Toast.makeText(this, "Processing captured face from login...", Toast.LENGTH_SHORT).show();
             isInitialFaceProcessingDone = false;
             showLoading(true); // Show spinner while processing initial login face
-            processAndStoreLiveFaceFromLogin(liveFaceBitmapByteArray);
+            processLiveFaceFromLogin(loginCapture);
         } else {
-            // If no live face bitmap from login, load the existing stored embedding from Firestore.
-            retrieveStoredFaceEmbedding(currentUserId);
+            // If no live face from login, start from the cached embedding and revalidate it against Firestore.
+            loadStoredFaceEmbedding();
         }
 
         requestCameraPermission();
@@ -172,6 +233,19 @@ public class VerifyActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Detector settings for live camera frames, shared with FaceCaptureActivity: fast mode, with
+     * the landmarks and eye classification the liveness check needs.
+     */
+    static FaceDetectorOptions liveFaceDetectorOptions() {
+        return new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
+                .enableTracking() // Tracking IDs tell us when a different face appears
+                .build();
+    }
+
     private void requestCameraPermission() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
@@ -226,179 +300,388 @@ public class VerifyActivity extends AppCompatActivity {
                 return;
             }
 
-            if (isVerifying && storedFaceEmbedding != null) {
-                Bitmap bitmap = imageProxyToBitmap(imageProxy);
-                if (bitmap == null) {
-                    return;
-                }
-
-                InputImage inputImage = InputImage.fromBitmap(bitmap, imageProxy.getImageInfo().getRotationDegrees());
-
-                faceDetector.process(inputImage)
-                        .addOnSuccessListener(faces -> {
-                            if (hasNavigatedToSuccess) {
-                                if (bitmap != null && !bitmap.isRecycled()) {
-                                    bitmap.recycle();
-                                }
-                                return;
-                            }
+            if (!isVerifying || storedTemplates == null) {
+                imageProxy.close();
+                return;
+            }
 
-                            if (!faces.isEmpty()) {
-                                Face liveFace = faces.get(0);
-                                if (isLive(liveFace)) {
-                                    Bitmap croppedLiveFace = cropFaceFromBitmap(bitmap, liveFace.getBoundingBox());
-                                    if (croppedLiveFace != null) {
-                                        mlKitExecutorService.execute(() -> {
-                                            float[] liveFaceEmbedding = faceRecognitionHelper.getFaceEmbedding(croppedLiveFace);
-                                            if (croppedLiveFace != null && !croppedLiveFace.isRecycled()) {
-                                                croppedLiveFace.recycle();
-                                            }
-                                            runOnUiThread(() -> {
-                                                if (hasNavigatedToSuccess) {
-                                                    return;
-                                                }
-                                                if (liveFaceEmbedding != null) {
-                                                    compareFaceEmbeddings(liveFaceEmbedding);
-                                                } else {
-                                                    Log.e(TAG, "Failed to get live face embedding.");
-                                                    updateVerificationResult("Failed to process face data.");
-                                                    isVerifying = false;
-                                                    showLoading(false); // Hide spinner on failure
-                                                }
-                                            });
-                                        });
-                                    } else {
-                                        Log.e(TAG, "Failed to crop live face.");
-                                        updateVerificationResult("Failed to process face.");
-                                        // Keep verifying, no immediate stop
-                                    }
-                                } else {
-                                    updateVerificationResult("Please show a live face (e.g., blink or move slightly).");
-                                    // Keep verifying
-                                }
-                            } else {
-                                updateVerificationResult("No face detected. Please center your face.");
-                                // Keep verifying
-                            }
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "ML Kit Face Detection error: " + e.getMessage(), e);
-                            updateVerificationResult("Error detecting face.");
-                            isVerifying = false;
-                            showLoading(false); // Hide spinner on ML Kit error
-                            if (bitmap != null && !bitmap.isRecycled()) {
-                                bitmap.recycle();
-                            }
-                        });
-            } else {
+            // Drop the frame while the previous one is still in the pipeline or we are ahead of the analysis rate
+            final long frameStartNanos = System.nanoTime();
+            if (!frameScheduler.tryAcquire(frameStartNanos)) {
                 imageProxy.close();
+                return;
             }
+
+            // Reused upright frame owned by frameConverter; safe because only one frame is in flight
+            Bitmap bitmap = frameConverter.toBitmap(imageProxy);
+            if (bitmap == null) {
+                finishFrame(frameStartNanos);
+                return;
+            }
+            verifyPipeline.submit(new VerifyFrame(frameStartNanos, bitmap)); // Ends in finishFrame whatever happens
         });
 
         cameraProvider.unbindAll();
         cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
     }
 
-    private Bitmap imageProxyToBitmap(ImageProxy image) {
-        try {
-            ByteBuffer yBuffer = image.getPlanes()[0].getBuffer();
-            ByteBuffer uBuffer = image.getPlanes()[1].getBuffer();
-            ByteBuffer vBuffer = image.getPlanes()[2].getBuffer();
+    /**
+     * Builds detect/track -> quality -> embed -> compare -> decide. The locate stage runs on the
+     * camera thread (ML Kit answers on the main thread), the model stages on mlKitExecutorService
+     * and the decision on the main thread. Every frame leaves through the listener, which hands
+     * the slot back to frameScheduler.
+     */
+    private FramePipeline<VerifyFrame> buildVerifyPipeline() {
+        return new FramePipeline<VerifyFrame>("verify", (frame, outcome, error) -> {
+            if (outcome == FramePipeline.Outcome.FAILED) {
+                Log.e(TAG, "Verify pipeline failed: " + error.getMessage(), error);
+                runOnUiThread(() -> {
+                    if (!hasNavigatedToSuccess) {
+                        onVerificationError("Failed to process face data.");
+                    }
+                });
+            }
+            finishFrame(frame.startNanos);
+        })
+                .addAsyncStage("locate", cameraExecutor, 1, this::locateFace)
+                .addStage("quality", mlKitExecutorService, 1, this::checkFaceQuality)
+                .addStage("embed", mlKitExecutorService, 1, this::embedFace)
+                .addStage("compare", mlKitExecutorService, 1, this::compareFaceEmbeddings)
+                .addStage("decide", ContextCompat.getMainExecutor(this), 1, frame -> {
+                    onVerificationDecided(frame.matched, frame.similarity);
+                    return true;
+                });
+    }
+
+    /**
+     * Finds the face box: by template tracking between detections, otherwise with ML Kit, whose
+     * result also drives the tracker identity and the liveness check.
+     */
+    private void locateFace(VerifyFrame frame, FramePipeline.Handoff handoff) {
+        // Between detections, follow the face by template matching and skip the detector
+        boolean needsDetection = livenessChallenge != LivenessTracker.Challenge.DONE || matchHeld;
+        if (faceTracker.nextAction(needsDetection) == FaceTrackScheduler.Action.TRACK
+                && faceTracker.track(frameConverter.getPixels(), frameConverter.getFrameWidth(), frameConverter.getFrameHeight())) {
+            frame.faceBox = new Rect(faceTracker.getLeft(), faceTracker.getTop(), faceTracker.getRight(), faceTracker.getBottom());
+            frame.yaw = trackedYaw;
+            frame.roll = trackedRoll;
+            frame.quality = trackedFrameQuality;
+            handoff.pass();
+            return;
+        }
+
+        InputImage inputImage = InputImage.fromBitmap(frame.bitmap, 0); // Rotation already applied during conversion
+
+        faceDetector.process(inputImage)
+                .addOnSuccessListener(faces -> {
+                    if (hasNavigatedToSuccess) {
+                        handoff.stop();
+                        return;
+                    }
 
-            int ySize = yBuffer.remaining();
-            int uSize = uBuffer.remaining();
-            int vSize = vBuffer.remaining();
+                    if (faces.isEmpty()) {
+                        faceTracker.onFaceLost();
+                        updateVerificationResult("No face detected. Please center your face.");
+                        handoff.stop(); // Keep verifying
+                        return;
+                    }
+
+                    Face liveFace = faces.get(0);
+                    Rect faceBox = liveFace.getBoundingBox();
+                    Integer trackingId = liveFace.getTrackingId();
+                    boolean newFace = faceTracker.onDetected(
+                            trackingId != null ? trackingId : FaceTrackScheduler.NO_TRACKING_ID,
+                            faceBox.left, faceBox.top, faceBox.right, faceBox.bottom,
+                            frameConverter.getPixels(), frameConverter.getFrameWidth(), frameConverter.getFrameHeight());
+                    if (newFace) {
+                        onTrackedFaceChanged(trackingId);
+                    }
+                    updateLiveness(liveFace);
+                    if (livenessChallenge != LivenessTracker.Challenge.DONE
+                            && System.nanoTime() - verificationStartNanos > LIVENESS_TIMEOUT_NANOS) {
+                        Log.d(TAG, "Liveness timed out: blinks=" + livenessTracker.getBlinkCount()
+                                + ", yaw range=" + livenessTracker.yawRange()
+                                + ", parallax range=" + livenessTracker.parallaxRange());
+                        updateVerificationResult("Liveness check failed. Please blink and turn your head slightly, then try again.");
+                        isVerifying = false;
+                        showLoading(false); // Hide spinner, allow retry
+                        handoff.stop();
+                        return;
+                    }
+                    if (matchHeld) {
+                        // This face already matched; reuse that result instead of embedding again
+                        frame.reuseHeldMatch = true;
+                        handoff.pass();
+                        return;
+                    }
+                    // Embed while the liveness challenge is still open rather than waiting for it
+                    trackedFrameQuality = FacePhotoJob.qualityOf(liveFace, frame.bitmap.getWidth(), frame.bitmap.getHeight());
+                    trackedYaw = liveFace.getHeadEulerAngleY();
+                    trackedRoll = liveFace.getHeadEulerAngleZ();
+                    frame.faceBox = faceBox;
+                    frame.yaw = trackedYaw;
+                    frame.roll = trackedRoll;
+                    frame.quality = trackedFrameQuality;
+                    handoff.pass();
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "ML Kit Face Detection error: " + e.getMessage(), e);
+                    updateVerificationResult("Error detecting face.");
+                    isVerifying = false;
+                    showLoading(false); // Hide spinner on ML Kit error
+                    handoff.stop();
+                });
+    }
 
-            byte[] nv21 = new byte[ySize + uSize + vSize];
-            yBuffer.get(nv21, 0, ySize);
-            vBuffer.get(nv21, ySize, vSize);
-            uBuffer.get(nv21, ySize + vSize, uSize);
+    /**
+     * Skips the model for faces that cannot match: too small, angled, badly lit or blurred.
+     */
+    private boolean checkFaceQuality(VerifyFrame frame) {
+        if (frame.reuseHeldMatch) {
+            return true;
+        }
+        FaceQualityGate.Result quality = qualityGate.evaluate(frameConverter.getPixels(),
+                frameConverter.getFrameWidth(), frameConverter.getFrameHeight(),
+                frame.faceBox.left, frame.faceBox.top, frame.faceBox.right, frame.faceBox.bottom, frame.yaw, frame.roll);
+        if (!quality.passed()) {
+            updateVerificationResult(qualityRejectionMessage(quality.reason));
+            return false;
+        }
+        frame.weight = frame.quality * quality.score;
+        return true;
+    }
 
-            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 90, out);
-            byte[] imageBytes = out.toByteArray();
-            return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting ImageProxy to Bitmap: " + e.getMessage(), e);
-            return null;
-        } finally {
-            image.close();
+    private boolean embedFace(VerifyFrame frame) {
+        if (frame.reuseHeldMatch) {
+            return true;
+        }
+        if (liveFaceEmbeddingBuffer == null) {
+            liveFaceEmbeddingBuffer = new float[faceRecognitionHelper.getEmbeddingSize()];
+        }
+        // Reads just the face box from the converted frame, no cropped bitmap
+        boolean embedded = faceRecognitionHelper.getFaceEmbedding(frameConverter.getPixels(),
+                frameConverter.getFrameWidth(), frameConverter.getFrameHeight(), frame.faceBox, liveFaceEmbeddingBuffer);
+        if (!embedded) {
+            runOnUiThread(() -> {
+                if (hasNavigatedToSuccess) {
+                    return;
+                }
+                Log.e(TAG, "Failed to get live face embedding.");
+                updateVerificationResult("Failed to process face data.");
+                isVerifying = false;
+                showLoading(false); // Hide spinner on failure
+            });
         }
+        return embedded;
     }
 
-    private Bitmap cropFaceFromBitmap(Bitmap sourceBitmap, Rect boundingBox) {
-        int x = Math.max(0, boundingBox.left);
-        int y = Math.max(0, boundingBox.top);
-        int width = Math.min(boundingBox.width(), sourceBitmap.getWidth() - x);
-        int height = Math.min(boundingBox.height(), sourceBitmap.getHeight() - y);
+    /**
+     * A different face is in front of the camera: nothing fused or observed so far may carry
+     * over to it, or a photo could pass the match and a live accomplice the liveness check.
+     */
+    private void onTrackedFaceChanged(Integer trackingId) {
+        Log.d(TAG, "Tracking face " + trackingId + ", resetting liveness and fused frames");
+        livenessTracker.reset();
+        livenessChallenge = LivenessTracker.Challenge.BLINK;
+        matchHeld = false;
+        mlKitExecutorService.execute(() -> {
+            if (streamingVerifier != null) {
+                streamingVerifier.reset();
+            }
+        });
+    }
 
-        if (width <= 0 || height <= 0) {
-            Log.e(TAG, "Invalid bounding box dimensions for cropping. BBox: " + boundingBox.toString() +
-                    ", Bitmap size: " + sourceBitmap.getWidth() + "x" + sourceBitmap.getHeight());
-            return null;
+    /**
+     * Completes a match held for the tracked face once liveness has passed. Runs on mlKitExecutorService.
+     *
+     * @return true if the frame carries the final decision on to the decide stage.
+     */
+    private boolean resolveHeldMatch(VerifyFrame frame) {
+        if (hasNavigatedToSuccess || !isVerifying || !matchHeld) {
+            return false;
         }
+        LivenessTracker.Challenge challenge = livenessChallenge;
+        if (challenge != LivenessTracker.Challenge.DONE) {
+            updateVerificationResult("Face recognised. " + livenessPrompt(challenge));
+            return false;
+        }
+        isVerifying = false;
+        matchHeld = false;
+        streamingVerifier = null;
+        frame.matched = true;
+        frame.similarity = heldMatchSimilarity;
+        return true;
+    }
 
-        try {
-            return Bitmap.createBitmap(sourceBitmap, x, y, width, height);
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Error cropping bitmap: " + e.getMessage(), e);
-            return null;
+    /**
+     * Ends an admitted frame: lets the scheduler admit the next frame and logs the effective
+     * analysis rate every few seconds.
+     */
+    private void finishFrame(long frameStartNanos) {
+        long now = System.nanoTime();
+        frameScheduler.onFrameFinished(frameStartNanos, now);
+        if (now - lastFrameStatsLogNanos > FRAME_STATS_LOG_INTERVAL_NANOS) {
+            lastFrameStatsLogNanos = now;
+            Log.d(TAG, "Analyzer: " + frameScheduler.describe() + ", " + faceTracker.describe()
+                    + ", " + qualityGate.describeCounts());
+            Log.d(TAG, verifyPipeline.describe());
         }
     }
 
-    private boolean isLive(Face face) {
+    /**
+     * Slows the analyzer down while the device reports thermal pressure (Android 10+).
+     */
+    private void registerThermalListener() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return;
+        }
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        if (powerManager == null) {
+            return;
+        }
+        thermalListener = status -> {
+            float multiplier;
+            if (status >= PowerManager.THERMAL_STATUS_SEVERE) {
+                multiplier = 4f;
+            } else if (status >= PowerManager.THERMAL_STATUS_MODERATE) {
+                multiplier = 2f;
+            } else if (status >= PowerManager.THERMAL_STATUS_LIGHT) {
+                multiplier = 1.5f;
+            } else {
+                multiplier = 1f;
+            }
+            frameScheduler.setThermalMultiplier(multiplier);
+            Log.d(TAG, "Thermal status " + status + ", analysis interval x" + multiplier);
+        };
+        powerManager.addThermalStatusListener(thermalListener);
+    }
+
+    /**
+     * Feeds the detected face to the liveness tracker. Replaces the old single-frame check, which
+     * a printed photo with open eyes passed; the tracker needs a blink and some head motion across frames.
+     */
+    private void updateLiveness(Face face) {
         Float leftEyeOpenProb = face.getLeftEyeOpenProbability();
         Float rightEyeOpenProb = face.getRightEyeOpenProbability();
-        boolean eyesAppearOpen = (leftEyeOpenProb == null || leftEyeOpenProb > 0.15) &&
-                (rightEyeOpenProb == null || rightEyeOpenProb > 0.15);
-
-        Float headEulerY = face.getHeadEulerAngleY();
-        Float headEulerZ = face.getHeadEulerAngleZ();
-
-        boolean headWithinReasonableRange = (headEulerY == null || Math.abs(headEulerY) < 30) &&
-                (headEulerZ == null || Math.abs(headEulerZ) < 30);
+        FaceLandmark leftEye = face.getLandmark(FaceLandmark.LEFT_EYE);
+        FaceLandmark rightEye = face.getLandmark(FaceLandmark.RIGHT_EYE);
+        FaceLandmark nose = face.getLandmark(FaceLandmark.NOSE_BASE);
+
+        livenessTracker.update(
+                leftEyeOpenProb != null ? leftEyeOpenProb : Float.NaN,
+                rightEyeOpenProb != null ? rightEyeOpenProb : Float.NaN,
+                face.getHeadEulerAngleY(),
+                leftEye != null ? leftEye.getPosition().x : Float.NaN,
+                leftEye != null ? leftEye.getPosition().y : Float.NaN,
+                rightEye != null ? rightEye.getPosition().x : Float.NaN,
+                rightEye != null ? rightEye.getPosition().y : Float.NaN,
+                nose != null ? nose.getPosition().x : Float.NaN,
+                nose != null ? nose.getPosition().y : Float.NaN);
+        livenessChallenge = livenessTracker.getPendingChallenge();
+    }
 
-        return eyesAppearOpen && headWithinReasonableRange;
+    private static String livenessPrompt(LivenessTracker.Challenge challenge) {
+        switch (challenge) {
+            case BLINK:
+                return "Please blink";
+            case MOVE_HEAD:
+                return "Please turn your head slightly";
+            default:
+                return "Hold still";
+        }
     }
 
     private void updateVerificationResult(String message) {
         runOnUiThread(() -> txtVerificationResult.setText(message));
     }
 
-    private void compareFaceEmbeddings(float[] liveFaceEmbedding) {
-        if (hasNavigatedToSuccess) {
-            return;
+    /**
+     * Feeds the live embedding to the streaming verifier. Runs on mlKitExecutorService so the
+     * reused live embedding buffer is never read while the next frame is written into it;
+     * only a final decision goes on to the decide stage, intermediate frames just update the status.
+     *
+     * @return true if the frame carries the final decision.
+     */
+    private boolean compareFaceEmbeddings(VerifyFrame frame) {
+        if (hasNavigatedToSuccess || !isVerifying) {
+            return false;
+        }
+        if (frame.reuseHeldMatch) {
+            return resolveHeldMatch(frame);
         }
 
-        if (storedFaceEmbedding == null) {
-            updateVerificationResult("Error: Stored face data not available for comparison.");
-            isVerifying = false;
-            showLoading(false); // Hide spinner on error
-            return;
+        float[] liveFaceEmbedding = liveFaceEmbeddingBuffer;
+        float frameQuality = frame.weight;
+        if (storedTemplates == null) {
+            runOnUiThread(() -> onVerificationError("Error: Stored face data not available for comparison."));
+            return false;
         }
         if (liveFaceEmbedding == null) {
-            updateVerificationResult("Error: Live face embedding not generated.");
-            isVerifying = false;
-            showLoading(false); // Hide spinner on error
-            return;
+            runOnUiThread(() -> onVerificationError("Error: Live face embedding not generated."));
+            return false;
         }
         if (faceRecognitionHelper == null) {
-            updateVerificationResult("Error: Face recognition helper not initialized.");
-            isVerifying = false;
-            showLoading(false); // Hide spinner on error
-            return;
+            runOnUiThread(() -> onVerificationError("Error: Face recognition helper not initialized."));
+            return false;
+        }
+        if (!EmbeddingModelVersion.isCompatible(storedEmbeddingModel, FaceEmbeddingEngine.getModelVersion())) {
+            // Embeddings from different models live in different spaces; their similarity means nothing
+            Log.e(TAG, "Stored embedding is from model " + storedEmbeddingModel + ", loaded model is " + FaceEmbeddingEngine.getModelVersion());
+            runOnUiThread(() -> onVerificationError("Error: Stored face data is from an older recognition model. Please log in again."));
+            return false;
         }
 
-        double similarity = faceRecognitionHelper.calculateCosineSimilarity(liveFaceEmbedding, storedFaceEmbedding);
-        Log.d(TAG, "Cosine Similarity: " + similarity);
+        if (streamingVerifier == null) {
+            streamingVerifier = new StreamingVerifier(storedTemplates, FaceTemplateSet.DEFAULT_FUSION, matchThreshold,
+                    VERIFY_WINDOW_FRAMES, VERIFY_MIN_FRAMES, VERIFY_MAX_FRAMES, VERIFY_CONFIDENCE_Z);
+        }
 
-        final double THRESHOLD = 0.02;
+        // Stored templates are normalized once when loaded; normalizing the live one makes cosine a plain dot product
+        EmbeddingMath.l2Normalize(liveFaceEmbedding);
+        StreamingVerifier.Decision decision = streamingVerifier.addFrame(liveFaceEmbedding, frameQuality);
+        double similarity = streamingVerifier.getFusedSimilarity();
+        Log.d(TAG, "Fused cosine similarity: " + similarity + " +/- " + streamingVerifier.getMargin()
+                + " after " + streamingVerifier.getFramesSeen() + " frames (quality " + frameQuality + ")");
+
+        LivenessTracker.Challenge challenge = livenessChallenge;
+        if (decision == StreamingVerifier.Decision.PENDING) {
+            updateVerificationResult("Verifying... " + livenessPrompt(challenge) + " ("
+                    + streamingVerifier.getFramesSeen() + "/" + streamingVerifier.getMaxFrames() + ")");
+            return false;
+        }
+        if (decision == StreamingVerifier.Decision.MATCH && challenge != LivenessTracker.Challenge.DONE) {
+            // Hold the match for this tracked face; further frames only need detection for liveness
+            heldMatchSimilarity = similarity;
+            matchHeld = true;
+            updateVerificationResult("Face recognised. " + livenessPrompt(challenge));
+            return false;
+        }
+        // Stop admitting frames right away, before the UI thread gets to the decision
+        isVerifying = false;
+        streamingVerifier = null;
+        frame.matched = decision == StreamingVerifier.Decision.MATCH;
+        frame.similarity = similarity;
+        return true;
+    }
+
+    private void onVerificationError(String message) {
+        updateVerificationResult(message);
+        isVerifying = false;
+        showLoading(false); // Hide spinner on error
+    }
 
-        if (similarity > THRESHOLD) {
+    private void onVerificationDecided(boolean matched, double similarity) {
+        if (hasNavigatedToSuccess) {
+            return;
+        }
+
+        if (matched) {
             updateVerificationResult("Faces Match! Similarity: " + String.format("%.2f", similarity) + "\nVerification Successful!");
             txtVerificationResult.setTextColor(ContextCompat.getColor(this, android.R.color.holo_green_dark));
             isVerifying = false;
+            rememberStoredEmbedding(); // Next login on this device starts from the cache
+            // Genuine score for the next threshold calibration
+            EmbeddingFields.recordGenuineScore(db, db.collection("users").document(currentUserId), similarity);
             navigateToSuccessActivity(); // Will set hasNavigatedToSuccess = true
         } else {
             updateVerificationResult("Faces Do Not Match! Similarity: " + String.format("%.2f", similarity) + "\nPlease try again.");
@@ -408,8 +691,26 @@ public class VerifyActivity extends AppCompatActivity {
         }
     }
 
+    private static String qualityRejectionMessage(FaceQualityGate.Reason reason) {
+        switch (reason) {
+            case FACE_TOO_SMALL:
+                return "Please move closer to the camera.";
+            case POSE_TOO_ANGLED:
+                return "Please look straight at the camera.";
+            case TOO_DARK:
+                return "Too dark. Please move to better light.";
+            case TOO_BRIGHT:
+                return "Too bright. Please avoid direct light behind or on you.";
+            case TOO_BLURRY:
+                return "Image is blurry. Please hold still.";
+            default:
+                return "Scanning for face...";
+        }
+    }
+
     private void navigateToSuccessActivity() {
         hasNavigatedToSuccess = true; // Set the flag immediately
+        verifyPipeline.cancel(); // Frames still in flight are dropped at their next stage
 
         Intent intent = new Intent(VerifyActivity.this, VerificationSuccessActivity.class);
         intent.putExtra("USER_MATRIC_OR_STAFF_ID", userMatricOrStaffId);
@@ -418,163 +719,255 @@ public class VerifyActivity extends AppCompatActivity {
         finish();
     }
 
-    private void processAndStoreLiveFaceFromLogin(byte[] liveFaceBitmapByteArray) {
-        Bitmap liveBitmap = BitmapFactory.decodeByteArray(liveFaceBitmapByteArray, 0, liveFaceBitmapByteArray.length);
-        if (liveBitmap == null) {
-            Toast.makeText(this, "Failed to decode live face image from login.", Toast.LENGTH_SHORT).show();
-            isInitialFaceProcessingDone = true;
-            showLoading(false); // Hide spinner on decode failure
-            finish();
-            return;
-        }
-
-        InputImage image = InputImage.fromBitmap(liveBitmap, 0);
-
-        faceDetector.process(image)
-                .addOnSuccessListener(faces -> {
-                    if (!faces.isEmpty()) {
-                        Face face = faces.get(0);
-                        Bitmap croppedLoginFace = cropFaceFromBitmap(liveBitmap, face.getBoundingBox());
-                        if (croppedLoginFace != null) {
-                            mlKitExecutorService.execute(() -> {
-                                float[] newLoginFaceEmbedding = faceRecognitionHelper.getFaceEmbedding(croppedLoginFace);
-                                if (croppedLoginFace != null && !croppedLoginFace.isRecycled()) {
-                                    croppedLoginFace.recycle();
-                                }
-                                runOnUiThread(() -> {
-                                    if (newLoginFaceEmbedding != null) {
-                                        storedFaceEmbedding = newLoginFaceEmbedding;
-                                        isInitialFaceProcessingDone = true;
-                                        Log.d(TAG, "New login face embedding set as storedFaceEmbedding.");
-                                        Toast.makeText(VerifyActivity.this, "Your login face has been updated. Click VERIFY to proceed.", Toast.LENGTH_LONG).show();
-
-                                        saveLiveFaceDataToFirestoreAndStorage(liveBitmap, currentUserId, newLoginFaceEmbedding);
-                                        if (!liveBitmap.isRecycled()) {
-                                            liveBitmap.recycle();
-                                        }
-                                        showLoading(false); // Hide spinner after initial processing completes
-                                    } else {
-                                        Toast.makeText(VerifyActivity.this, "Failed to generate embedding for login face.", Toast.LENGTH_SHORT).show();
-                                        Log.e(TAG, "Failed to generate embedding for login face after capture.");
-                                        isInitialFaceProcessingDone = true;
-                                        if (!liveBitmap.isRecycled()) {
-                                            liveBitmap.recycle();
-                                        }
-                                        showLoading(false); // Hide spinner on embedding failure
-                                        finish();
-                                    }
-                                });
-                            });
-                        } else {
-                            Toast.makeText(this, "Failed to crop face from login image.", Toast.LENGTH_SHORT).show();
-                            isInitialFaceProcessingDone = true;
-                            if (!liveBitmap.isRecycled()) {
-                                liveBitmap.recycle();
-                            }
-                            showLoading(false); // Hide spinner on crop failure
-                            finish();
-                        }
-                    } else {
-                        Toast.makeText(this, "No face detected in login image. Please try again from login.", Toast.LENGTH_LONG).show();
-                        isInitialFaceProcessingDone = true;
-                        if (!liveBitmap.isRecycled()) {
-                            liveBitmap.recycle();
-                        }
-                        showLoading(false); // Hide spinner if no face detected
-                        finish();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "ML Kit Face Detection failed for login image: " + e.getMessage(), e);
-                    Toast.makeText(this, "Error processing login face for verification.", Toast.LENGTH_SHORT).show();
-                    isInitialFaceProcessingDone = true;
-                    if (!liveBitmap.isRecycled()) {
-                        liveBitmap.recycle();
-                    }
-                    showLoading(false); // Hide spinner on ML Kit processing failure
+    /**
+     * Makes the face captured at login the reference. The capture session already has the face
+     * box, so only the embedding runs here (on mlKitExecutorService, cached on the shot), and
+     * verification can start as soon as it is ready. Saving the photo and embedding to Storage
+     * and Firestore follows in the background.
+     */
+    private void processLiveFaceFromLogin(FaceCaptureSession session) {
+        FaceCaptureSession.Shot shot = session.best();
+        mlKitExecutorService.execute(() -> {
+            float[] newLoginFaceEmbedding = shot.embed(faceRecognitionHelper);
+            runOnUiThread(() -> {
+                if (isFinishing() || isDestroyed()) {
+                    session.release();
+                    return;
+                }
+                isInitialFaceProcessingDone = true;
+                if (newLoginFaceEmbedding != null) {
+                    storedTemplates = FaceTemplateSet.of(newLoginFaceEmbedding); // Normalized copy
+                    storedEmbeddingModel = FaceEmbeddingEngine.getModelVersion();
+                    loadMatchThreshold();
+                    Log.d(TAG, "New login face embedding set as the reference template.");
+                    Toast.makeText(VerifyActivity.this, "Your login face has been updated. Click VERIFY to proceed.", Toast.LENGTH_LONG).show();
+                    showLoading(false); // Verification can start while the upload runs
+
+                    saveLiveFaceDataToFirestoreAndStorage(session, currentUserId, newLoginFaceEmbedding);
+                } else {
+                    Toast.makeText(VerifyActivity.this, "Failed to generate embedding for login face.", Toast.LENGTH_SHORT).show();
+                    Log.e(TAG, "Failed to generate embedding for login face after capture.");
+                    session.release();
+                    showLoading(false); // Hide spinner on embedding failure
                     finish();
-                });
+                }
+            });
+        });
     }
 
-    private void saveLiveFaceDataToFirestoreAndStorage(Bitmap photo, String userId, float[] embedding) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        photo.compress(Bitmap.CompressFormat.JPEG, 90, baos);
-        byte[] data = baos.toByteArray();
+    /**
+     * Writes the embedding, which is small and what the next login needs, and hands the photo to
+     * the upload queue, which records its URL once uploaded. Failures are only logged: the
+     * reference for this screen is already set. Takes over the session's bitmaps.
+     */
+    private void saveLiveFaceDataToFirestoreAndStorage(FaceCaptureSession session, String userId, float[] embedding) {
+        // A single login face replaces any burst templates, which described the previous one
+        db.collection("users").document(userId)
+                .update(EmbeddingFields.FACE_EMBEDDING_FOR_LOGIN, EmbeddingFields.toBlob(embedding),
+                        EmbeddingFields.FACE_EMBEDDING_FOR_LOGIN_MODEL, FaceEmbeddingEngine.getModelVersion(),
+                        EmbeddingFields.FACE_TEMPLATES, FieldValue.delete(),
+                        EmbeddingFields.FACE_TEMPLATES_MODEL, FieldValue.delete())
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Firestore updated with new login face embedding."))
+                .addOnFailureListener(e -> Log.e(TAG, "Error updating Firestore with login face embedding: " + e.getMessage(), e));
+
+        // The best shot's bitmap goes to the upload queue, which recycles it once compressed
+        Bitmap photo = session.best().photo;
+        for (FaceCaptureSession.Shot shot : session.getShots()) {
+            if (shot.photo != photo) {
+                shot.photo.recycle();
+            }
+        }
+        FirebaseUploadQueue.enqueueImage(this, photo, true, ImageCompression.Target.face(faceRecognitionHelper.getInputSize()),
+                "face_images_login/" + userId, "users/" + userId, "faceImageLoginUrl");
+    }
 
-        StorageReference storageRef = FirebaseStorage.getInstance().getReference()
-                .child("users/" + userId + "/face_login_image.jpg");
+    /**
+     * Reads this user's templates from the encrypted local cache on mlKitExecutorService. A hit
+     * lets verification start right away while Firestore is checked in the background; a miss
+     * (or an entry that belongs to another account) falls back to the usual Firestore load.
+     */
+    private void loadStoredFaceEmbedding() {
+        showLoading(true);
+        Context appContext = getApplicationContext();
+        mlKitExecutorService.execute(() -> {
+            EmbeddingCache cache = EmbeddingCacheKeystore.open(appContext);
+            EmbeddingCache.Record record = cache != null ? cache.get(userMatricOrStaffId) : null;
+            runOnUiThread(() -> {
+                if (isFinishing() || isDestroyed()) {
+                    return;
+                }
+                if (record != null && currentUserId.equals(record.userId)
+                        && EmbeddingModelVersion.isCompatible(record.modelVersion, FaceEmbeddingEngine.getModelVersion())) {
+                    cachedEmbedding = record;
+                    storedTemplates = record.templates;
+                    storedEmbeddingModel = record.modelVersion;
+                    applyThreshold(record.matchThreshold);
+                    isInitialFaceProcessingDone = true;
+                    Log.d(TAG, record.templates.size() + " face templates loaded from cache for " + userMatricOrStaffId + ", version " + Long.toHexString(record.version));
+                    Toast.makeText(this, "User face data loaded. Click VERIFY to proceed.", Toast.LENGTH_SHORT).show();
+                    showLoading(false);
+                }
+                retrieveStoredFaceEmbedding(currentUserId);
+            });
+        });
+    }
 
-        storageRef.putBytes(data)
-                .addOnSuccessListener(taskSnapshot -> {
-                    storageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                        String downloadUrl = uri.toString();
-                        Log.d(TAG, "Face login image uploaded to Storage: " + downloadUrl);
+    // Caches storedTemplates for this user; runs on mlKitExecutorService, which drains queued work on shutdown
+    private void rememberStoredEmbedding() {
+        FaceTemplateSet templates = storedTemplates;
+        String modelVersion = storedEmbeddingModel;
+        float threshold = calibratedThreshold;
+        if (templates == null || (cachedEmbedding != null && cachedEmbedding.version == EmbeddingCache.versionOf(templates)
+                && Float.compare(cachedEmbedding.matchThreshold, threshold) == 0)) {
+            return;
+        }
+        Context appContext = getApplicationContext();
+        String matricOrStaffId = userMatricOrStaffId;
+        String userId = currentUserId;
+        mlKitExecutorService.execute(() -> EmbeddingCacheKeystore.remember(appContext, matricOrStaffId, userId, modelVersion, threshold, templates));
+    }
 
-                        List<Double> embeddingList = new ArrayList<>();
-                        for (float val : embedding) {
-                            embeddingList.add((double) val);
-                        }
+    /**
+     * @param threshold the user's calibrated threshold, NaN for none.
+     * @return true if the threshold in use changed.
+     */
+    private boolean applyThreshold(float threshold) {
+        calibratedThreshold = threshold;
+        float previous = matchThreshold;
+        matchThreshold = Float.isNaN(threshold) ? ThresholdCalibrationJob.THRESHOLD_FLOOR : threshold;
+        if (previous != matchThreshold) {
+            Log.d(TAG, "Match threshold for " + userMatricOrStaffId + ": " + matchThreshold
+                    + (Float.isNaN(threshold) ? " (uncalibrated)" : " (calibrated)"));
+            return true;
+        }
+        return false;
+    }
 
-                        db.collection("users").document(userId)
-                                .update("faceImageLoginUrl", downloadUrl, "faceEmbeddingForLogin", embeddingList)
-                                .addOnSuccessListener(aVoid -> {
-                                    Log.d(TAG, "Firestore updated with new login face data.");
-                                })
-                                .addOnFailureListener(e -> {
-                                    Log.e(TAG, "Error updating Firestore with login face data: " + e.getMessage(), e);
-                                    Toast.makeText(VerifyActivity.this, "Failed to save login face data to Firestore.", Toast.LENGTH_SHORT).show();
-                                    showLoading(false); // Hide spinner on Firestore update failure
-                                });
-                    }).addOnFailureListener(e -> {
-                        Log.e(TAG, "Failed to get download URL for login face image: " + e.getMessage(), e);
-                        Toast.makeText(VerifyActivity.this, "Failed to get image URL from Storage.", Toast.LENGTH_SHORT).show();
-                        showLoading(false); // Hide spinner on URL retrieval failure
-                    });
+    // Login-capture path: the embedding is new, but the user's calibrated threshold still applies
+    private void loadMatchThreshold() {
+        db.collection("users").document(currentUserId)
+                .get()
+                .addOnSuccessListener(documentSnapshot -> {
+                    if (documentSnapshot.exists()) {
+                        applyThreshold(EmbeddingFields.readThreshold(documentSnapshot, FaceEmbeddingEngine.getModelVersion()));
+                    }
                 })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to upload login face image to Storage: " + e.getMessage(), e);
-                    Toast.makeText(VerifyActivity.this, "Failed to upload login image to Storage.", Toast.LENGTH_SHORT).show();
-                    showLoading(false); // Hide spinner on storage upload failure
-                });
+                .addOnFailureListener(e -> Log.w(TAG, "Could not load match threshold, using the default: " + e.getMessage()));
+    }
+
+    /**
+     * Server copy of cached templates and threshold arrived. If either changed, swap it in and
+     * restart any attempt in progress, so a face that was replaced on the server is never matched
+     * against and a tightened threshold applies at once.
+     */
+    private void onEmbeddingRevalidated(FaceTemplateSet templates, String modelVersion, float threshold) {
+        long version = EmbeddingCache.versionOf(templates);
+        if (version == cachedEmbedding.version && modelVersion.equals(cachedEmbedding.modelVersion)
+                && Float.compare(threshold, cachedEmbedding.matchThreshold) == 0) {
+            Log.d(TAG, "Cached face embedding is current for " + userMatricOrStaffId);
+            return;
+        }
+        Log.d(TAG, "Cached face embedding was stale for " + userMatricOrStaffId + ", using the server copy.");
+        storedTemplates = templates;
+        storedEmbeddingModel = modelVersion;
+        applyThreshold(threshold);
+        rememberStoredEmbedding();
+        cachedEmbedding = null;
+        if (isVerifying && !hasNavigatedToSuccess) {
+            matchHeld = false;
+            mlKitExecutorService.execute(() -> streamingVerifier = null); // Next frame builds a verifier on the new data
+        }
     }
 
     private void retrieveStoredFaceEmbedding(String userId) {
-        showLoading(true); // Show spinner while retrieving stored embedding
+        // With a cached embedding in use this is a silent background revalidation
+        boolean revalidating = cachedEmbedding != null;
+        if (!revalidating) {
+            showLoading(true); // Show spinner while retrieving stored embedding
+        }
         db.collection("users").document(userId)
                 .get()
                 .addOnSuccessListener(documentSnapshot -> {
+                    if (hasNavigatedToSuccess && revalidating) {
+                        return;
+                    }
                     if (documentSnapshot.exists()) {
-                        List<Double> embeddingList = (List<Double>) documentSnapshot.get("faceEmbeddingForLogin");
-                        if (embeddingList == null) {
-                            embeddingList = (List<Double>) documentSnapshot.get("faceEmbedding");
-                            if (embeddingList != null) {
+                        // Burst templates, else a single Blob or legacy List<Double>, from the loaded model
+                        // only; legacy arrays of this user are rewritten as Blobs in the background
+                        String currentModel = FaceEmbeddingEngine.getModelVersion();
+                        String field = EmbeddingFields.FACE_TEMPLATES;
+                        FaceTemplateSet templates = EmbeddingFields.readTemplates(documentSnapshot, currentModel);
+                        float[] embedding = null;
+                        if (templates == null) {
+                            field = EmbeddingFields.FACE_EMBEDDING_FOR_LOGIN;
+                            embedding = EmbeddingFields.isCompatible(documentSnapshot, field, currentModel)
+                                    ? EmbeddingFields.read(documentSnapshot, field) : null;
+                        }
+                        if (templates == null && embedding == null) {
+                            field = EmbeddingFields.FACE_EMBEDDING;
+                            embedding = EmbeddingFields.isCompatible(documentSnapshot, field, currentModel)
+                                    ? EmbeddingFields.read(documentSnapshot, field) : null;
+                            if (embedding != null) {
                                 Log.w(TAG, "Using 'faceEmbedding' as 'faceEmbeddingForLogin' was not found for user: " + userId);
-                                Toast.makeText(this, "Using existing primary face data. Consider updating login face.", Toast.LENGTH_LONG).show();
+                                if (!revalidating) {
+                                    Toast.makeText(this, "Using existing primary face data. Consider updating login face.", Toast.LENGTH_LONG).show();
+                                }
                             }
                         }
+                        EmbeddingFields.migrate(documentSnapshot.getReference(), documentSnapshot);
+                        if (templates == null && embedding != null) {
+                            templates = FaceTemplateSet.of(embedding); // Enrolled from a single photo
+                        }
 
-                        if (embeddingList != null && !embeddingList.isEmpty()) {
-                            storedFaceEmbedding = new float[embeddingList.size()];
-                            for (int i = 0; i < embeddingList.size(); i++) {
-                                storedFaceEmbedding[i] = embeddingList.get(i).floatValue();
+                        if (templates == null && !reembedAttempted && EmbeddingFields.hasAny(documentSnapshot)) {
+                            // Face data exists but another model made it: redo it from the saved photos, then load again
+                            reembedAttempted = true;
+                            Log.w(TAG, "Stored embeddings of " + userId + " are not from model " + currentModel + ", re-embedding.");
+                            if (!revalidating) {
+                                Toast.makeText(this, "Updating your face data for the new recognition model...", Toast.LENGTH_LONG).show();
                             }
-                            Log.d(TAG, "Stored face embedding loaded successfully for user: " + userId);
+                            new EmbeddingMigrationJob(faceRecognitionHelper, mlKitExecutorService)
+                                    .reembed(documentSnapshot, (reembedded, failed) -> {
+                                        if (!isFinishing() && !isDestroyed()) {
+                                            retrieveStoredFaceEmbedding(userId);
+                                        }
+                                    });
+                            return;
+                        }
+
+                        String embeddingModel = EmbeddingFields.readModel(documentSnapshot, field);
+                        float threshold = EmbeddingFields.readThreshold(documentSnapshot, currentModel);
+                        if (templates != null && revalidating) {
+                            onEmbeddingRevalidated(templates, embeddingModel, threshold);
+                        } else if (templates != null) {
+                            storedTemplates = templates; // Normalized, which older records were not saved as
+                            storedEmbeddingModel = embeddingModel;
+                            applyThreshold(threshold);
+                            rememberStoredEmbedding();
+                            Log.d(TAG, templates.size() + " face templates loaded successfully for user: " + userId);
                             Toast.makeText(this, "User face data loaded. Click VERIFY to proceed.", Toast.LENGTH_SHORT).show();
                             isInitialFaceProcessingDone = true;
                             showLoading(false); // Hide spinner after loading embedding
                         } else {
+                            removeCachedEmbedding();
                             Log.e(TAG, "No face embedding found in Firestore for user: " + userId + ". Cannot perform verification.");
                             Toast.makeText(this, "No registered face data found. Cannot verify.", Toast.LENGTH_LONG).show();
                             showLoading(false); // Hide spinner on no embedding found
                             finish();
                         }
                     } else {
+                        removeCachedEmbedding();
                         Toast.makeText(this, "User data not found in Firestore. Please register or log in.", Toast.LENGTH_LONG).show();
                         showLoading(false); // Hide spinner if user data not found
                         finish();
                     }
                 })
                 .addOnFailureListener(e -> {
+                    if (revalidating) {
+                        // Offline or unreachable: keep verifying against the cached embedding
+                        Log.w(TAG, "Could not revalidate cached face embedding: " + e.getMessage());
+                        return;
+                    }
                     Log.e(TAG, "Error retrieving user data from Firestore: " + e.getMessage(), e);
                     Toast.makeText(this, "Error retrieving user data for verification: " + e.getMessage(), Toast.LENGTH_LONG).show();
                     showLoading(false); // Hide spinner on retrieval error
@@ -582,9 +975,27 @@ public class VerifyActivity extends AppCompatActivity {
                 });
     }
 
+    // The server no longer has face data for this user, so neither should the cache
+    private void removeCachedEmbedding() {
+        cachedEmbedding = null;
+        storedTemplates = null;
+        isVerifying = false;
+        Context appContext = getApplicationContext();
+        String matricOrStaffId = userMatricOrStaffId;
+        mlKitExecutorService.execute(() -> {
+            EmbeddingCache cache = EmbeddingCacheKeystore.open(appContext);
+            if (cache != null) {
+                cache.remove(matricOrStaffId);
+            }
+        });
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (verifyPipeline != null) {
+            verifyPipeline.cancel();
+        }
         if (cameraExecutor != null) {
             cameraExecutor.shutdown();
         }
@@ -594,8 +1005,14 @@ public class VerifyActivity extends AppCompatActivity {
         if (faceDetector != null) {
             faceDetector.close();
         }
+        if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+            if (powerManager != null) {
+                powerManager.removeThermalStatusListener(thermalListener);
+            }
+        }
         if (faceRecognitionHelper != null) {
-            faceRecognitionHelper.close();
+            FaceEmbeddingEngine.release(); // Shared helper stays loaded for the next screen
         }
     }
 }
@@ -0,0 +1,184 @@
+package com.example.smartattendancesystem;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts YUV_420_888 camera planes straight to upright ARGB pixels, replacing the
+ * NV21 -> JPEG -> Bitmap round-trip.
+ *
+ * Honours the row and pixel strides of each plane (so both planar I420 and semi-planar
+ * NV21/NV12 layouts work) and applies the frame rotation while writing, so the output is
+ * already upright. Colours use the full-range BT.601 (JFIF) matrix, the same one the JPEG
+ * path used. Plain Java so it can be unit tested off-device; rows are bulk-copied into
+ * scratch arrays that are reused across frames, so conversion does not allocate once warm.
+ *
+ * Not thread-safe: use one converter per analyzer thread.
+ */
+public class YuvToRgbConverter {
+
+    // Full-range BT.601 coefficients in 16.16 fixed point
+    private static final int FIX_SHIFT = 16;
+    private static final int FIX_HALF = 1 << (FIX_SHIFT - 1);
+    private static final int R_V = 91881;   // 1.402
+    private static final int G_U = 22554;   // 0.344136
+    private static final int G_V = 46802;   // 0.714136
+    private static final int B_U = 116130;  // 1.772
+
+    private byte[] yRow = new byte[0];
+    private byte[] uRow = new byte[0];
+    private byte[] vRow = new byte[0];
+
+    public static int outputWidth(int width, int height, int rotationDegrees) {
+        return isSideways(rotationDegrees) ? height : width;
+    }
+
+    public static int outputHeight(int width, int height, int rotationDegrees) {
+        return isSideways(rotationDegrees) ? width : height;
+    }
+
+    /**
+     * Converts one frame into {@code out}, which must hold at least width * height pixels.
+     * The output is {@link #outputWidth} pixels wide. Plane positions are left unchanged.
+     *
+     * @param rotationDegrees Clockwise rotation needed to make the frame upright (0, 90, 180 or 270).
+     */
+    public void convert(ByteBuffer yPlane, int yRowStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        int width, int height, int rotationDegrees, int[] out) {
+        checkArguments(width, height, rotationDegrees, out);
+        int chromaWidth = (width + 1) / 2;
+        int chromaRowLength = (chromaWidth - 1) * uvPixelStride + 1;
+        ensureRowCapacity(width, chromaRowLength);
+
+        int yStart = yPlane.position();
+        int uStart = uPlane.position();
+        int vStart = vPlane.position();
+
+        int lastChromaRow = -1;
+        for (int row = 0; row < height; row++) {
+            readRow(yPlane, yStart + row * yRowStride, yRow, width);
+            int chromaRow = row >> 1;
+            if (chromaRow != lastChromaRow) {
+                readRow(uPlane, uStart + chromaRow * uvRowStride, uRow, chromaRowLength);
+                readRow(vPlane, vStart + chromaRow * uvRowStride, vRow, chromaRowLength);
+                lastChromaRow = chromaRow;
+            }
+
+            // Where this source row lands in the rotated output, and the step between its pixels
+            int destination;
+            int step;
+            switch (rotationDegrees) {
+                case 90:
+                    destination = height - 1 - row;
+                    step = height;
+                    break;
+                case 180:
+                    destination = (height - 1 - row) * width + width - 1;
+                    step = -1;
+                    break;
+                case 270:
+                    destination = (width - 1) * height + row;
+                    step = -height;
+                    break;
+                default:
+                    destination = row * width;
+                    step = 1;
+                    break;
+            }
+
+            for (int column = 0; column < width; column++, destination += step) {
+                int chromaIndex = (column >> 1) * uvPixelStride;
+                int y = (yRow[column] & 0xFF) << FIX_SHIFT;
+                int u = (uRow[chromaIndex] & 0xFF) - 128;
+                int v = (vRow[chromaIndex] & 0xFF) - 128;
+                int r = (y + R_V * v + FIX_HALF) >> FIX_SHIFT;
+                int g = (y - G_U * u - G_V * v + FIX_HALF) >> FIX_SHIFT;
+                int b = (y + B_U * u + FIX_HALF) >> FIX_SHIFT;
+                out[destination] = 0xFF000000 | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+            }
+        }
+
+        yPlane.position(yStart);
+        uPlane.position(uStart);
+        vPlane.position(vStart);
+    }
+
+    /**
+     * Straightforward per-pixel floating point version of {@link #convert}, kept as the reference
+     * the optimized path is tested against.
+     */
+    public static void convertReference(ByteBuffer yPlane, int yRowStride,
+                                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                                        int width, int height, int rotationDegrees, int[] out) {
+        checkArguments(width, height, rotationDegrees, out);
+        int outWidth = outputWidth(width, height, rotationDegrees);
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                double y = yPlane.get(yPlane.position() + row * yRowStride + column) & 0xFF;
+                int chromaOffset = (row / 2) * uvRowStride + (column / 2) * uvPixelStride;
+                double u = (uPlane.get(uPlane.position() + chromaOffset) & 0xFF) - 128.0;
+                double v = (vPlane.get(vPlane.position() + chromaOffset) & 0xFF) - 128.0;
+                int r = clamp((int) Math.round(y + 1.402 * v));
+                int g = clamp((int) Math.round(y - 0.344136 * u - 0.714136 * v));
+                int b = clamp((int) Math.round(y + 1.772 * u));
+
+                int outX;
+                int outY;
+                switch (rotationDegrees) {
+                    case 90:
+                        outX = height - 1 - row;
+                        outY = column;
+                        break;
+                    case 180:
+                        outX = width - 1 - column;
+                        outY = height - 1 - row;
+                        break;
+                    case 270:
+                        outX = row;
+                        outY = width - 1 - column;
+                        break;
+                    default:
+                        outX = column;
+                        outY = row;
+                        break;
+                }
+                out[outY * outWidth + outX] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static void readRow(ByteBuffer plane, int offset, byte[] row, int length) {
+        plane.position(offset);
+        plane.get(row, 0, length);
+    }
+
+    private void ensureRowCapacity(int lumaLength, int chromaLength) {
+        if (yRow.length < lumaLength) {
+            yRow = new byte[lumaLength];
+        }
+        if (uRow.length < chromaLength) {
+            uRow = new byte[chromaLength];
+            vRow = new byte[chromaLength];
+        }
+    }
+
+    private static void checkArguments(int width, int height, int rotationDegrees, int[] out) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Frame size must be positive.");
+        }
+        if (rotationDegrees != 0 && rotationDegrees != 90 && rotationDegrees != 180 && rotationDegrees != 270) {
+            throw new IllegalArgumentException("Unsupported rotation: " + rotationDegrees);
+        }
+        if (out == null || out.length < width * height) {
+            throw new IllegalArgumentException("Output needs room for " + (width * height) + " pixels.");
+        }
+    }
+
+    private static boolean isSideways(int rotationDegrees) {
+        return rotationDegrees == 90 || rotationDegrees == 270;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link AdaptiveFrameScheduler}, driven by a fake clock.
+ */
+public class AdaptiveFrameSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void framesWhileBusy_areDropped() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(30f, 1f);
+
+        assertTrue(scheduler.tryAcquire(0));
+        assertFalse(scheduler.tryAcquire(100 * MS)); // Previous frame still in flight
+        assertFalse(scheduler.tryAcquire(200 * MS));
+        scheduler.onFrameFinished(0, 10 * MS);
+        assertTrue(scheduler.tryAcquire(210 * MS));
+
+        assertEquals(2, scheduler.getFramesDropped());
+        assertEquals(1, scheduler.getFramesProcessed());
+    }
+
+    @Test
+    public void fastPipeline_isCappedAtTargetFps() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(10f, 1f);
+        int admitted = 0;
+        // Camera delivers 30 fps for 3 seconds, each admitted frame takes 5 ms
+        for (long t = 0; t < 3000 * MS; t += 33 * MS) {
+            if (scheduler.tryAcquire(t)) {
+                admitted++;
+                scheduler.onFrameFinished(t, t + 5 * MS);
+            }
+        }
+        assertTrue("admitted " + admitted, admitted >= 25 && admitted <= 31);
+        assertEquals(10f, scheduler.getEffectiveFps(), 1.5f);
+    }
+
+    @Test
+    public void slowPipeline_backsOff() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(10f, 1f);
+        long t = 0;
+        for (int i = 0; i < 20; i++) {
+            assertTrue(scheduler.tryAcquire(t));
+            scheduler.onFrameFinished(t, t + 300 * MS);
+            t += 2000 * MS; // Far enough apart to always be admitted
+        }
+        // 300 ms latency with headroom leaves roughly 2 fps
+        assertTrue(scheduler.getCurrentTargetFps() < 2.5f);
+        assertTrue(scheduler.getCurrentTargetFps() >= 1f);
+    }
+
+    @Test
+    public void thermalPressure_stretchesIntervalButRespectsMinFps() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(8f, 2f);
+        assertEquals(8f, scheduler.getCurrentTargetFps(), 0.01f);
+
+        scheduler.setThermalMultiplier(2f);
+        assertEquals(4f, scheduler.getCurrentTargetFps(), 0.01f);
+
+        scheduler.setThermalMultiplier(10f);
+        assertEquals(2f, scheduler.getCurrentTargetFps(), 0.01f);
+
+        scheduler.setThermalMultiplier(1f);
+        assertEquals(8f, scheduler.getCurrentTargetFps(), 0.01f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minFpsAboveTarget_isRejected() {
+        new AdaptiveFrameScheduler(5f, 10f);
+    }
+}
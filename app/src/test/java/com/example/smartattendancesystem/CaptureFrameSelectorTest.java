@@ -0,0 +1,50 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CaptureFrameSelector}, with strings standing in for frames.
+ */
+public class CaptureFrameSelectorTest {
+
+    @Test
+    public void similarPoses_competeForOneSlot() {
+        CaptureFrameSelector<String> selector = new CaptureFrameSelector<>(3, 6f);
+        assertNull(selector.offer("frontal", 0.5f, 0f));
+        assertEquals("frontal", selector.offer("frontalBetter", 0.8f, 2f)); // Replaces, within 6 degrees
+        assertEquals("frontalWorse", selector.offer("frontalWorse", 0.4f, -1f)); // Turned away
+        assertEquals(1, selector.size());
+        assertFalse(selector.accepts(0.7f, 3f));
+        assertTrue(selector.accepts(0.1f, 10f)); // A new pose takes a free slot whatever its score
+    }
+
+    @Test
+    public void fullSelector_replacesTheWorstFrame() {
+        CaptureFrameSelector<String> selector = new CaptureFrameSelector<>(2, 6f);
+        selector.offer("left", 0.6f, -10f);
+        selector.offer("right", 0.9f, 10f);
+        assertEquals("low", selector.offer("low", 0.5f, 0f));
+        assertEquals("left", selector.offer("frontal", 0.7f, 0f));
+        assertEquals(Arrays.asList("right", "frontal"), selector.take()); // Best first
+        assertEquals(0, selector.size());
+    }
+
+    @Test
+    public void isFull_needsEverySlotAboveTheScore() {
+        CaptureFrameSelector<String> selector = new CaptureFrameSelector<>(2, 6f);
+        selector.offer("a", 0.9f, 0f);
+        assertFalse(selector.isFull(0.5f));
+        selector.offer("b", 0.4f, 12f);
+        assertFalse(selector.isFull(0.5f));
+        assertTrue(selector.isFull(0.3f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacity_isRejected() {
+        new CaptureFrameSelector<String>(0, 6f);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.smartattendancesystem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EmbeddingCache}, using a software AES key in place of the
+ * Android Keystore one.
+ */
+public class EmbeddingCacheTest {
+
+    private static final String MODEL = EmbeddingModelVersion.LEGACY;
+
+    private File directory;
+    private SecretKey key;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("embedding_cache").toFile();
+        key = newKey();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static SecretKey newKey() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        return generator.generateKey();
+    }
+
+    private static float[] randomUnitVector(long seed) {
+        return TestEmbeddings.randomUnitVector(new Random(seed), 128);
+    }
+
+    @Test
+    public void putThenGet_roundTripsRecord() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache(directory, key);
+        float[] embedding = randomUnitVector(1L);
+        FaceTemplateSet templates = FaceTemplateSet.select(Arrays.asList(embedding, randomUnitVector(9L)), new float[]{1f, 1f}, 5);
+        long version = cache.put("B123", "uid-1", MODEL, 0.45f, templates);
+
+        EmbeddingCache.Record record = cache.get("B123");
+        assertNotNull(record);
+        assertEquals("uid-1", record.userId);
+        assertEquals(MODEL, record.modelVersion);
+        assertEquals(0.45f, record.matchThreshold, 0f);
+        assertEquals(version, record.version);
+        assertEquals(2, record.templates.size());
+        assertEquals(128, record.templates.getDimension());
+        float[] primary = record.templates.primary();
+        for (int i = 0; i < embedding.length; i++) {
+            assertEquals(embedding[i], primary[i], 1e-3f);
+        }
+        // The stamp is stable across the float16 round trip, so revalidation compares like with like
+        assertEquals(version, EmbeddingCache.versionOf(record.templates));
+        assertNull(cache.get("B999"));
+    }
+
+    @Test
+    public void versionChangesWithEmbeddingAndPutReplaces() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache(directory, key);
+        long first = cache.put("S42", "uid-2", MODEL, Float.NaN, FaceTemplateSet.of(randomUnitVector(2L)));
+        long second = cache.put("S42", "uid-2", MODEL, Float.NaN, FaceTemplateSet.of(randomUnitVector(3L)));
+        assertNotEquals(first, second);
+        assertEquals(second, cache.get("S42").version);
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void fileNamesDoNotRevealIds() throws Exception {
+        new EmbeddingCache(directory, key).put("B123", "uid-1", MODEL, Float.NaN, FaceTemplateSet.of(randomUnitVector(4L)));
+        for (File file : directory.listFiles()) {
+            assertFalse(file.getName().contains("B123"));
+        }
+    }
+
+    @Test
+    public void entryUnderAnotherKey_isMissAndDeleted() throws Exception {
+        new EmbeddingCache(directory, key).put("B123", "uid-1", MODEL, Float.NaN, FaceTemplateSet.of(randomUnitVector(5L)));
+        EmbeddingCache otherKey = new EmbeddingCache(directory, newKey());
+        assertNull(otherKey.get("B123"));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void tamperedOrMovedEntry_isMiss() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache(directory, key);
+        cache.put("B123", "uid-1", MODEL, Float.NaN, FaceTemplateSet.of(randomUnitVector(6L)));
+        File b123 = directory.listFiles()[0];
+        cache.put("B456", "uid-2", MODEL, Float.NaN, FaceTemplateSet.of(randomUnitVector(7L)));
+        File b456 = null;
+        for (File file : directory.listFiles()) {
+            if (!file.equals(b123)) {
+                b456 = file;
+            }
+        }
+        assertNotNull(b456);
+
+        // Copy B123's file over B456's: the ID is authenticated, so it must not decrypt as B456
+        Files.copy(b123.toPath(), b456.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertNull(cache.get("B456"));
+
+        // Flip one ciphertext byte
+        try (RandomAccessFile file = new RandomAccessFile(b123, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0x01);
+        }
+        assertNull(cache.get("B123"));
+    }
+
+    @Test
+    public void remove_deletesEntry() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache(directory, key);
+        cache.put("A7", "uid-3", MODEL, Float.NaN, FaceTemplateSet.of(randomUnitVector(8L)));
+        cache.remove("A7");
+        assertNull(cache.get("A7"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.smartattendancesystem.TestEmbeddings.randomUnitVector;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EmbeddingCodec}: round-trip accuracy on unit-length embeddings
+ * like the ones the app stores, and validation of malformed blobs.
+ */
+public class EmbeddingCodecTest {
+
+    private static final int DIM = 128;
+
+    private static float cosine(float[] a, float[] b) {
+        return EmbeddingMath.dot(a, b) / (float) Math.sqrt(EmbeddingMath.dot(a, a) * EmbeddingMath.dot(b, b));
+    }
+
+    @Test
+    public void int8_roundTripKeepsCosineAndIsCompact() {
+        Random random = new Random(1L);
+        for (int trial = 0; trial < 50; trial++) {
+            float[] embedding = randomUnitVector(random, DIM);
+            byte[] encoded = EmbeddingCodec.encode(embedding);
+            assertEquals(4 + 4 + DIM, encoded.length);
+
+            float[] decoded = EmbeddingCodec.decode(encoded);
+            assertEquals(DIM, decoded.length);
+            assertEquals(1f, cosine(embedding, decoded), 1e-3f);
+
+            // Similarities to another embedding barely move
+            float[] other = randomUnitVector(random, DIM);
+            assertEquals(cosine(embedding, other), cosine(decoded, other), 2e-3f);
+        }
+    }
+
+    @Test
+    public void float16_roundTripIsNearlyExact() {
+        Random random = new Random(2L);
+        float[] embedding = randomUnitVector(random, DIM);
+        byte[] encoded = EmbeddingCodec.encode(embedding, EmbeddingCodec.ENCODING_FLOAT16);
+        assertEquals(4 + 2 * DIM, encoded.length);
+
+        float[] decoded = EmbeddingCodec.decode(encoded);
+        for (int i = 0; i < DIM; i++) {
+            assertEquals(embedding[i], decoded[i], Math.abs(embedding[i]) * 1e-3f + 1e-7f);
+        }
+    }
+
+    @Test
+    public void half_conversionHandlesSpecialValues() {
+        float[] values = {0f, -0f, 1f, -2.5f, 65504f, 6.1035156e-5f, 5.9604645e-8f, 1e-3f};
+        for (float value : values) {
+            assertEquals(value, EmbeddingCodec.fromHalf(EmbeddingCodec.toHalf(value)), Math.abs(value) * 1e-3f);
+        }
+        assertTrue(Float.isInfinite(EmbeddingCodec.fromHalf(EmbeddingCodec.toHalf(1e6f))));
+        assertTrue(Float.isNaN(EmbeddingCodec.fromHalf(EmbeddingCodec.toHalf(Float.NaN))));
+        assertEquals(0f, EmbeddingCodec.fromHalf(EmbeddingCodec.toHalf(1e-10f)), 0f);
+        assertEquals((short) 0x3C00, EmbeddingCodec.toHalf(1f));
+        // 1 + 2^-11 is exactly halfway between two halves and rounds to the even one
+        assertEquals((short) 0x3C00, EmbeddingCodec.toHalf(1f + 1f / 2048f));
+    }
+
+    @Test
+    public void zeroVector_survivesInt8() {
+        float[] decoded = EmbeddingCodec.decode(EmbeddingCodec.encode(new float[16]));
+        assertArrayEquals(new float[16], decoded, 0f);
+    }
+
+    @Test
+    public void legacyList_isRead() {
+        List<Double> legacy = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            legacy.add(i * 0.25);
+        }
+        assertArrayEquals(new float[]{0f, 0.25f, 0.5f, 0.75f}, EmbeddingCodec.decodeLegacy(legacy), 0f);
+        assertNull(EmbeddingCodec.decodeLegacy(new ArrayList<Double>()));
+        assertNull(EmbeddingCodec.decodeLegacy(Arrays.asList(1.0, "x")));
+    }
+
+    @Test
+    public void malformedBlobs_areRejected() {
+        byte[] valid = EmbeddingCodec.encode(new float[]{0.6f, 0.8f});
+        byte[][] malformed = {
+                null,
+                new byte[]{1, 1},
+                Arrays.copyOf(valid, valid.length - 1),
+                versioned(valid, 2),
+                encoding(valid, 9),
+        };
+        for (byte[] bytes : malformed) {
+            try {
+                EmbeddingCodec.decode(bytes);
+                fail("Expected " + Arrays.toString(bytes) + " to be rejected");
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+        }
+    }
+
+    private static byte[] versioned(byte[] bytes, int version) {
+        byte[] copy = bytes.clone();
+        copy[0] = (byte) version;
+        return copy;
+    }
+
+    private static byte[] encoding(byte[] bytes, int encoding) {
+        byte[] copy = bytes.clone();
+        copy[1] = (byte) encoding;
+        return copy;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyEmbedding_cannotBeEncoded() {
+        EmbeddingCodec.encode(new float[0]);
+    }
+}
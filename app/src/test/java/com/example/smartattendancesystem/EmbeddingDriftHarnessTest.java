@@ -0,0 +1,92 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EmbeddingDriftHarness}, using a stand-in "model" whose
+ * candidate variant applies int8 quantization to the reference embedding.
+ */
+public class EmbeddingDriftHarnessTest {
+
+    private static final int EMBEDDING_SIZE = 128;
+
+    private static List<float[]> randomFaces(int count, long seed) {
+        Random random = new Random(seed);
+        List<float[]> faces = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] face = new float[EMBEDDING_SIZE];
+            for (int j = 0; j < EMBEDDING_SIZE; j++) {
+                face[j] = (float) random.nextGaussian();
+            }
+            faces.add(face);
+        }
+        return faces;
+    }
+
+    // Symmetric int8 quantization with a per-vector scale, then dequantization
+    private static float[] quantizeInt8(float[] embedding) {
+        float maxAbs = 0f;
+        for (float v : embedding) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        float scale = maxAbs / 127f;
+        float[] result = new float[embedding.length];
+        for (int i = 0; i < embedding.length; i++) {
+            result[i] = Math.round(embedding[i] / scale) * scale;
+        }
+        return result;
+    }
+
+    @Test
+    public void identicalModels_reportNoDrift() {
+        EmbeddingDriftHarness<float[]> harness = new EmbeddingDriftHarness<>(face -> face, face -> face, 1);
+        EmbeddingDriftHarness.Report report = harness.run(randomFaces(20, 1L));
+
+        assertEquals(20, report.fixtureCount);
+        assertEquals(0, report.failedFixtures);
+        assertEquals(1.0, report.meanCosine, 1e-6);
+        assertEquals(1.0, report.minCosine, 1e-6);
+        assertEquals(1.0, report.nearestNeighbourAgreement, 1e-9);
+    }
+
+    @Test
+    public void int8Quantization_driftsOnlySlightly() {
+        EmbeddingDriftHarness<float[]> harness =
+                new EmbeddingDriftHarness<>(face -> face, EmbeddingDriftHarnessTest::quantizeInt8, 1);
+        EmbeddingDriftHarness.Report report = harness.run(randomFaces(50, 2L));
+
+        assertTrue(report.toString(), report.minCosine > 0.999);
+        assertTrue(report.minCosine < 1.0);
+        assertTrue(report.p5Cosine >= report.minCosine);
+        assertEquals(1.0, report.nearestNeighbourAgreement, 1e-9);
+    }
+
+    @Test
+    public void failedEmbeddings_areCountedAndSkipped() {
+        EmbeddingDriftHarness<float[]> harness =
+                new EmbeddingDriftHarness<>(face -> face, face -> face[0] > 0 ? face : null, 0);
+        List<float[]> faces = randomFaces(30, 3L);
+        int expectedFailures = 0;
+        for (float[] face : faces) {
+            if (face[0] <= 0) {
+                expectedFailures++;
+            }
+        }
+
+        EmbeddingDriftHarness.Report report = harness.run(faces);
+
+        assertEquals(expectedFailures, report.failedFixtures);
+        assertEquals(1.0, report.meanCosine, 1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyFixtureSet_isRejected() {
+        new EmbeddingDriftHarness<float[]>(face -> face, face -> face, 0).run(new ArrayList<>());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.smartattendancesystem;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static com.example.smartattendancesystem.TestEmbeddings.randomVector;
+
+/**
+ * Micro-benchmark comparing {@link EmbeddingMath} with the original per-call cosine/Euclidean
+ * implementations (Math.pow and both norms recomputed on every call) at embedding sizes
+ * 128, 192 and 512, plus the one-query-vs-gallery kernel.
+ *
+ * Run from the IDE as a plain Java main on the host JVM. Each case is warmed up before it is
+ * measured, and the result is written to a field so the JIT cannot drop the work.
+ */
+public class EmbeddingMathBenchmark {
+
+    private static final int GALLERY_SIZE = 200;
+    private static final int WARM_UP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 20_000;
+    // A gallery iteration scores every row, so fewer of them
+    private static final int GALLERY_WARM_UP_ITERATIONS = 1_000;
+    private static final int GALLERY_MEASURED_ITERATIONS = 1_000;
+
+    private static double sink;
+
+    public static void main(String[] args) {
+        for (int dim : new int[]{128, 192, 512}) {
+            runForSize(dim);
+        }
+    }
+
+    private static void runForSize(int dim) {
+        Random random = new Random(dim);
+        float[] a = randomVector(random, dim);
+        float[] b = randomVector(random, dim);
+        float[] normalizedA = EmbeddingMath.l2Normalize(a.clone());
+        float[] normalizedB = EmbeddingMath.l2Normalize(b.clone());
+        // The same gallery as separate rows for the baseline and as one matrix for the kernel
+        float[][] galleryRows = new float[GALLERY_SIZE][];
+        float[] gallery = new float[GALLERY_SIZE * dim];
+        for (int r = 0; r < GALLERY_SIZE; r++) {
+            galleryRows[r] = EmbeddingMath.l2Normalize(randomVector(random, dim));
+            System.arraycopy(galleryRows[r], 0, gallery, r * dim, dim);
+        }
+        float[] scores = new float[GALLERY_SIZE];
+
+        report(dim, "legacy cosine", measure(() -> sink += legacyCosine(a, b)));
+        report(dim, "EmbeddingMath.cosineSimilarity", measure(() -> sink += EmbeddingMath.cosineSimilarity(a, b)));
+        report(dim, "EmbeddingMath.dot (normalized)", measure(() -> sink += EmbeddingMath.dot(normalizedA, normalizedB)));
+        report(dim, "legacy euclidean", measure(() -> sink += legacyEuclidean(a, b)));
+        report(dim, "EmbeddingMath.euclideanDistance", measure(() -> sink += EmbeddingMath.euclideanDistance(a, b)));
+
+        double legacyGallery = measureGallery(() -> {
+            for (float[] row : galleryRows) {
+                sink += legacyCosine(a, row);
+            }
+        });
+        report(dim, "legacy cosine per gallery row", legacyGallery);
+        double galleryKernel = measureGallery(() -> {
+            EmbeddingMath.dotMany(normalizedA, gallery, GALLERY_SIZE, dim, scores);
+            sink += scores[0];
+        });
+        report(dim, "EmbeddingMath.dotMany per gallery row", galleryKernel);
+    }
+
+    private static double measure(Runnable op) {
+        return measure(op, WARM_UP_ITERATIONS, MEASURED_ITERATIONS);
+    }
+
+    // Per gallery row
+    private static double measureGallery(Runnable op) {
+        return measure(op, GALLERY_WARM_UP_ITERATIONS, GALLERY_MEASURED_ITERATIONS) / GALLERY_SIZE;
+    }
+
+    private static double measure(Runnable op, int warmUpIterations, int measuredIterations) {
+        for (int i = 0; i < warmUpIterations; i++) {
+            op.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < measuredIterations; i++) {
+            op.run();
+        }
+        return (System.nanoTime() - start) / (double) measuredIterations;
+    }
+
+    private static void report(int dim, String name, double nanosPerOp) {
+        System.out.println(String.format(Locale.US, "dim=%-4d %-40s %10.1f ns/op", dim, name, nanosPerOp));
+    }
+
+    // Original FaceRecognitionHelper.calculateCosineSimilarity, kept here as the baseline
+    private static double legacyCosine(float[] embedding1, float[] embedding2) {
+        double dotProduct = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < embedding1.length; i++) {
+            dotProduct += embedding1[i] * embedding2[i];
+            normA += Math.pow(embedding1[i], 2);
+            normB += Math.pow(embedding2[i], 2);
+        }
+        if (normA == 0.0 || normB == 0.0) {
+            return 0.0;
+        }
+        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    // Original FaceRecognitionHelper.calculateEuclideanDistance, kept here as the baseline
+    private static double legacyEuclidean(float[] embedding1, float[] embedding2) {
+        double sumSquaredDiff = 0;
+        for (int i = 0; i < embedding1.length; i++) {
+            sumSquaredDiff += Math.pow(embedding1[i] - embedding2[i], 2);
+        }
+        return Math.sqrt(sumSquaredDiff);
+    }
+}
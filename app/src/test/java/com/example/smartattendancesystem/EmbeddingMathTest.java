@@ -0,0 +1,79 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.example.smartattendancesystem.TestEmbeddings.randomVector;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EmbeddingMath}, checked against straightforward double-precision
+ * reference implementations.
+ */
+public class EmbeddingMathTest {
+
+    private static double referenceCosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += (double) a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    @Test
+    public void dotOfNormalizedVectors_equalsCosine() {
+        Random random = new Random(7L);
+        // Include sizes that are not multiples of the unroll factor
+        for (int dim : new int[]{1, 3, 5, 128, 191, 192, 512}) {
+            float[] a = randomVector(random, dim);
+            float[] b = randomVector(random, dim);
+            double expected = referenceCosine(a, b);
+
+            assertEquals(expected, EmbeddingMath.cosineSimilarity(a, b), 1e-5);
+            EmbeddingMath.l2Normalize(a);
+            EmbeddingMath.l2Normalize(b);
+            assertTrue(EmbeddingMath.isNormalized(a, 1e-5f));
+            assertEquals(expected, EmbeddingMath.dot(a, b), 1e-5);
+        }
+    }
+
+    @Test
+    public void dotMany_scoresEveryRow() {
+        Random random = new Random(11L);
+        int dim = 130;
+        int count = 9;
+        float[] query = randomVector(random, dim);
+        float[] matrix = new float[count * dim];
+        float[][] rows = new float[count][];
+        for (int r = 0; r < count; r++) {
+            rows[r] = randomVector(random, dim);
+            System.arraycopy(rows[r], 0, matrix, r * dim, dim);
+        }
+
+        float[] scores = new float[count];
+        EmbeddingMath.dotMany(query, matrix, count, dim, scores);
+
+        for (int r = 0; r < count; r++) {
+            assertEquals(EmbeddingMath.dot(query, rows[r]), scores[r], 1e-4);
+        }
+    }
+
+    @Test
+    public void euclideanDistance_matchesReference() {
+        float[] a = {1f, 2f, 3f};
+        float[] b = {4f, 6f, 3f};
+        assertEquals(5.0, EmbeddingMath.euclideanDistance(a, b), 1e-6);
+        assertEquals(0.0, EmbeddingMath.euclideanDistance(a, a), 0.0);
+    }
+
+    @Test
+    public void zeroVector_isHandled() {
+        float[] zero = new float[4];
+        float[] other = {1f, 0f, 0f, 0f};
+        assertEquals(0.0, EmbeddingMath.cosineSimilarity(zero, other), 0.0);
+        assertArrayEquals(new float[4], EmbeddingMath.l2Normalize(zero), 0f);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EmbeddingModelVersion}.
+ */
+public class EmbeddingModelVersionTest {
+
+    @Test
+    public void fingerprint_isStableAndContentSensitive() throws Exception {
+        String a = EmbeddingModelVersion.fingerprint(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        String b = EmbeddingModelVersion.fingerprint(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        String c = EmbeddingModelVersion.fingerprint(new ByteArrayInputStream(new byte[]{1, 2, 4}));
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+        assertTrue(a.startsWith("sha256:"));
+        assertEquals("sha256:".length() + 16, a.length());
+    }
+
+    @Test
+    public void fingerprint_ofBufferMatchesStreamAndKeepsPosition() throws Exception {
+        byte[] model = {5, 6, 7, 8, 9};
+        ByteBuffer buffer = ByteBuffer.wrap(model);
+        buffer.position(3);
+        assertEquals(EmbeddingModelVersion.fingerprint(new ByteArrayInputStream(model)), EmbeddingModelVersion.fingerprint(buffer));
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void compatibility_treatsUntaggedAsLegacy() {
+        String other = "sha256:0000000000000000";
+        assertTrue(EmbeddingModelVersion.isCompatible(null, EmbeddingModelVersion.LEGACY));
+        assertTrue(EmbeddingModelVersion.isCompatible("", EmbeddingModelVersion.LEGACY));
+        assertFalse(EmbeddingModelVersion.isCompatible(null, other));
+        assertTrue(EmbeddingModelVersion.isCompatible(other, other));
+        assertFalse(EmbeddingModelVersion.isCompatible(EmbeddingModelVersion.LEGACY, other));
+        assertFalse(EmbeddingModelVersion.isCompatible(other, null));
+    }
+}
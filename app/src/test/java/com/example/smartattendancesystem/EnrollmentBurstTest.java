@@ -0,0 +1,48 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.example.smartattendancesystem.TestEmbeddings.noisyCopy;
+import static com.example.smartattendancesystem.TestEmbeddings.randomVector;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EnrollmentBurst}, with strings standing in for photos.
+ */
+public class EnrollmentBurstTest {
+
+    private static final int DIM = 128;
+
+    @Test
+    public void completesAtTargetAndKeepsThePrimaryShotsPhoto() {
+        Random random = new Random(1L);
+        float[] face = randomVector(random, DIM);
+        EnrollmentBurst<String> burst = new EnrollmentBurst<>(3, 5);
+        burst.add("first", noisyCopy(face, 0.5f, random), 0.4f);
+        burst.add("second", noisyCopy(face, 0.5f, random), 0.9f);
+        assertFalse(burst.isComplete());
+        burst.add("third", noisyCopy(face, 0.5f, random), 0.6f);
+        assertTrue(burst.isComplete());
+
+        FaceTemplateSet templates = burst.select();
+        assertTrue(templates.size() >= 1 && templates.size() <= 3);
+        assertEquals("second", burst.getPrimaryPhoto()); // Unnormalized embeddings still map back
+        assertSame(templates, burst.select());
+        assertEquals(3, burst.getPhotos().size());
+    }
+
+    @Test
+    public void shortBurst_stillEnrolls() {
+        EnrollmentBurst<String> burst = new EnrollmentBurst<>(3, 5);
+        burst.add("only", randomVector(new Random(2L), DIM), 1f);
+        assertEquals(1, burst.select().size());
+        assertEquals("only", burst.getPrimaryPhoto());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void emptyBurst_cannotSelect() {
+        new EnrollmentBurst<String>(3, 5).select();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.example.smartattendancesystem.TestEmbeddings.noisyCopy;
+import static com.example.smartattendancesystem.TestEmbeddings.randomVector;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceGalleryIndex} and its approximate {@link HnswIndex} backend.
+ */
+public class FaceGalleryIndexTest {
+
+    private static final int DIM = 64;
+
+    @Test
+    public void search_returnsClosestEntriesBestFirst() {
+        Random random = new Random(1L);
+        FaceGalleryIndex gallery = new FaceGalleryIndex(DIM);
+        float[][] students = new float[200][];
+        for (int i = 0; i < students.length; i++) {
+            students[i] = randomVector(random, DIM);
+            gallery.put("B" + i, students[i]);
+        }
+
+        List<FaceGalleryIndex.Match> matches = gallery.search(noisyCopy(students[42], 0.1f, random), 3);
+
+        assertEquals(3, matches.size());
+        assertEquals("B42", matches.get(0).id);
+        assertTrue(matches.get(0).score > 0.9f);
+        assertTrue(matches.get(0).score >= matches.get(1).score);
+        assertTrue(matches.get(1).score >= matches.get(2).score);
+    }
+
+    @Test
+    public void scores_areCosineSimilarities() {
+        FaceGalleryIndex gallery = new FaceGalleryIndex(DIM);
+        float[] embedding = randomVector(new Random(2L), DIM);
+        gallery.put("B1", embedding);
+
+        float[] scaled = embedding.clone();
+        for (int i = 0; i < DIM; i++) {
+            scaled[i] *= 7f;
+        }
+        List<FaceGalleryIndex.Match> matches = gallery.search(scaled, 1);
+
+        assertEquals(1.0f, matches.get(0).score, 1e-5f);
+    }
+
+    @Test
+    public void put_replacesAndRemove_dropsEntries() {
+        Random random = new Random(3L);
+        FaceGalleryIndex gallery = new FaceGalleryIndex(DIM);
+        float[] first = randomVector(random, DIM);
+        float[] reEnrolled = randomVector(random, DIM);
+        gallery.put("B1", first);
+        gallery.put("B2", randomVector(random, DIM));
+        gallery.put("B3", randomVector(random, DIM));
+
+        gallery.put("B1", reEnrolled);
+        assertEquals(3, gallery.size());
+        assertEquals("B1", gallery.search(reEnrolled, 1).get(0).id);
+
+        assertTrue(gallery.remove("B1"));
+        assertFalse(gallery.remove("B1"));
+        assertEquals(2, gallery.size());
+        assertFalse(gallery.contains("B1"));
+        for (FaceGalleryIndex.Match match : gallery.search(reEnrolled, 5)) {
+            assertNotEquals("B1", match.id);
+        }
+    }
+
+    @Test
+    public void gallery_growsPastInitialCapacity() {
+        Random random = new Random(4L);
+        FaceGalleryIndex gallery = new FaceGalleryIndex(DIM);
+        float[] last = null;
+        for (int i = 0; i < 500; i++) {
+            last = randomVector(random, DIM);
+            gallery.put("B" + i, last);
+        }
+        assertEquals(500, gallery.size());
+        assertEquals("B499", gallery.search(last, 1).get(0).id);
+    }
+
+    @Test
+    public void approximateSearch_hasHighRecallAgainstBruteForce() {
+        Random random = new Random(5L);
+        FaceGalleryIndex exact = new FaceGalleryIndex(DIM);
+        FaceGalleryIndex approximate = new FaceGalleryIndex(DIM);
+        approximate.enableApproximateSearch(100);
+        for (int i = 0; i < 2000; i++) {
+            float[] embedding = randomVector(random, DIM);
+            exact.put("B" + i, embedding);
+            approximate.put("B" + i, embedding);
+        }
+        // Churn: remove and re-add part of the gallery
+        for (int i = 0; i < 300; i++) {
+            exact.remove("B" + i);
+            approximate.remove("B" + i);
+        }
+
+        int k = 10;
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random, DIM);
+            Set<String> truth = new HashSet<>();
+            for (FaceGalleryIndex.Match match : exact.search(query, k)) {
+                truth.add(match.id);
+            }
+            for (FaceGalleryIndex.Match match : approximate.search(query, k)) {
+                assertTrue(exact.contains(match.id));
+                if (truth.contains(match.id)) {
+                    found++;
+                }
+            }
+        }
+        double recall = (double) found / (queries * k);
+        assertTrue("recall@10 = " + recall, recall >= 0.9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongDimension_isRejected() {
+        new FaceGalleryIndex(DIM).put("B1", new float[DIM + 1]);
+    }
+}
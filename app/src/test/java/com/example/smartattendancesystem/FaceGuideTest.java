@@ -0,0 +1,49 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceGuide} on a 480 x 640 upright frame, where the oval spans
+ * x 86..394 and y 87..490.
+ */
+public class FaceGuideTest {
+
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 640;
+
+    private static FaceGuide.Hint checkBox(int centerX, int centerY, int side) {
+        return FaceGuide.check(centerX - side / 2, centerY - side / 2, centerX + side / 2, centerY + side / 2, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void centeredFaceOfTheRightSize_holdsStill() {
+        assertEquals(FaceGuide.Hint.HOLD_STILL, checkBox(240, 288, 260));
+    }
+
+    @Test
+    public void faceSize_isCheckedAgainstTheOval() {
+        assertEquals(FaceGuide.Hint.MOVE_CLOSER, checkBox(240, 288, 120));
+        assertEquals(FaceGuide.Hint.MOVE_BACK, checkBox(240, 288, 420));
+    }
+
+    @Test
+    public void offCenterFace_isAskedToCenter() {
+        assertEquals(FaceGuide.Hint.CENTER_FACE, checkBox(320, 288, 260));
+        assertEquals(FaceGuide.Hint.CENTER_FACE, checkBox(240, 420, 260));
+    }
+
+    @Test
+    public void emptyBox_isNoFace() {
+        assertEquals(FaceGuide.Hint.NO_FACE, FaceGuide.check(0, 0, 0, 0, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void overlayOval_matchesTheCheckedOval() {
+        assertEquals(86.4f, FaceGuide.left(WIDTH), 1e-3f);
+        assertEquals(393.6f, FaceGuide.right(WIDTH), 1e-3f);
+        assertEquals(288f - 201.6f, FaceGuide.top(WIDTH, HEIGHT), 1e-3f);
+        assertEquals(288f + 201.6f, FaceGuide.bottom(WIDTH, HEIGHT), 1e-3f);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceQualityGate} on synthetic ARGB frames.
+ */
+public class FaceQualityGateTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    private static int grey(int level) {
+        level = Math.max(0, Math.min(255, level));
+        return 0xFF000000 | (level << 16) | (level << 8) | level;
+    }
+
+    // Mid-grey frame with fine random texture, standing in for a sharp face
+    private static int[] texturedFrame(int meanLevel, int amplitude, long seed) {
+        Random random = new Random(seed);
+        int[] frame = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = grey(meanLevel + random.nextInt(2 * amplitude + 1) - amplitude);
+        }
+        return frame;
+    }
+
+    // Box-blurs the frame horizontally and vertically with the given radius
+    private static int[] blurred(int[] frame, int radius) {
+        int[] out = new int[frame.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int sx = Math.max(0, Math.min(WIDTH - 1, x + dx));
+                        int sy = Math.max(0, Math.min(HEIGHT - 1, y + dy));
+                        sum += frame[sy * WIDTH + sx] & 0xFF;
+                        count++;
+                    }
+                }
+                out[y * WIDTH + x] = grey(sum / count);
+            }
+        }
+        return out;
+    }
+
+    private static FaceQualityGate.Result evaluate(FaceQualityGate gate, int[] frame, int size, float yaw, float roll) {
+        int left = (WIDTH - size) / 2;
+        int top = (HEIGHT - size) / 2;
+        return gate.evaluate(frame, WIDTH, HEIGHT, left, top, left + size, top + size, yaw, roll);
+    }
+
+    @Test
+    public void sharpWellLitFrontalFace_passes() {
+        FaceQualityGate gate = new FaceQualityGate();
+        FaceQualityGate.Result result = evaluate(gate, texturedFrame(128, 40, 1L), 120, 5f, 3f);
+
+        assertTrue(result.passed());
+        assertTrue(result.score > 0f && result.score <= 1f);
+        assertEquals(1, gate.getCount(FaceQualityGate.Reason.OK));
+    }
+
+    @Test
+    public void smallFace_isRejected() {
+        FaceQualityGate gate = new FaceQualityGate();
+        assertEquals(FaceQualityGate.Reason.FACE_TOO_SMALL, evaluate(gate, texturedFrame(128, 40, 2L), 40, 0f, 0f).reason);
+    }
+
+    @Test
+    public void faceClippedByFrameEdge_isMeasuredInsideTheFrame() {
+        FaceQualityGate gate = new FaceQualityGate();
+        // Box hangs 100 px off the left edge; only 60 px of face remain
+        FaceQualityGate.Result result = gate.evaluate(texturedFrame(128, 40, 3L), WIDTH, HEIGHT, -100, 50, 60, 200, 0f, 0f);
+        assertEquals(FaceQualityGate.Reason.FACE_TOO_SMALL, result.reason);
+    }
+
+    @Test
+    public void turnedHead_isRejected() {
+        FaceQualityGate gate = new FaceQualityGate();
+        assertEquals(FaceQualityGate.Reason.POSE_TOO_ANGLED, evaluate(gate, texturedFrame(128, 40, 4L), 120, 40f, 0f).reason);
+        assertEquals(FaceQualityGate.Reason.POSE_TOO_ANGLED, evaluate(gate, texturedFrame(128, 40, 4L), 120, 0f, -35f).reason);
+    }
+
+    @Test
+    public void exposure_isChecked() {
+        FaceQualityGate gate = new FaceQualityGate();
+        assertEquals(FaceQualityGate.Reason.TOO_DARK, evaluate(gate, texturedFrame(25, 10, 5L), 120, 0f, 0f).reason);
+        assertEquals(FaceQualityGate.Reason.TOO_BRIGHT, evaluate(gate, texturedFrame(235, 10, 6L), 120, 0f, 0f).reason);
+        assertEquals(1, gate.getCount(FaceQualityGate.Reason.TOO_DARK));
+        assertEquals(1, gate.getCount(FaceQualityGate.Reason.TOO_BRIGHT));
+    }
+
+    @Test
+    public void blurredFace_isRejectedAndScoresBelowSharpOne() {
+        FaceQualityGate gate = new FaceQualityGate();
+        int[] sharp = texturedFrame(128, 40, 7L);
+        float sharpness = evaluate(gate, sharp, 120, 0f, 0f).sharpness;
+
+        FaceQualityGate.Result blurry = evaluate(gate, blurred(sharp, 3), 120, 0f, 0f);
+        assertEquals(FaceQualityGate.Reason.TOO_BLURRY, blurry.reason);
+        assertTrue(blurry.sharpness < sharpness);
+    }
+
+    @Test
+    public void describeCounts_listsEveryReason() {
+        String counts = new FaceQualityGate().describeCounts();
+        for (FaceQualityGate.Reason reason : FaceQualityGate.Reason.values()) {
+            assertTrue(counts, counts.contains(reason.name().toLowerCase()));
+        }
+    }
+}
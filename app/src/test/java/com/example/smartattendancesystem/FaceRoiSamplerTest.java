@@ -0,0 +1,163 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceRoiSampler}: the fused sampler must give the same result as
+ * cropping the ROI first and resizing the crop, reading the ROI row by row must give the same
+ * result as reading it from an array, and the float/quantized outputs must be the normalized
+ * ARGB output.
+ */
+public class FaceRoiSamplerTest {
+
+    private static final int FRAME_WIDTH = 64;
+    private static final int FRAME_HEIGHT = 48;
+    private static final int MODEL_SIZE = 16;
+
+    private static int[] randomFrame(long seed) {
+        Random random = new Random(seed);
+        int[] frame = new int[FRAME_WIDTH * FRAME_HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return frame;
+    }
+
+    private static int[] crop(int[] frame, int left, int top, int width, int height) {
+        int[] cropped = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(frame, (top + y) * FRAME_WIDTH + left, cropped, y * width, width);
+        }
+        return cropped;
+    }
+
+    @Test
+    public void fusedSampling_matchesCropThenResize() {
+        int[] frame = randomFrame(1L);
+        int[] fused = new int[MODEL_SIZE * MODEL_SIZE];
+        int[] viaCrop = new int[MODEL_SIZE * MODEL_SIZE];
+        FaceRoiSampler sampler = new FaceRoiSampler();
+
+        sampler.sampleArgb(frame, FRAME_WIDTH, 10, 5, 30, 36, MODEL_SIZE, MODEL_SIZE, fused);
+        sampler.sampleArgb(crop(frame, 10, 5, 30, 36), 30, 0, 0, 30, 36, MODEL_SIZE, MODEL_SIZE, viaCrop);
+
+        assertArrayEquals(viaCrop, fused);
+    }
+
+    @Test
+    public void pixelsOutsideTheRoi_areNeverRead() {
+        int[] frame = randomFrame(2L);
+        int[] expected = new int[MODEL_SIZE * MODEL_SIZE];
+        FaceRoiSampler sampler = new FaceRoiSampler();
+        sampler.sampleArgb(frame, FRAME_WIDTH, 20, 10, 24, 24, MODEL_SIZE, MODEL_SIZE, expected);
+
+        // Paint everything outside the ROI white; the result must not change
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                if (x < 20 || x >= 44 || y < 10 || y >= 34) {
+                    frame[y * FRAME_WIDTH + x] = 0xFFFFFFFF;
+                }
+            }
+        }
+        int[] actual = new int[MODEL_SIZE * MODEL_SIZE];
+        sampler.sampleArgb(frame, FRAME_WIDTH, 20, 10, 24, 24, MODEL_SIZE, MODEL_SIZE, actual);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void sameSizeSampling_copiesPixels() {
+        int[] frame = randomFrame(3L);
+        int[] out = new int[MODEL_SIZE * MODEL_SIZE];
+        new FaceRoiSampler().sampleArgb(frame, FRAME_WIDTH, 4, 6, MODEL_SIZE, MODEL_SIZE, MODEL_SIZE, MODEL_SIZE, out);
+
+        assertArrayEquals(crop(frame, 4, 6, MODEL_SIZE, MODEL_SIZE), out);
+    }
+
+    @Test
+    public void normalizedOutput_isArgbScaledToMinusOneOne() {
+        int[] frame = randomFrame(4L);
+        FaceRoiSampler sampler = new FaceRoiSampler();
+        int[] argb = new int[MODEL_SIZE * MODEL_SIZE];
+        sampler.sampleArgb(frame, FRAME_WIDTH, 0, 0, FRAME_WIDTH, FRAME_HEIGHT, MODEL_SIZE, MODEL_SIZE, argb);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 * 3 * MODEL_SIZE * MODEL_SIZE).order(ByteOrder.nativeOrder());
+        sampler.sampleNormalized(frame, FRAME_WIDTH, 0, 0, FRAME_WIDTH, FRAME_HEIGHT, MODEL_SIZE, MODEL_SIZE,
+                127.5f, 127.5f, buffer);
+
+        assertEquals(buffer.capacity(), buffer.position());
+        buffer.rewind();
+        for (int pixel : argb) {
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                float expected = (((pixel >> shift) & 0xFF) - 127.5f) / 127.5f;
+                assertEquals(expected, buffer.getFloat(), 0.51f / 127.5f); // ARGB output is rounded
+            }
+        }
+    }
+
+    @Test
+    public void quantizedOutput_appliesScaleAndZeroPoint() {
+        int[] frame = new int[FRAME_WIDTH * FRAME_HEIGHT];
+        Arrays.fill(frame, 0xFF00FF90); // r=0, g=255, b=144
+        ByteBuffer buffer = ByteBuffer.allocateDirect(3 * MODEL_SIZE * MODEL_SIZE);
+
+        new FaceRoiSampler().sampleQuantized(frame, FRAME_WIDTH, 0, 0, 8, 8, MODEL_SIZE, MODEL_SIZE,
+                127.5f, 127.5f, 1f / 128f, 0, false, buffer);
+
+        buffer.rewind();
+        assertEquals(-128, buffer.get()); // -1.0 -> -128
+        assertEquals(127, buffer.get());  // +1.0 -> 128, clamped to 127
+        assertEquals(17, buffer.get());   // 16.5 / 127.5 * 128 = 16.6 -> 17
+    }
+
+    @Test
+    public void rowSource_matchesArraySamplingAndReadsEachRowOnce() {
+        int[] frame = randomFrame(6L);
+        List<Integer> rowsRead = new ArrayList<>();
+        FaceRoiSampler.RowSource rows = (row, dst) -> {
+            rowsRead.add(row);
+            System.arraycopy(frame, (7 + row) * FRAME_WIDTH + 3, dst, 0, 40);
+        };
+        FaceRoiSampler sampler = new FaceRoiSampler();
+        int[] expected = new int[MODEL_SIZE * MODEL_SIZE];
+        int[] actual = new int[MODEL_SIZE * MODEL_SIZE];
+
+        sampler.sampleArgb(frame, FRAME_WIDTH, 3, 7, 40, 38, MODEL_SIZE, MODEL_SIZE, expected);
+        sampler.sampleArgb(rows, 40, 38, MODEL_SIZE, MODEL_SIZE, actual);
+
+        assertArrayEquals(expected, actual);
+        assertEquals(new HashSet<>(rowsRead).size(), rowsRead.size());
+        assertTrue("read " + rowsRead.size() + " rows", rowsRead.size() <= 2 * MODEL_SIZE);
+    }
+
+    @Test
+    public void rowSource_normalizedOutput_matchesArraySampling() {
+        int[] frame = randomFrame(7L);
+        FaceRoiSampler sampler = new FaceRoiSampler();
+        ByteBuffer expected = ByteBuffer.allocate(4 * 3 * MODEL_SIZE * MODEL_SIZE).order(ByteOrder.nativeOrder());
+        ByteBuffer actual = ByteBuffer.allocate(4 * 3 * MODEL_SIZE * MODEL_SIZE).order(ByteOrder.nativeOrder());
+
+        // Upscaling, so consecutive output rows share source rows
+        sampler.sampleNormalized(frame, FRAME_WIDTH, 30, 20, 10, 9, MODEL_SIZE, MODEL_SIZE, 127.5f, 127.5f, expected);
+        sampler.sampleNormalized((row, dst) -> System.arraycopy(frame, (20 + row) * FRAME_WIDTH + 30, dst, 0, 10),
+                10, 9, MODEL_SIZE, MODEL_SIZE, 127.5f, 127.5f, actual);
+
+        assertArrayEquals(expected.array(), actual.array());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyRoi_isRejected() {
+        new FaceRoiSampler().sampleArgb(randomFrame(5L), FRAME_WIDTH, 0, 0, 0, 10, MODEL_SIZE, MODEL_SIZE,
+                new int[MODEL_SIZE * MODEL_SIZE]);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.smartattendancesystem.TestEmbeddings.near;
+import static com.example.smartattendancesystem.TestEmbeddings.randomUnitVector;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceTemplateSet}: template selection from a synthetic burst,
+ * fusion, the MAX fast path and the Blob encoding.
+ */
+public class FaceTemplateSetTest {
+
+    private static final int DIM = 128;
+
+    private static boolean containsTemplate(FaceTemplateSet set, float[] embedding) {
+        for (int t = 0; t < set.size(); t++) {
+            if (EmbeddingMath.dot(set.template(t), embedding) > 0.9999f) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void select_dropsOutliersAndDuplicatesAndKeepsTheBestFrameFirst() {
+        Random random = new Random(1L);
+        float[] face = randomUnitVector(random, DIM);
+        List<float[]> burst = new ArrayList<>();
+        burst.add(near(face, 0.8f, random));
+        burst.add(near(face, 0.8f, random));
+        burst.add(near(face, 0.8f, random));
+        burst.add(near(burst.get(0), 0.999f, random)); // Near-duplicate of the first frame
+        float[] stranger = randomUnitVector(random, DIM);
+        burst.add(stranger);
+        float[] qualities = {0.6f, 0.9f, 0.5f, 0.6f, 1f};
+
+        FaceTemplateSet set = FaceTemplateSet.select(burst, qualities, 5);
+        assertEquals(3, set.size());
+        assertFalse(containsTemplate(set, stranger));
+        assertEquals(1f, EmbeddingMath.dot(set.primary(), burst.get(1)), 1e-5f); // Best inlier quality
+        assertTrue(containsTemplate(set, burst.get(0)) ^ containsTemplate(set, burst.get(3)));
+    }
+
+    @Test
+    public void select_isBoundedByMaxTemplates() {
+        Random random = new Random(2L);
+        float[] face = randomUnitVector(random, DIM);
+        List<float[]> burst = new ArrayList<>();
+        float[] qualities = new float[12];
+        for (int i = 0; i < 12; i++) {
+            burst.add(near(face, 0.7f, random));
+            qualities[i] = 1f;
+        }
+        assertEquals(3, FaceTemplateSet.select(burst, qualities, 3).size());
+        assertEquals(FaceTemplateSet.MAX_TEMPLATES, FaceTemplateSet.select(burst, qualities, 50).size());
+    }
+
+    @Test
+    public void fusionAndFastPath_agree() {
+        Random random = new Random(3L);
+        float[] face = randomUnitVector(random, DIM);
+        List<float[]> burst = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            burst.add(near(face, 0.6f, random));
+        }
+        FaceTemplateSet set = FaceTemplateSet.select(burst, new float[]{1f, 1f, 1f, 1f}, 4);
+        float[] probe = near(set.template(2), 0.9f, random);
+
+        float max = Float.NEGATIVE_INFINITY;
+        float sum = 0f;
+        for (int t = 0; t < set.size(); t++) {
+            float similarity = EmbeddingMath.dot(probe, set.template(t));
+            max = Math.max(max, similarity);
+            sum += similarity;
+        }
+        assertEquals(max, set.score(probe, FaceTemplateSet.Fusion.MAX), 1e-6f);
+        assertEquals(sum / set.size(), set.score(probe, FaceTemplateSet.Fusion.MEAN), 1e-6f);
+
+        float early = set.firstAbove(probe, 0.5f);
+        assertTrue(early > 0.5f && early <= max);
+        assertTrue(Float.isNaN(set.firstAbove(probe, max)));
+    }
+
+    @Test
+    public void leaveOneOutScores_scoreEachTemplateAgainstTheOthers() {
+        Random random = new Random(4L);
+        float[] face = randomUnitVector(random, DIM);
+        List<float[]> burst = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            burst.add(near(face, 0.7f, random));
+        }
+        FaceTemplateSet set = FaceTemplateSet.select(burst, new float[]{1f, 1f, 1f}, 3);
+        float[] scores = set.leaveOneOutScores(FaceTemplateSet.Fusion.MAX);
+        assertEquals(3, scores.length);
+        assertEquals(Math.max(EmbeddingMath.dot(set.template(0), set.template(1)),
+                EmbeddingMath.dot(set.template(0), set.template(2))), scores[0], 1e-6f);
+        assertEquals(0, FaceTemplateSet.of(face).leaveOneOutScores(FaceTemplateSet.Fusion.MAX).length);
+    }
+
+    @Test
+    public void encode_roundTripsWithinInt8Precision() {
+        Random random = new Random(5L);
+        float[] face = randomUnitVector(random, DIM);
+        List<float[]> burst = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            burst.add(near(face, 0.6f, random));
+        }
+        FaceTemplateSet set = FaceTemplateSet.select(burst, new float[]{1f, 1f, 1f, 1f, 1f}, 5);
+        byte[] bytes = set.encode();
+        assertTrue(bytes.length < 700);
+
+        FaceTemplateSet decoded = FaceTemplateSet.decode(bytes);
+        assertEquals(set.size(), decoded.size());
+        float[] probe = near(face, 0.8f, random);
+        assertEquals(set.score(probe, FaceTemplateSet.Fusion.MAX), decoded.score(probe, FaceTemplateSet.Fusion.MAX), 2e-3f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsTruncatedBytes() {
+        byte[] bytes = FaceTemplateSet.of(randomUnitVector(new Random(6L), DIM)).encode();
+        FaceTemplateSet.decode(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+}
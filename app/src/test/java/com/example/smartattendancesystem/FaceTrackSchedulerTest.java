@@ -0,0 +1,134 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceTrackScheduler}: a textured patch stands in for the face and is
+ * moved across a noisy background between frames.
+ */
+public class FaceTrackSchedulerTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int FACE = 96;
+
+    private static int grey(int level) {
+        level = Math.max(0, Math.min(255, level));
+        return 0xFF000000 | (level << 16) | (level << 8) | level;
+    }
+
+    // Smooth random "face" texture, so the correlation peak is a few pixels wide like a real face
+    private static int[] faceTexture(long seed) {
+        Random random = new Random(seed);
+        int cells = 12;
+        int[] coarse = new int[cells * cells];
+        for (int i = 0; i < coarse.length; i++) {
+            coarse[i] = 40 + random.nextInt(176);
+        }
+        int[] face = new int[FACE * FACE];
+        for (int y = 0; y < FACE; y++) {
+            for (int x = 0; x < FACE; x++) {
+                face[y * FACE + x] = coarse[(y * cells / FACE) * cells + x * cells / FACE];
+            }
+        }
+        return face;
+    }
+
+    private static int[] frameWithFace(int[] face, int faceLeft, int faceTop, long backgroundSeed) {
+        Random random = new Random(backgroundSeed);
+        int[] frame = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = grey(100 + random.nextInt(40));
+        }
+        for (int y = 0; y < FACE; y++) {
+            for (int x = 0; x < FACE; x++) {
+                frame[(faceTop + y) * WIDTH + faceLeft + x] = grey(face[y * FACE + x]);
+            }
+        }
+        return frame;
+    }
+
+    private static boolean detect(FaceTrackScheduler tracker, int id, int left, int top, int[] frame) {
+        return tracker.onDetected(id, left, top, left + FACE, top + FACE, frame, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void detectsOnlyEveryNthFrameWhileTracking() {
+        FaceTrackScheduler tracker = new FaceTrackScheduler(3, 0.7f);
+        int[] face = faceTexture(1L);
+        assertEquals(FaceTrackScheduler.Action.DETECT, tracker.nextAction(false));
+
+        int[] frame = frameWithFace(face, 100, 60, 10L);
+        assertTrue(detect(tracker, 7, 100, 60, frame));
+        assertEquals(FaceTrackScheduler.Action.TRACK, tracker.nextAction(false));
+        assertTrue(tracker.track(frame, WIDTH, HEIGHT));
+        assertEquals(FaceTrackScheduler.Action.TRACK, tracker.nextAction(false));
+        assertTrue(tracker.track(frame, WIDTH, HEIGHT));
+        assertEquals(FaceTrackScheduler.Action.DETECT, tracker.nextAction(false));
+    }
+
+    @Test
+    public void needsDetection_overridesTheTrack() {
+        FaceTrackScheduler tracker = new FaceTrackScheduler(5, 0.7f);
+        detect(tracker, 1, 100, 60, frameWithFace(faceTexture(2L), 100, 60, 11L));
+        assertEquals(FaceTrackScheduler.Action.DETECT, tracker.nextAction(true));
+    }
+
+    @Test
+    public void movedFace_isFollowed() {
+        FaceTrackScheduler tracker = new FaceTrackScheduler(10, 0.7f);
+        int[] face = faceTexture(3L);
+        detect(tracker, 1, 100, 60, frameWithFace(face, 100, 60, 12L));
+
+        int[][] positions = {{107, 63}, {115, 58}, {121, 52}, {118, 47}};
+        for (int[] position : positions) {
+            assertTrue(tracker.track(frameWithFace(face, position[0], position[1], 13L), WIDTH, HEIGHT));
+            // The template samples every 6th pixel, so the peak is flat to within a couple of pixels
+            assertEquals(position[0], tracker.getLeft(), 2);
+            assertEquals(position[1], tracker.getTop(), 2);
+            assertEquals(FACE, tracker.getRight() - tracker.getLeft());
+        }
+        assertTrue(tracker.getLastMatchScore() > 0.9f);
+    }
+
+    @Test
+    public void vanishedFace_losesTheTrack() {
+        FaceTrackScheduler tracker = new FaceTrackScheduler(10, 0.7f);
+        detect(tracker, 1, 100, 60, frameWithFace(faceTexture(4L), 100, 60, 14L));
+
+        // A different face in the same place does not correlate with the template
+        assertFalse(tracker.track(frameWithFace(faceTexture(5L), 100, 60, 15L), WIDTH, HEIGHT));
+        assertFalse(tracker.hasTrack());
+        assertEquals(FaceTrackScheduler.Action.DETECT, tracker.nextAction(false));
+    }
+
+    @Test
+    public void identity_followsTrackingIds() {
+        FaceTrackScheduler tracker = new FaceTrackScheduler(3, 0.7f);
+        int[] frame = frameWithFace(faceTexture(6L), 100, 60, 16L);
+        assertTrue(detect(tracker, 4, 100, 60, frame));
+        assertFalse(detect(tracker, 4, 130, 80, frame));
+        assertTrue(detect(tracker, 5, 130, 80, frame));
+
+        // A missed detection in between does not make the same face new
+        tracker.onFaceLost();
+        assertFalse(detect(tracker, 5, 132, 80, frame));
+    }
+
+    @Test
+    public void identity_fallsBackToOverlapWithoutTrackingIds() {
+        FaceTrackScheduler tracker = new FaceTrackScheduler(3, 0.7f);
+        int[] frame = frameWithFace(faceTexture(7L), 100, 60, 17L);
+        int none = FaceTrackScheduler.NO_TRACKING_ID;
+        assertTrue(detect(tracker, none, 100, 60, frame));
+        assertFalse(detect(tracker, none, 110, 65, frame));
+        assertTrue(detect(tracker, none, 220, 10, frame));
+
+        tracker.reset();
+        assertTrue(detect(tracker, none, 220, 10, frame));
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FramePipeline}, with direct executors where ordering matters and
+ * real threads for stage affinity.
+ */
+public class FramePipelineTest {
+
+    private static final java.util.concurrent.Executor DIRECT = Runnable::run;
+
+    // Records every outcome as "item:OUTCOME"
+    private static class Recorder implements FramePipeline.Listener<String> {
+        final List<String> outcomes = Collections.synchronizedList(new ArrayList<>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onFinished(String item, FramePipeline.Outcome outcome, Throwable error) {
+            outcomes.add(item + ":" + outcome);
+            if (error != null) {
+                errors.add(error);
+            }
+        }
+    }
+
+    @Test
+    public void itemsPassEveryStageInOrder() {
+        Recorder recorder = new Recorder();
+        List<String> trace = new ArrayList<>();
+        FramePipeline<String> pipeline = new FramePipeline<String>("test", recorder)
+                .addStage("a", DIRECT, 1, item -> trace.add("a" + item))
+                .addStage("b", DIRECT, 1, item -> trace.add("b" + item));
+
+        pipeline.submit("1");
+        pipeline.submit("2");
+
+        assertEquals(java.util.Arrays.asList("a1", "b1", "a2", "b2"), trace);
+        assertEquals(java.util.Arrays.asList("1:COMPLETED", "2:COMPLETED"), recorder.outcomes);
+        assertEquals(2, pipeline.getLatency("a").getCount());
+        assertNull(pipeline.getLatency("missing"));
+    }
+
+    @Test
+    public void stageCanStopAnItem() {
+        Recorder recorder = new Recorder();
+        List<String> reachedLast = new ArrayList<>();
+        FramePipeline<String> pipeline = new FramePipeline<String>("test", recorder)
+                .addStage("filter", DIRECT, 1, item -> !item.startsWith("x"))
+                .addStage("last", DIRECT, 1, reachedLast::add);
+
+        pipeline.submit("x1");
+        pipeline.submit("ok");
+
+        assertEquals(Collections.singletonList("ok"), reachedLast);
+        assertEquals(java.util.Arrays.asList("x1:STOPPED", "ok:COMPLETED"), recorder.outcomes);
+    }
+
+    @Test
+    public void fullQueue_dropsOldestItem() {
+        Recorder recorder = new Recorder();
+        List<FramePipeline.Handoff> pending = new ArrayList<>();
+        FramePipeline<String> pipeline = new FramePipeline<String>("test", recorder)
+                .addAsyncStage("slow", DIRECT, 1, (item, handoff) -> pending.add(handoff));
+
+        pipeline.submit("1"); // Taken by the stage, which is now busy
+        pipeline.submit("2"); // Queued
+        pipeline.submit("3"); // Pushes out 2
+
+        assertEquals(Collections.singletonList("2:DROPPED"), recorder.outcomes);
+        pending.get(0).pass(); // 1 completes, 3 starts
+        assertEquals(2, pending.size());
+        pending.get(1).stop();
+        assertEquals(java.util.Arrays.asList("2:DROPPED", "1:COMPLETED", "3:STOPPED"), recorder.outcomes);
+        assertTrue(pipeline.describe().contains("dropped=1"));
+    }
+
+    @Test
+    public void cancel_finishesQueuedAndInFlightItemsAndRefusesNewOnes() {
+        Recorder recorder = new Recorder();
+        List<FramePipeline.Handoff> pending = new ArrayList<>();
+        List<String> reachedLast = new ArrayList<>();
+        FramePipeline<String> pipeline = new FramePipeline<String>("test", recorder)
+                .addAsyncStage("slow", DIRECT, 1, (item, handoff) -> pending.add(handoff))
+                .addStage("last", DIRECT, 1, reachedLast::add);
+
+        pipeline.submit("1");
+        pipeline.submit("2");
+        pipeline.cancel();
+        assertEquals(Collections.singletonList("2:CANCELLED"), recorder.outcomes);
+
+        pending.get(0).pass(); // Finishes after the cancel: must not reach the next stage
+        assertTrue(reachedLast.isEmpty());
+        assertFalse(pipeline.submit("3"));
+        assertEquals(java.util.Arrays.asList("2:CANCELLED", "1:CANCELLED", "3:CANCELLED"), recorder.outcomes);
+        assertTrue(pipeline.isCancelled());
+    }
+
+    @Test
+    public void throwingStage_reportsFailure() {
+        Recorder recorder = new Recorder();
+        FramePipeline<String> pipeline = new FramePipeline<String>("test", recorder)
+                .addStage("boom", DIRECT, 1, item -> {
+                    throw new IllegalStateException("model not loaded");
+                })
+                .addAsyncStage("after", DIRECT, 1, (item, handoff) -> handoff.pass());
+
+        pipeline.submit("1");
+        assertEquals(Collections.singletonList("1:FAILED"), recorder.outcomes);
+        assertEquals("model not loaded", recorder.errors.get(0).getMessage());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void completingAnAsyncItemTwice_isRejected() {
+        List<FramePipeline.Handoff> pending = new ArrayList<>();
+        FramePipeline<String> pipeline = new FramePipeline<String>("test", null)
+                .addAsyncStage("slow", DIRECT, 1, (item, handoff) -> pending.add(handoff));
+        pipeline.submit("1");
+        pending.get(0).pass();
+        pending.get(0).pass();
+    }
+
+    @Test
+    public void stagesRunOnTheirOwnThreads() throws Exception {
+        ExecutorService first = Executors.newSingleThreadExecutor(r -> new Thread(r, "stage-first"));
+        ExecutorService second = Executors.newSingleThreadExecutor(r -> new Thread(r, "stage-second"));
+        try {
+            List<String> threads = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch finished = new CountDownLatch(5);
+            FramePipeline<String> pipeline = new FramePipeline<String>("test", (item, outcome, error) -> finished.countDown())
+                    .addStage("first", first, 4, item -> threads.add("first@" + Thread.currentThread().getName()))
+                    .addStage("second", second, 4, item -> threads.add("second@" + Thread.currentThread().getName()));
+
+            for (int i = 0; i < 5; i++) {
+                pipeline.submit(Integer.toString(i));
+            }
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            for (String entry : threads) {
+                String[] parts = entry.split("@");
+                assertEquals("stage-" + parts[0], parts[1]);
+            }
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    public void clear_dropsQueuedItemsButKeepsRunning() {
+        Recorder recorder = new Recorder();
+        List<FramePipeline.Handoff> pending = new ArrayList<>();
+        FramePipeline<String> pipeline = new FramePipeline<String>("test", recorder)
+                .addAsyncStage("slow", DIRECT, 2, (item, handoff) -> pending.add(handoff));
+
+        pipeline.submit("1");
+        pipeline.submit("2");
+        pipeline.clear();
+        pending.get(0).pass();
+        assertTrue(pipeline.submit("3"));
+        pending.get(1).pass();
+        assertEquals(java.util.Arrays.asList("2:DROPPED", "1:COMPLETED", "3:COMPLETED"), recorder.outcomes);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ImageCompression}; the PNGs are read back with ImageIO.
+ */
+public class ImageCompressionTest {
+
+    @Test
+    public void sampleSizeKeepsLongestSideAtOrAboveTarget() {
+        assertEquals(1, ImageCompression.sampleSizeFor(640, 480, 720));
+        assertEquals(1, ImageCompression.sampleSizeFor(1000, 750, 720));
+        assertEquals(2, ImageCompression.sampleSizeFor(1440, 1080, 720));
+        assertEquals(4, ImageCompression.sampleSizeFor(4032, 3024, 720));
+        assertEquals(4, ImageCompression.sampleSizeFor(3024, 4032, 1000));
+    }
+
+    @Test
+    public void scaledSizeShrinksButNeverEnlarges() {
+        assertArrayEquals(new int[]{720, 540}, ImageCompression.scaledSize(1008, 756, 720));
+        assertArrayEquals(new int[]{540, 720}, ImageCompression.scaledSize(756, 1008, 720));
+        assertArrayEquals(new int[]{300, 200}, ImageCompression.scaledSize(300, 200, 720));
+    }
+
+    @Test
+    public void faceTargetKeepsSmallestAcceptedFaceAboveModelInput() {
+        ImageCompression.Target target = ImageCompression.Target.face(112);
+        int maxSide = target.maxSide(960, 1280);
+        int[] size = ImageCompression.scaledSize(960, 1280, maxSide);
+
+        float smallestFace = size[0] * 2f * FaceGuide.RADIUS_X * FaceGuide.MIN_FILL;
+        assertTrue(smallestFace >= 112 * ImageCompression.FACE_DETAIL_MARGIN - 1);
+        assertTrue("Well below the capture resolution", maxSide < 1280 / 2);
+        assertTrue("Larger models keep more pixels", ImageCompression.Target.face(160).maxSide(960, 1280) > maxSide);
+    }
+
+    @Test
+    public void bilevelDetectionSeparatesCodesFromPhotos() {
+        int[] code = new int[100];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = i % 3 == 0 ? 0xFF101010 : 0xFFF0F0F0;
+        }
+        boolean[] dark = ImageCompression.toBilevel(code, ImageCompression.MIN_BILEVEL_SHARE);
+        assertNotNull(dark);
+        assertTrue(dark[0]);
+        assertFalse(dark[1]);
+
+        Random random = new Random(7);
+        int[] photo = new int[100];
+        for (int i = 0; i < photo.length; i++) {
+            int gray = 64 + random.nextInt(128);
+            photo[i] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+        }
+        assertNull(ImageCompression.toBilevel(photo, ImageCompression.MIN_BILEVEL_SHARE));
+    }
+
+    @Test
+    public void bilevelPngDecodesToScaledModules() throws Exception {
+        // 3 x 2 modules: dark diagonal
+        boolean[] dark = {true, false, false, false, true, false};
+        byte[] png = ImageCompression.encodeBilevelPng(dark, 3, 2, 5);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(15, image.getWidth());
+        assertEquals(10, image.getHeight());
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 15; x++) {
+                boolean expectedDark = dark[(y / 5) * 3 + x / 5];
+                assertEquals(expectedDark ? 0xFF000000 : 0xFFFFFFFF, image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void qrSizedBilevelPngIsTiny() {
+        Random random = new Random(11);
+        boolean[] modules = new boolean[31 * 31]; // Version 3 with a one-module margin
+        for (int i = 0; i < modules.length; i++) {
+            modules[i] = random.nextBoolean();
+        }
+        byte[] png = ImageCompression.encodeBilevelPng(modules, 31, 31, ImageCompression.QR_PIXELS_PER_MODULE);
+        assertTrue("Got " + png.length + " bytes", png.length < 1500);
+    }
+
+    @Test
+    public void savingsAccumulate() {
+        ImageCompression.Savings savings = new ImageCompression.Savings();
+        savings.add(100_000, 20_000);
+        savings.add(5_000, 6_000);
+        assertEquals(105_000, savings.getBytesBefore());
+        assertEquals(26_000, savings.getBytesAfter());
+        assertEquals(79_000, savings.getBytesSaved());
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link InterpreterBatch}, with a fake interpreter resize that can be made to fail.
+ */
+public class InterpreterBatchTest {
+
+    /** Records every resize; sizes in {@code failing} throw after half-resizing, like a delegate would. */
+    private static final class FakeInterpreter implements InterpreterBatch.Resizer {
+        final List<Integer> calls = new ArrayList<>();
+        final Set<Integer> failing = new HashSet<>();
+        int inputBatch = 1;
+
+        @Override
+        public void resize(int batchSize) {
+            calls.add(batchSize);
+            inputBatch = batchSize;
+            if (failing.contains(batchSize)) {
+                throw new IllegalStateException("cannot resize to " + batchSize);
+            }
+        }
+    }
+
+    @Test
+    public void sameBatchSize_doesNotResize() {
+        FakeInterpreter interpreter = new FakeInterpreter();
+        InterpreterBatch batch = new InterpreterBatch(interpreter);
+
+        assertTrue(batch.resize(1));
+        assertTrue(batch.resize(4));
+        assertTrue(batch.resize(4));
+
+        assertEquals(1, interpreter.calls.size());
+        assertEquals(4, batch.getCurrentSize());
+    }
+
+    @Test
+    public void failedBatchResize_restoresBatchOne() {
+        FakeInterpreter interpreter = new FakeInterpreter();
+        interpreter.failing.add(4);
+        InterpreterBatch batch = new InterpreterBatch(interpreter);
+
+        assertFalse(batch.resize(4));
+
+        assertEquals(1, interpreter.inputBatch); // Not left at the half-applied 4
+        assertEquals(1, batch.getCurrentSize());
+        assertFalse(batch.isBatchingSupported());
+        assertEquals("cannot resize to 4", batch.getLastError().getMessage());
+        assertTrue(batch.resize(1)); // Single-face inference still runs
+    }
+
+    @Test
+    public void failedBatchResize_afterAnotherBatch_restoresBatchOne() {
+        FakeInterpreter interpreter = new FakeInterpreter();
+        interpreter.failing.add(8);
+        InterpreterBatch batch = new InterpreterBatch(interpreter);
+        assertTrue(batch.resize(4));
+
+        assertFalse(batch.resize(8));
+
+        assertEquals(1, interpreter.inputBatch);
+        assertEquals(1, batch.getCurrentSize());
+    }
+
+    @Test
+    public void afterFailure_batchesAreNotRetried() {
+        FakeInterpreter interpreter = new FakeInterpreter();
+        interpreter.failing.add(4);
+        InterpreterBatch batch = new InterpreterBatch(interpreter);
+        assertFalse(batch.resize(4));
+        int calls = interpreter.calls.size();
+
+        assertFalse(batch.resize(4));
+        assertFalse(batch.resize(2));
+
+        assertEquals(calls, interpreter.calls.size());
+    }
+
+    @Test
+    public void failedRestore_isRetriedOnNextSingleRun() {
+        FakeInterpreter interpreter = new FakeInterpreter();
+        interpreter.failing.add(4);
+        interpreter.failing.add(1);
+        InterpreterBatch batch = new InterpreterBatch(interpreter);
+
+        assertFalse(batch.resize(4));
+        assertNotEquals(1, batch.getCurrentSize());
+        assertFalse(batch.resize(1));
+
+        interpreter.failing.remove(1);
+        assertTrue(batch.resize(1));
+        assertEquals(1, interpreter.inputBatch);
+        assertEquals(1, batch.getCurrentSize());
+    }
+}
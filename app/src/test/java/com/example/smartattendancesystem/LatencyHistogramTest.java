@@ -0,0 +1,51 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void percentiles_reportBucketUpperEdges() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3 * MS); // Falls in the (2 ms, 4 ms] bucket
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(30 * MS); // (16 ms, 32 ms]
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(4f, histogram.percentileMillis(0.5), 1e-6f);
+        assertEquals(4f, histogram.percentileMillis(0.9), 1e-6f);
+        assertEquals(30f, histogram.percentileMillis(0.99), 1e-6f); // Capped at the largest sample
+        assertEquals(5.7f, histogram.getMeanMillis(), 1e-3f);
+    }
+
+    @Test
+    public void extremes_landInTheEndBuckets() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(0, LatencyHistogram.bucketOf(100_000L));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(60_000 * MS));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(60_000 * MS);
+        assertEquals(60_000f, histogram.percentileMillis(0.5), 0.01f);
+    }
+
+    @Test
+    public void emptyAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0f, histogram.percentileMillis(0.5), 0f);
+        histogram.record(5 * MS);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertTrue(histogram.describe().startsWith("n=0"));
+    }
+}
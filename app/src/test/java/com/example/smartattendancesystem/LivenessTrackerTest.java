@@ -0,0 +1,111 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LivenessTracker} with synthetic landmark sequences: a real face
+ * blinks and turns (the nose shifts against the eyes), a photo only moves as a rigid whole.
+ */
+public class LivenessTrackerTest {
+
+    private static final float EYE_DISTANCE = 60f;
+
+    // Frontal face centred at (cx, cy), nose shifted sideways by noseShift eye distances
+    private static void feed(LivenessTracker tracker, float eyesOpen, float yaw, float cx, float cy, float noseShift) {
+        tracker.update(eyesOpen, eyesOpen, yaw,
+                cx - EYE_DISTANCE / 2f, cy, cx + EYE_DISTANCE / 2f, cy,
+                cx + noseShift * EYE_DISTANCE, cy + 0.8f * EYE_DISTANCE);
+    }
+
+    @Test
+    public void blinkAndHeadTurn_isLive() {
+        LivenessTracker tracker = new LivenessTracker();
+        feed(tracker, 0.95f, 0f, 160f, 120f, 0f);
+        assertEquals(LivenessTracker.Challenge.BLINK, tracker.getPendingChallenge());
+
+        feed(tracker, 0.05f, 0f, 160f, 120f, 0f);
+        feed(tracker, 0.9f, 0f, 160f, 120f, 0f);
+        assertTrue(tracker.hasBlinked());
+        assertEquals(LivenessTracker.Challenge.MOVE_HEAD, tracker.getPendingChallenge());
+
+        for (int i = 1; i <= 5; i++) {
+            feed(tracker, 0.9f, 3f * i, 160f, 120f, 0.04f * i);
+        }
+        assertTrue(tracker.isLive());
+        assertEquals(LivenessTracker.Challenge.DONE, tracker.getPendingChallenge());
+    }
+
+    @Test
+    public void eyesThatNeverReopen_doNotCountAsBlink() {
+        LivenessTracker tracker = new LivenessTracker();
+        feed(tracker, 0.1f, 0f, 160f, 120f, 0f); // Closed from the start, no open frame before it
+        feed(tracker, 0.9f, 0f, 160f, 120f, 0f);
+        feed(tracker, 0.2f, 0f, 160f, 120f, 0f);
+        assertFalse(tracker.hasBlinked());
+
+        feed(tracker, 0.45f, 0f, 160f, 120f, 0f); // Half open is neither state
+        assertFalse(tracker.hasBlinked());
+        feed(tracker, 0.8f, 0f, 160f, 120f, 0f);
+        assertEquals(1, tracker.getBlinkCount());
+    }
+
+    @Test
+    public void photoMovedRotatedAndScaled_showsNoParallax() {
+        LivenessTracker tracker = new LivenessTracker();
+        for (int i = 0; i < 30; i++) {
+            double angle = Math.toRadians(4 * i - 60);
+            float scale = 0.8f + 0.02f * i;
+            float cx = 100f + 5f * i;
+            float cy = 120f - 2f * i;
+            // Rigid similarity transform of the same flat landmarks
+            float[] local = {-30f, 0f, 30f, 0f, 0f, 48f};
+            float[] p = new float[6];
+            for (int k = 0; k < 6; k += 2) {
+                p[k] = cx + scale * (float) (Math.cos(angle) * local[k] - Math.sin(angle) * local[k + 1]);
+                p[k + 1] = cy + scale * (float) (Math.sin(angle) * local[k] + Math.cos(angle) * local[k + 1]);
+            }
+            tracker.update(0.9f, 0.9f, 0f, p[0], p[1], p[2], p[3], p[4], p[5]);
+        }
+        assertTrue(tracker.parallaxRange() < 1e-3f);
+        assertFalse(tracker.hasMoved());
+    }
+
+    @Test
+    public void landmarkNoise_aloneIsNotMotion() {
+        Random random = new Random(1L);
+        LivenessTracker tracker = new LivenessTracker();
+        for (int i = 0; i < 100; i++) {
+            float jitter = (float) random.nextGaussian() * 0.01f; // ~0.6 px on a 60 px eye distance
+            feed(tracker, 0.9f, (float) random.nextGaussian(), 160f, 120f, jitter);
+        }
+        assertFalse(tracker.hasMoved());
+    }
+
+    @Test
+    public void missingClassificationAndLandmarks_areIgnored() {
+        LivenessTracker tracker = new LivenessTracker();
+        tracker.update(Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+        assertEquals(1, tracker.getFrames());
+        assertEquals(0f, tracker.yawRange(), 0f);
+        assertEquals(0f, tracker.parallaxRange(), 0f);
+        assertFalse(tracker.isLive());
+    }
+
+    @Test
+    public void reset_startsANewAttempt() {
+        LivenessTracker tracker = new LivenessTracker();
+        feed(tracker, 0.9f, -10f, 160f, 120f, 0f);
+        feed(tracker, 0.1f, 0f, 160f, 120f, 0f);
+        feed(tracker, 0.9f, 10f, 160f, 120f, 0f);
+        assertTrue(tracker.isLive());
+
+        tracker.reset();
+        assertFalse(tracker.isLive());
+        assertEquals(0, tracker.getFrames());
+        assertEquals(LivenessTracker.Challenge.BLINK, tracker.getPendingChallenge());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ScoreCalibrator} on synthetic score distributions.
+ */
+public class ScoreCalibratorTest {
+
+    private static float[] gaussianScores(int count, double mean, double sd, long seed) {
+        Random random = new Random(seed);
+        float[] scores = new float[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = (float) (mean + sd * random.nextGaussian());
+        }
+        return scores;
+    }
+
+    private static double acceptRate(float[] scores, float threshold) {
+        int accepted = 0;
+        for (float score : scores) {
+            if (score >= threshold) {
+                accepted++;
+            }
+        }
+        return accepted / (double) scores.length;
+    }
+
+    @Test
+    public void upperTailZ_matchesNormalTable() {
+        assertEquals(0.0, ScoreCalibrator.upperTailZ(0.5), 1e-6);
+        assertEquals(1.6449, ScoreCalibrator.upperTailZ(0.05), 1e-3);
+        assertEquals(2.3263, ScoreCalibrator.upperTailZ(0.01), 1e-3);
+        assertEquals(3.0902, ScoreCalibrator.upperTailZ(0.001), 1e-3);
+    }
+
+    @Test
+    public void manySamples_empiricalThresholdHoldsFar() {
+        float[] impostors = gaussianScores(20000, 0.1, 0.1, 1L);
+        float threshold = ScoreCalibrator.thresholdAtFar(impostors, impostors.length, 0.01);
+        assertTrue(acceptRate(impostors, threshold) <= 0.01);
+        assertEquals(0.1 + 2.3263 * 0.1, threshold, 0.02);
+
+        // And generalizes to fresh impostors from the same distribution
+        float[] fresh = gaussianScores(20000, 0.1, 0.1, 2L);
+        assertEquals(0.01, acceptRate(fresh, threshold), 0.003);
+    }
+
+    @Test
+    public void fewSamples_extrapolatesAndStaysAboveEveryImpostorSeen() {
+        float[] impostors = gaussianScores(100, 0.1, 0.1, 3L);
+        float threshold = ScoreCalibrator.thresholdAtFar(impostors, impostors.length, 0.001);
+        float max = Float.NEGATIVE_INFINITY;
+        double sum = 0;
+        double sumSquares = 0;
+        for (float score : impostors) {
+            max = Math.max(max, score);
+            sum += score;
+            sumSquares += score * score;
+        }
+        double mean = sum / impostors.length;
+        double sd = Math.sqrt((sumSquares - impostors.length * mean * mean) / (impostors.length - 1));
+        assertTrue(threshold > max);
+        assertEquals(Math.max(max, mean + 3.0902 * sd), threshold, 1e-3);
+    }
+
+    @Test
+    public void calibrate_appliesFloorAndReportsFrr() {
+        float[] impostors = gaussianScores(5000, 0.0, 0.05, 4L);
+        float[] genuine = {0.5f, 0.6f, 0.7f, 0.1f};
+        ScoreCalibrator.Calibration calibration = ScoreCalibrator.calibrate(impostors, impostors.length, genuine, 0.001, 0.3f);
+        assertEquals(0.3f, calibration.threshold, 0f); // The impostor tail is far below the floor
+        assertEquals(0.25, calibration.expectedFrr, 1e-9);
+        assertEquals(4, calibration.genuineSamples);
+
+        ScoreCalibrator.Calibration noGenuine = ScoreCalibrator.calibrate(impostors, 100, null, 0.001, 0f);
+        assertTrue(Double.isNaN(noGenuine.expectedFrr));
+        assertEquals(100, noGenuine.impostorSamples);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooFewSamples_rejected() {
+        ScoreCalibrator.thresholdAtFar(new float[]{0.1f}, 1, 0.01);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.example.smartattendancesystem.TestEmbeddings.near;
+import static com.example.smartattendancesystem.TestEmbeddings.randomUnitVector;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link StreamingVerifier} with synthetic embeddings: noisy copies of the
+ * reference stand in for frames of the enrolled user, unrelated vectors for an impostor.
+ */
+public class StreamingVerifierTest {
+
+    private static final int DIM = 128;
+    private static final float THRESHOLD = 0.6f;
+
+    private static StreamingVerifier newVerifier(float[] reference) {
+        return new StreamingVerifier(reference, THRESHOLD, 8, 3, 15, 2f);
+    }
+
+    @Test
+    public void genuineUser_isAcceptedAfterFewFrames() {
+        Random random = new Random(1L);
+        float[] reference = randomUnitVector(random, DIM);
+        StreamingVerifier verifier = newVerifier(reference);
+
+        StreamingVerifier.Decision decision = StreamingVerifier.Decision.PENDING;
+        while (decision == StreamingVerifier.Decision.PENDING) {
+            decision = verifier.addFrame(near(reference, 0.8f, random), 1f);
+        }
+        assertEquals(StreamingVerifier.Decision.MATCH, decision);
+        assertEquals(3, verifier.getFramesSeen());
+    }
+
+    @Test
+    public void impostor_isRejected() {
+        Random random = new Random(2L);
+        float[] reference = randomUnitVector(random, DIM);
+        StreamingVerifier verifier = newVerifier(reference);
+
+        StreamingVerifier.Decision decision = StreamingVerifier.Decision.PENDING;
+        while (decision == StreamingVerifier.Decision.PENDING) {
+            decision = verifier.addFrame(randomUnitVector(random, DIM), 1f);
+        }
+        assertEquals(StreamingVerifier.Decision.NO_MATCH, decision);
+        assertTrue(verifier.getFramesSeen() <= 15);
+    }
+
+    @Test
+    public void singleBadFrame_doesNotRejectGenuineUser() {
+        Random random = new Random(3L);
+        float[] reference = randomUnitVector(random, DIM);
+        StreamingVerifier verifier = newVerifier(reference);
+
+        // One blurry frame that alone would fail the threshold, with the low weight a poor frame gets
+        assertEquals(StreamingVerifier.Decision.PENDING, verifier.addFrame(near(reference, 0.2f, random), 0.1f));
+        StreamingVerifier.Decision decision = StreamingVerifier.Decision.PENDING;
+        while (decision == StreamingVerifier.Decision.PENDING) {
+            decision = verifier.addFrame(near(reference, 0.85f, random), 1f);
+        }
+        assertEquals(StreamingVerifier.Decision.MATCH, decision);
+    }
+
+    @Test
+    public void borderlineScores_areDecidedAtMaxFrames() {
+        Random random = new Random(4L);
+        float[] reference = randomUnitVector(random, DIM);
+        StreamingVerifier verifier = new StreamingVerifier(reference, THRESHOLD, 8, 3, 10, 50f); // Never confident
+
+        StreamingVerifier.Decision decision = StreamingVerifier.Decision.PENDING;
+        int frames = 0;
+        while (decision == StreamingVerifier.Decision.PENDING) {
+            decision = verifier.addFrame(near(reference, 0.7f, random), 1f);
+            frames++;
+        }
+        assertEquals(10, frames);
+        assertEquals(StreamingVerifier.Decision.MATCH, decision);
+    }
+
+    @Test
+    public void reset_startsANewAttempt() {
+        Random random = new Random(5L);
+        float[] reference = randomUnitVector(random, DIM);
+        StreamingVerifier verifier = newVerifier(reference);
+        verifier.addFrame(randomUnitVector(random, DIM), 1f);
+        verifier.addFrame(randomUnitVector(random, DIM), 1f);
+
+        verifier.reset();
+        assertEquals(0, verifier.getFramesSeen());
+        assertEquals(StreamingVerifier.Decision.PENDING, verifier.addFrame(near(reference, 0.9f, random), 1f));
+        assertTrue(verifier.getFusedSimilarity() > 0.8f);
+    }
+
+    @Test
+    public void templateSet_matchesAPoseOnlyASecondTemplateCovers() {
+        Random random = new Random(6L);
+        float[] frontal = randomUnitVector(random, DIM);
+        float[] turned = near(frontal, 0.3f, random);
+        FaceTemplateSet templates = FaceTemplateSet.select(Arrays.asList(frontal, turned), new float[]{1f, 0.9f}, 5);
+        assertEquals(2, templates.size());
+
+        StreamingVerifier single = newVerifier(frontal);
+        StreamingVerifier multi = new StreamingVerifier(templates, FaceTemplateSet.Fusion.MAX, THRESHOLD, 8, 3, 15, 2f);
+        StreamingVerifier.Decision singleDecision = StreamingVerifier.Decision.PENDING;
+        StreamingVerifier.Decision multiDecision = StreamingVerifier.Decision.PENDING;
+        while (singleDecision == StreamingVerifier.Decision.PENDING || multiDecision == StreamingVerifier.Decision.PENDING) {
+            float[] frame = near(turned, 0.85f, random);
+            if (singleDecision == StreamingVerifier.Decision.PENDING) {
+                singleDecision = single.addFrame(frame, 1f);
+            }
+            if (multiDecision == StreamingVerifier.Decision.PENDING) {
+                multiDecision = multi.addFrame(frame, 1f);
+            }
+        }
+        assertEquals(StreamingVerifier.Decision.NO_MATCH, singleDecision);
+        assertEquals(StreamingVerifier.Decision.MATCH, multiDecision);
+        assertTrue(multi.getFusedSimilarity() > THRESHOLD);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minFramesLargerThanWindow_isRejected() {
+        new StreamingVerifier(new float[DIM], THRESHOLD, 4, 5, 10, 2f);
+    }
+}
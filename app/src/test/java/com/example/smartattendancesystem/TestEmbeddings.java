@@ -0,0 +1,49 @@
+package com.example.smartattendancesystem;
+
+import java.util.Random;
+
+/**
+ * Synthetic embeddings shared by the local unit tests: random Gaussian vectors stand in for
+ * faces, and vectors near one of them for other photos of the same face.
+ */
+final class TestEmbeddings {
+
+    private TestEmbeddings() {
+    }
+
+    static float[] randomVector(Random random, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+
+    static float[] randomUnitVector(Random random, int dim) {
+        return EmbeddingMath.l2Normalize(randomVector(random, dim));
+    }
+
+    /**
+     * Unit vector with the given expected cosine to the unit vector {@code center}.
+     */
+    static float[] near(float[] center, float cosine, Random random) {
+        float[] noise = randomUnitVector(random, center.length);
+        float[] v = new float[center.length];
+        float orthogonalWeight = (float) Math.sqrt(1 - cosine * cosine);
+        for (int i = 0; i < v.length; i++) {
+            v[i] = cosine * center[i] + orthogonalWeight * noise[i];
+        }
+        return EmbeddingMath.l2Normalize(v);
+    }
+
+    /**
+     * {@code embedding} plus Gaussian noise of standard deviation {@code noise} per component.
+     */
+    static float[] noisyCopy(float[] embedding, float noise, Random random) {
+        float[] copy = new float[embedding.length];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = embedding[i] + noise * (float) random.nextGaussian();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,439 @@
+package com.example.smartattendancesystem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link UploadQueue}, with a directory standing in for the remote storage
+ * and a list of batches for the metadata store.
+ */
+public class UploadQueueTest {
+
+    private static final long WAIT_MILLIS = 5000;
+    private static final String ACCOUNT = "u1";
+    private static final long METADATA_WAIT_MILLIS = UploadQueue.METADATA_BATCH_MILLIS + 200;
+
+    /**
+     * Copies uploads into a directory; failures to simulate are queued up front.
+     */
+    private static class LocalStorage implements UploadQueue.RemoteStorage {
+        final File remote;
+        final LinkedList<Boolean> failures = new LinkedList<>(); // true: retryable
+        final List<String> uploadedPaths = Collections.synchronizedList(new ArrayList<>());
+        final List<String> lookedUpPaths = Collections.synchronizedList(new ArrayList<>());
+        volatile Runnable beforeUpload;
+
+        LocalStorage(File remote) {
+            this.remote = remote;
+        }
+
+        File fileAt(String path) {
+            return new File(remote, path.replace('/', '_'));
+        }
+
+        @Override
+        public void lookup(String path, UploadQueue.LookupCallback callback) {
+            lookedUpPaths.add(path);
+            File target = fileAt(path);
+            if (target.isFile()) {
+                callback.onFound(target.toURI().toString());
+            } else {
+                callback.onMissing();
+            }
+        }
+
+        @Override
+        public void upload(String path, File file, String contentHash, UploadQueue.UploadCallback callback) {
+            Boolean failure;
+            synchronized (failures) {
+                failure = failures.poll();
+            }
+            if (beforeUpload != null) {
+                beforeUpload.run();
+            }
+            if (failure != null) {
+                callback.onFailed(new IOException("Simulated failure"), failure);
+                return;
+            }
+            try {
+                File target = fileAt(path);
+                Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                uploadedPaths.add(path);
+                callback.onUploaded(target.toURI().toString());
+            } catch (IOException e) {
+                callback.onFailed(e, true);
+            }
+        }
+    }
+
+    private static class RecordingMetadataStore implements UploadQueue.MetadataStore {
+        final List<Map<String, Map<String, String>>> batches = Collections.synchronizedList(new ArrayList<>());
+        final Set<String> deniedDocuments = Collections.synchronizedSet(new HashSet<>()); // Fail the whole batch for good
+        volatile int failuresLeft = 0;
+        volatile int writes = 0;
+
+        @Override
+        public void write(Map<String, Map<String, String>> fieldsByDocument, UploadQueue.WriteCallback callback) {
+            writes++;
+            for (String document : fieldsByDocument.keySet()) {
+                if (deniedDocuments.contains(document)) {
+                    callback.onFailed(new IOException("Simulated permission error"), false);
+                    return;
+                }
+            }
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                callback.onFailed(new IOException("Simulated write failure"), true);
+                return;
+            }
+            batches.add(fieldsByDocument);
+            callback.onWritten();
+        }
+    }
+
+    private File directory;
+    private File remote;
+    private LocalStorage storage;
+    private RecordingMetadataStore metadataStore;
+    private ScheduledExecutorService executor;
+    private volatile String signedIn = ACCOUNT;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("upload_queue").toFile();
+        remote = Files.createTempDirectory("upload_remote").toFile();
+        storage = new LocalStorage(remote);
+        metadataStore = new RecordingMetadataStore();
+        executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        deleteRecursively(directory);
+        deleteRecursively(remote);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private UploadQueue newQueue(int maxAttempts) throws IOException {
+        return new UploadQueue(directory, storage, metadataStore, () -> signedIn, executor, 20, 100, maxAttempts);
+    }
+
+    private File tempFile(String content) throws IOException {
+        File file = File.createTempFile("upload", ".bin");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static UploadQueue.Upload await(UploadQueue queue, String id, UploadQueue.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        UploadQueue.Upload upload = queue.getUpload(id);
+        while ((upload == null || upload.state != state) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            upload = queue.getUpload(id);
+        }
+        assertNotNull(upload);
+        assertEquals(state, upload.state);
+        return upload;
+    }
+
+    private int stagedBlobs() {
+        File[] blobs = new File(directory, "blobs").listFiles();
+        return blobs == null ? 0 : blobs.length;
+    }
+
+    @Test
+    public void uploadsAndWritesUrlsInOneBatch() throws Exception {
+        UploadQueue queue = newQueue(3);
+        List<UploadQueue.State> seen = Collections.synchronizedList(new ArrayList<>());
+        queue.addObserver(upload -> seen.add(upload.state));
+
+        File face = tempFile("face");
+        String faceId = queue.enqueue(face, true, ACCOUNT, "face_images/u1.jpg", "users/u1", "faceImageUrl", "faceImageLoginUrl");
+        String profileId = queue.enqueue(tempFile("profile"), true, ACCOUNT, "profile_images/u1.jpg", "users/u1", "profileImageUrl");
+
+        UploadQueue.Upload faceUpload = await(queue, faceId, UploadQueue.State.UPLOADED);
+        UploadQueue.Upload profileUpload = await(queue, profileId, UploadQueue.State.UPLOADED);
+
+        assertFalse("Moved into the queue", face.exists());
+        assertEquals(1, metadataStore.batches.size());
+        Map<String, String> fields = metadataStore.batches.get(0).get("users/u1");
+        assertEquals(faceUpload.downloadUrl, fields.get("faceImageUrl"));
+        assertEquals(faceUpload.downloadUrl, fields.get("faceImageLoginUrl"));
+        assertEquals(profileUpload.downloadUrl, fields.get("profileImageUrl"));
+        assertEquals(0, queue.getPendingCount());
+        assertEquals("Staged files are dropped once uploaded", 0, stagedBlobs());
+
+        executor.submit(() -> { }).get(); // Let queued observer calls run
+        assertTrue(seen.contains(UploadQueue.State.QUEUED));
+        assertTrue(seen.contains(UploadQueue.State.UPLOADING));
+        assertTrue(seen.contains(UploadQueue.State.WRITING_METADATA));
+    }
+
+    @Test
+    public void sameContentForSamePathIsUploadedOnce() throws Exception {
+        UploadQueue queue = newQueue(3);
+        File source = tempFile("same bytes");
+        String first = queue.enqueue(source, false, ACCOUNT, "qrcodes/e1.png", null);
+        await(queue, first, UploadQueue.State.UPLOADED);
+
+        String second = queue.enqueue(source, false, ACCOUNT, "qrcodes/e1.png", null);
+
+        assertEquals(first, second);
+        assertEquals(1, storage.uploadedPaths.size());
+        assertTrue("Copied, not moved", source.exists());
+        source.delete();
+    }
+
+    @Test
+    public void newContentReplacesPendingUploadForPath() throws Exception {
+        storage.failures.add(true); // Keep the first content waiting to retry
+        UploadQueue queue = new UploadQueue(directory, storage, metadataStore, () -> signedIn, executor, 10_000, 10_000, 3);
+        String first = queue.enqueue(tempFile("old"), true, ACCOUNT, "face_images_login/u1.jpg", null);
+        await(queue, first, UploadQueue.State.WAITING_TO_RETRY);
+
+        String second = queue.enqueue(tempFile("new"), true, ACCOUNT, "face_images_login/u1.jpg", null);
+
+        assertEquals(first, second);
+        await(queue, first, UploadQueue.State.UPLOADED);
+        File uploaded = new File(remote, "face_images_login_u1.jpg");
+        assertEquals("new", new String(Files.readAllBytes(uploaded.toPath()), StandardCharsets.UTF_8));
+        assertEquals(0, stagedBlobs());
+    }
+
+    @Test
+    public void retriesWithBackoffThenSucceeds() throws Exception {
+        storage.failures.add(true);
+        storage.failures.add(true);
+        UploadQueue queue = newQueue(3);
+
+        String id = queue.enqueue(tempFile("retry"), true, ACCOUNT, "profile_images/u2.jpg", null);
+
+        UploadQueue.Upload upload = await(queue, id, UploadQueue.State.UPLOADED);
+        assertEquals(3, upload.attempts);
+        assertNull(upload.error);
+    }
+
+    @Test
+    public void failsAfterMaxAttemptsOrPermanentError() throws Exception {
+        storage.failures.add(true);
+        storage.failures.add(true);
+        storage.failures.add(false);
+        UploadQueue queue = newQueue(2);
+
+        String exhausted = queue.enqueue(tempFile("a"), true, ACCOUNT, "a.jpg", null);
+        UploadQueue.Upload upload = await(queue, exhausted, UploadQueue.State.FAILED);
+        assertEquals(2, upload.attempts);
+
+        String denied = queue.enqueue(tempFile("b"), true, ACCOUNT, "b.jpg", null);
+        upload = await(queue, denied, UploadQueue.State.FAILED);
+        assertEquals("Not retried", 1, upload.attempts);
+        assertEquals("Simulated failure", upload.error);
+        assertEquals(0, stagedBlobs());
+    }
+
+    @Test
+    public void retriesFailedMetadataWrite() throws Exception {
+        metadataStore.failuresLeft = 1;
+        UploadQueue queue = newQueue(3);
+
+        String id = queue.enqueue(tempFile("qr"), true, ACCOUNT, "manual_qrcodes/q1.png", "qrcode/q1", "qr_image_url");
+
+        UploadQueue.Upload upload = await(queue, id, UploadQueue.State.UPLOADED);
+        assertEquals(1, metadataStore.batches.size());
+        assertEquals(upload.downloadUrl, metadataStore.batches.get(0).get("qrcode/q1").get("qr_image_url"));
+        assertEquals("Uploaded once; only the write was retried", 1, storage.uploadedPaths.size());
+    }
+
+    @Test
+    public void failsMetadataWriteAfterMaxAttempts() throws Exception {
+        metadataStore.failuresLeft = 2;
+        UploadQueue queue = newQueue(2);
+
+        String id = queue.enqueue(tempFile("never saved"), true, ACCOUNT, "face_images/u4.jpg", "users/u4", "faceImageUrl");
+
+        UploadQueue.Upload upload = await(queue, id, UploadQueue.State.FAILED);
+        assertEquals(2, upload.writeAttempts);
+        assertTrue(upload.error, upload.error.contains("Simulated write failure"));
+        assertTrue(metadataStore.batches.isEmpty());
+    }
+
+    @Test
+    public void permanentWriteFailureOnlyFailsItsDocument() throws Exception {
+        metadataStore.deniedDocuments.add("users/gone");
+        UploadQueue queue = newQueue(3);
+
+        String denied = queue.enqueue(tempFile("denied"), true, ACCOUNT, "face_images/gone.jpg", "users/gone", "faceImageUrl");
+        String first = queue.enqueue(tempFile("first"), true, ACCOUNT, "face_images/u5.jpg", "users/u5", "faceImageUrl");
+        String second = queue.enqueue(tempFile("second"), true, ACCOUNT, "qrcodes/e5.png", "qrcodes/e5", "qrCodeImageUrl");
+
+        assertEquals(1, await(queue, denied, UploadQueue.State.FAILED).writeAttempts);
+        UploadQueue.Upload face = await(queue, first, UploadQueue.State.UPLOADED);
+        UploadQueue.Upload qr = await(queue, second, UploadQueue.State.UPLOADED);
+        Map<String, String> written = new HashMap<>();
+        for (Map<String, Map<String, String>> batch : metadataStore.batches) {
+            assertFalse(batch.containsKey("users/gone"));
+            for (Map<String, String> fields : batch.values()) {
+                written.putAll(fields);
+            }
+        }
+        assertEquals(face.downloadUrl, written.get("faceImageUrl"));
+        assertEquals(qr.downloadUrl, written.get("qrCodeImageUrl"));
+
+        // Back to one batch for whatever comes next
+        int writes = metadataStore.writes;
+        int batches = metadataStore.batches.size();
+        String later1 = queue.enqueue(tempFile("later1"), true, ACCOUNT, "face_images/u6.jpg", "users/u6", "faceImageUrl");
+        String later2 = queue.enqueue(tempFile("later2"), true, ACCOUNT, "face_images/u7.jpg", "users/u7", "faceImageUrl");
+        await(queue, later1, UploadQueue.State.UPLOADED);
+        await(queue, later2, UploadQueue.State.UPLOADED);
+        assertEquals(batches + 1, metadataStore.batches.size());
+        assertEquals(writes + 1, metadataStore.writes);
+    }
+
+    @Test
+    public void parksUploadsWhileTheirAccountIsSignedOut() throws Exception {
+        signedIn = null;
+        UploadQueue queue = newQueue(3);
+
+        String id = queue.enqueue(tempFile("parked"), true, ACCOUNT, "face_images/u1.jpg", "users/u1", "faceImageUrl");
+        Thread.sleep(200);
+        assertEquals(UploadQueue.State.QUEUED, queue.getUpload(id).state);
+        signedIn = "someone else";
+        queue.accountChanged();
+        Thread.sleep(200);
+        assertEquals(UploadQueue.State.QUEUED, queue.getUpload(id).state);
+        assertTrue(storage.uploadedPaths.isEmpty());
+
+        signedIn = ACCOUNT;
+        queue.accountChanged();
+        UploadQueue.Upload upload = await(queue, id, UploadQueue.State.UPLOADED);
+        assertEquals(ACCOUNT, upload.owner);
+        assertEquals(1, upload.attempts);
+        assertEquals(1, metadataStore.batches.size());
+    }
+
+    @Test
+    public void parksUrlWriteWhenSignedOutDuringUpload() throws Exception {
+        UploadQueue queue = newQueue(3);
+        storage.beforeUpload = () -> signedIn = null; // Signs out while the file is going up
+
+        String id = queue.enqueue(tempFile("in flight"), true, ACCOUNT, "face_images/u1.jpg", "users/u1", "faceImageUrl");
+        await(queue, id, UploadQueue.State.WRITING_METADATA);
+        Thread.sleep(METADATA_WAIT_MILLIS);
+        assertEquals(UploadQueue.State.WRITING_METADATA, queue.getUpload(id).state);
+        assertEquals(0, metadataStore.writes);
+
+        signedIn = ACCOUNT;
+        queue.accountChanged();
+        await(queue, id, UploadQueue.State.UPLOADED);
+        assertEquals(1, metadataStore.writes);
+    }
+
+    @Test
+    public void resumesPendingUploadsFromJournal() throws Exception {
+        storage.failures.add(true);
+        UploadQueue first = new UploadQueue(directory, storage, metadataStore, () -> signedIn, executor, 10_000, 10_000, 3);
+        String id = first.enqueue(tempFile("survives"), true, ACCOUNT, "face_images/u3.jpg", "users/u3", "faceImageUrl");
+        await(first, id, UploadQueue.State.WAITING_TO_RETRY);
+
+        // A new process: a fresh queue on the same directory, with the network back
+        UploadQueue second = newQueue(3);
+        assertEquals(1, second.getPendingCount());
+        second.retryNow();
+
+        UploadQueue.Upload upload = await(second, id, UploadQueue.State.UPLOADED);
+        assertEquals(2, upload.attempts);
+        assertEquals(upload.downloadUrl, metadataStore.batches.get(0).get("users/u3").get("faceImageUrl"));
+    }
+
+    @Test
+    public void identicalContentIsStoredOnceForSeveralDocuments() throws Exception {
+        UploadQueue queue = newQueue(3);
+        File qr = tempFile("same qr");
+        String hash = UploadQueue.sha256Hex(qr);
+
+        String first = queue.enqueueByContent(qr, false, ACCOUNT, "qrcodes", ".png", "qrcodes/e1", "qrCodeImageUrl");
+        String second = queue.enqueueByContent(qr, false, ACCOUNT, "qrcodes", ".png", "qrcodes/e2", "qrCodeImageUrl");
+
+        UploadQueue.Upload firstUpload = await(queue, first, UploadQueue.State.UPLOADED);
+        UploadQueue.Upload secondUpload = await(queue, second, UploadQueue.State.UPLOADED);
+        assertEquals(UploadQueue.contentAddressedPath("qrcodes", hash, ".png"), firstUpload.path);
+        assertEquals(firstUpload.path, secondUpload.path);
+        assertEquals(firstUpload.downloadUrl, secondUpload.downloadUrl);
+        assertEquals(1, storage.uploadedPaths.size());
+        qr.delete();
+    }
+
+    @Test
+    public void skipsUploadWhenContentIsAlreadyStored() throws Exception {
+        File qr = tempFile("uploaded from another device");
+        String path = UploadQueue.contentAddressedPath("manual_qrcodes", UploadQueue.sha256Hex(qr), ".png");
+        Files.copy(qr.toPath(), storage.fileAt(path).toPath());
+        UploadQueue queue = newQueue(3);
+
+        String id = queue.enqueueByContent(qr, true, ACCOUNT, "manual_qrcodes", ".png", "qrcode/q2", "qr_image_url");
+
+        UploadQueue.Upload upload = await(queue, id, UploadQueue.State.UPLOADED);
+        assertEquals(Collections.singletonList(path), storage.lookedUpPaths);
+        assertTrue(storage.uploadedPaths.isEmpty());
+        assertEquals(upload.downloadUrl, metadataStore.batches.get(0).get("qrcode/q2").get("qr_image_url"));
+    }
+
+    @Test
+    public void manifestSkipsRepeatUploadAcrossQueues() throws Exception {
+        UploadQueue first = newQueue(3);
+        File qr = tempFile("regenerated qr");
+        String firstId = first.enqueue(qr, false, ACCOUNT, "qrcodes/e3.png", "qrcodes/e3", "qrCodeImageUrl");
+        String url = await(first, firstId, UploadQueue.State.UPLOADED).downloadUrl;
+
+        // Same bytes to the same path from a later run, for another document
+        UploadQueue second = newQueue(3);
+        String secondId = second.enqueue(qr, false, ACCOUNT, "qrcodes/e3.png", "lectures/l1", "qrCodeImageUrl");
+
+        assertEquals(url, await(second, secondId, UploadQueue.State.UPLOADED).downloadUrl);
+        assertEquals(1, storage.uploadedPaths.size());
+        assertTrue("Plain paths are not looked up", storage.lookedUpPaths.isEmpty());
+        qr.delete();
+    }
+
+    @Test
+    public void backoffDoublesUpToMax() {
+        assertEquals(0, UploadQueue.backoffMillis(0, 1000, 60_000));
+        assertEquals(1000, UploadQueue.backoffMillis(1, 1000, 60_000));
+        assertEquals(2000, UploadQueue.backoffMillis(2, 1000, 60_000));
+        assertEquals(16_000, UploadQueue.backoffMillis(5, 1000, 60_000));
+        assertEquals(60_000, UploadQueue.backoffMillis(7, 1000, 60_000));
+        assertEquals(60_000, UploadQueue.backoffMillis(100, 1000, 60_000));
+    }
+}
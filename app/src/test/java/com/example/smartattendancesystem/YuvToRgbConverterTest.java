@@ -0,0 +1,163 @@
+package com.example.smartattendancesystem;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link YuvToRgbConverter}: the optimized path must match the per-pixel
+ * reference for planar and semi-planar layouts, padded strides and every rotation.
+ */
+public class YuvToRgbConverterTest {
+
+    /** Synthetic YUV_420_888 frame laid out the way camera HALs hand them out. */
+    private static class Frame {
+        final int width;
+        final int height;
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+        final int yRowStride;
+        final int uvRowStride;
+        final int uvPixelStride;
+
+        Frame(int width, int height, int rowPadding, boolean semiPlanar, long seed) {
+            this.width = width;
+            this.height = height;
+            Random random = new Random(seed);
+            int chromaWidth = (width + 1) / 2;
+            int chromaHeight = (height + 1) / 2;
+            yRowStride = width + rowPadding;
+            byte[] luma = new byte[yRowStride * height];
+            random.nextBytes(luma);
+            y = ByteBuffer.wrap(luma);
+
+            if (semiPlanar) {
+                // NV21: one interleaved VU plane, U and V are views offset by one byte
+                uvPixelStride = 2;
+                uvRowStride = chromaWidth * 2 + rowPadding;
+                byte[] chroma = new byte[uvRowStride * chromaHeight];
+                random.nextBytes(chroma);
+                v = ByteBuffer.wrap(chroma);
+                ByteBuffer shifted = ByteBuffer.wrap(chroma);
+                shifted.position(1);
+                u = shifted.slice();
+            } else {
+                uvPixelStride = 1;
+                uvRowStride = chromaWidth + rowPadding;
+                byte[] uBytes = new byte[uvRowStride * chromaHeight];
+                byte[] vBytes = new byte[uvRowStride * chromaHeight];
+                random.nextBytes(uBytes);
+                random.nextBytes(vBytes);
+                u = ByteBuffer.wrap(uBytes);
+                v = ByteBuffer.wrap(vBytes);
+            }
+        }
+    }
+
+    private static void assertMatchesReference(Frame frame, int rotation) {
+        int[] expected = new int[frame.width * frame.height];
+        int[] actual = new int[frame.width * frame.height];
+        YuvToRgbConverter.convertReference(frame.y, frame.yRowStride, frame.u, frame.v,
+                frame.uvRowStride, frame.uvPixelStride, frame.width, frame.height, rotation, expected);
+        new YuvToRgbConverter().convert(frame.y, frame.yRowStride, frame.u, frame.v,
+                frame.uvRowStride, frame.uvPixelStride, frame.width, frame.height, rotation, actual);
+
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 24; shift += 8) {
+                int e = (expected[i] >> shift) & 0xFF;
+                int a = (actual[i] >> shift) & 0xFF;
+                assertTrue("pixel " + i + " rotation " + rotation + ": " + Integer.toHexString(expected[i])
+                        + " vs " + Integer.toHexString(actual[i]), Math.abs(e - a) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void planarFrames_matchReferenceForAllRotations() {
+        Frame frame = new Frame(64, 48, 0, false, 1L);
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            assertMatchesReference(frame, rotation);
+        }
+    }
+
+    @Test
+    public void semiPlanarPaddedFrames_matchReferenceForAllRotations() {
+        Frame frame = new Frame(64, 48, 16, true, 2L);
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            assertMatchesReference(frame, rotation);
+        }
+    }
+
+    @Test
+    public void oddSizedFrames_matchReference() {
+        Frame frame = new Frame(37, 21, 3, true, 3L);
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            assertMatchesReference(frame, rotation);
+        }
+    }
+
+    @Test
+    public void neutralChroma_givesGrey() {
+        Frame frame = new Frame(4, 4, 0, false, 4L);
+        for (int i = 0; i < 16; i++) {
+            frame.y.put(i, (byte) 200);
+        }
+        for (int i = 0; i < 4; i++) {
+            frame.u.put(i, (byte) 128);
+            frame.v.put(i, (byte) 128);
+        }
+        int[] out = new int[16];
+        new YuvToRgbConverter().convert(frame.y, frame.yRowStride, frame.u, frame.v,
+                frame.uvRowStride, frame.uvPixelStride, 4, 4, 0, out);
+        for (int pixel : out) {
+            assertEquals(0xFFC8C8C8, pixel);
+        }
+    }
+
+    @Test
+    public void rotation_movesTopLeftPixelToTheRightCorner() {
+        Frame frame = new Frame(4, 2, 0, false, 5L);
+        for (int i = 0; i < frame.y.capacity(); i++) {
+            frame.y.put(i, (byte) 0);
+        }
+        for (int i = 0; i < frame.u.capacity(); i++) {
+            frame.u.put(i, (byte) 128);
+            frame.v.put(i, (byte) 128);
+        }
+        frame.y.put(0, (byte) 255); // White top-left pixel on black
+
+        int[] out = new int[8];
+        YuvToRgbConverter converter = new YuvToRgbConverter();
+
+        converter.convert(frame.y, 4, frame.u, frame.v, 2, 1, 4, 2, 90, out);
+        assertEquals(2, YuvToRgbConverter.outputWidth(4, 2, 90));
+        assertEquals(0xFFFFFFFF, out[1]); // Top-right of the 2x4 upright frame
+
+        converter.convert(frame.y, 4, frame.u, frame.v, 2, 1, 4, 2, 270, out);
+        assertEquals(0xFFFFFFFF, out[6]); // Bottom-left
+
+        converter.convert(frame.y, 4, frame.u, frame.v, 2, 1, 4, 2, 180, out);
+        assertEquals(0xFFFFFFFF, out[7]); // Bottom-right
+    }
+
+    @Test
+    public void planePositions_areLeftUnchanged() {
+        Frame frame = new Frame(16, 16, 0, true, 6L);
+        int uPosition = frame.u.position();
+        new YuvToRgbConverter().convert(frame.y, frame.yRowStride, frame.u, frame.v,
+                frame.uvRowStride, frame.uvPixelStride, 16, 16, 90, new int[256]);
+        assertEquals(0, frame.y.position());
+        assertEquals(uPosition, frame.u.position());
+        assertEquals(0, frame.v.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedRotation_isRejected() {
+        Frame frame = new Frame(8, 8, 0, false, 7L);
+        new YuvToRgbConverter().convert(frame.y, 8, frame.u, frame.v, 4, 1, 8, 8, 45, new int[64]);
+    }
+}